@@ -0,0 +1,173 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee;
+
+import gov.nasa.arc.astrobee.types.Point;
+import gov.nasa.arc.astrobee.types.Quaternion;
+import gov.nasa.arc.astrobee.types.Vec3d;
+
+/**
+ * A reusable, primitive-backed copy of the kinematic state of Astrobee. Fill
+ * it with {@link Robot#copyCurrentKinematics(KinematicsSnapshot)} as often as
+ * you like without creating garbage.
+ *
+ * Vector components are indexed 0 = x, 1 = y, 2 = z, and orientation
+ * components additionally 3 = w.
+ *
+ * The {@link Kinematics} getters are provided for convenience, but each call
+ * allocates a new object. Use the indexed getters in tight loops.
+ *
+ * Instances are not thread safe.
+ */
+public final class KinematicsSnapshot implements Kinematics {
+    private final double[] m_position = new double[3];
+    private final double[] m_orientation = new double[] { 0, 0, 0, 1 };
+    private final double[] m_linearVelocity = new double[3];
+    private final double[] m_angularVelocity = new double[3];
+    private final double[] m_linearAcceleration = new double[3];
+    private Confidence m_confidence = Confidence.LOST;
+    private long m_timestamp = 0;
+    private long m_version = 0;
+
+    @Override
+    public Confidence getConfidence() {
+        return m_confidence;
+    }
+
+    /**
+     * @return The time of the estimate, in nanoseconds of ROS time.
+     */
+    public long getTimestamp() {
+        return m_timestamp;
+    }
+
+    /**
+     * @return Which update this is, counting from 1. Zero means no estimate
+     *         has been received yet. Compare versions to tell whether the
+     *         state changed between two copies.
+     */
+    public long getVersion() {
+        return m_version;
+    }
+
+    public double getPosition(int axis) {
+        return m_position[axis];
+    }
+
+    public double getOrientation(int component) {
+        return m_orientation[component];
+    }
+
+    public double getLinearVelocity(int axis) {
+        return m_linearVelocity[axis];
+    }
+
+    public double getAngularVelocity(int axis) {
+        return m_angularVelocity[axis];
+    }
+
+    public double getLinearAcceleration(int axis) {
+        return m_linearAcceleration[axis];
+    }
+
+    @Override
+    public Point getPosition() {
+        return new Point(m_position[0], m_position[1], m_position[2]);
+    }
+
+    @Override
+    public Quaternion getOrientation() {
+        return new Quaternion((float) m_orientation[0], (float) m_orientation[1],
+                              (float) m_orientation[2], (float) m_orientation[3]);
+    }
+
+    @Override
+    public Vec3d getLinearVelocity() {
+        return new Vec3d(m_linearVelocity[0], m_linearVelocity[1], m_linearVelocity[2]);
+    }
+
+    @Override
+    public Vec3d getAngularVelocity() {
+        return new Vec3d(m_angularVelocity[0], m_angularVelocity[1], m_angularVelocity[2]);
+    }
+
+    @Override
+    public Vec3d getLinearAcceleration() {
+        return new Vec3d(m_linearAcceleration[0], m_linearAcceleration[1], m_linearAcceleration[2]);
+    }
+
+    public void setConfidence(final Confidence confidence) {
+        m_confidence = confidence;
+    }
+
+    public void setTimestamp(long timestamp) {
+        m_timestamp = timestamp;
+    }
+
+    public void setVersion(long version) {
+        m_version = version;
+    }
+
+    public void setPosition(double x, double y, double z) {
+        m_position[0] = x;
+        m_position[1] = y;
+        m_position[2] = z;
+    }
+
+    public void setOrientation(double x, double y, double z, double w) {
+        m_orientation[0] = x;
+        m_orientation[1] = y;
+        m_orientation[2] = z;
+        m_orientation[3] = w;
+    }
+
+    public void setLinearVelocity(double x, double y, double z) {
+        m_linearVelocity[0] = x;
+        m_linearVelocity[1] = y;
+        m_linearVelocity[2] = z;
+    }
+
+    public void setAngularVelocity(double x, double y, double z) {
+        m_angularVelocity[0] = x;
+        m_angularVelocity[1] = y;
+        m_angularVelocity[2] = z;
+    }
+
+    public void setLinearAcceleration(double x, double y, double z) {
+        m_linearAcceleration[0] = x;
+        m_linearAcceleration[1] = y;
+        m_linearAcceleration[2] = z;
+    }
+
+    /**
+     * Copy everything from another snapshot.
+     *
+     * @param other The snapshot to copy.
+     */
+    public void set(final KinematicsSnapshot other) {
+        System.arraycopy(other.m_position, 0, m_position, 0, 3);
+        System.arraycopy(other.m_orientation, 0, m_orientation, 0, 4);
+        System.arraycopy(other.m_linearVelocity, 0, m_linearVelocity, 0, 3);
+        System.arraycopy(other.m_angularVelocity, 0, m_angularVelocity, 0, 3);
+        System.arraycopy(other.m_linearAcceleration, 0, m_linearAcceleration, 0, 3);
+        m_confidence = other.m_confidence;
+        m_timestamp = other.m_timestamp;
+        m_version = other.m_version;
+    }
+}
@@ -18,6 +18,7 @@
 
 package gov.nasa.arc.astrobee;
 
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -38,12 +39,19 @@ public interface PendingResult {
             return m_value;
         }
 
+        // Indexed by value, so lookups on the ack path don't copy values()
+        private static final Status[] s_byValue;
+        static {
+            final Status[] all = values();
+            s_byValue = new Status[all.length];
+            for (Status s : all)
+                s_byValue[s.m_value] = s;
+        }
+
         public static Status fromValue(byte value) {
-            for (Status s : Status.values()) {
-                if (s.m_value == value)
-                    return s;
-            }
-            throw new IllegalArgumentException("No such Status with that value");
+            if (value < 0 || value >= s_byValue.length || s_byValue[value] == null)
+                throw new IllegalArgumentException("No such Status with that value");
+            return s_byValue[value];
         }
 
         @Override
@@ -52,6 +60,42 @@ public interface PendingResult {
         }
     }
 
+    /**
+     * Notified every time the {@link Status} of a command changes.
+     */
+    interface StatusListener {
+        void onStatusChanged(PendingResult pending, Status status);
+    }
+
+    /**
+     * Notified exactly once, when a command either completes or fails.
+     */
+    interface CompletionListener {
+        /**
+         * The command completed. This does not mean it succeeded, check
+         * {@link Result#hasSucceeded()}.
+         */
+        void onCompleted(PendingResult pending, Result result);
+
+        /**
+         * The command could not complete, e.g. the node died under it.
+         */
+        void onFailed(PendingResult pending, AstrobeeException exception);
+    }
+
+    /**
+     * The next step of a chain built with {@link #then(Continuation)}.
+     */
+    interface Continuation {
+        /**
+         * Issue the next command.
+         *
+         * @param previous The successful {@link Result} of the previous step.
+         * @return The {@link PendingResult} of the next command.
+         */
+        PendingResult next(Result previous);
+    }
+
     boolean isFinished();
 
     Status getStatus();
@@ -59,4 +103,58 @@ public interface PendingResult {
     Result getResult() throws AstrobeeException, InterruptedException;
 
     Result getResult(long timeout, TimeUnit unit) throws AstrobeeException, InterruptedException, TimeoutException;
+
+    /**
+     * Add a listener for status changes, run on the
+     * {@link PendingResults#getDefaultExecutor() default executor}.
+     *
+     * @param listener The listener to add.
+     */
+    void addStatusListener(StatusListener listener);
+
+    /**
+     * Add a listener for status changes.
+     *
+     * @param listener The listener to add.
+     * @param executor Where to run the listener.
+     */
+    void addStatusListener(StatusListener listener, Executor executor);
+
+    /**
+     * Add a listener for completion, run on the
+     * {@link PendingResults#getDefaultExecutor() default executor}. If the
+     * command has already finished the listener is scheduled right away.
+     *
+     * @param listener The listener to add.
+     */
+    void addCompletionListener(CompletionListener listener);
+
+    /**
+     * Add a listener for completion. If the command has already finished the
+     * listener is scheduled right away.
+     *
+     * @param listener The listener to add.
+     * @param executor Where to run the listener.
+     */
+    void addCompletionListener(CompletionListener listener, Executor executor);
+
+    /**
+     * Issue another command as soon as this one succeeds. If this command
+     * fails, or completes without succeeding, the continuation is skipped
+     * and the returned {@link PendingResult} finishes the same way.
+     *
+     * @param continuation Issues the next command.
+     * @return A {@link PendingResult} that finishes with the next command.
+     */
+    PendingResult then(Continuation continuation);
+
+    /**
+     * Like {@link #then(Continuation)}, running the continuation on the
+     * given executor.
+     *
+     * @param continuation Issues the next command.
+     * @param executor Where to run the continuation.
+     * @return A {@link PendingResult} that finishes with the next command.
+     */
+    PendingResult then(Continuation continuation, Executor executor);
 }
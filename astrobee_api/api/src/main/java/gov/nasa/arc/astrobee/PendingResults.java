@@ -0,0 +1,136 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee;
+
+import gov.nasa.arc.astrobee.internal.ComposedPendingResult;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Helpers for combining {@link PendingResult}s, and the executor their
+ * listeners run on by default.
+ */
+public final class PendingResults {
+    private PendingResults() { }
+
+    private static final Executor s_direct = new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            command.run();
+        }
+    };
+
+    private static volatile Executor s_default = null;
+
+    /**
+     * An {@link Executor} that runs listeners on whichever thread finished the
+     * command, usually the ROS ack thread. Fastest, but listeners must not
+     * block.
+     *
+     * @return The direct {@link Executor}.
+     */
+    public static Executor directExecutor() {
+        return s_direct;
+    }
+
+    /**
+     * The {@link Executor} listeners run on when none is given. Unless
+     * replaced with {@link #setDefaultExecutor(Executor)}, this is a pool of
+     * daemon threads, so listeners may block without stalling acks.
+     *
+     * @return The default {@link Executor}.
+     */
+    public static Executor getDefaultExecutor() {
+        Executor executor = s_default;
+        if (executor == null) {
+            synchronized (PendingResults.class) {
+                if (s_default == null)
+                    s_default = newCallbackPool();
+                executor = s_default;
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Replace the default {@link Executor} for listeners added from now on.
+     *
+     * @param executor The new default, or {@code null} to go back to the
+     *                 built-in pool.
+     */
+    public static void setDefaultExecutor(final Executor executor) {
+        s_default = executor;
+    }
+
+    /**
+     * @see #allOf(List)
+     */
+    public static PendingResult allOf(final PendingResult... results) {
+        return allOf(Arrays.asList(results));
+    }
+
+    /**
+     * Get a {@link PendingResult} that finishes when all of the given ones
+     * have. Its result is that of the first command (in order) that did not
+     * succeed, or of the last command if they all did.
+     *
+     * @param results The pending results to wait for.
+     * @return The combined {@link PendingResult}.
+     */
+    public static PendingResult allOf(final List<? extends PendingResult> results) {
+        return ComposedPendingResult.allOf(results);
+    }
+
+    /**
+     * @see #anyOf(List)
+     */
+    public static PendingResult anyOf(final PendingResult... results) {
+        return anyOf(Arrays.asList(results));
+    }
+
+    /**
+     * Get a {@link PendingResult} that finishes the same way as the first of
+     * the given ones to finish.
+     *
+     * @param results The pending results to race.
+     * @return The combined {@link PendingResult}.
+     */
+    public static PendingResult anyOf(final List<? extends PendingResult> results) {
+        return ComposedPendingResult.anyOf(results);
+    }
+
+    private static ExecutorService newCallbackPool() {
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger m_count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, "PendingResult Listener " + m_count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+}
@@ -34,12 +34,19 @@ public interface Result {
             return m_value;
         }
 
+        // Indexed by value, so lookups on the ack path don't copy values()
+        private static final Status[] s_byValue;
+        static {
+            final Status[] all = values();
+            s_byValue = new Status[all.length];
+            for (Status s : all)
+                s_byValue[s.m_value] = s;
+        }
+
         public static Status fromValue(final byte value) {
-            for (Status s : Status.values()) {
-                if (s.m_value == value)
-                    return s;
-            }
-            throw new IllegalArgumentException("No such Status with that value");
+            if (value < 0 || value >= s_byValue.length || s_byValue[value] == null)
+                throw new IllegalArgumentException("No such Status with that value");
+            return s_byValue[value];
         }
 
         @Override
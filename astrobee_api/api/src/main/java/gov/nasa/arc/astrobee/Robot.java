@@ -22,8 +22,26 @@ import gov.nasa.arc.astrobee.internal.BaseRobot;
 import gov.nasa.arc.astrobee.types.Point;
 import gov.nasa.arc.astrobee.types.Quaternion;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 public interface Robot extends BaseRobot {
 
+    /**
+     * Receives kinematic state updates as they come in from the robot.
+     */
+    interface KinematicsListener {
+        /**
+         * Called with the latest state. The snapshot is reused for the next
+         * call, so copy it if you need to keep it around.
+         *
+         * @param robot      The robot the update is about.
+         * @param kinematics The latest {@link KinematicsSnapshot}.
+         */
+        void onKinematicsChanged(Robot robot, KinematicsSnapshot kinematics);
+    }
+
     /**
      * Move the robot to the given position and orientation.
      *
@@ -46,4 +64,83 @@ public interface Robot extends BaseRobot {
      */
     Kinematics getCurrentKinematics();
 
+    /**
+     * Copy the last received kinematic state of the robot into a holder the
+     * caller owns. Unlike {@link #getCurrentKinematics()} this does not
+     * allocate, so it is the one to call at high rates.
+     *
+     * @param into The {@link KinematicsSnapshot} to fill in.
+     * @return {@code into}, for convenience.
+     */
+    KinematicsSnapshot copyCurrentKinematics(KinematicsSnapshot into);
+
+    /**
+     * Get the kinematic state of the robot at a moment in the recent past,
+     * interpolated between the estimates received around that time. Use this
+     * to tag data with where the robot was when it was captured.
+     *
+     * @param timestamp The time of interest, in nanoseconds of ROS time.
+     * @return The {@link Kinematics} at that time, or {@code null} if it is
+     *         older than the kept history or newer than the last estimate.
+     */
+    Kinematics getKinematicsAt(long timestamp);
+
+    /**
+     * Like {@link #getKinematicsAt(long)}, but fills in a holder the caller
+     * owns instead of allocating.
+     *
+     * @param timestamp The time of interest, in nanoseconds of ROS time.
+     * @param into      The {@link KinematicsSnapshot} to fill in.
+     * @return Whether the time was covered. If not, {@code into} is left
+     *         unchanged.
+     */
+    boolean copyKinematicsAt(long timestamp, KinematicsSnapshot into);
+
+    /**
+     * @see #addKinematicsListener(KinematicsListener, double, Executor)
+     */
+    void addKinematicsListener(KinematicsListener listener, double maxRateHz);
+
+    /**
+     * Get called back whenever a new kinematic state is received, at most
+     * {@code maxRateHz} times per second. A listener that cannot keep up is
+     * not queued up: it gets the latest state when it is next called.
+     *
+     * @param listener  The {@link KinematicsListener} to add.
+     * @param maxRateHz Maximum call rate, or 0 for every update.
+     * @param executor  The {@link Executor} to call the listener on. Without
+     *                  one, it runs on the default executor of
+     *                  {@link PendingResults}.
+     */
+    void addKinematicsListener(KinematicsListener listener, double maxRateHz, Executor executor);
+
+    /**
+     * Stop calling a listener previously added.
+     *
+     * @param listener The {@link KinematicsListener} to remove.
+     */
+    void removeKinematicsListener(KinematicsListener listener);
+
+    /**
+     * Wait until the robot knows where it is at least as well as asked, for
+     * example {@link Kinematics.Confidence#GOOD} before moving.
+     *
+     * @param confidence The worst acceptable {@link Kinematics.Confidence}.
+     * @return The first {@link Kinematics} that was confident enough.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    Kinematics awaitConfidence(Kinematics.Confidence confidence) throws InterruptedException;
+
+    /**
+     * @see #awaitConfidence(Kinematics.Confidence)
+     *
+     * @param confidence The worst acceptable {@link Kinematics.Confidence}.
+     * @param timeout    How long to wait. A negative value waits forever, like
+     *                   {@link #awaitConfidence(Kinematics.Confidence)}.
+     * @param unit       The unit of {@code timeout}.
+     * @throws TimeoutException If the robot did not get there in time.
+     */
+    Kinematics awaitConfidence(Kinematics.Confidence confidence, long timeout, TimeUnit unit)
+            throws InterruptedException, TimeoutException;
+
 }
@@ -0,0 +1,382 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee;
+
+import gov.nasa.arc.astrobee.internal.AbstractPendingResult;
+import gov.nasa.arc.astrobee.types.Point;
+import gov.nasa.arc.astrobee.types.Quaternion;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Flies a robot through a list of waypoints, one {@code simpleMove6DOF} per
+ * segment. Each segment is sent from the completion callback of the one
+ * before it, so no time is lost polling between segments. Those callbacks
+ * run one at a time on the executor's own serial queue, never on the thread
+ * that delivered the ack.
+ *
+ * An executor runs one trajectory once: create a new one for every run.
+ */
+public final class TrajectoryExecutor {
+
+    /**
+     * A pose to fly to.
+     */
+    public static final class Waypoint {
+        private final Point m_position;
+        private final Quaternion m_orientation;
+
+        public Waypoint(final Point position, final Quaternion orientation) {
+            if (position == null || orientation == null)
+                throw new NullPointerException("position and orientation may not be null");
+            m_position = position;
+            m_orientation = orientation;
+        }
+
+        public Point getPosition() {
+            return m_position;
+        }
+
+        public Quaternion getOrientation() {
+            return m_orientation;
+        }
+
+        @Override
+        public String toString() {
+            return m_position + " " + m_orientation;
+        }
+    }
+
+    /**
+     * Receives per-segment progress of a trajectory.
+     */
+    public interface ProgressListener {
+        /**
+         * A segment was sent to the robot.
+         *
+         * @param index    Index of the waypoint being flown to.
+         * @param waypoint The {@link Waypoint} being flown to.
+         */
+        void onSegmentStarted(int index, Waypoint waypoint);
+
+        /**
+         * A segment finished, successfully or not.
+         *
+         * @param index         Index of the waypoint.
+         * @param result        The {@link Result} of its move command.
+         * @param durationNanos Time from sending the move to it completing.
+         * @param gapNanos      Time from the previous segment completing to
+         *                      this one being sent, or 0 for the first.
+         */
+        void onSegmentFinished(int index, Result result, long durationNanos, long gapNanos);
+    }
+
+    /**
+     * Runs tasks one at a time, in order, on another executor, so progress
+     * is reported in order even on a thread pool.
+     */
+    private static final class SerialExecutor implements Executor {
+        private final Executor m_executor;
+        private final Queue<Runnable> m_tasks = new ArrayDeque<>();
+        private boolean m_running = false;
+
+        SerialExecutor(final Executor executor) {
+            m_executor = executor;
+        }
+
+        private final Runnable m_drain = new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    final Runnable next;
+                    synchronized (m_tasks) {
+                        next = m_tasks.poll();
+                        if (next == null) {
+                            m_running = false;
+                            return;
+                        }
+                    }
+                    boolean ok = false;
+                    try {
+                        next.run();
+                        ok = true;
+                    } finally {
+                        // Don't let a throwing listener wedge the queue
+                        if (!ok)
+                            restart();
+                    }
+                }
+            }
+        };
+
+        @Override
+        public void execute(final Runnable task) {
+            synchronized (m_tasks) {
+                m_tasks.add(task);
+                if (m_running)
+                    return;
+                m_running = true;
+            }
+            m_executor.execute(m_drain);
+        }
+
+        private void restart() {
+            synchronized (m_tasks) {
+                if (m_tasks.isEmpty()) {
+                    m_running = false;
+                    return;
+                }
+            }
+            m_executor.execute(m_drain);
+        }
+    }
+
+    private final class Run extends AbstractPendingResult {
+        Run() {
+            super(Status.EXECUTING);
+        }
+
+        void finish(final Result result) {
+            complete(result);
+        }
+
+        void abort(final Throwable t) {
+            fail(t);
+        }
+    }
+
+    private final Robot m_robot;
+    private final List<Waypoint> m_waypoints;
+    private final Run m_run = new Run();
+    private final Executor m_segmentExecutor;
+
+    private ProgressListener m_listener = null;
+    private Executor m_listenerExecutor = null;
+
+    // Guards sending segments against stop(), so that no move can be sent
+    // after the stop command.
+    private final Object m_lock = new Object();
+    private boolean m_started = false;
+    private boolean m_stopped = false;
+
+    // Only written from the completion callback of the previous segment,
+    // read from anywhere
+    private volatile long m_maxGapNanos = 0;
+    private volatile long m_totalGapNanos = 0;
+    private volatile int m_completed = 0;
+
+    /**
+     * @see #TrajectoryExecutor(Robot, List, Executor)
+     */
+    public TrajectoryExecutor(final Robot robot, final List<Waypoint> waypoints) {
+        this(robot, waypoints, PendingResults.getDefaultExecutor());
+    }
+
+    /**
+     * @param robot     The {@link Robot} to fly.
+     * @param waypoints Where to fly it, in order.
+     * @param executor  The {@link Executor} to send each next segment from.
+     *                  Segments are sent one at a time even if it is a pool.
+     */
+    public TrajectoryExecutor(final Robot robot, final List<Waypoint> waypoints, final Executor executor) {
+        if (robot == null || waypoints == null || executor == null)
+            throw new NullPointerException("robot, waypoints and executor may not be null");
+        m_robot = robot;
+        m_waypoints = new ArrayList<>(waypoints);
+        m_segmentExecutor = new SerialExecutor(executor);
+    }
+
+    /**
+     * @see #setProgressListener(ProgressListener, Executor)
+     */
+    public TrajectoryExecutor setProgressListener(final ProgressListener listener) {
+        return setProgressListener(listener, PendingResults.getDefaultExecutor());
+    }
+
+    /**
+     * Set who to tell about each segment. Must be called before
+     * {@link #start()}.
+     *
+     * @param listener The {@link ProgressListener}.
+     * @param executor The {@link Executor} to call it on.
+     * @return This executor.
+     */
+    public TrajectoryExecutor setProgressListener(final ProgressListener listener, final Executor executor) {
+        if (listener == null || executor == null)
+            throw new NullPointerException("listener and executor may not be null");
+        synchronized (m_lock) {
+            if (m_started)
+                throw new IllegalStateException("Trajectory already started");
+            m_listener = listener;
+            m_listenerExecutor = new SerialExecutor(executor);
+        }
+        return this;
+    }
+
+    /**
+     * Send the first segment.
+     *
+     * @return A {@link PendingResult} that finishes when the last segment
+     *         has, or as soon as a segment does not succeed. Its result is
+     *         that of the last segment flown.
+     */
+    public PendingResult start() {
+        synchronized (m_lock) {
+            if (m_started)
+                throw new IllegalStateException("Trajectory already started");
+            m_started = true;
+        }
+        if (m_waypoints.isEmpty()) {
+            m_run.finish(null);
+            return m_run;
+        }
+        send(0, 0, null);
+        return m_run;
+    }
+
+    /**
+     * Stop after the current segment and halt the robot where it is.
+     *
+     * @return The {@link PendingResult} of the stop command, or {@code null}
+     *         if the trajectory was not underway.
+     */
+    public PendingResult stop() {
+        synchronized (m_lock) {
+            if (m_stopped)
+                return null;
+            m_stopped = true;
+            if (!m_started) {
+                m_started = true;
+                m_run.finish(null);
+                return null;
+            }
+            if (m_run.isFinished())
+                return null;
+            return m_robot.stopAllMotion();
+        }
+    }
+
+    /**
+     * @return The {@link PendingResult} of the whole trajectory.
+     */
+    public PendingResult getPendingResult() {
+        return m_run;
+    }
+
+    /**
+     * @return How many segments have completed so far.
+     */
+    public int getCompletedSegments() {
+        return m_completed;
+    }
+
+    /**
+     * @return The longest time between one segment completing and the next
+     *         being sent. Only meaningful once the run has finished.
+     */
+    public long getMaxGapNanos() {
+        return m_maxGapNanos;
+    }
+
+    /**
+     * @return The sum of all times between segments. Only meaningful once
+     *         the run has finished.
+     */
+    public long getTotalGapNanos() {
+        return m_totalGapNanos;
+    }
+
+    /**
+     * @param previousFinished When the previous segment completed, or 0.
+     * @param previousResult   Its {@link Result}, to finish with if stopped.
+     */
+    private void send(final int index, final long previousFinished, final Result previousResult) {
+        final Waypoint waypoint = m_waypoints.get(index);
+        final PendingResult pending;
+        try {
+            synchronized (m_lock) {
+                if (m_stopped) {
+                    m_run.finish(previousResult);
+                    return;
+                }
+                pending = m_robot.simpleMove6DOF(waypoint.getPosition(), waypoint.getOrientation());
+            }
+        } catch (RuntimeException e) {
+            m_run.abort(e);
+            return;
+        }
+
+        final long sent = System.nanoTime();
+        final long gapNanos = previousFinished == 0 ? 0 : sent - previousFinished;
+        if (gapNanos > m_maxGapNanos)
+            m_maxGapNanos = gapNanos;
+        m_totalGapNanos += gapNanos;
+        notifyStarted(index, waypoint);
+
+        // Not direct: the next move must not be sent, under m_lock, from the
+        // thread delivering acks
+        pending.addCompletionListener(new PendingResult.CompletionListener() {
+            @Override
+            public void onCompleted(final PendingResult p, final Result result) {
+                final long now = System.nanoTime();
+                m_completed = index + 1;
+                notifyFinished(index, result, now - sent, gapNanos);
+
+                if (result == null || !result.hasSucceeded() || index + 1 == m_waypoints.size()) {
+                    m_run.finish(result);
+                    return;
+                }
+                send(index + 1, now, result);
+            }
+
+            @Override
+            public void onFailed(final PendingResult p, final AstrobeeException exception) {
+                m_run.abort(exception);
+            }
+        }, m_segmentExecutor);
+    }
+
+    private void notifyStarted(final int index, final Waypoint waypoint) {
+        final ProgressListener listener = m_listener;
+        if (listener == null)
+            return;
+        m_listenerExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onSegmentStarted(index, waypoint);
+            }
+        });
+    }
+
+    private void notifyFinished(final int index, final Result result, final long duration, final long gap) {
+        final ProgressListener listener = m_listener;
+        if (listener == null)
+            return;
+        m_listenerExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onSegmentFinished(index, result, duration, gap);
+            }
+        });
+    }
+}
@@ -0,0 +1,290 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.internal;
+
+import gov.nasa.arc.astrobee.AstrobeeException;
+import gov.nasa.arc.astrobee.PendingResult;
+import gov.nasa.arc.astrobee.PendingResults;
+import gov.nasa.arc.astrobee.Result;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Common completion, listener and chaining machinery for {@link PendingResult}
+ * implementations. Subclasses only decide when to call
+ * {@link #updateStatus(Status)}, {@link #complete(Result)} and
+ * {@link #fail(Throwable)}.
+ */
+public abstract class AbstractPendingResult implements PendingResult {
+    private static final StatusRegistration[] NO_STATUS_LISTENERS = new StatusRegistration[0];
+
+    private static final class StatusRegistration {
+        final StatusListener listener;
+        final Executor executor;
+
+        StatusRegistration(final StatusListener listener, final Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+    }
+
+    private static final class CompletionRegistration {
+        final CompletionListener listener;
+        final Executor executor;
+
+        CompletionRegistration(final CompletionListener listener, final Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+    }
+
+    private volatile Status m_status;
+
+    // Copy-on-write, so status listeners are never called with a lock held
+    private volatile StatusRegistration[] m_statusListeners = NO_STATUS_LISTENERS;
+
+    // Synchronization object protecting status changes, the result, exception
+    // and listeners
+    private final Object m_sync = new Object();
+    private Result m_result = null;
+    private AstrobeeException m_exception = null;
+    private List<CompletionRegistration> m_completionListeners = null;
+
+    private final CountDownLatch m_latch = new CountDownLatch(1);
+
+    protected AbstractPendingResult(final Status initial) {
+        m_status = initial;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return m_status == Status.COMPLETED;
+    }
+
+    @Override
+    public Status getStatus() {
+        return m_status;
+    }
+
+    @Override
+    public Result getResult() throws AstrobeeException, InterruptedException {
+        m_latch.await();
+        return collect();
+    }
+
+    @Override
+    public Result getResult(long timeout, TimeUnit unit) throws AstrobeeException, InterruptedException, TimeoutException {
+        m_latch.await(timeout, unit);
+        return collect();
+    }
+
+    private Result collect() throws AstrobeeException {
+        synchronized (m_sync) {
+            if (m_exception != null)
+                throw m_exception;
+            return m_result;
+        }
+    }
+
+    @Override
+    public void addStatusListener(final StatusListener listener) {
+        addStatusListener(listener, PendingResults.getDefaultExecutor());
+    }
+
+    @Override
+    public void addStatusListener(final StatusListener listener, final Executor executor) {
+        if (listener == null || executor == null)
+            throw new NullPointerException("listener and executor may not be null");
+        synchronized (m_sync) {
+            final StatusRegistration[] old = m_statusListeners;
+            final StatusRegistration[] updated = new StatusRegistration[old.length + 1];
+            System.arraycopy(old, 0, updated, 0, old.length);
+            updated[old.length] = new StatusRegistration(listener, executor);
+            m_statusListeners = updated;
+        }
+    }
+
+    @Override
+    public void addCompletionListener(final CompletionListener listener) {
+        addCompletionListener(listener, PendingResults.getDefaultExecutor());
+    }
+
+    @Override
+    public void addCompletionListener(final CompletionListener listener, final Executor executor) {
+        if (listener == null || executor == null)
+            throw new NullPointerException("listener and executor may not be null");
+        final CompletionRegistration reg = new CompletionRegistration(listener, executor);
+        synchronized (m_sync) {
+            if (m_latch.getCount() != 0) {
+                if (m_completionListeners == null)
+                    m_completionListeners = new ArrayList<>(2);
+                m_completionListeners.add(reg);
+                return;
+            }
+        }
+        // Already finished, hand it the outcome right away
+        dispatch(reg);
+    }
+
+    @Override
+    public PendingResult then(final Continuation continuation) {
+        return then(continuation, PendingResults.getDefaultExecutor());
+    }
+
+    @Override
+    public PendingResult then(final Continuation continuation, final Executor executor) {
+        if (continuation == null)
+            throw new NullPointerException("continuation may not be null");
+        // Not finished until the continuation has run, even if we are
+        final ComposedPendingResult chained = new ComposedPendingResult(Status.EXECUTING);
+        addCompletionListener(new CompletionListener() {
+            @Override
+            public void onCompleted(final PendingResult pending, final Result result) {
+                if (result == null || !result.hasSucceeded()) {
+                    chained.complete(result);
+                    return;
+                }
+                final PendingResult next;
+                try {
+                    next = continuation.next(result);
+                } catch (RuntimeException e) {
+                    chained.fail(e);
+                    return;
+                }
+                if (next == null) {
+                    chained.complete(result);
+                    return;
+                }
+                chained.follow(next);
+            }
+
+            @Override
+            public void onFailed(final PendingResult pending, final AstrobeeException exception) {
+                chained.fail(exception);
+            }
+        }, executor);
+        return chained;
+    }
+
+    /**
+     * Change the status, notifying status listeners if it actually changed.
+     * Once {@link Status#COMPLETED}, the status never changes again.
+     *
+     * @param status The new {@link Status}.
+     */
+    protected void updateStatus(final Status status) {
+        synchronized (m_sync) {
+            if (m_status == status || m_status == Status.COMPLETED)
+                return;
+            m_status = status;
+        }
+
+        final StatusRegistration[] listeners = m_statusListeners;
+        for (final StatusRegistration reg : listeners) {
+            reg.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    reg.listener.onStatusChanged(AbstractPendingResult.this, status);
+                }
+            });
+        }
+    }
+
+    /**
+     * Finish with a result. Only the first call to either this or
+     * {@link #fail(Throwable)} has any effect.
+     *
+     * @param result The final {@link Result}.
+     * @return Whether this call finished the pending result.
+     */
+    protected boolean complete(final Result result) {
+        final List<CompletionRegistration> listeners;
+        synchronized (m_sync) {
+            // If the count has hit zero, then someone has already set either
+            // a result or an exception, so bail.
+            if (m_latch.getCount() == 0)
+                return false;
+
+            // We are the first, set our result.
+            m_result = result;
+            listeners = m_completionListeners;
+            m_completionListeners = null;
+            m_latch.countDown();
+        }
+        updateStatus(Status.COMPLETED);
+        dispatchAll(listeners);
+        return true;
+    }
+
+    /**
+     * Finish with an error. Only the first call to either this or
+     * {@link #complete(Result)} has any effect.
+     *
+     * @param t What went wrong, wrapped in an {@link AstrobeeException} if
+     *          it isn't one already.
+     * @return Whether this call finished the pending result.
+     */
+    protected boolean fail(final Throwable t) {
+        final List<CompletionRegistration> listeners;
+        synchronized (m_sync) {
+            if (m_latch.getCount() == 0)
+                return false;
+            if (t instanceof AstrobeeException)
+                m_exception = (AstrobeeException) t;
+            else
+                m_exception = new AstrobeeException(t);
+            listeners = m_completionListeners;
+            m_completionListeners = null;
+            m_latch.countDown();
+        }
+        updateStatus(Status.COMPLETED);
+        dispatchAll(listeners);
+        return true;
+    }
+
+    private void dispatchAll(final List<CompletionRegistration> listeners) {
+        if (listeners == null)
+            return;
+        for (CompletionRegistration reg : listeners)
+            dispatch(reg);
+    }
+
+    private void dispatch(final CompletionRegistration reg) {
+        final Result result;
+        final AstrobeeException exception;
+        synchronized (m_sync) {
+            result = m_result;
+            exception = m_exception;
+        }
+        reg.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (exception != null)
+                    reg.listener.onFailed(AbstractPendingResult.this, exception);
+                else
+                    reg.listener.onCompleted(AbstractPendingResult.this, result);
+            }
+        });
+    }
+}
@@ -0,0 +1,139 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.internal;
+
+import gov.nasa.arc.astrobee.AstrobeeException;
+import gov.nasa.arc.astrobee.PendingResult;
+import gov.nasa.arc.astrobee.PendingResults;
+import gov.nasa.arc.astrobee.Result;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link PendingResult} that finishes based on other pending results
+ * rather than on an ack: the tail of a {@link PendingResult#then} chain, or
+ * an {@link #allOf(List)}/{@link #anyOf(List)} aggregate.
+ */
+public final class ComposedPendingResult extends AbstractPendingResult {
+
+    ComposedPendingResult(final Status initial) {
+        super(initial);
+    }
+
+    /**
+     * Mirror the status and outcome of another pending result.
+     */
+    void follow(final PendingResult other) {
+        final Executor direct = PendingResults.directExecutor();
+        other.addStatusListener(new StatusListener() {
+            @Override
+            public void onStatusChanged(final PendingResult pending, final Status status) {
+                if (status != Status.COMPLETED)
+                    updateStatus(status);
+            }
+        }, direct);
+        if (other.getStatus() != Status.COMPLETED)
+            updateStatus(other.getStatus());
+        other.addCompletionListener(new CompletionListener() {
+            @Override
+            public void onCompleted(final PendingResult pending, final Result result) {
+                complete(result);
+            }
+
+            @Override
+            public void onFailed(final PendingResult pending, final AstrobeeException exception) {
+                fail(exception);
+            }
+        }, direct);
+    }
+
+    /**
+     * Finishes once every one of {@code results} has finished. The result is
+     * that of the first (in list order) command that did not succeed, or the
+     * last one if all succeeded. Fails as soon as any of them fails.
+     */
+    public static PendingResult allOf(final List<? extends PendingResult> results) {
+        final ComposedPendingResult all = new ComposedPendingResult(Status.EXECUTING);
+        final int count = results.size();
+        if (count == 0) {
+            all.complete(null);
+            return all;
+        }
+
+        final Result[] outcomes = new Result[count];
+        final AtomicInteger remaining = new AtomicInteger(count);
+        final Executor direct = PendingResults.directExecutor();
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            results.get(i).addCompletionListener(new CompletionListener() {
+                @Override
+                public void onCompleted(final PendingResult pending, final Result result) {
+                    synchronized (outcomes) {
+                        outcomes[index] = result;
+                    }
+                    if (remaining.decrementAndGet() != 0)
+                        return;
+
+                    synchronized (outcomes) {
+                        for (Result r : outcomes) {
+                            if (r == null || !r.hasSucceeded()) {
+                                all.complete(r);
+                                return;
+                            }
+                        }
+                        all.complete(outcomes[count - 1]);
+                    }
+                }
+
+                @Override
+                public void onFailed(final PendingResult pending, final AstrobeeException exception) {
+                    all.fail(exception);
+                }
+            }, direct);
+        }
+        return all;
+    }
+
+    /**
+     * Finishes the same way as whichever of {@code results} finishes first.
+     */
+    public static PendingResult anyOf(final List<? extends PendingResult> results) {
+        if (results.isEmpty())
+            throw new IllegalArgumentException("anyOf needs at least one PendingResult");
+
+        final ComposedPendingResult any = new ComposedPendingResult(Status.EXECUTING);
+        final CompletionListener first = new CompletionListener() {
+            @Override
+            public void onCompleted(final PendingResult pending, final Result result) {
+                any.complete(result);
+            }
+
+            @Override
+            public void onFailed(final PendingResult pending, final AstrobeeException exception) {
+                any.fail(exception);
+            }
+        };
+        final Executor direct = PendingResults.directExecutor();
+        for (PendingResult pr : results)
+            pr.addCompletionListener(first, direct);
+        return any;
+    }
+}
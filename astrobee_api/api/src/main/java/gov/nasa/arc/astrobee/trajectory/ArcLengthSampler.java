@@ -0,0 +1,113 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.trajectory;
+
+import gov.nasa.arc.astrobee.types.MutableVec3d;
+
+/**
+ * Resamples a path, taken as straight lines between its points, at a fixed
+ * distance along it. The first and last points of the path are always kept;
+ * with {@code keepCorners} every point of the source is kept too, and the
+ * spacing restarts from each of them.
+ */
+public final class ArcLengthSampler implements PathGenerator {
+    private final PathGenerator m_source;
+    private final double m_spacing;
+    private final boolean m_keepCorners;
+
+    private final MutableVec3d m_from = new MutableVec3d();
+    private final MutableVec3d m_to = new MutableVec3d();
+    private boolean m_started = false;
+    private boolean m_done = false;
+
+    // How far along the current segment the next sample is
+    private double m_along = 0;
+    private double m_length = 0;
+    // Distance covered since the last point produced
+    private double m_since = 0;
+
+    public ArcLengthSampler(final PathGenerator source, double spacing) {
+        this(source, spacing, false);
+    }
+
+    public ArcLengthSampler(final PathGenerator source, double spacing, boolean keepCorners) {
+        if (source == null)
+            throw new NullPointerException("source may not be null");
+        if (spacing <= 0)
+            throw new IllegalArgumentException("spacing must be positive");
+        m_source = source;
+        m_spacing = spacing;
+        m_keepCorners = keepCorners;
+    }
+
+    @Override
+    public boolean next(final MutableVec3d out) {
+        if (m_done)
+            return false;
+        if (!m_started) {
+            m_started = true;
+            if (!m_source.next(m_to)) {
+                m_done = true;
+                return false;
+            }
+            m_from.set(m_to);
+            out.set(m_to);
+            return true;
+        }
+
+        while (true) {
+            // A sample falls on the current segment
+            if (m_length - m_along >= m_spacing - m_since) {
+                m_along += m_spacing - m_since;
+                m_since = 0;
+                final double t = m_along / m_length;
+                out.set(m_from.getX() + (m_to.getX() - m_from.getX()) * t,
+                        m_from.getY() + (m_to.getY() - m_from.getY()) * t,
+                        m_from.getZ() + (m_to.getZ() - m_from.getZ()) * t);
+                return true;
+            }
+
+            // Otherwise move on to the next segment
+            m_since += m_length - m_along;
+            m_from.set(m_to);
+            if (!m_source.next(m_to)) {
+                m_done = true;
+                // Finish on the last point unless a sample landed on it
+                if (m_since <= m_spacing * 1e-6)
+                    return false;
+                out.set(m_from);
+                return true;
+            }
+            startSegment();
+            if (m_keepCorners && m_since > m_spacing * 1e-6) {
+                m_since = 0;
+                out.set(m_from);
+                return true;
+            }
+        }
+    }
+
+    private void startSegment() {
+        final double dx = m_to.getX() - m_from.getX();
+        final double dy = m_to.getY() - m_from.getY();
+        final double dz = m_to.getZ() - m_from.getZ();
+        m_length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        m_along = 0;
+    }
+}
@@ -0,0 +1,79 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.trajectory;
+
+import gov.nasa.arc.astrobee.types.MutableVec3d;
+import gov.nasa.arc.astrobee.types.Point;
+
+/**
+ * Every node of a regular grid filling a box, visited in serpentine order so
+ * consecutive nodes are always neighbours: along X, then stepping in Y, then
+ * stepping in Z. The last row, column and layer sit on the box's far faces
+ * even when the box is not a whole number of steps across.
+ */
+public final class GridPath implements PathGenerator {
+    private final double[] m_min = new double[3];
+    private final double[] m_step = new double[3];
+    private final int[] m_count = new int[3];
+
+    private int m_i = 0;
+    private int m_j = 0;
+    private int m_k = 0;
+    private boolean m_done = false;
+
+    /**
+     * @param min The lower corner of the box.
+     * @param max The upper corner of the box.
+     * @param spacing The largest distance between neighbouring nodes.
+     */
+    public GridPath(final Point min, final Point max, double spacing) {
+        if (spacing <= 0)
+            throw new IllegalArgumentException("spacing must be positive");
+        for (int axis = 0; axis < 3; axis++) {
+            final double extent = max.get(axis) - min.get(axis);
+            if (extent < 0)
+                throw new IllegalArgumentException("max must not be below min");
+            final int intervals = (int) Math.ceil(extent / spacing - 1e-9);
+            m_min[axis] = min.get(axis);
+            m_count[axis] = intervals + 1;
+            m_step[axis] = intervals == 0 ? 0 : extent / intervals;
+        }
+    }
+
+    @Override
+    public boolean next(final MutableVec3d out) {
+        if (m_done)
+            return false;
+
+        // Odd rows run backwards in X, odd layers run backwards in Y
+        final int j = (m_k & 1) == 0 ? m_j : m_count[1] - 1 - m_j;
+        final int i = ((m_k * m_count[1] + m_j) & 1) == 0 ? m_i : m_count[0] - 1 - m_i;
+        out.set(m_min[0] + i * m_step[0], m_min[1] + j * m_step[1], m_min[2] + m_k * m_step[2]);
+
+        if (++m_i == m_count[0]) {
+            m_i = 0;
+            if (++m_j == m_count[1]) {
+                m_j = 0;
+                if (++m_k == m_count[2])
+                    m_done = true;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,72 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.trajectory;
+
+import gov.nasa.arc.astrobee.types.MutableVec3d;
+import gov.nasa.arc.astrobee.types.Point;
+
+/**
+ * Clamps another path to an axis-aligned keep-in box. Points that clamp to
+ * the same place as the one before are dropped, so a stretch outside the box
+ * turns into a run along its wall rather than a pile of repeats.
+ */
+public final class KeepInBox implements PathGenerator {
+    private final PathGenerator m_source;
+    private final double m_minX, m_minY, m_minZ;
+    private final double m_maxX, m_maxY, m_maxZ;
+
+    private boolean m_first = true;
+    private double m_lastX, m_lastY, m_lastZ;
+
+    public KeepInBox(final PathGenerator source, final Point min, final Point max) {
+        if (source == null)
+            throw new NullPointerException("source may not be null");
+        if (max.getX() < min.getX() || max.getY() < min.getY() || max.getZ() < min.getZ())
+            throw new IllegalArgumentException("max must not be below min");
+        m_source = source;
+        m_minX = min.getX();
+        m_minY = min.getY();
+        m_minZ = min.getZ();
+        m_maxX = max.getX();
+        m_maxY = max.getY();
+        m_maxZ = max.getZ();
+    }
+
+    @Override
+    public boolean next(final MutableVec3d out) {
+        while (m_source.next(out)) {
+            final double x = clamp(out.getX(), m_minX, m_maxX);
+            final double y = clamp(out.getY(), m_minY, m_maxY);
+            final double z = clamp(out.getZ(), m_minZ, m_maxZ);
+            if (!m_first && x == m_lastX && y == m_lastY && z == m_lastZ)
+                continue;
+            m_first = false;
+            m_lastX = x;
+            m_lastY = y;
+            m_lastZ = z;
+            out.set(x, y, z);
+            return true;
+        }
+        return false;
+    }
+
+    private static double clamp(double v, double min, double max) {
+        return v < min ? min : (v > max ? max : v);
+    }
+}
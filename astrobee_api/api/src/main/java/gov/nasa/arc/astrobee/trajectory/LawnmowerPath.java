@@ -0,0 +1,80 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.trajectory;
+
+import gov.nasa.arc.astrobee.types.MutableVec3d;
+import gov.nasa.arc.astrobee.types.Point;
+
+/**
+ * Back-and-forth lanes covering a rectangle at a fixed height. Lanes run
+ * along X and step along Y, starting at the minimum corner. Only the lane
+ * ends are produced; run it through an {@link ArcLengthSampler} for points
+ * along the lanes.
+ */
+public final class LawnmowerPath implements PathGenerator {
+    private final double m_minX;
+    private final double m_maxX;
+    private final double m_minY;
+    private final double m_maxY;
+    private final double m_z;
+    private final double m_laneSpacing;
+
+    private int m_lane = 0;
+    private boolean m_atLaneEnd = false;
+    private boolean m_done = false;
+
+    /**
+     * @param min The lower corner; its Z is the height flown at.
+     * @param max The upper corner; its Z is ignored.
+     * @param laneSpacing Distance between lanes.
+     */
+    public LawnmowerPath(final Point min, final Point max, double laneSpacing) {
+        if (laneSpacing <= 0)
+            throw new IllegalArgumentException("laneSpacing must be positive");
+        if (max.getX() < min.getX() || max.getY() < min.getY())
+            throw new IllegalArgumentException("max must not be below min");
+        m_minX = min.getX();
+        m_maxX = max.getX();
+        m_minY = min.getY();
+        m_maxY = max.getY();
+        m_z = min.getZ();
+        m_laneSpacing = laneSpacing;
+    }
+
+    @Override
+    public boolean next(final MutableVec3d out) {
+        if (m_done)
+            return false;
+
+        final double y = Math.min(m_minY + m_lane * m_laneSpacing, m_maxY);
+        final boolean forward = (m_lane & 1) == 0;
+        final boolean atMax = forward == m_atLaneEnd;
+        out.set(atMax ? m_maxX : m_minX, y, m_z);
+
+        if (!m_atLaneEnd) {
+            m_atLaneEnd = true;
+        } else if (y >= m_maxY) {
+            m_done = true;
+        } else {
+            m_lane++;
+            m_atLaneEnd = false;
+        }
+        return true;
+    }
+}
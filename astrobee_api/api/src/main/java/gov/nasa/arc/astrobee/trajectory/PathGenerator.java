@@ -0,0 +1,46 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.trajectory;
+
+import gov.nasa.arc.astrobee.types.MutableVec3d;
+
+/**
+ * A path produced one point at a time, so even very long paths never need to
+ * be held in memory. Generators are single use.
+ *
+ * Generators compose: a pattern such as {@link LawnmowerPath} gives the
+ * corners of the path, {@link KeepInBox} keeps them inside the allowed
+ * volume, and {@link ArcLengthSampler} turns them into evenly spaced
+ * waypoints, which {@link WaypointBuffer} can collect for a
+ * {@link gov.nasa.arc.astrobee.TrajectoryExecutor}:
+ * <pre>
+ * PathGenerator path = new ArcLengthSampler(
+ *         new KeepInBox(new SpiralPath(center, 0.5, 2.9), min, max), 0.1);
+ * new TrajectoryExecutor(robot, WaypointBuffer.collect(path).toWaypointsAlongPath()).start();
+ * </pre>
+ */
+public interface PathGenerator {
+    /**
+     * Produce the next point.
+     *
+     * @param out Where to write it.
+     * @return false, leaving {@code out} untouched, once the path is done.
+     */
+    boolean next(MutableVec3d out);
+}
@@ -0,0 +1,78 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.trajectory;
+
+import gov.nasa.arc.astrobee.types.MutableVec3d;
+import gov.nasa.arc.astrobee.types.Point;
+
+/**
+ * An Archimedean spiral in the X-Y plane, growing outwards from a center.
+ * Points come out closely spaced along the curve, no more than the
+ * resolution apart; run it through an {@link ArcLengthSampler} for evenly
+ * spaced waypoints.
+ */
+public final class SpiralPath implements PathGenerator {
+    private final double m_cx;
+    private final double m_cy;
+    private final double m_cz;
+    private final double m_maxRadius;
+    private final double m_angle;
+    private final int m_steps;
+
+    private int m_step = 0;
+
+    /**
+     * @see #SpiralPath(Point, double, double, double)
+     */
+    public SpiralPath(final Point center, double maxRadius, double turns) {
+        this(center, maxRadius, turns, 0.01);
+    }
+
+    /**
+     * @param center Where the spiral starts.
+     * @param maxRadius How far from the center it ends.
+     * @param turns How many times it goes around.
+     * @param resolution The most distance between produced points.
+     */
+    public SpiralPath(final Point center, double maxRadius, double turns, double resolution) {
+        if (maxRadius <= 0 || turns <= 0 || resolution <= 0)
+            throw new IllegalArgumentException("maxRadius, turns and resolution must be positive");
+        m_cx = center.getX();
+        m_cy = center.getY();
+        m_cz = center.getZ();
+        m_maxRadius = maxRadius;
+        m_angle = 2 * Math.PI * turns;
+
+        // The curve is never faster than at its outer edge, so steps sized
+        // for there are short enough everywhere
+        final double maxSpeed = maxRadius * Math.sqrt(1 + m_angle * m_angle);
+        m_steps = Math.max(1, (int) Math.ceil(maxSpeed / resolution));
+    }
+
+    @Override
+    public boolean next(final MutableVec3d out) {
+        if (m_step > m_steps)
+            return false;
+        final double u = (double) m_step++ / m_steps;
+        final double r = m_maxRadius * u;
+        final double a = m_angle * u;
+        out.set(m_cx + r * Math.cos(a), m_cy + r * Math.sin(a), m_cz);
+        return true;
+    }
+}
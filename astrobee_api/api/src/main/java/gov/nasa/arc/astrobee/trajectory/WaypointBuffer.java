@@ -0,0 +1,183 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.trajectory;
+
+import gov.nasa.arc.astrobee.TrajectoryExecutor.Waypoint;
+import gov.nasa.arc.astrobee.types.MutableQuaternion;
+import gov.nasa.arc.astrobee.types.MutableVec3d;
+import gov.nasa.arc.astrobee.types.Point;
+import gov.nasa.arc.astrobee.types.Quaternion;
+import gov.nasa.arc.astrobee.types.VecMath;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Growable storage for a path as three primitive arrays, one per axis, so a
+ * path of many thousands of points costs 24 bytes a point rather than a
+ * {@link Point} each.
+ */
+public final class WaypointBuffer {
+    private double[] m_x;
+    private double[] m_y;
+    private double[] m_z;
+    private int m_size = 0;
+
+    public WaypointBuffer() {
+        this(64);
+    }
+
+    public WaypointBuffer(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive");
+        m_x = new double[capacity];
+        m_y = new double[capacity];
+        m_z = new double[capacity];
+    }
+
+    /**
+     * Run a generator to the end, collecting every point.
+     */
+    public static WaypointBuffer collect(final PathGenerator path) {
+        final WaypointBuffer buffer = new WaypointBuffer();
+        buffer.addAll(path);
+        return buffer;
+    }
+
+    public void add(double x, double y, double z) {
+        if (m_size == m_x.length) {
+            final int capacity = m_size * 2;
+            m_x = Arrays.copyOf(m_x, capacity);
+            m_y = Arrays.copyOf(m_y, capacity);
+            m_z = Arrays.copyOf(m_z, capacity);
+        }
+        m_x[m_size] = x;
+        m_y[m_size] = y;
+        m_z[m_size] = z;
+        m_size++;
+    }
+
+    public void addAll(final PathGenerator path) {
+        final MutableVec3d p = new MutableVec3d();
+        while (path.next(p))
+            add(p.getX(), p.getY(), p.getZ());
+    }
+
+    public int size() {
+        return m_size;
+    }
+
+    public void clear() {
+        m_size = 0;
+    }
+
+    public double getX(int index) {
+        checkIndex(index);
+        return m_x[index];
+    }
+
+    public double getY(int index) {
+        checkIndex(index);
+        return m_y[index];
+    }
+
+    public double getZ(int index) {
+        checkIndex(index);
+        return m_z[index];
+    }
+
+    public MutableVec3d get(int index, final MutableVec3d out) {
+        checkIndex(index);
+        return out.set(m_x[index], m_y[index], m_z[index]);
+    }
+
+    public Point getPoint(int index) {
+        checkIndex(index);
+        return new Point(m_x[index], m_y[index], m_z[index]);
+    }
+
+    /**
+     * Total length of the path through every point in order.
+     */
+    public double length() {
+        double length = 0;
+        for (int i = 1; i < m_size; i++) {
+            final double dx = m_x[i] - m_x[i - 1];
+            final double dy = m_y[i] - m_y[i - 1];
+            final double dz = m_z[i] - m_z[i - 1];
+            length += Math.sqrt(dx * dx + dy * dy + dz * dz);
+        }
+        return length;
+    }
+
+    /**
+     * The points as waypoints that all hold the same orientation. The list
+     * is a view: each {@link Waypoint} is made when it is asked for.
+     */
+    public List<Waypoint> toWaypoints(final Quaternion orientation) {
+        if (orientation == null)
+            throw new NullPointerException("orientation may not be null");
+        return new WaypointList() {
+            @Override
+            public Waypoint get(int index) {
+                return new Waypoint(getPoint(index), orientation);
+            }
+        };
+    }
+
+    /**
+     * The points as waypoints facing along the path: each one faces along
+     * the segment that arrives at it, and the first along the segment that
+     * leaves it. The list is a view: each {@link Waypoint} is made when it is
+     * asked for.
+     */
+    public List<Waypoint> toWaypointsAlongPath() {
+        return new WaypointList() {
+            private final MutableVec3d m_direction = new MutableVec3d();
+            private final MutableQuaternion m_orientation = new MutableQuaternion();
+
+            @Override
+            public Waypoint get(int index) {
+                checkIndex(index);
+                final int to = index == 0 ? Math.min(1, m_size - 1) : index;
+                final int from = to == 0 ? 0 : to - 1;
+                final Quaternion orientation;
+                synchronized (this) {
+                    m_direction.set(m_x[to] - m_x[from], m_y[to] - m_y[from], m_z[to] - m_z[from]);
+                    orientation = VecMath.lookAlong(m_direction, m_orientation).toQuaternion();
+                }
+                return new Waypoint(getPoint(index), orientation);
+            }
+        };
+    }
+
+    private abstract class WaypointList extends AbstractList<Waypoint> implements RandomAccess {
+        @Override
+        public int size() {
+            return m_size;
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= m_size)
+            throw new IndexOutOfBoundsException("index " + index + " out of " + m_size);
+    }
+}
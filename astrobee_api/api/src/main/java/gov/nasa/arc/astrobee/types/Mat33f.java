@@ -32,4 +32,11 @@ public class Mat33f {
     public float[] toArray() {
         return m_vec.clone();
     }
+
+    /**
+     * Get one element without copying the whole array.
+     */
+    public float get(int index) {
+        return m_vec[index];
+    }
 }
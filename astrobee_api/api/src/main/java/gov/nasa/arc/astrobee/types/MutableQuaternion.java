@@ -0,0 +1,97 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.types;
+
+import java.text.DecimalFormat;
+
+/**
+ * A mutable quaternion, in (x, y, z, w) order like {@link Quaternion}, for
+ * doing math without allocating. Components are kept as doubles so chains of
+ * operations don't lose precision; {@link #toQuaternion()} rounds to float.
+ */
+public final class MutableQuaternion {
+    private double m_x;
+    private double m_y;
+    private double m_z;
+    private double m_w = 1;
+
+    /**
+     * The identity rotation.
+     */
+    public MutableQuaternion() { }
+
+    public MutableQuaternion(double x, double y, double z, double w) {
+        set(x, y, z, w);
+    }
+
+    public MutableQuaternion(final Quaternion q) {
+        set(q);
+    }
+
+    public double getX() {
+        return m_x;
+    }
+
+    public double getY() {
+        return m_y;
+    }
+
+    public double getZ() {
+        return m_z;
+    }
+
+    public double getW() {
+        return m_w;
+    }
+
+    public MutableQuaternion set(double x, double y, double z, double w) {
+        m_x = x;
+        m_y = y;
+        m_z = z;
+        m_w = w;
+        return this;
+    }
+
+    public MutableQuaternion set(final MutableQuaternion q) {
+        return set(q.m_x, q.m_y, q.m_z, q.m_w);
+    }
+
+    public MutableQuaternion set(final Quaternion q) {
+        return set(q.m_vec[0], q.m_vec[1], q.m_vec[2], q.m_vec[3]);
+    }
+
+    public MutableQuaternion setIdentity() {
+        return set(0, 0, 0, 1);
+    }
+
+    public Quaternion toQuaternion() {
+        return new Quaternion((float) m_x, (float) m_y, (float) m_z, (float) m_w);
+    }
+
+    private static final DecimalFormat s_decimalFormatter = new DecimalFormat("#.###");
+
+    @Override
+    public String toString() {
+        return "MutableQuaternion{ " +
+                "x=" + s_decimalFormatter.format(m_x) + "; " +
+                "y=" + s_decimalFormatter.format(m_y) + "; " +
+                "z=" + s_decimalFormatter.format(m_z) + "; " +
+                "w=" + s_decimalFormatter.format(m_w) + "}";
+    }
+}
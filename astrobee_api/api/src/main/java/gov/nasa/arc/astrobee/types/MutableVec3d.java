@@ -0,0 +1,86 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.types;
+
+import java.text.DecimalFormat;
+
+/**
+ * A mutable 3-vector for doing math without allocating. Use
+ * {@link VecMath} to operate on it, and {@link #toPoint()} or
+ * {@link #toVec3d()} to hand the result to the API.
+ */
+public final class MutableVec3d {
+    private double m_x;
+    private double m_y;
+    private double m_z;
+
+    public MutableVec3d() { }
+
+    public MutableVec3d(double x, double y, double z) {
+        set(x, y, z);
+    }
+
+    public MutableVec3d(final Vec3d v) {
+        set(v);
+    }
+
+    public double getX() {
+        return m_x;
+    }
+
+    public double getY() {
+        return m_y;
+    }
+
+    public double getZ() {
+        return m_z;
+    }
+
+    public MutableVec3d set(double x, double y, double z) {
+        m_x = x;
+        m_y = y;
+        m_z = z;
+        return this;
+    }
+
+    public MutableVec3d set(final MutableVec3d v) {
+        return set(v.m_x, v.m_y, v.m_z);
+    }
+
+    public MutableVec3d set(final Vec3d v) {
+        return set(v.m_vec[0], v.m_vec[1], v.m_vec[2]);
+    }
+
+    public Point toPoint() {
+        return new Point(m_x, m_y, m_z);
+    }
+
+    public Vec3d toVec3d() {
+        return new Vec3d(m_x, m_y, m_z);
+    }
+
+    private static final DecimalFormat s_decimalFormatter = new DecimalFormat("#.###");
+
+    @Override
+    public String toString() {
+        return "MutableVec3d[" + s_decimalFormatter.format(m_x) +
+                ", " + s_decimalFormatter.format(m_y) +
+                ", " + s_decimalFormatter.format(m_z) + "]";
+    }
+}
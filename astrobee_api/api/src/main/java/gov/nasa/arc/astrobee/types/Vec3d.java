@@ -43,6 +43,15 @@ public class Vec3d {
         return m_vec.clone();
     }
 
+    /**
+     * Get one component without copying the whole vector.
+     *
+     * @param index 0, 1 or 2 for x, y or z.
+     */
+    public double get(int index) {
+        return m_vec[index];
+    }
+
     private static final DecimalFormat s_decimalFormatter = new DecimalFormat("#.###");
 
     @Override
@@ -0,0 +1,254 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.types;
+
+/**
+ * In-place vector and quaternion operations on {@link MutableVec3d} and
+ * {@link MutableQuaternion}. Nothing here allocates, and the output may
+ * always be one of the inputs.
+ */
+public final class VecMath {
+    private VecMath() { }
+
+    // Below this, a vector is treated as having no direction
+    private static final double EPSILON = 1e-12;
+
+    // Above this cosine, slerp falls back to a normalized lerp
+    private static final double SLERP_THRESHOLD = 0.9995;
+
+    public static MutableVec3d add(final MutableVec3d a, final MutableVec3d b, final MutableVec3d out) {
+        return out.set(a.getX() + b.getX(), a.getY() + b.getY(), a.getZ() + b.getZ());
+    }
+
+    public static MutableVec3d sub(final MutableVec3d a, final MutableVec3d b, final MutableVec3d out) {
+        return out.set(a.getX() - b.getX(), a.getY() - b.getY(), a.getZ() - b.getZ());
+    }
+
+    public static MutableVec3d scale(final MutableVec3d v, double s, final MutableVec3d out) {
+        return out.set(v.getX() * s, v.getY() * s, v.getZ() * s);
+    }
+
+    public static double dot(final MutableVec3d a, final MutableVec3d b) {
+        return a.getX() * b.getX() + a.getY() * b.getY() + a.getZ() * b.getZ();
+    }
+
+    public static MutableVec3d cross(final MutableVec3d a, final MutableVec3d b, final MutableVec3d out) {
+        final double ax = a.getX(), ay = a.getY(), az = a.getZ();
+        final double bx = b.getX(), by = b.getY(), bz = b.getZ();
+        return out.set(ay * bz - az * by, az * bx - ax * bz, ax * by - ay * bx);
+    }
+
+    public static double length(final MutableVec3d v) {
+        return Math.sqrt(dot(v, v));
+    }
+
+    /**
+     * Scale {@code v} to unit length.
+     *
+     * @return false, leaving {@code out} untouched, if {@code v} is too
+     *         short to have a direction.
+     */
+    public static boolean normalize(final MutableVec3d v, final MutableVec3d out) {
+        final double len = length(v);
+        if (len < EPSILON)
+            return false;
+        scale(v, 1.0 / len, out);
+        return true;
+    }
+
+    public static double dot(final MutableQuaternion a, final MutableQuaternion b) {
+        return a.getX() * b.getX() + a.getY() * b.getY() + a.getZ() * b.getZ() + a.getW() * b.getW();
+    }
+
+    /**
+     * Scale {@code q} to unit length. A zero quaternion becomes the identity.
+     */
+    public static MutableQuaternion normalize(final MutableQuaternion q, final MutableQuaternion out) {
+        final double len = Math.sqrt(dot(q, q));
+        if (len < EPSILON)
+            return out.setIdentity();
+        final double inv = 1.0 / len;
+        return out.set(q.getX() * inv, q.getY() * inv, q.getZ() * inv, q.getW() * inv);
+    }
+
+    public static MutableQuaternion conjugate(final MutableQuaternion q, final MutableQuaternion out) {
+        return out.set(-q.getX(), -q.getY(), -q.getZ(), q.getW());
+    }
+
+    /**
+     * The Hamilton product {@code a * b}: rotate by {@code b}, then by
+     * {@code a}.
+     */
+    public static MutableQuaternion multiply(final MutableQuaternion a, final MutableQuaternion b,
+                                             final MutableQuaternion out) {
+        final double ax = a.getX(), ay = a.getY(), az = a.getZ(), aw = a.getW();
+        final double bx = b.getX(), by = b.getY(), bz = b.getZ(), bw = b.getW();
+        return out.set(aw * bx + ax * bw + ay * bz - az * by,
+                       aw * by - ax * bz + ay * bw + az * bx,
+                       aw * bz + ax * by - ay * bx + az * bw,
+                       aw * bw - ax * bx - ay * by - az * bz);
+    }
+
+    /**
+     * Rotate {@code v} by the unit quaternion {@code q}.
+     */
+    public static MutableVec3d rotate(final MutableQuaternion q, final MutableVec3d v, final MutableVec3d out) {
+        // v + 2w(u x v) + 2u x (u x v), with u the vector part of q
+        final double qx = q.getX(), qy = q.getY(), qz = q.getZ(), qw = q.getW();
+        final double vx = v.getX(), vy = v.getY(), vz = v.getZ();
+        final double tx = 2 * (qy * vz - qz * vy);
+        final double ty = 2 * (qz * vx - qx * vz);
+        final double tz = 2 * (qx * vy - qy * vx);
+        return out.set(vx + qw * tx + (qy * tz - qz * ty),
+                       vy + qw * ty + (qz * tx - qx * tz),
+                       vz + qw * tz + (qx * ty - qy * tx));
+    }
+
+    /**
+     * Spherical interpolation between unit quaternions, along the shorter
+     * arc.
+     *
+     * @param t 0 gives {@code a}, 1 gives {@code b}.
+     */
+    public static MutableQuaternion slerp(final MutableQuaternion a, final MutableQuaternion b, double t,
+                                          final MutableQuaternion out) {
+        double bx = b.getX(), by = b.getY(), bz = b.getZ(), bw = b.getW();
+        double cos = dot(a, b);
+        if (cos < 0) {
+            cos = -cos;
+            bx = -bx;
+            by = -by;
+            bz = -bz;
+            bw = -bw;
+        }
+
+        final double wa, wb;
+        if (cos > SLERP_THRESHOLD) {
+            wa = 1 - t;
+            wb = t;
+        } else {
+            final double theta = Math.acos(cos);
+            final double sin = Math.sin(theta);
+            wa = Math.sin((1 - t) * theta) / sin;
+            wb = Math.sin(t * theta) / sin;
+        }
+        out.set(wa * a.getX() + wb * bx, wa * a.getY() + wb * by,
+                wa * a.getZ() + wb * bz, wa * a.getW() + wb * bw);
+        return normalize(out, out);
+    }
+
+    /**
+     * The orientation that points the robot's forward (+X) axis from
+     * {@code from} towards {@code to}, keeping its +Z axis as close to world
+     * +Z ("down" on Astrobee) as it can. If the two points are the same, the
+     * result faces along world +X.
+     *
+     * @param scratch Working space, overwritten.
+     */
+    public static MutableQuaternion lookAt(final MutableVec3d from, final MutableVec3d to,
+                                           final MutableVec3d scratch, final MutableQuaternion out) {
+        sub(to, from, scratch);
+        return lookAlong(scratch, out);
+    }
+
+    /**
+     * Like {@link #lookAt}, but given the direction to face.
+     */
+    public static MutableQuaternion lookAlong(final MutableVec3d direction, final MutableQuaternion out) {
+        double fx = direction.getX(), fy = direction.getY(), fz = direction.getZ();
+        final double len = Math.sqrt(fx * fx + fy * fy + fz * fz);
+        if (len < EPSILON) {
+            fx = 1;
+            fy = 0;
+            fz = 0;
+        } else {
+            fx /= len;
+            fy /= len;
+            fz /= len;
+        }
+
+        double rx, ry, rz, dx, dy, dz;
+        if (Math.abs(fz) < 1.0 - 1.0e-3) {
+            // right = Z x forward, down = forward x right
+            rx = -fy;
+            ry = fx;
+            rz = 0;
+            double n = Math.sqrt(rx * rx + ry * ry);
+            rx /= n;
+            ry /= n;
+            dx = fy * rz - fz * ry;
+            dy = fz * rx - fx * rz;
+            dz = fx * ry - fy * rx;
+            if (dz < 0) {
+                rx = -rx;
+                ry = -ry;
+                dx = -dx;
+                dy = -dy;
+                dz = -dz;
+            }
+        } else {
+            // Facing along Z: down = forward x Y, right = down x forward
+            dx = -fz;
+            dy = 0;
+            dz = fx;
+            double n = Math.sqrt(dx * dx + dz * dz);
+            dx /= n;
+            dz /= n;
+            rx = dy * fz - dz * fy;
+            ry = dz * fx - dx * fz;
+            rz = dx * fy - dy * fx;
+            if (ry < 0) {
+                dx = -dx;
+                dz = -dz;
+                rx = -rx;
+                ry = -ry;
+                rz = -rz;
+            }
+        }
+
+        // Rotation matrix with columns forward, right, down
+        return fromMatrix(fx, rx, dx,
+                          fy, ry, dy,
+                          fz, rz, dz, out);
+    }
+
+    /**
+     * Convert a rotation matrix, given row by row, to a quaternion.
+     */
+    public static MutableQuaternion fromMatrix(double m00, double m01, double m02,
+                                               double m10, double m11, double m12,
+                                               double m20, double m21, double m22,
+                                               final MutableQuaternion out) {
+        final double trace = m00 + m11 + m22;
+        if (trace > 0) {
+            final double s = 0.5 / Math.sqrt(trace + 1);
+            out.set((m21 - m12) * s, (m02 - m20) * s, (m10 - m01) * s, 0.25 / s);
+        } else if (m00 > m11 && m00 > m22) {
+            final double s = 2 * Math.sqrt(1 + m00 - m11 - m22);
+            out.set(0.25 * s, (m01 + m10) / s, (m02 + m20) / s, (m21 - m12) / s);
+        } else if (m11 > m22) {
+            final double s = 2 * Math.sqrt(1 + m11 - m00 - m22);
+            out.set((m01 + m10) / s, 0.25 * s, (m12 + m21) / s, (m02 - m20) / s);
+        } else {
+            final double s = 2 * Math.sqrt(1 + m22 - m00 - m11);
+            out.set((m02 + m20) / s, (m12 + m21) / s, 0.25 * s, (m10 - m01) / s);
+        }
+        return normalize(out, out);
+    }
+}
@@ -0,0 +1,367 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.internal;
+
+import gov.nasa.arc.astrobee.AstrobeeException;
+import gov.nasa.arc.astrobee.PendingResult;
+import gov.nasa.arc.astrobee.PendingResult.Status;
+import gov.nasa.arc.astrobee.PendingResults;
+import gov.nasa.arc.astrobee.Result;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ComposedPendingResultTest {
+    private static final Result OK = new TestResult(Result.Status.OK);
+    private static final Result OK2 = new TestResult(Result.Status.OK);
+    private static final Result FAILED = new TestResult(Result.Status.EXEC_FAILED);
+
+    private static final class TestResult implements Result {
+        private final Status m_status;
+
+        TestResult(final Status status) {
+            m_status = status;
+        }
+
+        @Override
+        public String getMessage() {
+            return "";
+        }
+
+        @Override
+        public Status getStatus() {
+            return m_status;
+        }
+
+        @Override
+        public boolean hasSucceeded() {
+            return m_status == Status.OK;
+        }
+    }
+
+    /**
+     * A pending result finished by hand.
+     */
+    private static final class Source extends AbstractPendingResult {
+        Source() {
+            super(Status.EXECUTING);
+        }
+
+        static Source finished(final Result result) {
+            final Source source = new Source();
+            source.complete(result);
+            return source;
+        }
+
+        void status(final Status status) {
+            updateStatus(status);
+        }
+
+        boolean finish(final Result result) {
+            return complete(result);
+        }
+
+        boolean abort(final Throwable t) {
+            return fail(t);
+        }
+    }
+
+    /**
+     * Runs what it is given only when asked, so tests can look in between.
+     */
+    private static final class ManualExecutor implements Executor {
+        private final List<Runnable> m_queued = new ArrayList<>();
+
+        @Override
+        public synchronized void execute(final Runnable command) {
+            m_queued.add(command);
+        }
+
+        void runAll() {
+            while (true) {
+                final Runnable next;
+                synchronized (this) {
+                    if (m_queued.isEmpty())
+                        return;
+                    next = m_queued.remove(0);
+                }
+                next.run();
+            }
+        }
+    }
+
+    private static final PendingResult.Continuation SAME = new PendingResult.Continuation() {
+        @Override
+        public PendingResult next(final Result previous) {
+            return null;
+        }
+    };
+
+    @Test
+    public void failFinishes() {
+        final Source source = new Source();
+        assertTrue(source.abort(new IllegalStateException("lost")));
+        assertTrue(source.isFinished());
+        assertEquals(Status.COMPLETED, source.getStatus());
+        assertFalse(source.finish(OK));
+        assertFalse(source.abort(new IllegalStateException("again")));
+    }
+
+    @Test
+    public void failedResultThrows() throws Exception {
+        final Source source = new Source();
+        source.abort(new IllegalStateException("lost"));
+        try {
+            source.getResult();
+            fail();
+        } catch (AstrobeeException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void statusNeverLeavesCompleted() {
+        final Source source = new Source();
+        source.finish(OK);
+        source.status(Status.EXECUTING);
+        assertEquals(Status.COMPLETED, source.getStatus());
+    }
+
+    @Test
+    public void thenOnFinishedSourceWaitsForContinuation() throws Exception {
+        final Source source = Source.finished(OK);
+        final Source next = new Source();
+        final ManualExecutor executor = new ManualExecutor();
+        final PendingResult chained = source.then(new PendingResult.Continuation() {
+            @Override
+            public PendingResult next(final Result previous) {
+                assertSame(OK, previous);
+                return next;
+            }
+        }, executor);
+
+        assertFalse(chained.isFinished());
+        assertEquals(Status.EXECUTING, chained.getStatus());
+
+        executor.runAll();
+        assertFalse(chained.isFinished());
+        next.status(Status.QUEUED);
+        assertEquals(Status.QUEUED, chained.getStatus());
+
+        next.finish(OK2);
+        assertTrue(chained.isFinished());
+        assertSame(OK2, chained.getResult());
+
+        // A late status from the followed result changes nothing
+        next.status(Status.EXECUTING);
+        assertEquals(Status.COMPLETED, chained.getStatus());
+    }
+
+    @Test
+    public void thenWithNoNextKeepsResult() throws Exception {
+        final PendingResult chained = Source.finished(OK).then(SAME, PendingResults.directExecutor());
+        assertTrue(chained.isFinished());
+        assertSame(OK, chained.getResult());
+    }
+
+    @Test
+    public void thenSkipsContinuationAfterUnsuccessfulResult() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final PendingResult chained = Source.finished(FAILED).then(new PendingResult.Continuation() {
+            @Override
+            public PendingResult next(final Result previous) {
+                calls.incrementAndGet();
+                return null;
+            }
+        }, PendingResults.directExecutor());
+        assertSame(FAILED, chained.getResult());
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    public void thenFailsWhenSourceFails() throws Exception {
+        final Source source = new Source();
+        final PendingResult chained = source.then(SAME, PendingResults.directExecutor());
+        source.abort(new IllegalStateException("lost"));
+        assertTrue(chained.isFinished());
+        try {
+            chained.getResult();
+            fail();
+        } catch (AstrobeeException e) {
+            assertEquals("lost", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void thenFailsWhenContinuationThrows() throws Exception {
+        final PendingResult chained = Source.finished(OK).then(new PendingResult.Continuation() {
+            @Override
+            public PendingResult next(final Result previous) {
+                throw new IllegalArgumentException("bad");
+            }
+        }, PendingResults.directExecutor());
+        assertTrue(chained.isFinished());
+        try {
+            chained.getResult();
+            fail();
+        } catch (AstrobeeException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void allOfWaitsForEveryOne() throws Exception {
+        final Source a = Source.finished(OK);
+        final Source b = new Source();
+        final PendingResult all = PendingResults.allOf(a, b);
+        assertFalse(all.isFinished());
+        b.finish(OK2);
+        assertTrue(all.isFinished());
+        assertSame(OK2, all.getResult());
+    }
+
+    @Test
+    public void allOfGivesFirstUnsuccessfulResult() throws Exception {
+        final Source a = new Source();
+        final Source b = new Source();
+        final PendingResult all = PendingResults.allOf(Source.finished(OK), a, b);
+        b.finish(FAILED);
+        a.finish(OK);
+        assertSame(FAILED, all.getResult());
+    }
+
+    @Test
+    public void allOfFailsAsSoonAsOneFails() throws Exception {
+        final Source a = new Source();
+        final PendingResult all = PendingResults.allOf(a, new Source());
+        a.abort(new IllegalStateException("lost"));
+        assertTrue(all.isFinished());
+        try {
+            all.getResult();
+            fail();
+        } catch (AstrobeeException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void allOfNothingIsFinished() throws Exception {
+        final PendingResult all = PendingResults.allOf(new ArrayList<PendingResult>());
+        assertTrue(all.isFinished());
+        assertNull(all.getResult());
+    }
+
+    @Test
+    public void anyOfTakesAlreadyFinished() throws Exception {
+        final PendingResult any = PendingResults.anyOf(new Source(), Source.finished(OK));
+        assertTrue(any.isFinished());
+        assertSame(OK, any.getResult());
+    }
+
+    @Test
+    public void anyOfTakesFirstToFinish() throws Exception {
+        final Source a = new Source();
+        final Source b = new Source();
+        final PendingResult any = PendingResults.anyOf(a, b);
+        assertFalse(any.isFinished());
+        b.finish(FAILED);
+        a.finish(OK);
+        assertSame(FAILED, any.getResult());
+    }
+
+    @Test
+    public void anyOfFailsWhenFirstFails() throws Exception {
+        final Source a = new Source();
+        final PendingResult any = PendingResults.anyOf(a, new Source());
+        a.abort(new IllegalStateException("lost"));
+        try {
+            any.getResult();
+            fail();
+        } catch (AstrobeeException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void anyOfNothing() {
+        PendingResults.anyOf(new ArrayList<PendingResult>());
+    }
+
+    @Test
+    public void racingSources() throws Exception {
+        final int threads = 8;
+        for (int round = 0; round < 200; round++) {
+            final List<Source> sources = new ArrayList<>();
+            for (int i = 0; i < threads; i++)
+                sources.add(new Source());
+            final PendingResult all = ComposedPendingResult.allOf(sources);
+            final PendingResult any = ComposedPendingResult.anyOf(sources);
+            final AtomicInteger allCalls = new AtomicInteger();
+            final AtomicInteger anyCalls = new AtomicInteger();
+            all.addCompletionListener(counter(allCalls), PendingResults.directExecutor());
+            any.addCompletionListener(counter(anyCalls), PendingResults.directExecutor());
+
+            final CyclicBarrier barrier = new CyclicBarrier(threads);
+            final CountDownLatch done = new CountDownLatch(threads);
+            for (final Source source : sources) {
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            barrier.await();
+                            source.finish(OK);
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }).start();
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+
+            assertSame(OK, all.getResult(10, TimeUnit.SECONDS));
+            assertSame(OK, any.getResult(10, TimeUnit.SECONDS));
+            assertEquals(1, allCalls.get());
+            assertEquals(1, anyCalls.get());
+        }
+    }
+
+    private static PendingResult.CompletionListener counter(final AtomicInteger calls) {
+        return new PendingResult.CompletionListener() {
+            @Override
+            public void onCompleted(final PendingResult pending, final Result result) {
+                calls.incrementAndGet();
+            }
+
+            @Override
+            public void onFailed(final PendingResult pending, final AstrobeeException exception) {
+                calls.incrementAndGet();
+            }
+        };
+    }
+}
@@ -0,0 +1,125 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.trajectory;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ArcLengthSamplerTest {
+    private static final double EPS = 1e-9;
+
+    static void assertPoint(final String what, double x, double y, double z,
+                            final WaypointBuffer points, int index) {
+        assertEquals(what + " x", x, points.getX(index), EPS);
+        assertEquals(what + " y", y, points.getY(index), EPS);
+        assertEquals(what + " z", z, points.getZ(index), EPS);
+    }
+
+    private static double distance(final WaypointBuffer points, int a, int b) {
+        final double dx = points.getX(b) - points.getX(a);
+        final double dy = points.getY(b) - points.getY(a);
+        final double dz = points.getZ(b) - points.getZ(a);
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    @Test
+    public void samplesAreExactlySpacedAlongALine() {
+        final WaypointBuffer points = WaypointBuffer.collect(
+                new ArcLengthSampler(new FixedPath(0, 0, 0, 1000, 0, 0), 0.1));
+        assertEquals(10001, points.size());
+        for (int i = 1; i < points.size(); i++)
+            assertEquals("gap " + i, 0.1, distance(points, i - 1, i), 1e-6);
+        assertPoint("start", 0, 0, 0, points, 0);
+        assertPoint("end", 1000, 0, 0, points, points.size() - 1);
+    }
+
+    @Test
+    public void spacingIsMeasuredAroundCorners() {
+        final WaypointBuffer points = WaypointBuffer.collect(
+                new ArcLengthSampler(new FixedPath(0, 0, 0, 1.5, 0, 0, 1.5, 1.5, 0), 1));
+        assertEquals(4, points.size());
+        assertPoint("start", 0, 0, 0, points, 0);
+        assertPoint("first sample", 1, 0, 0, points, 1);
+        assertPoint("past the corner", 1.5, 0.5, 0, points, 2);
+        assertPoint("end", 1.5, 1.5, 0, points, 3);
+    }
+
+    @Test
+    public void finishesOnTheLastPointOnce() {
+        // A sample lands on the end: it must not come out twice
+        WaypointBuffer points = WaypointBuffer.collect(
+                new ArcLengthSampler(new FixedPath(0, 0, 0, 0, 0, 3), 1));
+        assertEquals(4, points.size());
+        assertPoint("end", 0, 0, 3, points, 3);
+
+        // The end falls between samples: it still comes out
+        points = WaypointBuffer.collect(new ArcLengthSampler(new FixedPath(0, 0, 0, 0, 0, 3.5), 1));
+        assertEquals(5, points.size());
+        assertPoint("last sample", 0, 0, 3, points, 3);
+        assertPoint("end", 0, 0, 3.5, points, 4);
+    }
+
+    @Test
+    public void zeroLengthSegmentsAreSkipped() {
+        final WaypointBuffer points = WaypointBuffer.collect(new ArcLengthSampler(
+                new FixedPath(0, 0, 0, 0, 0, 0, 0.5, 0, 0, 0.5, 0, 0, 2, 0, 0, 2, 0, 0), 1));
+        assertEquals(3, points.size());
+        assertPoint("start", 0, 0, 0, points, 0);
+        assertPoint("sample", 1, 0, 0, points, 1);
+        assertPoint("end", 2, 0, 0, points, 2);
+        for (int i = 0; i < points.size(); i++)
+            assertFalse("NaN at " + i, Double.isNaN(points.getX(i)));
+    }
+
+    @Test
+    public void keepCornersRestartsTheSpacingAtEachPoint() {
+        final WaypointBuffer points = WaypointBuffer.collect(
+                new ArcLengthSampler(new FixedPath(0, 0, 0, 1.5, 0, 0, 1.5, 1.5, 0), 1, true));
+        assertEquals(5, points.size());
+        assertPoint("start", 0, 0, 0, points, 0);
+        assertPoint("first sample", 1, 0, 0, points, 1);
+        assertPoint("corner", 1.5, 0, 0, points, 2);
+        assertPoint("after the corner", 1.5, 1, 0, points, 3);
+        assertPoint("end", 1.5, 1.5, 0, points, 4);
+    }
+
+    @Test
+    public void keepCornersDoesNotRepeatACornerASampleLandedOn() {
+        final WaypointBuffer points = WaypointBuffer.collect(new ArcLengthSampler(
+                new FixedPath(0, 0, 0, 1, 0, 0, 1, 0, 0, 1, 1, 0), 1, true));
+        assertEquals(3, points.size());
+        assertPoint("corner", 1, 0, 0, points, 1);
+        assertPoint("end", 1, 1, 0, points, 2);
+    }
+
+    @Test
+    public void shortSourcesPassThrough() {
+        assertEquals(0, WaypointBuffer.collect(new ArcLengthSampler(new FixedPath(), 1)).size());
+
+        final WaypointBuffer one = WaypointBuffer.collect(new ArcLengthSampler(new FixedPath(4, 5, 6), 1));
+        assertEquals(1, one.size());
+        assertPoint("only", 4, 5, 6, one, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroSpacing() {
+        new ArcLengthSampler(new FixedPath(), 0);
+    }
+}
@@ -0,0 +1,44 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.trajectory;
+
+import gov.nasa.arc.astrobee.types.MutableVec3d;
+
+/**
+ * A path through a fixed list of points, given as x, y, z triples.
+ */
+final class FixedPath implements PathGenerator {
+    private final double[] m_xyz;
+    private int m_next = 0;
+
+    FixedPath(double... xyz) {
+        if (xyz.length % 3 != 0)
+            throw new IllegalArgumentException("points need three coordinates each");
+        m_xyz = xyz;
+    }
+
+    @Override
+    public boolean next(final MutableVec3d out) {
+        if (m_next == m_xyz.length)
+            return false;
+        out.set(m_xyz[m_next], m_xyz[m_next + 1], m_xyz[m_next + 2]);
+        m_next += 3;
+        return true;
+    }
+}
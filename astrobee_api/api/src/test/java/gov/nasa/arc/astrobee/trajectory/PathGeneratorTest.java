@@ -0,0 +1,138 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.trajectory;
+
+import gov.nasa.arc.astrobee.types.Point;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static gov.nasa.arc.astrobee.trajectory.ArcLengthSamplerTest.assertPoint;
+import static org.junit.Assert.*;
+
+public class PathGeneratorTest {
+    private static final double EPS = 1e-9;
+
+    private static double gap(final WaypointBuffer points, int i) {
+        final double dx = points.getX(i) - points.getX(i - 1);
+        final double dy = points.getY(i) - points.getY(i - 1);
+        final double dz = points.getZ(i) - points.getZ(i - 1);
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    @Test
+    public void keepInBoxClampsAndDropsRepeats() {
+        final WaypointBuffer points = WaypointBuffer.collect(new KeepInBox(
+                new FixedPath(-1, 0.5, 0.5,
+                              0.5, 0.5, 0.5,
+                              2, 0.5, 0.5,
+                              3, 0.5, 0.5,
+                              3, 2, 0.5,
+                              0.5, 0.5, -4),
+                new Point(0, 0, 0), new Point(1, 1, 1)));
+        assertEquals(5, points.size());
+        assertPoint("clamped start", 0, 0.5, 0.5, points, 0);
+        assertPoint("inside", 0.5, 0.5, 0.5, points, 1);
+        assertPoint("on the wall", 1, 0.5, 0.5, points, 2);
+        // (3, 0.5, 0.5) clamps onto the same place and is dropped
+        assertPoint("in the corner", 1, 1, 0.5, points, 3);
+        assertPoint("on the floor", 0.5, 0.5, 0, points, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keepInBoxRejectsAnInsideOutBox() {
+        new KeepInBox(new FixedPath(), new Point(1, 0, 0), new Point(0, 1, 1));
+    }
+
+    @Test
+    public void spiralGoesFromTheCenterToTheEdge() {
+        final double resolution = 0.05;
+        final WaypointBuffer points = WaypointBuffer.collect(
+                new SpiralPath(new Point(1, 2, 3), 2, 2.25, resolution));
+
+        assertPoint("center", 1, 2, 3, points, 0);
+        // 2.25 turns ends a quarter turn round, on +Y
+        assertPoint("edge", 1, 4, 3, points, points.size() - 1);
+
+        double lastRadius = 0;
+        for (int i = 1; i < points.size(); i++) {
+            assertTrue("gap " + i, gap(points, i) <= resolution + EPS);
+            assertEquals("height " + i, 3, points.getZ(i), 0);
+            final double radius = Math.hypot(points.getX(i) - 1, points.getY(i) - 2);
+            assertTrue("growing at " + i, radius > lastRadius);
+            lastRadius = radius;
+        }
+    }
+
+    @Test
+    public void lawnmowerVisitsTheLaneEnds() {
+        final WaypointBuffer points = WaypointBuffer.collect(
+                new LawnmowerPath(new Point(0, 0, 1), new Point(4, 2, 5), 1));
+        assertEquals(6, points.size());
+        assertPoint("lane 0 start", 0, 0, 1, points, 0);
+        assertPoint("lane 0 end", 4, 0, 1, points, 1);
+        assertPoint("lane 1 start", 4, 1, 1, points, 2);
+        assertPoint("lane 1 end", 0, 1, 1, points, 3);
+        assertPoint("lane 2 start", 0, 2, 1, points, 4);
+        assertPoint("lane 2 end", 4, 2, 1, points, 5);
+    }
+
+    @Test
+    public void lawnmowerEndsOnTheFarEdge() {
+        final WaypointBuffer points = WaypointBuffer.collect(
+                new LawnmowerPath(new Point(0, 0, 0), new Point(4, 2.5, 0), 1));
+        assertEquals(8, points.size());
+        assertPoint("last lane start", 4, 2.5, 0, points, 6);
+        assertPoint("last lane end", 0, 2.5, 0, points, 7);
+
+        final WaypointBuffer flat = WaypointBuffer.collect(
+                new LawnmowerPath(new Point(0, 0, 0), new Point(4, 0, 0), 1));
+        assertEquals(2, flat.size());
+    }
+
+    @Test
+    public void gridVisitsEveryNodeOnceThroughNeighbours() {
+        final WaypointBuffer points = WaypointBuffer.collect(
+                new GridPath(new Point(0, 0, 0), new Point(2, 1, 1), 1));
+        assertEquals(3 * 2 * 2, points.size());
+
+        final Set<String> seen = new HashSet<>();
+        for (int i = 0; i < points.size(); i++) {
+            assertTrue("repeat at " + i,
+                    seen.add(points.getX(i) + "," + points.getY(i) + "," + points.getZ(i)));
+            if (i > 0)
+                assertEquals("step " + i, 1, gap(points, i), EPS);
+        }
+        assertPoint("start", 0, 0, 0, points, 0);
+        assertPoint("end of first row", 2, 0, 0, points, 2);
+        assertPoint("second row runs back", 2, 1, 0, points, 3);
+        assertPoint("second layer runs back in Y", 0, 1, 1, points, 6);
+    }
+
+    @Test
+    public void gridReachesTheFarFaces() {
+        final WaypointBuffer points = WaypointBuffer.collect(
+                new GridPath(new Point(0, 0, 0), new Point(2.5, 0, 0), 1));
+        assertEquals(4, points.size());
+        for (int i = 1; i < points.size(); i++)
+            assertEquals("step " + i, 2.5 / 3, gap(points, i), EPS);
+        assertPoint("far face", 2.5, 0, 0, points, 3);
+    }
+}
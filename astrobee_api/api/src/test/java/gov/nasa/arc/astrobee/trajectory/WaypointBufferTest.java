@@ -0,0 +1,107 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.trajectory;
+
+import gov.nasa.arc.astrobee.TrajectoryExecutor.Waypoint;
+import gov.nasa.arc.astrobee.types.MutableQuaternion;
+import gov.nasa.arc.astrobee.types.MutableVec3d;
+import gov.nasa.arc.astrobee.types.Quaternion;
+import gov.nasa.arc.astrobee.types.VecMath;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WaypointBufferTest {
+    private static final double EPS = 1e-6;
+
+    /**
+     * Checks the waypoint's forward (+X) axis points along the direction.
+     */
+    private static void assertFacing(final String what, double x, double y, double z, final Waypoint waypoint) {
+        final MutableVec3d forward = VecMath.rotate(new MutableQuaternion(waypoint.getOrientation()),
+                new MutableVec3d(1, 0, 0), new MutableVec3d());
+        final double length = Math.sqrt(x * x + y * y + z * z);
+        assertEquals(what + " x", x / length, forward.getX(), EPS);
+        assertEquals(what + " y", y / length, forward.getY(), EPS);
+        assertEquals(what + " z", z / length, forward.getZ(), EPS);
+    }
+
+    @Test
+    public void growsPastItsCapacity() {
+        final WaypointBuffer buffer = new WaypointBuffer(1);
+        for (int i = 0; i < 100; i++)
+            buffer.add(i, 2 * i, 3 * i);
+        assertEquals(100, buffer.size());
+        assertEquals(99, buffer.getX(99), 0);
+        assertEquals(198, buffer.getY(99), 0);
+        assertEquals(297, buffer.getZ(99), 0);
+        assertEquals(99 * Math.sqrt(14), buffer.length(), 1e-9);
+
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.length(), 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void readsPastTheEndFail() {
+        final WaypointBuffer buffer = new WaypointBuffer();
+        buffer.add(1, 2, 3);
+        buffer.clear();
+        buffer.getX(0);
+    }
+
+    @Test
+    public void fixedOrientationIsSharedByEveryWaypoint() {
+        final WaypointBuffer buffer = WaypointBuffer.collect(new FixedPath(0, 0, 0, 1, 0, 0, 1, 1, 0));
+        final Quaternion orientation = new Quaternion(0, 0, 0, 1);
+        final List<Waypoint> waypoints = buffer.toWaypoints(orientation);
+        assertEquals(3, waypoints.size());
+        for (Waypoint waypoint : waypoints)
+            assertSame(orientation, waypoint.getOrientation());
+        assertEquals(1, waypoints.get(2).getPosition().getY(), 0);
+    }
+
+    @Test
+    public void waypointsFaceAlongThePath() {
+        final WaypointBuffer buffer = WaypointBuffer.collect(
+                new FixedPath(0, 0, 0, 2, 0, 0, 2, 3, 0, 2, 3, 1));
+        final List<Waypoint> waypoints = buffer.toWaypointsAlongPath();
+        assertEquals(4, waypoints.size());
+        // The first faces along the segment leaving it
+        assertFacing("first", 1, 0, 0, waypoints.get(0));
+        // The rest face along the segment arriving at them
+        assertFacing("second", 1, 0, 0, waypoints.get(1));
+        assertFacing("third", 0, 1, 0, waypoints.get(2));
+        assertFacing("last", 0, 0, 1, waypoints.get(3));
+    }
+
+    @Test
+    public void firstWaypointFacesTheSecondInAnyDirection() {
+        final WaypointBuffer buffer = WaypointBuffer.collect(new FixedPath(1, 1, 1, 0, 1, 2));
+        assertFacing("first", -1, 0, 1, buffer.toWaypointsAlongPath().get(0));
+    }
+
+    @Test
+    public void aSinglePointFacesAlongX() {
+        final WaypointBuffer buffer = WaypointBuffer.collect(new FixedPath(5, 5, 5));
+        assertFacing("only", 1, 0, 0, buffer.toWaypointsAlongPath().get(0));
+    }
+}
@@ -0,0 +1,235 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.types;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class VecMathTest {
+    private static final double EPS = 1e-9;
+    private static final int CASES = 100000;
+
+    private static MutableQuaternion randomRotation(final Random random, final MutableQuaternion out) {
+        out.set(random.nextGaussian(), random.nextGaussian(), random.nextGaussian(), random.nextGaussian());
+        return VecMath.normalize(out, out);
+    }
+
+    private static MutableVec3d randomVector(final Random random, final MutableVec3d out) {
+        return out.set(10 * random.nextGaussian(), 10 * random.nextGaussian(), 10 * random.nextGaussian());
+    }
+
+    private static void assertVec(final String what, double x, double y, double z, final MutableVec3d v, double eps) {
+        assertEquals(what + " x", x, v.getX(), eps);
+        assertEquals(what + " y", y, v.getY(), eps);
+        assertEquals(what + " z", z, v.getZ(), eps);
+    }
+
+    private static void assertVec(final String what, final MutableVec3d expected, final MutableVec3d v, double eps) {
+        assertVec(what, expected.getX(), expected.getY(), expected.getZ(), v, eps);
+    }
+
+    /**
+     * q and -q are the same rotation.
+     */
+    private static void assertSameRotation(final String what, final MutableQuaternion expected,
+                                           final MutableQuaternion q) {
+        assertEquals(what, 1, Math.abs(VecMath.dot(expected, q)), EPS);
+    }
+
+    @Test
+    public void crossProductIsOrthogonalToBothInputs() {
+        final Random random = new Random(1);
+        final MutableVec3d a = new MutableVec3d(), b = new MutableVec3d(), c = new MutableVec3d();
+        for (int i = 0; i < CASES; i++) {
+            randomVector(random, a);
+            randomVector(random, b);
+            VecMath.cross(a, b, c);
+            final double scale = VecMath.length(a) * VecMath.length(b) * VecMath.length(c);
+            assertEquals(0, VecMath.dot(a, c), EPS * (1 + scale));
+            assertEquals(0, VecMath.dot(b, c), EPS * (1 + scale));
+        }
+    }
+
+    @Test
+    public void shortVectorsHaveNoDirection() {
+        final MutableVec3d out = new MutableVec3d(7, 8, 9);
+        assertFalse(VecMath.normalize(new MutableVec3d(1e-13, 0, 0), out));
+        assertVec("untouched", 7, 8, 9, out, 0);
+
+        final MutableVec3d v = new MutableVec3d(3, 0, 4);
+        assertTrue(VecMath.normalize(v, v));
+        assertVec("in place", 0.6, 0, 0.8, v, EPS);
+    }
+
+    @Test
+    public void zeroQuaternionNormalizesToIdentity() {
+        final MutableQuaternion q = VecMath.normalize(new MutableQuaternion(0, 0, 0, 0), new MutableQuaternion());
+        assertEquals(1, q.getW(), 0);
+        assertEquals(0, q.getX(), 0);
+    }
+
+    @Test
+    public void rotationsCompose() {
+        final Random random = new Random(2);
+        final MutableQuaternion a = new MutableQuaternion(), b = new MutableQuaternion();
+        final MutableQuaternion ab = new MutableQuaternion();
+        final MutableVec3d v = new MutableVec3d(), once = new MutableVec3d(), twice = new MutableVec3d();
+        for (int i = 0; i < CASES; i++) {
+            randomRotation(random, a);
+            randomRotation(random, b);
+            randomVector(random, v);
+
+            VecMath.multiply(a, b, ab);
+            VecMath.rotate(ab, v, once);
+            VecMath.rotate(a, VecMath.rotate(b, v, twice), twice);
+            assertVec("a * b", twice, once, 1e-9 * (1 + VecMath.length(v)));
+            assertEquals("length kept", VecMath.length(v), VecMath.length(once), 1e-9 * (1 + VecMath.length(v)));
+        }
+    }
+
+    @Test
+    public void multiplyMayWriteIntoAnInput() {
+        final MutableQuaternion a = new MutableQuaternion(0, 0, Math.sqrt(0.5), Math.sqrt(0.5));
+        final MutableQuaternion b = new MutableQuaternion(Math.sqrt(0.5), 0, 0, Math.sqrt(0.5));
+        final MutableQuaternion expected = VecMath.multiply(a, b, new MutableQuaternion());
+        VecMath.multiply(a, b, a);
+        assertSameRotation("into a", expected, a);
+    }
+
+    @Test
+    public void conjugateUndoesTheRotation() {
+        final Random random = new Random(3);
+        final MutableQuaternion q = new MutableQuaternion(), inv = new MutableQuaternion();
+        final MutableVec3d v = new MutableVec3d(), r = new MutableVec3d();
+        for (int i = 0; i < CASES; i++) {
+            randomRotation(random, q);
+            randomVector(random, v);
+            VecMath.conjugate(q, inv);
+            VecMath.rotate(inv, VecMath.rotate(q, v, r), r);
+            assertVec("round trip", v, r, 1e-9 * (1 + VecMath.length(v)));
+        }
+    }
+
+    @Test
+    public void slerpHitsItsEndpoints() {
+        final Random random = new Random(4);
+        final MutableQuaternion a = new MutableQuaternion(), b = new MutableQuaternion();
+        final MutableQuaternion out = new MutableQuaternion();
+        for (int i = 0; i < CASES; i++) {
+            randomRotation(random, a);
+            randomRotation(random, b);
+            assertSameRotation("t=0", a, VecMath.slerp(a, b, 0, out));
+            assertSameRotation("t=1", b, VecMath.slerp(a, b, 1, out));
+        }
+    }
+
+    @Test
+    public void slerpSplitsTheAngleEvenly() {
+        final Random random = new Random(5);
+        final MutableQuaternion a = new MutableQuaternion(), b = new MutableQuaternion();
+        final MutableQuaternion mid = new MutableQuaternion();
+        for (int i = 0; i < CASES; i++) {
+            randomRotation(random, a);
+            randomRotation(random, b);
+            VecMath.slerp(a, b, 0.5, mid);
+            assertEquals(Math.abs(VecMath.dot(a, mid)), Math.abs(VecMath.dot(mid, b)), 1e-9);
+            // Along the shorter arc, so never further from a than b is
+            assertTrue(Math.abs(VecMath.dot(a, mid)) >= Math.abs(VecMath.dot(a, b)) - 1e-9);
+        }
+    }
+
+    @Test
+    public void slerpOfNearlyEqualRotationsStaysUnit() {
+        final MutableQuaternion a = new MutableQuaternion();
+        final MutableQuaternion b = VecMath.normalize(new MutableQuaternion(1e-6, 0, 0, 1), new MutableQuaternion());
+        final MutableQuaternion out = VecMath.slerp(a, b, 0.5, new MutableQuaternion());
+        assertEquals(1, VecMath.dot(out, out), EPS);
+        assertEquals(0.5e-6, out.getX(), 1e-12);
+    }
+
+    @Test
+    public void lookAtPointsForwardAndKeepsDownDown() {
+        final Random random = new Random(6);
+        final MutableVec3d from = new MutableVec3d(), to = new MutableVec3d(), scratch = new MutableVec3d();
+        final MutableVec3d dir = new MutableVec3d(), axis = new MutableVec3d();
+        final MutableQuaternion q = new MutableQuaternion();
+        for (int i = 0; i < CASES; i++) {
+            randomVector(random, from);
+            randomVector(random, to);
+            VecMath.lookAt(from, to, scratch, q);
+            assertEquals("unit", 1, VecMath.dot(q, q), EPS);
+
+            VecMath.sub(to, from, dir);
+            if (!VecMath.normalize(dir, dir))
+                continue;
+            assertVec("forward", dir, VecMath.rotate(q, axis.set(1, 0, 0), axis), 1e-9);
+
+            if (Math.abs(dir.getZ()) < 1.0 - 1.0e-3) {
+                assertEquals("right is level", 0, VecMath.rotate(q, axis.set(0, 1, 0), axis).getZ(), 1e-9);
+                assertTrue("down is down", VecMath.rotate(q, axis.set(0, 0, 1), axis).getZ() >= 0);
+            }
+        }
+    }
+
+    @Test
+    public void lookAlongZStillGivesARightHandedFrame() {
+        final MutableQuaternion q = new MutableQuaternion();
+        final MutableVec3d axis = new MutableVec3d();
+        for (double sign : new double[] { 1, -1 }) {
+            VecMath.lookAlong(new MutableVec3d(0, 0, sign), q);
+            assertVec("forward", 0, 0, sign, VecMath.rotate(q, axis.set(1, 0, 0), axis), EPS);
+            assertTrue("right", VecMath.rotate(q, axis.set(0, 1, 0), axis).getY() > 0.999);
+        }
+    }
+
+    @Test
+    public void lookAtTheSamePointFacesAlongX() {
+        final MutableVec3d p = new MutableVec3d(1, 2, 3);
+        final MutableQuaternion q = VecMath.lookAt(p, p, new MutableVec3d(), new MutableQuaternion());
+        assertSameRotation("identity", new MutableQuaternion(), q);
+    }
+
+    @Test
+    public void fromMatrixInvertsRotate() {
+        final Random random = new Random(7);
+        final MutableQuaternion q = new MutableQuaternion(), back = new MutableQuaternion();
+        final MutableVec3d x = new MutableVec3d(), y = new MutableVec3d(), z = new MutableVec3d();
+        for (int i = 0; i < CASES; i++) {
+            randomRotation(random, q);
+            VecMath.rotate(q, x.set(1, 0, 0), x);
+            VecMath.rotate(q, y.set(0, 1, 0), y);
+            VecMath.rotate(q, z.set(0, 0, 1), z);
+            VecMath.fromMatrix(x.getX(), y.getX(), z.getX(),
+                               x.getY(), y.getY(), z.getY(),
+                               x.getZ(), y.getZ(), z.getZ(), back);
+            assertSameRotation("round trip", q, back);
+        }
+    }
+
+    @Test
+    public void convertsToAndFromTheApiTypes() {
+        final MutableVec3d v = new MutableVec3d(new Vec3d(1, 2, 3));
+        assertEquals(2, v.toPoint().get(1), 0);
+        final MutableQuaternion q = new MutableQuaternion(new Quaternion(0, 0, 1, 0));
+        assertEquals(1, q.toQuaternion().getZ(), 0);
+    }
+}
@@ -0,0 +1,90 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.benchmarks;
+
+import ff_msgs.AckCompletedStatus;
+import ff_msgs.AckStamped;
+import ff_msgs.AckStatus;
+import ff_msgs.CommandStamped;
+import gov.nasa.arc.astrobee.ros.RobotConfiguration;
+import gov.nasa.arc.astrobee.ros.internal.RobotNodeMain;
+import org.ros.message.MessageFactory;
+import org.ros.node.NodeConfiguration;
+
+/**
+ * Ack dispatch in RobotNodeMain with 1 to 16 threads at once. Each
+ * operation tracks a command, then hands the node an EXECUTING and a
+ * COMPLETED ack for it, as the ack subscriber would. Messages are built
+ * up front so only the node is measured.
+ */
+final class AckDispatchBenchmark implements BenchmarkMain.Benchmark {
+    private static final int[] THREADS = { 1, 2, 4, 8, 16 };
+    private static final int OPS_PER_THREAD = 20000;
+    // Commands each thread cycles through, acked before being reused
+    private static final int COMMANDS_PER_THREAD = 64;
+
+    @Override
+    public void run() throws Exception {
+        final MessageFactory factory = NodeConfiguration.newPrivate().getTopicMessageFactory();
+        for (int threads : THREADS) {
+            final RobotNodeMain node = new RobotNodeMain(new RobotConfiguration());
+            final CommandStamped[][] cmds = new CommandStamped[threads][COMMANDS_PER_THREAD];
+            final AckStamped[][] executing = new AckStamped[threads][COMMANDS_PER_THREAD];
+            final AckStamped[][] completed = new AckStamped[threads][COMMANDS_PER_THREAD];
+            for (int t = 0; t < threads; t++) {
+                for (int i = 0; i < COMMANDS_PER_THREAD; i++) {
+                    final String id = "bench-" + t + "-" + i;
+                    cmds[t][i] = factory.newFromType(CommandStamped._TYPE);
+                    cmds[t][i].setCmdId(id);
+                    cmds[t][i].setCmdName("noOp");
+                    executing[t][i] = ack(factory, id, AckStatus.EXECUTING);
+                    completed[t][i] = ack(factory, id, AckStatus.COMPLETED);
+                }
+            }
+
+            Bench.measure("track + EXECUTING + COMPLETED ack", threads, OPS_PER_THREAD,
+                    new Bench.Operation() {
+                        @Override
+                        public void run(final int thread, final int count) {
+                            final CommandStamped[] c = cmds[thread];
+                            final AckStamped[] e = executing[thread];
+                            final AckStamped[] d = completed[thread];
+                            for (int i = 0; i < count; i++) {
+                                final int slot = i % COMMANDS_PER_THREAD;
+                                node.track(c[slot]);
+                                node.onNewMessage(e[slot]);
+                                node.onNewMessage(d[slot]);
+                            }
+                        }
+                    });
+        }
+    }
+
+    private static AckStamped ack(final MessageFactory factory, final String id, final byte status) {
+        final AckStamped ack = factory.newFromType(AckStamped._TYPE);
+        ack.setCmdId(id);
+        final AckStatus s = factory.newFromType(AckStatus._TYPE);
+        s.setStatus(status);
+        ack.setStatus(s);
+        final AckCompletedStatus cs = factory.newFromType(AckCompletedStatus._TYPE);
+        cs.setStatus(AckCompletedStatus.OK);
+        ack.setCompletedStatus(cs);
+        return ack;
+    }
+}
@@ -0,0 +1,169 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A small stand-in for JMH. Runs an operation a fixed number of times on
+ * one or more threads, a few rounds to warm up and then a few measured
+ * rounds, and prints the median throughput, time per operation and bytes
+ * allocated per operation.
+ */
+public final class Bench {
+    private Bench() { }
+
+    public interface Operation {
+        /**
+         * Run the operation {@code count} times.
+         *
+         * @param thread Which worker this is, from 0.
+         */
+        void run(int thread, int count) throws Exception;
+    }
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 7;
+
+    private static final ThreadMXBean s_threads = ManagementFactory.getThreadMXBean();
+
+    public static final class Result {
+        private final String m_name;
+        private final int m_threads;
+        private final double m_opsPerSecond;
+        private final double m_nanosPerOp;
+        private final double m_bytesPerOp;
+
+        Result(String name, int threads, double opsPerSecond, double nanosPerOp, double bytesPerOp) {
+            m_name = name;
+            m_threads = threads;
+            m_opsPerSecond = opsPerSecond;
+            m_nanosPerOp = nanosPerOp;
+            m_bytesPerOp = bytesPerOp;
+        }
+
+        public double getOpsPerSecond() {
+            return m_opsPerSecond;
+        }
+
+        /**
+         * Wall time per operation, as seen by one thread.
+         */
+        public double getNanosPerOp() {
+            return m_nanosPerOp;
+        }
+
+        /**
+         * Bytes allocated per operation, or NaN if the JVM can't tell.
+         */
+        public double getBytesPerOp() {
+            return m_bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-44s %3d thr %14.0f ops/s %10.1f ns/op %10.1f B/op",
+                    m_name, m_threads, m_opsPerSecond, m_nanosPerOp, m_bytesPerOp);
+        }
+    }
+
+    /**
+     * Measure and print the result.
+     *
+     * @param opsPerThread How many operations each thread runs per round.
+     */
+    public static Result measure(final String name, final int threads, final int opsPerThread,
+                                 final Operation op) throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+            round(threads, opsPerThread, op);
+
+        final double[] nanos = new double[MEASURED_ROUNDS];
+        final double[] bytes = new double[MEASURED_ROUNDS];
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            final long[] r = round(threads, opsPerThread, op);
+            nanos[i] = r[0];
+            bytes[i] = r[1];
+        }
+        Arrays.sort(nanos);
+        Arrays.sort(bytes);
+        final double totalOps = (double) threads * opsPerThread;
+        final double median = nanos[MEASURED_ROUNDS / 2];
+        final Result result = new Result(name, threads,
+                totalOps * 1e9 / median,
+                median / opsPerThread,
+                bytes[0] < 0 ? Double.NaN : bytes[MEASURED_ROUNDS / 2] / totalOps);
+        System.out.println(result);
+        return result;
+    }
+
+    // Returns the wall time and the bytes allocated by all workers
+    private static long[] round(final int threads, final int count, final Operation op)
+            throws Exception {
+        final CountDownLatch ready = new CountDownLatch(threads);
+        final CountDownLatch go = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicLong allocated = new AtomicLong();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            final Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ready.countDown();
+                        go.await();
+                        final long before = allocatedBytes();
+                        op.run(index, count);
+                        final long after = allocatedBytes();
+                        allocated.addAndGet(before < 0 ? -1 : after - before);
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "Bench " + t);
+            worker.start();
+        }
+
+        ready.await();
+        final long start = System.nanoTime();
+        go.countDown();
+        done.await();
+        final long elapsed = System.nanoTime() - start;
+
+        if (failure.get() != null)
+            throw new Exception("Benchmark operation failed", failure.get());
+        return new long[] { elapsed, allocated.get() };
+    }
+
+    private static long allocatedBytes() {
+        if (s_threads instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) s_threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        return -1;
+    }
+}
@@ -0,0 +1,65 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.benchmarks;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the benchmarks named on the command line, or all of them.
+ */
+public final class BenchmarkMain {
+    private BenchmarkMain() { }
+
+    public interface Benchmark {
+        void run() throws Exception;
+    }
+
+    private static Map<String, Benchmark> benchmarks() {
+        final Map<String, Benchmark> benchmarks = new LinkedHashMap<>();
+        benchmarks.put("ack-dispatch", new AckDispatchBenchmark());
+        benchmarks.put("kinematics", new KinematicsBenchmark());
+        benchmarks.put("command-build", new CommandBuildBenchmark());
+        benchmarks.put("publish", new PublishBenchmark());
+        benchmarks.put("startup", new StartupBenchmark());
+        benchmarks.put("vec-math", new VecMathBenchmark());
+        benchmarks.put("payload-codec", new PayloadCodecBenchmark());
+        return benchmarks;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final Map<String, Benchmark> benchmarks = benchmarks();
+        final List<String> selected = args.length > 0
+                ? Arrays.asList(args)
+                : Arrays.asList(benchmarks.keySet().toArray(new String[benchmarks.size()]));
+
+        for (String name : selected) {
+            final Benchmark benchmark = benchmarks.get(name);
+            if (benchmark == null) {
+                System.err.println("Unknown benchmark " + name + ", expected one of " + benchmarks.keySet());
+                System.exit(1);
+            }
+            System.out.println("# " + name);
+            benchmark.run();
+            System.out.println();
+        }
+    }
+}
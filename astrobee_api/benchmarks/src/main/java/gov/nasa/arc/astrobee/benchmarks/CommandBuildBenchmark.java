@@ -0,0 +1,78 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.benchmarks;
+
+import gov.nasa.arc.astrobee.PendingResult;
+import gov.nasa.arc.astrobee.internal.Publishable;
+import gov.nasa.arc.astrobee.ros.RobotConfiguration;
+import gov.nasa.arc.astrobee.ros.internal.DefaultRobot;
+import gov.nasa.arc.astrobee.ros.internal.RobotNodeMain;
+import gov.nasa.arc.astrobee.types.Point;
+import gov.nasa.arc.astrobee.types.Quaternion;
+
+/**
+ * Building commands through DefaultCommandBuilder, as the generated robot
+ * methods do. Publishing is stubbed out, so only the builder, its message
+ * allocations and the command id are measured.
+ */
+final class CommandBuildBenchmark implements BenchmarkMain.Benchmark {
+    private static final int OPS = 200000;
+
+    private static final class BuildOnlyRobot extends DefaultRobot {
+        // Keeps results alive so the JIT can't drop the work
+        volatile Publishable m_sink;
+
+        BuildOnlyRobot(final RobotNodeMain node) {
+            super(node);
+        }
+
+        @Override
+        protected PendingResult publish(final Publishable cmd) {
+            m_sink = cmd;
+            return null;
+        }
+    }
+
+    @Override
+    public void run() throws Exception {
+        final LoopbackNode loopback = new LoopbackNode();
+        final RobotNodeMain node = new RobotNodeMain(new RobotConfiguration());
+        node.onStart(loopback.getNode());
+        final BuildOnlyRobot robot = new BuildOnlyRobot(node);
+
+        final Point point = new Point(1, 2, 3);
+        final Quaternion rot = new Quaternion();
+
+        Bench.measure("build noOp", 1, OPS, new Bench.Operation() {
+            @Override
+            public void run(final int thread, final int count) {
+                for (int i = 0; i < count; i++)
+                    robot.noOp();
+            }
+        });
+        Bench.measure("build simpleMove6DOF (4 args)", 1, OPS, new Bench.Operation() {
+            @Override
+            public void run(final int thread, final int count) {
+                for (int i = 0; i < count; i++)
+                    robot.simpleMove6DOF(point, rot);
+            }
+        });
+        loopback.shutdown();
+    }
+}
@@ -0,0 +1,117 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.benchmarks;
+
+import ff_msgs.EkfState;
+import gov.nasa.arc.astrobee.Kinematics;
+import gov.nasa.arc.astrobee.KinematicsSnapshot;
+import gov.nasa.arc.astrobee.ros.DefaultKinematics;
+import gov.nasa.arc.astrobee.ros.RobotConfiguration;
+import gov.nasa.arc.astrobee.ros.internal.RobotNodeMain;
+import org.ros.message.Time;
+
+/**
+ * The EKF path. Updates compare building a DefaultKinematics per message,
+ * as RobotNodeMain used to, with unpacking into the in-place store. Reads
+ * compare getKinematics() with copyKinematics() into a reused snapshot,
+ * while another thread keeps updating the store.
+ */
+final class KinematicsBenchmark implements BenchmarkMain.Benchmark {
+    private static final int OPS = 200000;
+
+    // Keeps results alive so the JIT can't drop the work
+    private volatile Object m_sink;
+    private volatile double m_sum;
+
+    @Override
+    public void run() throws Exception {
+        final LoopbackNode loopback = new LoopbackNode();
+        final RobotNodeMain node = new RobotNodeMain(new RobotConfiguration());
+        node.onStart(loopback.getNode());
+
+        final EkfState ekf = loopback.getMessageFactory().newFromType(EkfState._TYPE);
+        ekf.getPose().getPosition().setX(1);
+        ekf.getPose().getOrientation().setW(1);
+        ekf.setConfidence(EkfState.CONFIDENCE_GOOD);
+
+        Bench.measure("EKF update, new DefaultKinematics", 1, OPS, new Bench.Operation() {
+            @Override
+            public void run(final int thread, final int count) {
+                for (int i = 0; i < count; i++)
+                    m_sink = new DefaultKinematics(ekf);
+            }
+        });
+        Bench.measure("EKF update, in-place store", 1, OPS, new Bench.Operation() {
+            @Override
+            public void run(final int thread, final int count) {
+                for (int i = 0; i < count; i++) {
+                    ekf.getHeader().setStamp(Time.fromNano(i));
+                    loopback.deliver("gnc/ekf", ekf);
+                }
+            }
+        });
+
+        // Readers race a writer running far faster than the real EKF
+        final Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long n = 0;
+                while (!Thread.currentThread().isInterrupted()) {
+                    ekf.getHeader().setStamp(Time.fromNano(++n));
+                    loopback.deliver("gnc/ekf", ekf);
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }, "EKF writer");
+        writer.start();
+        try {
+            Bench.measure("read, getKinematics()", 1, OPS, new Bench.Operation() {
+                @Override
+                public void run(final int thread, final int count) {
+                    double sum = 0;
+                    for (int i = 0; i < count; i++) {
+                        final Kinematics k = node.getKinematics();
+                        sum += k.getPosition().getX() + k.getOrientation().getW();
+                    }
+                    m_sum = sum;
+                }
+            });
+            Bench.measure("read, copyKinematics(snapshot)", 1, OPS, new Bench.Operation() {
+                @Override
+                public void run(final int thread, final int count) {
+                    final KinematicsSnapshot snapshot = new KinematicsSnapshot();
+                    double sum = 0;
+                    for (int i = 0; i < count; i++) {
+                        node.copyKinematics(snapshot);
+                        sum += snapshot.getPosition(0) + snapshot.getOrientation(3);
+                    }
+                    m_sum = sum;
+                }
+            });
+        } finally {
+            writer.interrupt();
+            writer.join();
+            loopback.shutdown();
+        }
+    }
+}
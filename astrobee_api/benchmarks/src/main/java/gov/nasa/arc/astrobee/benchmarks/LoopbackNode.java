@@ -0,0 +1,180 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.benchmarks;
+
+import org.ros.message.MessageFactory;
+import org.ros.message.MessageListener;
+import org.ros.message.Time;
+import org.ros.namespace.GraphName;
+import org.ros.node.ConnectedNode;
+import org.ros.node.NodeConfiguration;
+import org.ros.node.topic.Publisher;
+import org.ros.node.topic.PublisherListener;
+import org.ros.node.topic.Subscriber;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process stand-in for a {@link ConnectedNode}, so node mains can be
+ * benchmarked without a ROS master. Messages come from rosjava's own
+ * message factory. Publishing hands a message straight to the listeners
+ * subscribed to the same topic, on the publishing thread. Every publisher
+ * has one subscriber, which it learns about as soon as it adds a listener.
+ */
+final class LoopbackNode {
+    private final MessageFactory m_factory = NodeConfiguration.newPrivate().getTopicMessageFactory();
+    private final ScheduledExecutorService m_executor = Executors.newScheduledThreadPool(1);
+    private final ConcurrentMap<String, List<MessageListener<Object>>> m_listeners = new ConcurrentHashMap<>();
+    private final AtomicLong m_published = new AtomicLong();
+    private final ConnectedNode m_node;
+
+    LoopbackNode() {
+        m_node = proxy(ConnectedNode.class, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object self, final Method method, final Object[] args) {
+                switch (method.getName()) {
+                    case "getTopicMessageFactory":
+                        return m_factory;
+                    case "getCurrentTime":
+                        return Time.fromMillis(System.currentTimeMillis());
+                    case "getScheduledExecutorService":
+                        return m_executor;
+                    case "getName":
+                        return GraphName.of("loopback");
+                    case "newPublisher":
+                        return publisher(args[0].toString(), (String) args[1]);
+                    case "newSubscriber":
+                        return subscriber(args[0].toString());
+                    default:
+                        return defaultValue(method);
+                }
+            }
+        });
+    }
+
+    ConnectedNode getNode() {
+        return m_node;
+    }
+
+    MessageFactory getMessageFactory() {
+        return m_factory;
+    }
+
+    /**
+     * How many messages have been published on any topic.
+     */
+    long getPublished() {
+        return m_published.get();
+    }
+
+    /**
+     * Hand a message to everything subscribed to a topic, as rosjava would
+     * from its subscriber thread.
+     */
+    void deliver(final String topic, final Object message) {
+        for (MessageListener<Object> listener : listeners(topic))
+            listener.onNewMessage(message);
+    }
+
+    void shutdown() {
+        m_executor.shutdownNow();
+    }
+
+    private List<MessageListener<Object>> listeners(final String topic) {
+        final List<MessageListener<Object>> listeners = m_listeners.get(topic);
+        if (listeners != null)
+            return listeners;
+        m_listeners.putIfAbsent(topic, new CopyOnWriteArrayList<MessageListener<Object>>());
+        return m_listeners.get(topic);
+    }
+
+    private Publisher<?> publisher(final String topic, final String type) {
+        return proxy(Publisher.class, new InvocationHandler() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object invoke(final Object self, final Method method, final Object[] args) {
+                switch (method.getName()) {
+                    case "publish":
+                        m_published.incrementAndGet();
+                        deliver(topic, args[0]);
+                        return null;
+                    case "newMessage":
+                        return m_factory.newFromType(type);
+                    case "getNumberOfSubscribers":
+                        return 1;
+                    case "hasSubscribers":
+                        return true;
+                    case "getTopicName":
+                        return GraphName.of(topic);
+                    case "addListener":
+                        ((PublisherListener<Object>) args[0]).onNewSubscriber((Publisher<Object>) self, null);
+                        return null;
+                    default:
+                        return defaultValue(method);
+                }
+            }
+        });
+    }
+
+    private Subscriber<?> subscriber(final String topic) {
+        return proxy(Subscriber.class, new InvocationHandler() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object invoke(final Object self, final Method method, final Object[] args) {
+                switch (method.getName()) {
+                    case "addMessageListener":
+                        listeners(topic).add((MessageListener<Object>) args[0]);
+                        return null;
+                    case "removeMessageListener":
+                        return listeners(topic).remove(args[0]);
+                    case "getTopicName":
+                        return GraphName.of(topic);
+                    default:
+                        return defaultValue(method);
+                }
+            }
+        });
+    }
+
+    private static Object defaultValue(final Method method) {
+        final Class<?> type = method.getReturnType();
+        if (type == boolean.class)
+            return false;
+        if (type == int.class)
+            return 0;
+        if (type == long.class)
+            return 0L;
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(LoopbackNode.class.getClassLoader(),
+                                          new Class<?>[] { type }, handler);
+    }
+}
@@ -0,0 +1,113 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.benchmarks;
+
+import gov.nasa.arc.astrobee.ros.guestscience.chunk.PayloadCodec;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compression ratio and cost of PayloadCodec on synthetic JSON telemetry:
+ * short messages without and with a preset dictionary, and one large
+ * array of them. Decompression on the ground is timed as well.
+ */
+final class PayloadCodecBenchmark implements BenchmarkMain.Benchmark {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int MESSAGES = 1024;
+    private static final int DICTIONARY_SAMPLES = 20;
+    private static final int DICTIONARY_SIZE = 4096;
+    private static final int LARGE_MESSAGES = 300;
+
+    // Keeps results alive so the JIT can't drop the work
+    private volatile Object m_sink;
+
+    @Override
+    public void run() throws Exception {
+        final Random random = new Random(1);
+        final byte[][] messages = new byte[MESSAGES][];
+        for (int i = 0; i < MESSAGES; i++)
+            messages[i] = telemetry(random, i);
+
+        // Samples come from before the measured messages, like a dictionary
+        // built from an earlier run would
+        final List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < DICTIONARY_SAMPLES; i++)
+            samples.add(telemetry(random, -DICTIONARY_SAMPLES + i));
+        final byte[] dictionary = PayloadCodec.buildDictionary(samples, DICTIONARY_SIZE);
+
+        final StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < LARGE_MESSAGES; i++)
+            json.append(i == 0 ? "" : ",").append(new String(telemetry(random, i), UTF8));
+        final byte[] large = json.append(']').toString().getBytes(UTF8);
+
+        measure("short, no dictionary", new PayloadCodec(), messages, 20000);
+        measure("short, dictionary", new PayloadCodec(dictionary), messages, 20000);
+        measure("large array", new PayloadCodec(), new byte[][] { large }, 200);
+    }
+
+    private void measure(final String name, final PayloadCodec codec, final byte[][] messages, int ops)
+            throws Exception {
+        long original = 0;
+        long compressed = 0;
+        final byte[][] packed = new byte[messages.length][];
+        for (int i = 0; i < messages.length; i++) {
+            packed[i] = codec.compress(messages[i]);
+            original += messages[i].length;
+            compressed += packed[i] == null ? messages[i].length : packed[i].length;
+        }
+        System.out.println(String.format(Locale.US, "%-30s %8.0f B/message  %5.1f%% of original size",
+                name, original / (double) messages.length, 100.0 * compressed / original));
+
+        final int mask = messages.length - 1;
+        Bench.measure(name + ", compress", 1, ops, new Bench.Operation() {
+            @Override
+            public void run(final int thread, final int count) {
+                for (int i = 0; i < count; i++)
+                    m_sink = codec.compress(messages[i & mask]);
+            }
+        });
+        Bench.measure(name + ", decompress", 1, ops, new Bench.Operation() {
+            @Override
+            public void run(final int thread, final int count) throws Exception {
+                for (int i = 0; i < count; i++) {
+                    final byte[] p = packed[i & mask];
+                    if (p != null)
+                        m_sink = codec.decompress(p);
+                }
+            }
+        });
+        codec.close();
+    }
+
+    private static byte[] telemetry(final Random random, int i) {
+        return String.format(Locale.US,
+                "{\"apk\":\"gov.nasa.arc.irg.astrobee.air_sampler\",\"time\":%d,"
+                        + "\"co2\":%.2f,\"temperature\":%.2f,\"humidity\":%.1f,"
+                        + "\"position\":[%.3f,%.3f,%.3f],\"state\":\"%s\"}",
+                1500000000000L + i * 1000L,
+                400 + random.nextGaussian() * 5, 21 + random.nextGaussian() * 0.2,
+                40 + random.nextGaussian(), 10 + random.nextDouble(), -7 + random.nextDouble(),
+                4.8 + random.nextDouble() * 0.1, random.nextInt(10) == 0 ? "IDLE" : "SAMPLING")
+                .getBytes(UTF8);
+    }
+}
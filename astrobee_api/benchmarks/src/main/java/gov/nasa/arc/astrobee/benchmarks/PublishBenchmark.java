@@ -0,0 +1,92 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.benchmarks;
+
+import ff_msgs.AckCompletedStatus;
+import ff_msgs.AckStamped;
+import ff_msgs.AckStatus;
+import ff_msgs.CommandStamped;
+import gov.nasa.arc.astrobee.PendingResult;
+import gov.nasa.arc.astrobee.ros.RobotConfiguration;
+import gov.nasa.arc.astrobee.ros.internal.DefaultRobot;
+import gov.nasa.arc.astrobee.ros.internal.RobotNodeMain;
+import org.ros.message.MessageFactory;
+import org.ros.message.MessageListener;
+import org.ros.node.topic.Subscriber;
+
+/**
+ * Publishing commands from 1 to 16 threads, sent inline by the caller or
+ * handed to the publisher thread. A loopback executive acks every command
+ * as COMPLETED as soon as it is published, and each worker waits for its
+ * last command to complete, so throughput is end to end. Bytes per op
+ * only count the callers.
+ */
+final class PublishBenchmark implements BenchmarkMain.Benchmark {
+    private static final int[] THREADS = { 1, 4, 16 };
+    private static final int OPS_PER_THREAD = 20000;
+
+    @Override
+    public void run() throws Exception {
+        for (boolean publisherThread : new boolean[] { false, true }) {
+            for (int threads : THREADS) {
+                final LoopbackNode loopback = new LoopbackNode();
+                final RobotNodeMain node = new RobotNodeMain(
+                        new RobotConfiguration().setPublisherThreadEnabled(publisherThread));
+                node.onStart(loopback.getNode());
+                acknowledgeEverything(loopback);
+                final DefaultRobot robot = new DefaultRobot(node);
+
+                Bench.measure(publisherThread ? "noOp, publisher thread" : "noOp, inline send",
+                        threads, OPS_PER_THREAD, new Bench.Operation() {
+                            @Override
+                            public void run(final int thread, final int count) throws Exception {
+                                PendingResult last = null;
+                                for (int i = 0; i < count; i++)
+                                    last = robot.noOp();
+                                if (last != null)
+                                    last.getResult();
+                            }
+                        });
+                node.onShutdown(null);
+                loopback.shutdown();
+            }
+        }
+    }
+
+    private static void acknowledgeEverything(final LoopbackNode loopback) {
+        final MessageFactory factory = loopback.getMessageFactory();
+        final Subscriber<CommandStamped> executive =
+                loopback.getNode().<CommandStamped>newSubscriber("command", CommandStamped._TYPE);
+        executive.addMessageListener(new MessageListener<CommandStamped>() {
+            @Override
+            public void onNewMessage(final CommandStamped cmd) {
+                final AckStamped ack = factory.newFromType(AckStamped._TYPE);
+                ack.setCmdId(cmd.getCmdId());
+                final AckStatus status = factory.newFromType(AckStatus._TYPE);
+                status.setStatus(AckStatus.COMPLETED);
+                ack.setStatus(status);
+                final AckCompletedStatus completed = factory.newFromType(AckCompletedStatus._TYPE);
+                completed.setStatus(AckCompletedStatus.OK);
+                ack.setCompletedStatus(completed);
+                ack.setMessage("");
+                loopback.deliver("mgt/ack", ack);
+            }
+        });
+    }
+}
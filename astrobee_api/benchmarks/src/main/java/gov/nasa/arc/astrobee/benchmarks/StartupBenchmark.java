@@ -0,0 +1,104 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.benchmarks;
+
+import gov.nasa.arc.astrobee.ros.DefaultRobotFactory;
+import gov.nasa.arc.astrobee.ros.NodeExecutorHolder;
+import gov.nasa.arc.astrobee.ros.RobotConfiguration;
+import org.ros.RosCore;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from creating a robot factory until the local robot and two named
+ * ones are usable, with the local robot on a node of its own (and the named
+ * ones on a second node) and with all of them on the shared node. Runs against a private master started in process, so
+ * nothing else needs to be running. Also reports how many threads the
+ * nodes left running.
+ */
+final class StartupBenchmark implements BenchmarkMain.Benchmark {
+    private static final String[] NAMED = { "bumble", "queen" };
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 7;
+
+    @Override
+    public void run() throws Exception {
+        final RosCore core = RosCore.newPrivate();
+        core.start();
+        if (!core.awaitStart(10, TimeUnit.SECONDS))
+            throw new IllegalStateException("ROS master did not start");
+
+        try {
+            for (boolean shared : new boolean[] { false, true }) {
+                final RobotConfiguration conf = new RobotConfiguration()
+                        .setMasterUri(core.getUri())
+                        .setSharedNodeEnabled(shared);
+                measure(shared ? "shared node" : "own local node", conf);
+            }
+        } finally {
+            core.shutdown();
+        }
+    }
+
+    private static void measure(final String name, final RobotConfiguration conf)
+            throws Exception {
+        final double[] millis = new double[MEASURED_ROUNDS];
+        int threads = 0;
+        for (int round = -WARMUP_ROUNDS; round < MEASURED_ROUNDS; round++) {
+            final int before = Thread.activeCount();
+            final long start = System.nanoTime();
+            final DefaultRobotFactory factory = new DefaultRobotFactory(conf);
+            factory.getRobot();
+            for (String robot : NAMED)
+                factory.getRobot(robot);
+            final long elapsed = System.nanoTime() - start;
+            final int after = Thread.activeCount();
+
+            factory.shutdown();
+            awaitShutdown();
+
+            if (round >= 0) {
+                millis[round] = elapsed / 1e6;
+                threads = Math.max(threads, after - before);
+            }
+        }
+
+        Arrays.sort(millis);
+        System.out.println(String.format(Locale.US,
+                "%-16s %d robots %10.1f ms median %10.1f ms min %6d threads",
+                name, NAMED.length + 1, millis[millis.length / 2], millis[0], threads));
+    }
+
+    /**
+     * The factory shuts its nodes down on the local executor, which is a
+     * single thread, so anything submitted after it runs once they are
+     * gone and the ROS executor has been let go.
+     */
+    private static void awaitShutdown() throws Exception {
+        NodeExecutorHolder.getLocalExecutor().submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                return null;
+            }
+        }).get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,186 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.benchmarks;
+
+import gov.nasa.arc.astrobee.types.MutableQuaternion;
+import gov.nasa.arc.astrobee.types.MutableVec3d;
+import gov.nasa.arc.astrobee.types.Point;
+import gov.nasa.arc.astrobee.types.Quaternion;
+import gov.nasa.arc.astrobee.types.VecMath;
+import org.apache.commons.math3.geometry.euclidean.threed.Rotation;
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+
+import java.util.Random;
+
+/**
+ * VecMath against Commons Math, which the microphone example uses. The
+ * segment orientation is the example's orientationAlongSegment, as it is
+ * written there, next to VecMath.lookAt. Before timing anything, the two
+ * are checked to agree on every input.
+ */
+final class VecMathBenchmark implements BenchmarkMain.Benchmark {
+    private static final int OPS = 1000000;
+    private static final int INPUTS = 1024;
+
+    // Keeps results alive so the JIT can't drop the work
+    private volatile Object m_sink;
+    private volatile double m_sum;
+
+    @Override
+    public void run() throws Exception {
+        final Random random = new Random(1);
+        final Point[] points = new Point[INPUTS + 1];
+        for (int i = 0; i < points.length; i++)
+            points[i] = new Point(random.nextDouble() * 10, random.nextDouble() * 10, random.nextDouble() * 10);
+        final MutableQuaternion[] rotations = new MutableQuaternion[INPUTS + 1];
+        final Rotation[] commonsRotations = new Rotation[INPUTS + 1];
+        for (int i = 0; i < rotations.length; i++) {
+            rotations[i] = VecMath.normalize(new MutableQuaternion(random.nextGaussian(), random.nextGaussian(),
+                    random.nextGaussian(), random.nextGaussian()), new MutableQuaternion());
+            commonsRotations[i] = new Rotation(rotations[i].getW(), rotations[i].getX(),
+                    rotations[i].getY(), rotations[i].getZ(), false);
+        }
+
+        final MutableVec3d from = new MutableVec3d();
+        final MutableVec3d to = new MutableVec3d();
+        final MutableVec3d scratch = new MutableVec3d();
+        final MutableQuaternion q = new MutableQuaternion();
+        for (int i = 0; i < INPUTS; i++) {
+            final Quaternion expected = orientationAlongSegment(points[i], points[i + 1]);
+            VecMath.lookAt(from.set(points[i]), to.set(points[i + 1]), scratch, q);
+            final double dot = expected.getX() * q.getX() + expected.getY() * q.getY()
+                    + expected.getZ() * q.getZ() + expected.getW() * q.getW();
+            if (Math.abs(Math.abs(dot) - 1) > 1e-6)
+                throw new IllegalStateException("lookAt disagrees with Commons Math for "
+                        + points[i] + " to " + points[i + 1] + ": " + q + " vs " + expected);
+        }
+
+        Bench.measure("segment orientation, Commons Math", 1, OPS, new Bench.Operation() {
+            @Override
+            public void run(final int thread, final int count) {
+                for (int i = 0; i < count; i++) {
+                    final int n = i & (INPUTS - 1);
+                    m_sink = orientationAlongSegment(points[n], points[n + 1]);
+                }
+            }
+        });
+        Bench.measure("segment orientation, VecMath", 1, OPS, new Bench.Operation() {
+            @Override
+            public void run(final int thread, final int count) {
+                double sum = 0;
+                for (int i = 0; i < count; i++) {
+                    final int n = i & (INPUTS - 1);
+                    VecMath.lookAt(from.set(points[n]), to.set(points[n + 1]), scratch, q);
+                    sum += q.getW();
+                }
+                m_sum = sum;
+            }
+        });
+
+        final MutableVec3d v = new MutableVec3d();
+        Bench.measure("rotate vector, Commons Math", 1, OPS, new Bench.Operation() {
+            @Override
+            public void run(final int thread, final int count) {
+                for (int i = 0; i < count; i++) {
+                    final int n = i & (INPUTS - 1);
+                    final Point p = points[n];
+                    m_sink = commonsRotations[n].applyTo(new Vector3D(p.getX(), p.getY(), p.getZ()));
+                }
+            }
+        });
+        Bench.measure("rotate vector, VecMath", 1, OPS, new Bench.Operation() {
+            @Override
+            public void run(final int thread, final int count) {
+                double sum = 0;
+                for (int i = 0; i < count; i++) {
+                    final int n = i & (INPUTS - 1);
+                    sum += VecMath.rotate(rotations[n], v.set(points[n]), v).getX();
+                }
+                m_sum = sum;
+            }
+        });
+
+        Bench.measure("compose rotations, Commons Math", 1, OPS, new Bench.Operation() {
+            @Override
+            public void run(final int thread, final int count) {
+                for (int i = 0; i < count; i++) {
+                    final int n = i & (INPUTS - 1);
+                    m_sink = commonsRotations[n].applyTo(commonsRotations[n + 1]);
+                }
+            }
+        });
+        Bench.measure("compose rotations, VecMath", 1, OPS, new Bench.Operation() {
+            @Override
+            public void run(final int thread, final int count) {
+                double sum = 0;
+                for (int i = 0; i < count; i++) {
+                    final int n = i & (INPUTS - 1);
+                    sum += VecMath.multiply(rotations[n], rotations[n + 1], q).getW();
+                }
+                m_sum = sum;
+            }
+        });
+    }
+
+    /**
+     * MicrophoneImplementation.orientationAlongSegment, minus the logging.
+     */
+    static Quaternion orientationAlongSegment(final Point beg, final Point end) {
+        final Vector3D b = new Vector3D(beg.getX(), beg.getY(), beg.getZ());
+        final Vector3D e = new Vector3D(end.getX(), end.getY(), end.getZ());
+
+        Vector3D vfwd = e.subtract(b);
+        if (vfwd.getNorm() > 0)
+            vfwd = vfwd.normalize();
+        else
+            vfwd = new Vector3D(1.0, 0.0, 0.0);
+
+        Vector3D vdown = new Vector3D(0.0, 0.0, 1.0);
+        Vector3D vright = new Vector3D(0.0, 1.0, 0.0);
+
+        if (Math.abs(vdown.dotProduct(vfwd)) < 1.0 - 1.0e-3) {
+            vright = vdown.crossProduct(vfwd);
+            vdown = vfwd.crossProduct(vright);
+            if (vdown.getZ() < 0) {
+                vright = vright.negate();
+                vdown = vfwd.crossProduct(vright);
+            }
+        } else {
+            vdown = vfwd.crossProduct(vright);
+            vright = vdown.crossProduct(vfwd);
+            if (vright.getY() < 0) {
+                vdown = vdown.negate();
+                vright = vdown.crossProduct(vfwd);
+            }
+        }
+
+        vfwd = vfwd.normalize();
+        vright = vright.normalize();
+        vdown = vdown.normalize();
+
+        final double[][] dcm = new double[3][3];
+        dcm[0][0] = vfwd.getX(); dcm[0][1] = vright.getX(); dcm[0][2] = vdown.getX();
+        dcm[1][0] = vfwd.getY(); dcm[1][1] = vright.getY(); dcm[1][2] = vdown.getY();
+        dcm[2][0] = vfwd.getZ(); dcm[2][1] = vright.getZ(); dcm[2][2] = vdown.getZ();
+        final Rotation r = new Rotation(dcm, 1e-8);
+
+        return new Quaternion(-(float) r.getQ1(), -(float) r.getQ2(),
+                              -(float) r.getQ3(), (float) r.getQ0());
+    }
+}
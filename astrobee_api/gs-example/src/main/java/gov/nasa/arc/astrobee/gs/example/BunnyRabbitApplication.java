@@ -1,6 +1,8 @@
 package gov.nasa.arc.astrobee.gs.example;
 
 import gov.nasa.arc.astrobee.ros.guestscience.*;
+import gov.nasa.arc.astrobee.ros.guestscience.command.CommandHandler;
+import gov.nasa.arc.astrobee.ros.guestscience.command.DecodedCommand;
 import gov.nasa.arc.astrobee.ros.internal.util.MessageType;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -10,6 +12,20 @@ public class BunnyRabbitApplication extends StartGuestScienceService {
 
     public BunnyRabbitApplication(String xmlFilePath) {
         super(xmlFilePath);
+
+        // Every action in bunny_commands.xml does the same thing, and
+        // anything else is failed with BAD_SYNTAX before it gets here
+        final CommandHandler doAction = new CommandHandler() {
+            @Override
+            public void onCommand(DecodedCommand command) {
+                sendData(MessageType.JSON,
+                        "Rabbit Life",
+                        "{\"Summary\": \"" + command.getCommandName() + " away!\"}");
+            }
+        };
+        for (String action : new String[] {"nibble", "burrow", "hop", "fluff"}) {
+            setCommandHandler(action, doAction);
+        }
     }
 
     @Override
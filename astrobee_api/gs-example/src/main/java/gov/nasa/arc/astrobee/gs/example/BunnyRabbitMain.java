@@ -15,9 +15,9 @@ public class BunnyRabbitMain {
         JavaGuestScienceManager manager = new JavaGuestScienceManager();
 
         String xmlFilePath = System.getProperty("user.dir") + File.separator + "/gs-example/src/main/resources/bunny_commands.xml";
+        // The node comes up while the commands are read; acceptApplication
+        // waits for it
         BunnyRabbitApplication mrNibbles = new BunnyRabbitApplication(xmlFilePath);
-
-        Thread.sleep(2000);
         manager.acceptApplication(mrNibbles);
     }
 
@@ -2,82 +2,106 @@ package gov.nasa.arc.astrobee.ros.guestscience;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.w3c.dom.*;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import java.io.File;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Reads the apkInfo/commands XML in a single streaming pass, without
+ * building a DOM.
+ */
 public class ApkInfoXmlParser {
     private static final Log logger = LogFactory.getLog(ApkInfoXmlParser.class);
 
-        public static ApkInfo parseFile(String filePath) {
-            File xmlFile = new File(filePath);
+    private static final XMLInputFactory s_factory = XMLInputFactory.newInstance();
 
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder;
-            try {
-                dBuilder = dbFactory.newDocumentBuilder();
-                Document doc = dBuilder.parse(xmlFile);
-                doc.getDocumentElement().normalize();
-                NodeList nodeList = doc.getElementsByTagName("apkInfo");
-                // we expect information for only one APK
-                return getApkInfo(nodeList.item(0));
-            } catch (SAXException | ParserConfigurationException | IOException e1) {
-                e1.printStackTrace();
-            }
-            return null;
+    static {
+        s_factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        s_factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    public static ApkInfo parseFile(String filePath) {
+        try (InputStream in = new FileInputStream(filePath)) {
+            return parse(in);
+        } catch (XMLStreamException | IOException e) {
+            logger.error("Unable to read " + filePath, e);
         }
+        return null;
+    }
 
-        private static ApkInfo getApkInfo(Node node) {
-            //XMLReaderDOM domReader = new XMLReaderDOM();
-            ApkInfo apkInfo = new ApkInfo();
-            if (node.getNodeType() == Node.ELEMENT_NODE) {
-                Element element = (Element) node;
-                    apkInfo.setShortName(getTagValue("shortName", element));
-                    apkInfo.setPrimary(Boolean.parseBoolean(getTagValue("primary", element)));
-                try {
-                    apkInfo.setFullName(getTagValue("fullName", element));
-                } catch (NullPointerException npe) {
-                    logger.error("No full APK name listed in xml file");
-                    apkInfo.setFullName("none");
-                }
+    public static ApkInfo parse(InputStream in) throws XMLStreamException {
+        final XMLStreamReader reader;
+        synchronized (s_factory) {
+            reader = s_factory.createXMLStreamReader(in);
+        }
+        try {
+            return readApkInfo(reader);
+        } finally {
+            reader.close();
+        }
+    }
 
-                NodeList cmdList = element.getElementsByTagName("commands").item(0).getChildNodes();
-                List<Command> commandList = new ArrayList<>();
-                for (int i = 0; i < cmdList.getLength(); i++) {
-                    Command c = getCommand(cmdList.item(i));
-                    if(c != null) {
-                        commandList.add(c);
-                    }
+    private static ApkInfo readApkInfo(XMLStreamReader reader) throws XMLStreamException {
+        ApkInfo apkInfo = new ApkInfo();
+        List<Command> commandList = new ArrayList<>();
+        boolean inApkInfo = false;
+        boolean inCommands = false;
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                String name = reader.getLocalName();
+                if (name.equals("commands")) {
+                    inCommands = false;
+                } else if (name.equals("apkInfo")) {
+                    // we expect information for only one APK
+                    break;
                 }
-                apkInfo.setCommands(commandList);
+                continue;
             }
-            return apkInfo;
-        }
+            if (event != XMLStreamConstants.START_ELEMENT)
+                continue;
 
-        private static Command getCommand(Node n) {
-            if(n.getAttributes() == null) {
-                return null;
+            String name = reader.getLocalName();
+            if (!inApkInfo) {
+                inApkInfo = name.equals("apkInfo");
+            } else if (inCommands) {
+                Command c = readCommand(reader);
+                if (c != null) {
+                    commandList.add(c);
+                }
+            } else if (name.equals("commands")) {
+                inCommands = true;
+            } else if (name.equals("shortName")) {
+                apkInfo.setShortName(reader.getElementText());
+            } else if (name.equals("primary")) {
+                apkInfo.setPrimary(Boolean.parseBoolean(reader.getElementText().trim()));
+            } else if (name.equals("fullName")) {
+                apkInfo.setFullName(reader.getElementText());
             }
-            String name = n.getAttributes().getNamedItem("name").getNodeValue();
-            String syntax = n.getAttributes().getNamedItem("syntax").getNodeValue();
-
-            Command c = new Command();
-            c.setName(name);
-            c.setSyntax(syntax);
-            return c;
         }
 
-        private static String getTagValue(String tag, Element element) throws NullPointerException {
-            NodeList nodeList = element.getElementsByTagName(tag).item(0).getChildNodes();
-            Node node = (Node) nodeList.item(0);
-            return node.getNodeValue();
+        if (apkInfo.getFullName() == null || apkInfo.getFullName().length() == 0) {
+            logger.error("No full APK name listed in xml file");
+            apkInfo.setFullName("none");
         }
+        apkInfo.setCommands(commandList);
+        return apkInfo;
+    }
 
+    private static Command readCommand(XMLStreamReader reader) {
+        String name = reader.getAttributeValue(null, "name");
+        String syntax = reader.getAttributeValue(null, "syntax");
+        if (name == null || syntax == null) {
+            return null;
+        }
+        return new Command(name, syntax);
+    }
 }
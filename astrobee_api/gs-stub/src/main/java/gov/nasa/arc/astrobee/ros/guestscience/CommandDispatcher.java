@@ -0,0 +1,166 @@
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs one app's command callbacks, one at a time and in the order the
+ * commands came in, on a thread of its own. A callback that blocks, say on
+ * a long move, then only holds up that app's later commands, not the ROS
+ * thread, the acks or other apps.
+ *
+ * Also keeps track of how long commands wait to be handled, to show when an
+ * app is falling behind.
+ */
+public final class CommandDispatcher {
+    private final Log logger = LogFactory.getLog(CommandDispatcher.class);
+
+    // Commands that waited longer than this are logged
+    private static final long SLOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * When a command is acked.
+     */
+    public enum AckMode {
+        /**
+         * As soon as the command is queued for the app. Keeps the ground
+         * moving, but a failure in the callback is only logged.
+         */
+        ON_ENQUEUE,
+
+        /**
+         * Once the app's callback returns, failing the command if it threw.
+         */
+        ON_COMPLETION
+    }
+
+    private final String m_apkName;
+    private final ExecutorService m_executor;
+    private volatile AckMode m_ackMode = AckMode.ON_ENQUEUE;
+
+    private final AtomicInteger m_queued = new AtomicInteger();
+    private final AtomicLong m_dispatched = new AtomicLong();
+    private final AtomicLong m_totalLatency = new AtomicLong();
+    private final AtomicLong m_maxLatency = new AtomicLong();
+    private volatile long m_lastLatency = 0;
+
+    CommandDispatcher(final String apkName) {
+        m_apkName = apkName;
+        m_executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, "Guest Science Commands " + apkName);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    public AckMode getAckMode() {
+        return m_ackMode;
+    }
+
+    public void setAckMode(AckMode ackMode) {
+        if (ackMode == null)
+            throw new NullPointerException("ackMode may not be null");
+        m_ackMode = ackMode;
+    }
+
+    /**
+     * Queue a callback.
+     *
+     * @return false if the dispatcher has been shut down.
+     */
+    boolean submit(final String what, final Runnable callback) {
+        final long queuedAt = System.nanoTime();
+        m_queued.incrementAndGet();
+        try {
+            m_executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    m_queued.decrementAndGet();
+                    recordLatency(what, System.nanoTime() - queuedAt);
+                    callback.run();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            m_queued.decrementAndGet();
+            return false;
+        }
+    }
+
+    private void recordLatency(String what, long latency) {
+        m_dispatched.incrementAndGet();
+        m_totalLatency.addAndGet(latency);
+        m_lastLatency = latency;
+        long max = m_maxLatency.get();
+        while (latency > max && !m_maxLatency.compareAndSet(max, latency))
+            max = m_maxLatency.get();
+        if (latency > SLOW_NANOS) {
+            logger.warn(m_apkName + " is falling behind: " + what + " waited "
+                    + TimeUnit.NANOSECONDS.toMillis(latency) + "ms, " + m_queued.get() + " more queued");
+        }
+    }
+
+    /**
+     * @return How many commands are waiting for the app.
+     */
+    public int getQueued() {
+        return m_queued.get();
+    }
+
+    /**
+     * @return How many commands have been handed to the app.
+     */
+    public long getDispatched() {
+        return m_dispatched.get();
+    }
+
+    public double getMeanLatencyMillis() {
+        final long dispatched = m_dispatched.get();
+        if (dispatched == 0)
+            return 0;
+        return m_totalLatency.get() / 1e6 / dispatched;
+    }
+
+    public double getMaxLatencyMillis() {
+        return m_maxLatency.get() / 1e6;
+    }
+
+    public double getLastLatencyMillis() {
+        return m_lastLatency / 1e6;
+    }
+
+    /**
+     * Let queued commands finish, but take no more.
+     */
+    void shutdown() {
+        m_executor.shutdown();
+    }
+}
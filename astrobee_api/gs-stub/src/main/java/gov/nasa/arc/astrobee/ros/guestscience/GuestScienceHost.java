@@ -0,0 +1,96 @@
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience;
+
+import gov.nasa.arc.astrobee.ros.RobotConfiguration;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs several Java guest science apps in one process, on one node. Each
+ * app gets its own JavaGuestScienceManager and its own slot in the guest
+ * science config and state, is started and stopped by commands naming its
+ * apk, and can come and go without disturbing the others.
+ *
+ * <pre>
+ * GuestScienceHost host = new GuestScienceHost();
+ * host.addApplication(new AirSampler(...));
+ * host.addApplication(new SoundSurvey(...));
+ * </pre>
+ */
+public class GuestScienceHost {
+    private final Log logger = LogFactory.getLog(GuestScienceHost.class);
+
+    private final GuestScienceNodeMain m_nodeMain;
+    private final List<JavaGuestScienceManager> m_managers = new CopyOnWriteArrayList<>();
+
+    public GuestScienceHost() {
+        this(new RobotConfiguration());
+    }
+
+    public GuestScienceHost(final RobotConfiguration robotConfiguration) {
+        m_nodeMain = GuestScienceNodeMain.start(robotConfiguration);
+    }
+
+    /**
+     * Host an app, waiting for the node to come up if need be.
+     *
+     * @return The app's manager, or null if interrupted while waiting.
+     * @throws IllegalArgumentException if an app with the same apk name is
+     *         already hosted.
+     */
+    public JavaGuestScienceManager addApplication(StartGuestScienceService app) {
+        final JavaGuestScienceManager manager = new JavaGuestScienceManager(m_nodeMain, false);
+        if (!manager.acceptApplication(app))
+            return null;
+        m_managers.add(manager);
+        logger.info("Hosting " + app.getFullName() + ", " + m_managers.size() + " apps in all");
+        return manager;
+    }
+
+    /**
+     * Stop hosting an app. The same as the app calling terminate().
+     */
+    public void removeApplication(StartGuestScienceService app) throws InterruptedException {
+        for (JavaGuestScienceManager manager : m_managers) {
+            if (manager.m_app == app) {
+                manager.shutdown(0, TimeUnit.SECONDS);
+                m_managers.remove(manager);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Remove every app, then shut down the node and wait for it to finish,
+     * but no longer than the given timeout.
+     *
+     * @return false if the node was still going when the timeout ran out.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        for (JavaGuestScienceManager manager : m_managers)
+            manager.shutdown(0, TimeUnit.SECONDS);
+        m_managers.clear();
+        m_nodeMain.shutdown();
+        return m_nodeMain.awaitShutdown(timeout, unit);
+    }
+}
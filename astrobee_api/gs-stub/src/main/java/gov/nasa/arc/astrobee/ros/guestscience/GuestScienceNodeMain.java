@@ -3,8 +3,12 @@ package gov.nasa.arc.astrobee.ros.guestscience;
 import ff_msgs.*;
 import gov.nasa.arc.astrobee.AstrobeeRuntimeException;
 import gov.nasa.arc.astrobee.ros.NodeExecutorHolder;
-import gov.nasa.arc.astrobee.ros.internal.util.CmdInfo;
-import gov.nasa.arc.astrobee.ros.internal.util.CmdType;
+import gov.nasa.arc.astrobee.ros.RobotConfiguration;
+import gov.nasa.arc.astrobee.ros.SharedNode;
+import gov.nasa.arc.astrobee.ros.guestscience.command.CommandHandler;
+import gov.nasa.arc.astrobee.ros.guestscience.command.CommandSyntaxException;
+import gov.nasa.arc.astrobee.ros.guestscience.command.DecodedCommand;
+import gov.nasa.arc.astrobee.ros.guestscience.command.UnknownCommandException;
 import gov.nasa.arc.astrobee.ros.internal.util.Constants;
 import gov.nasa.arc.astrobee.ros.internal.util.MessageType;
 import gov.nasa.arc.astrobee.ros.internal.util.Stringer;
@@ -25,7 +29,11 @@ import std_msgs.Header;
 
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 //import org.w3c.dom.Node;
 
@@ -41,17 +49,43 @@ public class GuestScienceNodeMain extends AbstractNodeMain implements MessageLis
 
     private Subscriber<CommandStamped> mCommandSubscriber;
 
-    private StartGuestScienceService m_currentApplication;
+    /**
+     * One hosted app, with its own running flag and command thread. Guarded
+     * by m_apps.
+     */
+    private static final class AppSlot {
+        final StartGuestScienceService app;
+        final CommandDispatcher dispatcher;
+        boolean running = false;
+        // Whether the app will be running once every start and stop queued
+        // for it has been handled
+        boolean willRun = false;
+        // The last start or stop queued, so willRun can be put right if it
+        // fails
+        CommandStamped lastStartStop = null;
+
+        AppSlot(StartGuestScienceService app) {
+            this.app = app;
+            this.dispatcher = new CommandDispatcher(app.getFullName());
+        }
+    }
+
+    // Hosted apps by full apk name, in the order they were added. Also the
+    // lock for publishing config and state, so serials go out in order.
+    private final Map<String, AppSlot> m_apps = new LinkedHashMap<>();
 
-    private boolean m_started = false;
-    private boolean m_apkIsRunning = false;
-    private String m_apkName; // for convenience
+    private volatile boolean m_started = false;
+    private final CountDownLatch m_startedLatch = new CountDownLatch(1);
+    private final CountDownLatch m_shutdownLatch = new CountDownLatch(1);
+
+    // Bumped whenever the set of apps changes
     private long SERIAL_NUMBER = 1;
 
     private NodeConfiguration mNodeConfig;
     private MessageFactory mMessageFactory;
 
-    private CmdInfo mCmdInfo;
+    // Set when running on the shared node rather than one of our own
+    private SharedNode mSharedNode = null;
 
     @Override
     public synchronized void onStart(final ConnectedNode connectedNode) {
@@ -78,9 +112,8 @@ public class GuestScienceNodeMain extends AbstractNodeMain implements MessageLis
                 Constants.TOPIC_MANAGEMENT_EXEC_COMMAND, CommandStamped._TYPE);
         mCommandSubscriber.addMessageListener(this);
 
-        mCmdInfo = new CmdInfo();
-
         m_started = true;
+        m_startedLatch.countDown();
     }
 
     @Override
@@ -101,8 +134,65 @@ public class GuestScienceNodeMain extends AbstractNodeMain implements MessageLis
         }
     }
 
+    /**
+     * Start a node, either on the shared node or on one of its own.
+     */
+    static GuestScienceNodeMain start(RobotConfiguration robotConfiguration) {
+        final GuestScienceNodeMain nodeMain = new GuestScienceNodeMain();
+        if (robotConfiguration.isSharedNodeEnabled()) {
+            final SharedNode shared = SharedNode.get(robotConfiguration);
+            nodeMain.setSharedNode(shared);
+            shared.attach(nodeMain);
+        } else {
+            final NodeConfiguration nodeConfiguration = robotConfiguration.build();
+            NodeExecutorHolder.getExecutor().execute(nodeMain, nodeConfiguration);
+        }
+        return nodeMain;
+    }
+
+    void setSharedNode(SharedNode sharedNode) {
+        mSharedNode = sharedNode;
+    }
+
+    /**
+     * Host an app and tell the ground about it. Must not be called before
+     * the node has started.
+     */
+    void addApplication(StartGuestScienceService app) {
+        synchronized (m_apps) {
+            if (m_apps.containsKey(app.getFullName()))
+                throw new IllegalArgumentException("Apk " + app.getFullName() + " is already hosted");
+            m_apps.put(app.getFullName(), new AppSlot(app));
+            SERIAL_NUMBER++;
+            publishGuestScienceConfig();
+            sendGuestScienceState();
+        }
+    }
+
+    /**
+     * Stop hosting an app. The others carry on as they were.
+     */
+    void removeApplication(StartGuestScienceService app) {
+        synchronized (m_apps) {
+            final AppSlot slot = m_apps.get(app.getFullName());
+            if (slot == null || slot.app != app)
+                return;
+            m_apps.remove(app.getFullName());
+            slot.dispatcher.shutdown();
+            SERIAL_NUMBER++;
+            if (m_gsConfigPublisher == null)
+                return;
+            publishGuestScienceConfig();
+            sendGuestScienceState();
+        }
+    }
+
     protected void shutdown()  {
     	this.logger.debug("Attempting to shutdown node");
+        if (mSharedNode != null) {
+            mSharedNode.detach(this);
+            return;
+        }
     	NodeExecutorHolder.getExecutor().getScheduledExecutorService().submit(new Runnable() {
             public void run() {
                 NodeExecutorHolder.getExecutor().shutdownNodeMain(GuestScienceNodeMain.this);
@@ -111,52 +201,174 @@ public class GuestScienceNodeMain extends AbstractNodeMain implements MessageLis
     }
 
     protected void handleGuestScienceStartCommand(CommandStamped cmd) {
-        if(!validateApkName(cmd)) {
+        handleStartStop(cmd, true);
+    }
+
+    protected void handleGuestScienceStopCommand(CommandStamped cmd) {
+        handleStartStop(cmd, false);
+    }
+
+    /**
+     * Queue a start or stop for an app. One that comes in while another is
+     * still being handled waits behind it on the app's dispatcher, rather
+     * than failing.
+     */
+    private void handleStartStop(final CommandStamped cmd, final boolean start) {
+        final AppSlot slot = findApplication(cmd);
+        if (slot == null) {
             return;
         }
-        String msg;
-        if(m_apkIsRunning) {
-            msg =  "Apk " + m_apkName + " is already running.";
-            sendAck(cmd.getCmdId(), AckCompletedStatus.EXEC_FAILED, msg);
-            return;
+        final String apkName = slot.app.getFullName();
+        synchronized (m_apps) {
+            if (slot.willRun == start) {
+                final String msg;
+                if (start)
+                    msg = "Apk " + apkName + (slot.running ? " is already running." : " is already starting.");
+                else
+                    msg = "Apk " + apkName + (slot.running ? " is already stopping." : " is already stopped.");
+                sendAck(cmd.getCmdId(), AckCompletedStatus.EXEC_FAILED, msg);
+                return;
+            }
+            slot.willRun = start;
+            slot.lastStartStop = cmd;
         }
 
-        m_apkIsRunning = true;
-
-
-        mCmdInfo.setCmd(cmd.getCmdId(), cmd.getCmdOrigin(), m_apkName, CmdType.START);
+        // A start that failed leaves the app stopped, so a stop queued
+        // behind it has nothing to do, and likewise the other way round
+        final Precondition stillNeeded = new Precondition() {
+            @Override
+            public String check() {
+                synchronized (m_apps) {
+                    if (slot.running != start)
+                        return null;
+                    return "Apk " + apkName + (start ? " is already running." : " is already stopped.");
+                }
+            }
+        };
 
-        ackGuestScienceStart(true, m_apkName, "");
-        m_currentApplication.onGuestScienceStart();
+        dispatch(slot, cmd, start ? "start" : "stop", stillNeeded, new Runnable() {
+            @Override
+            public void run() {
+                if (start)
+                    slot.app.onGuestScienceStart();
+                else
+                    slot.app.onGuestScienceStop();
+            }
+        }, new AckAction() {
+            @Override
+            public void ack(boolean succeeded, String errMsg) {
+                ackStartStop(slot, cmd, start, succeeded, errMsg);
+            }
+        });
     }
 
-    protected void handleGuestScienceStopCommand(CommandStamped cmd) {
-        if(!validateApkName(cmd)) {
+    protected void handleGuestScienceCustomCommand(CommandStamped cmd) {
+        final AppSlot slot = findApplication(cmd);
+        if (slot == null) {
             return;
         }
-        String msg;
-        if(!m_apkIsRunning) {
-            msg =  "Apk " + m_apkName + " is already stopped.";
-            sendAck(cmd.getCmdId(), AckCompletedStatus.EXEC_FAILED, msg);
-            return;
+        final String command = cmd.getArgs().get(1).getS();
+        final String cmdId = cmd.getCmdId();
+
+        Runnable callback = new Runnable() {
+            @Override
+            public void run() {
+                slot.app.onGuestScienceCustomCmd(command);
+            }
+        };
+        if (slot.app.hasCommandHandlers()) {
+            DecodedCommand decoded = null;
+            try {
+                decoded = slot.app.getCommandDecoder().decode(command, slot.app.getHandledCommands());
+            } catch (UnknownCommandException e) {
+                // Not one with a handler, so it goes to the app as it is
+            } catch (CommandSyntaxException e) {
+                sendAck(cmdId, AckCompletedStatus.BAD_SYNTAX, "Bad command for apk "
+                        + slot.app.getFullName() + ": " + e.getMessage());
+                return;
+            }
+            final CommandHandler handler = decoded == null ? null
+                    : slot.app.getCommandHandler(decoded.getCommandName());
+            if (handler != null) {
+                final DecodedCommand handled = decoded;
+                callback = new Runnable() {
+                    @Override
+                    public void run() {
+                        handler.onCommand(handled);
+                    }
+                };
+            }
         }
 
-        m_apkIsRunning = false;
+        dispatch(slot, cmd, "custom command", null, callback, new AckAction() {
+            @Override
+            public void ack(boolean succeeded, String errMsg) {
+                if (succeeded)
+                    sendAck(cmdId);
+                else
+                    sendAck(cmdId, AckCompletedStatus.EXEC_FAILED, errMsg);
+            }
+        });
+    }
 
-        mCmdInfo.setCmd(cmd.getCmdId(), cmd.getCmdOrigin(), m_apkName, CmdType.STOP);
+    private interface AckAction {
+        void ack(boolean succeeded, String errMsg);
+    }
 
-        ackGuestScienceStop(true, m_apkName, "");
-        m_currentApplication.onGuestScienceStop();
+    private interface Precondition {
+        /**
+         * @return Why the command can no longer be handled, or null.
+         */
+        String check();
     }
 
-    protected void handleGuestScienceCustomCommand(CommandStamped cmd) {
-        if(!validateApkName(cmd)) {
-            return;
-        }
-        String command = cmd.getArgs().get(1).getS();
+    /**
+     * Hand a command to the app's dispatcher, acking it either now or once
+     * the app is done with it, as the dispatcher's AckMode says. When acking
+     * on completion, a precondition, if any, is checked just before the
+     * callback runs and fails the command instead if it no longer holds.
+     */
+    private void dispatch(final AppSlot slot, final CommandStamped cmd, final String what,
+                          final Precondition precondition, final Runnable callback,
+                          final AckAction ackAction) {
+        final boolean ackNow = slot.dispatcher.getAckMode() == CommandDispatcher.AckMode.ON_ENQUEUE;
+        if (ackNow)
+            ackAction.ack(true, "");
+
+        final boolean queued = slot.dispatcher.submit(what, new Runnable() {
+            @Override
+            public void run() {
+                if (!ackNow && precondition != null) {
+                    final String errMsg = precondition.check();
+                    if (errMsg != null) {
+                        ackAction.ack(false, errMsg);
+                        return;
+                    }
+                }
+                try {
+                    callback.run();
+                } catch (RuntimeException e) {
+                    logger.error("Apk " + slot.app.getFullName() + " failed to handle " + what, e);
+                    if (!ackNow)
+                        ackAction.ack(false, "Apk failed to handle " + what + ": " + e.getMessage());
+                    return;
+                }
+                if (!ackNow)
+                    ackAction.ack(true, "");
+            }
+        });
+        if (!queued && !ackNow)
+            ackAction.ack(false, "Apk " + slot.app.getFullName() + " is shutting down.");
+    }
 
-        sendAck(cmd.getCmdId());
-        m_currentApplication.onGuestScienceCustomCmd(command);
+    /**
+     * @return The command dispatcher for a hosted app, or null.
+     */
+    CommandDispatcher getCommandDispatcher(StartGuestScienceService app) {
+        synchronized (m_apps) {
+            final AppSlot slot = m_apps.get(app.getFullName());
+            return slot != null && slot.app == app ? slot.dispatcher : null;
+        }
     }
 
     @Override
@@ -171,6 +383,7 @@ public class GuestScienceNodeMain extends AbstractNodeMain implements MessageLis
     @Override
     public void onShutdownComplete(Node node) {
     	m_started = false;
+        m_shutdownLatch.countDown();
     }
 
     synchronized MessageFactory getTopicMessageFactory() {
@@ -214,45 +427,88 @@ public class GuestScienceNodeMain extends AbstractNodeMain implements MessageLis
         m_ackStampedPublisher.publish(ack);
     }
 
-    public void ackGuestScienceStart(boolean started, String apkName, String errMsg) {
-        if (started) {
-            m_apkIsRunning = true;
-            sendGuestScienceState();
-            sendAck(mCmdInfo.mId);
-        } else {
-            sendAck(mCmdInfo.mId, AckCompletedStatus.EXEC_FAILED, errMsg);
+    /**
+     * Ack a start or stop and, if it went through, publish the new state.
+     * The command is acked even when the app has since been removed, for
+     * instance by terminating in onGuestScienceStop; only the state is left
+     * alone then.
+     */
+    private void ackStartStop(AppSlot slot, CommandStamped cmd, boolean start,
+                              boolean succeeded, String errMsg) {
+        synchronized (m_apps) {
+            if (m_apps.get(slot.app.getFullName()) != slot) {
+                try {
+                    if (succeeded)
+                        sendAck(cmd.getCmdId());
+                    else
+                        sendAck(cmd.getCmdId(), AckCompletedStatus.EXEC_FAILED, errMsg);
+                } catch (AstrobeeRuntimeException e) {
+                    // The app took its own node down with it
+                    logger.warn("Unable to ack " + cmd.getCmdName() + " for removed apk "
+                            + slot.app.getFullName() + ": " + e.getMessage());
+                }
+                return;
+            }
+            if (succeeded) {
+                slot.running = start;
+                sendGuestScienceState();
+                sendAck(cmd.getCmdId());
+            } else {
+                sendAck(cmd.getCmdId(), AckCompletedStatus.EXEC_FAILED, errMsg);
+            }
+            if (slot.lastStartStop == cmd)
+                slot.willRun = slot.running;
         }
-        mCmdInfo.resetCmd();
     }
 
-    public void ackGuestScienceStop(boolean stopped, String apkName, String errMsg) {
-        if (stopped) {
-            m_apkIsRunning = false;
-            sendGuestScienceState();
-            sendAck(mCmdInfo.mId);
-        } else {
-            sendAck(mCmdInfo.mId, AckCompletedStatus.EXEC_FAILED, errMsg);
+    /**
+     * Publish which apps are running, one flag per app in config order.
+     */
+    public void sendGuestScienceState() {
+        synchronized (m_apps) {
+            GuestScienceState mState = m_gsStatePublisher.newMessage();
+            boolean[] runningApks = new boolean[m_apps.size()];
+            int i = 0;
+            for (AppSlot slot : m_apps.values()) {
+                runningApks[i++] = slot.running;
+            }
+            mState.setRunningApks(runningApks);
+            Header hdr = mMessageFactory.newFromType(Header._TYPE);
+            hdr.setStamp(mNodeConfig.getTimeProvider().getCurrentTime());
+            mState.setHeader(hdr);
+            mState.setSerial(SERIAL_NUMBER);
+            m_gsStatePublisher.publish(mState);
         }
-        mCmdInfo.resetCmd();
     }
 
-    public void sendGuestScienceState() {
-        GuestScienceState mState = m_gsStatePublisher.newMessage();
-        boolean[] runningApks = {m_apkIsRunning};
-        mState.setRunningApks(runningApks);
-        Header hdr = mMessageFactory.newFromType(Header._TYPE);
-        hdr.setStamp(mNodeConfig.getTimeProvider().getCurrentTime());
-        mState.setHeader(hdr);
-        mState.setSerial(SERIAL_NUMBER);
-        m_gsStatePublisher.publish(mState);
-    }
+    /**
+     * Publish one config listing every hosted app.
+     */
+    void publishGuestScienceConfig() {
+        synchronized (m_apps) {
+            if (m_gsConfigPublisher == null)
+                throw new AstrobeeRuntimeException("Node not ready or dead");
+
+            List<GuestScienceApk> apks = new ArrayList<>();
+            for (AppSlot slot : m_apps.values()) {
+                apks.add(toApk(slot.app));
+            }
 
-    synchronized void publishGuestScienceConfig(StartGuestScienceService app) {
-        if (m_gsConfigPublisher == null)
-            throw new AstrobeeRuntimeException("Node not ready or dead");
+            GuestScienceConfig mConfig = m_gsConfigPublisher.newMessage();
+            try {
+                mConfig.getHeader().setStamp(m_node.getCurrentTime());
+            } catch (NullPointerException e) {
+                mConfig.getHeader().setStamp(new org.ros.message.Time());
+            }
+            mConfig.setSerial(SERIAL_NUMBER);
+            mConfig.setApks(apks);
 
-        m_currentApplication = app;
-        m_apkName = app.getFullName();
+            logger.debug("Publishing " + Stringer.toString(mConfig));
+            m_gsConfigPublisher.publish(mConfig);
+        }
+    }
+
+    private GuestScienceApk toApk(StartGuestScienceService app) {
         GuestScienceApk apk = mMessageFactory.newFromType(GuestScienceApk._TYPE);
         apk.setApkName(app.getFullName());
         apk.setShortName(app.getShortName());
@@ -269,21 +525,7 @@ public class GuestScienceNodeMain extends AbstractNodeMain implements MessageLis
             }
         }
         apk.setCommands(cmds);
-
-        GuestScienceConfig mConfig = m_gsConfigPublisher.newMessage();
-        try {
-            mConfig.getHeader().setStamp(m_node.getCurrentTime());
-        } catch (NullPointerException e) {
-            mConfig.getHeader().setStamp(new org.ros.message.Time());
-        }
-        mConfig.setSerial(SERIAL_NUMBER);
-        List<GuestScienceApk> apks = new ArrayList<>();
-        apks.add(apk);
-        mConfig.setApks(apks);
-
-        logger.debug("Publishing " + Stringer.toString(mConfig));
-        m_gsConfigPublisher.publish(mConfig);
-
+        return apk;
     }
 
     /* Call this to send data from apk to ground */
@@ -329,21 +571,46 @@ public class GuestScienceNodeMain extends AbstractNodeMain implements MessageLis
         m_gsDataPublisher.publish(dataMsg);
     }
 
-    protected boolean validateApkName(CommandStamped cmd) {
+    /**
+     * @return The app the command is for, or null after failing the command
+     *         if there is no such app.
+     */
+    private AppSlot findApplication(CommandStamped cmd) {
         String incomingApkName = cmd.getArgs().get(0).getS();
-        if(m_apkName == null || !m_apkName.equals(incomingApkName)) {
+        final AppSlot slot;
+        synchronized (m_apps) {
+            slot = m_apps.get(incomingApkName);
+        }
+        if (slot == null) {
             String msg = "Unknown apk " + incomingApkName + ".";
             sendAck(cmd.getCmdId(), AckCompletedStatus.EXEC_FAILED, msg);
-            logger.error(msg);
-            return false;
+            return null;
         }
-        return true;
+        return slot;
     }
 
     public boolean isStarted() {
         return m_started;
     }
 
+    /**
+     * Wait for the node to come up.
+     *
+     * @return false if it didn't within the timeout.
+     */
+    public boolean awaitStarted(long timeout, TimeUnit unit) throws InterruptedException {
+        return m_startedLatch.await(timeout, unit);
+    }
+
+    /**
+     * Wait for the node to finish shutting down.
+     *
+     * @return false if it didn't within the timeout.
+     */
+    public boolean awaitShutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        return m_shutdownLatch.await(timeout, unit);
+    }
+
     @Override
     public GraphName getDefaultNodeName() {
         return GraphName.of("gs_manager_stub");
@@ -17,12 +17,24 @@
 
 package gov.nasa.arc.astrobee.ros.guestscience;
 
+import gov.nasa.arc.astrobee.AstrobeeException;
+import gov.nasa.arc.astrobee.RobotFactory;
+import gov.nasa.arc.astrobee.ros.DefaultRobotFactory;
 import gov.nasa.arc.astrobee.ros.RobotConfiguration;
-import gov.nasa.arc.astrobee.ros.NodeExecutorHolder;
+import gov.nasa.arc.astrobee.ros.guestscience.chunk.ChunkFormat;
+import gov.nasa.arc.astrobee.ros.guestscience.chunk.ChunkedSender;
+import gov.nasa.arc.astrobee.ros.guestscience.chunk.MessageBatcher;
+import gov.nasa.arc.astrobee.ros.guestscience.chunk.PayloadCodec;
+import gov.nasa.arc.astrobee.ros.guestscience.queue.OverflowPolicy;
+import gov.nasa.arc.astrobee.ros.guestscience.queue.SendQueue;
 import gov.nasa.arc.astrobee.ros.internal.util.MessageType;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.ros.node.NodeConfiguration;
+import ff_msgs.GuestScienceData;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Construct Manager in your main (JavaGuestScienceManager will make the
@@ -37,48 +49,346 @@ public class JavaGuestScienceManager {
     GuestScienceNodeMain m_nodeMain;
     StartGuestScienceService m_app;
 
+    // False when the node belongs to a GuestScienceHost shared with other apps
+    private final boolean m_ownsNode;
+
+    // Started along with the node when asked for, or null
+    private final RobotFactory m_robotFactory;
+
+    // For the startup and shutdown timing report
+    private final long m_createdAt = System.nanoTime();
+
+    // Sends payloads over 2K, made the first time one comes along
+    private final Object m_chunkLock = new Object();
+    private ChunkedSender m_chunkedSender = null;
+    private long m_largeDataRate = 64 * 1024;
+
+    // Packs small messages together when batching is on
+    private volatile MessageBatcher m_batcher = null;
+
+    // Compresses outgoing data when compression is on
+    private volatile PayloadCodec m_codec = null;
+
+    // Sends from a background thread when async sending is on
+    private volatile SendQueue m_sendQueue = null;
+
 
     public JavaGuestScienceManager() {
-        logger.info("JavaGuestScienceManager() ctor");
-        RobotConfiguration robotConfiguration = new RobotConfiguration();
-        final NodeConfiguration nodeConfiguration = robotConfiguration.build();
-        m_nodeMain = new GuestScienceNodeMain();
-        NodeExecutorHolder.getExecutor().execute(m_nodeMain, nodeConfiguration);
+        this(new RobotConfiguration());
+    }
+
+    public JavaGuestScienceManager(final RobotConfiguration robotConfiguration) {
+        this(robotConfiguration, false);
+    }
+
+    /**
+     * @param withRobot Also make a robot factory, see
+     *                  {@link #getRobotFactory()}. Its local robot's node is
+     *                  brought up at the same time as the guest science node
+     *                  rather than after it, and
+     *                  {@link #acceptApplication} waits for both.
+     */
+    public JavaGuestScienceManager(final RobotConfiguration robotConfiguration, boolean withRobot) {
+        // Neither waits for its node, so both come up in parallel
+        this(GuestScienceNodeMain.start(robotConfiguration),
+             withRobot ? new DefaultRobotFactory(robotConfiguration) : null, true);
+    }
+
+    JavaGuestScienceManager(final GuestScienceNodeMain nodeMain, boolean ownsNode) {
+        this(nodeMain, null, ownsNode);
+    }
 
+    private JavaGuestScienceManager(final GuestScienceNodeMain nodeMain,
+                                    final RobotFactory robotFactory,
+                                    boolean ownsNode) {
+        logger.info("JavaGuestScienceManager() ctor");
+        m_nodeMain = nodeMain;
+        m_robotFactory = robotFactory;
+        m_ownsNode = ownsNode;
         logger.info("JavaGuestScienceManager() ctor finished");
     }
 
+    /**
+     * The robot factory started along with the node, for the app to get its
+     * robot from. It is shut down with the manager.
+     *
+     * @return null unless the manager was made with a robot.
+     */
+    public RobotFactory getRobotFactory() {
+        return m_robotFactory;
+    }
+
+    /**
+     * The thread the app's command callbacks run on, to choose when
+     * commands are acked or see how far behind the app is.
+     *
+     * @return null until an application has been accepted.
+     */
+    public CommandDispatcher getCommandDispatcher() {
+        return m_app == null ? null : m_nodeMain.getCommandDispatcher(m_app);
+    }
+
+    /**
+     * @return Whether the app shares its node, and so its process, with
+     *         other apps.
+     */
+    public boolean isHosted() {
+        return !m_ownsNode;
+    }
+
     public boolean acceptApplication(StartGuestScienceService app) {
+        if (m_app != null)
+            throw new IllegalStateException("Manager already has application " + m_app.getFullName());
         m_app = app;
         m_app.acceptManager(this);
+        final long ready;
+        long robotReady = 0;
         try {
-            while (!m_nodeMain.isStarted()) {
-                Thread.sleep(250);
+            m_nodeMain.awaitStarted(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            ready = System.nanoTime();
+            if (m_robotFactory != null) {
+                m_robotFactory.getRobot();
+                robotReady = System.nanoTime();
             }
         } catch (InterruptedException e) {
             return false;
+        } catch (AstrobeeException e) {
+            logger.error("Robot node failed to start", e);
+            return false;
         }
 
-        m_nodeMain.sendGuestScienceState();
-        m_nodeMain.publishGuestScienceConfig(m_app);
+        m_nodeMain.addApplication(m_app);
 
+        logger.info("Startup: node ready after " + millisSince(m_createdAt, ready)
+                + (m_robotFactory != null ? "ms, robot ready after " + millisSince(m_createdAt, robotReady) : "")
+                + "ms, application accepted after " + millisSince(m_createdAt, System.nanoTime()) + "ms");
         return true;
     }
 
+    /**
+     * Stop sending for the app. If the node is the manager's own, also shut
+     * it down and wait for it to finish, but no longer than the given
+     * timeout; a hosted app is just removed from its host.
+     *
+     * @return false if the node was still going when the timeout ran out.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        final long start = System.nanoTime();
+        synchronized (m_chunkLock) {
+            if (m_chunkedSender != null) {
+                m_chunkedSender.shutdown();
+                m_chunkedSender = null;
+            }
+        }
+        setAsyncSend(false, 0, null);
+        setBatching(false, 0);
+        setCompression(false, null);
+        if (m_app != null && m_nodeMain.isStarted())
+            m_nodeMain.removeApplication(m_app);
+        if (!m_ownsNode)
+            return true;
+        m_nodeMain.shutdown();
+        final boolean done = m_nodeMain.awaitShutdown(timeout, unit);
+        if (done)
+            logger.info("Shutdown: node down after " + millisSince(start, System.nanoTime()) + "ms");
+        else
+            logger.warn("Shutdown: node still running after " + unit.toMillis(timeout) + "ms");
+        // Last, as it lets go of the executor once its own nodes are down
+        if (m_robotFactory != null)
+            m_robotFactory.shutdown();
+        return done;
+    }
+
+    private static long millisSince(long start, long now) {
+        return TimeUnit.NANOSECONDS.toMillis(now - start);
+    }
+
     public void sendData(MessageType type, String topic, byte[] byteData) {
+        final byte[] compressed = compress(topic, byteData, PayloadCodec.MAX_TOPIC_LENGTH);
+        if (compressed != null) {
+            topic = PayloadCodec.TOPIC_PREFIX + topic;
+            byteData = compressed;
+        }
         if (byteData.length > 2048) {
             throw new RuntimeException("Data passed to sendData function is too big to send to " +
                     "ground. Must be 2K.");
         }
-        m_nodeMain.sendGuestScienceData(m_app.getFullName(), topic, byteData, type);
+        send(type, topic, byteData);
     }
 
     public void sendData(MessageType type, String topic, String dataString) {
-        byte[] byteData = dataString.getBytes();
-        if (byteData.length > 2048) {
-            throw new RuntimeException("Data passed to sendData function is too big to send to " +
-                    "ground. Must be 2K.");
+        sendData(type, topic, dataString.getBytes());
+    }
+
+    /**
+     * Deflate data before sending it, when that makes it smaller. The size
+     * limit applies to the compressed data. Compressed data goes out on the
+     * topic with a '~' in front, for the ground to inflate with a
+     * PayloadCodec using the same dictionary.
+     *
+     * @param dictionary A preset dictionary, such as from
+     *                   PayloadCodec.buildDictionary, or {@code null}.
+     */
+    public void setCompression(boolean enabled, byte[] dictionary) {
+        final PayloadCodec old;
+        synchronized (m_chunkLock) {
+            old = m_codec;
+            m_codec = enabled ? new PayloadCodec(dictionary) : null;
+        }
+        if (old != null)
+            old.close();
+    }
+
+    /**
+     * @return The compressed data, or null to send it as it is.
+     */
+    private byte[] compress(String topic, byte[] byteData, int maxTopicLength) {
+        final PayloadCodec codec = m_codec;
+        if (codec == null || topic.length() > maxTopicLength)
+            return null;
+        return codec.compress(byteData);
+    }
+
+    /**
+     * Pack messages sent with sendData into shared 2K batches, for the
+     * ground to unpack with BatchFormat.parse. A batch goes out once full,
+     * or once its first message has waited {@code lingerMillis}. Turning
+     * batching off sends anything still waiting.
+     */
+    public void setBatching(boolean enabled, long lingerMillis) {
+        final MessageBatcher old;
+        synchronized (m_chunkLock) {
+            old = m_batcher;
+            m_batcher = !enabled ? null : new MessageBatcher(new MessageBatcher.Sink() {
+                @Override
+                public void send(byte dataType, String topic, byte[] data) {
+                    m_nodeMain.sendGuestScienceData(m_app.getFullName(), topic, data, toMessageType(dataType));
+                }
+            }, lingerMillis);
+        }
+        if (old != null)
+            old.shutdown();
+    }
+
+    /**
+     * Send data from a background thread, so sendData only has to queue it.
+     * Data must not be changed once passed to sendData. Turning async
+     * sending off sends anything still queued.
+     *
+     * @param capacity How many messages may wait, a power of two.
+     * @param policy What to do with messages sent while that many wait.
+     */
+    public void setAsyncSend(boolean enabled, int capacity, OverflowPolicy policy) {
+        final SendQueue old;
+        synchronized (m_chunkLock) {
+            old = m_sendQueue;
+            m_sendQueue = !enabled ? null : new SendQueue(capacity, policy, new SendQueue.Sink() {
+                @Override
+                public void send(byte dataType, String topic, byte[] data) {
+                    publish(toMessageType(dataType), topic, data);
+                }
+            });
+        }
+        if (old != null)
+            old.shutdown();
+    }
+
+    /**
+     * @return Enqueued, sent and dropped counts by topic while async sending
+     *         is on, or an empty map.
+     */
+    public Map<String, SendQueue.TopicCounters> getSendCounters() {
+        final SendQueue queue = m_sendQueue;
+        if (queue == null)
+            return Collections.emptyMap();
+        return queue.getCounters();
+    }
+
+    private void send(MessageType type, String topic, byte[] byteData) {
+        final SendQueue queue = m_sendQueue;
+        if (queue != null)
+            queue.offer(toDataType(type), topic, byteData);
+        else
+            publish(type, topic, byteData);
+    }
+
+    private void publish(MessageType type, String topic, byte[] byteData) {
+        final MessageBatcher batcher = m_batcher;
+        if (batcher != null)
+            batcher.add(toDataType(type), topic, byteData);
+        else
+            m_nodeMain.sendGuestScienceData(m_app.getFullName(), topic, byteData, type);
+    }
+
+    private static byte toDataType(MessageType type) {
+        if (type == MessageType.STRING) {
+            return GuestScienceData.STRING;
+        } else if (type == MessageType.JSON) {
+            return GuestScienceData.JSON;
+        } else if (type == MessageType.BINARY) {
+            return GuestScienceData.BINARY;
+        }
+        throw new IllegalArgumentException("Unknown data type " + type);
+    }
+
+    private static MessageType toMessageType(byte dataType) {
+        switch (dataType) {
+            case GuestScienceData.STRING:
+                return MessageType.STRING;
+            case GuestScienceData.JSON:
+                return MessageType.JSON;
+            default:
+                return MessageType.BINARY;
+        }
+    }
+
+    /**
+     * Send data of any size. Data that fits in one message is sent right
+     * away like {@link #sendData(MessageType, String, byte[])}. Anything
+     * bigger is queued and sent in the background as numbered frames, at
+     * the rate set by {@link #setLargeDataRate(long)}, for the ground to put
+     * back together with a ChunkReassembler.
+     */
+    public void sendLargeData(MessageType type, String topic, byte[] byteData) {
+        final byte[] compressed = compress(topic, byteData,
+                ChunkFormat.MAX_TOPIC_LENGTH - PayloadCodec.TOPIC_PREFIX.length());
+        if (compressed != null) {
+            topic = PayloadCodec.TOPIC_PREFIX + topic;
+            byteData = compressed;
+        }
+        if (byteData.length <= 2048) {
+            send(type, topic, byteData);
+            return;
+        }
+
+        getChunkedSender().send(toDataType(type), topic, byteData);
+    }
+
+    /**
+     * How fast {@link #sendLargeData} may send, in bytes per second. 64KiB/s
+     * by default.
+     */
+    public void setLargeDataRate(long bytesPerSecond) {
+        if (bytesPerSecond < ChunkFormat.MAX_FRAME_SIZE)
+            throw new IllegalArgumentException("bytesPerSecond must be at least " + ChunkFormat.MAX_FRAME_SIZE);
+        synchronized (m_chunkLock) {
+            if (m_chunkedSender != null)
+                m_chunkedSender.setRate(bytesPerSecond);
+            m_largeDataRate = bytesPerSecond;
+        }
+    }
+
+    private ChunkedSender getChunkedSender() {
+        synchronized (m_chunkLock) {
+            if (m_chunkedSender == null) {
+                m_chunkedSender = new ChunkedSender(new ChunkedSender.FrameSink() {
+                    @Override
+                    public void sendFrame(String topic, byte[] frame) {
+                        m_nodeMain.sendGuestScienceData(m_app.getFullName(), topic, frame, MessageType.BINARY);
+                    }
+                }, m_largeDataRate);
+            }
+            return m_chunkedSender;
         }
-        m_nodeMain.sendGuestScienceData(m_app.getFullName(), topic, byteData, type);
     }
 }
@@ -1,8 +1,14 @@
 package gov.nasa.arc.astrobee.ros.guestscience;
 
+import gov.nasa.arc.astrobee.ros.guestscience.command.CommandDecoder;
+import gov.nasa.arc.astrobee.ros.guestscience.command.CommandHandler;
 import gov.nasa.arc.astrobee.ros.internal.util.MessageType;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This is what they will end up implementing
@@ -17,22 +23,28 @@ public abstract class StartGuestScienceService {
     private String m_shortName;
     private boolean m_primary;
 
+    // Compiled from the command syntaxes when the app loads
+    private final CommandDecoder m_commandDecoder;
+    private final Map<String, CommandHandler> m_commandHandlers = new ConcurrentHashMap<>();
+
     public StartGuestScienceService(String xmlFilePath) {
         ApkInfo apkInfo = ApkInfoXmlParser.parseFile(xmlFilePath);
         m_fullName = apkInfo.getFullName();
         m_shortName = apkInfo.getShortName();
         m_primary = apkInfo.isPrimary();
         m_commands = apkInfo.getCommands();
+        m_commandDecoder = CommandDecoder.compile(m_commands);
     }
     
     public void terminate() {
-    	int timeout = 30;
-    	m_manager.m_nodeMain.shutdown();
-    	for(int i = 0; i<timeout; i++) {
-    		if (!m_manager.m_nodeMain.isStarted()){
-    			break;
-    		}
-    	}
+        try {
+            m_manager.shutdown(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Other apps in a GuestScienceHost keep the process going
+        if (m_manager.isHosted())
+            return;
     	System.exit(0);
     }
 
@@ -42,6 +54,40 @@ public abstract class StartGuestScienceService {
 
     public abstract void onGuestScienceCustomCmd(String command);
 
+    /**
+     * Handle a custom command with a typed handler instead of
+     * onGuestScienceCustomCmd. A command with a handler is decoded against
+     * its syntax in commands.xml first, and if it doesn't match it is
+     * failed with BAD_SYNTAX without reaching the app. Every other command
+     * still goes to onGuestScienceCustomCmd as it is.
+     *
+     * @param commandName The command's name field in its syntax.
+     */
+    public void setCommandHandler(String commandName, CommandHandler handler) {
+        if (m_commandDecoder.getSyntax(commandName) == null)
+            throw new IllegalArgumentException("No syntax for command " + commandName + " in commands.xml");
+        if (handler == null)
+            m_commandHandlers.remove(commandName);
+        else
+            m_commandHandlers.put(commandName, handler);
+    }
+
+    public CommandDecoder getCommandDecoder() {
+        return m_commandDecoder;
+    }
+
+    boolean hasCommandHandlers() {
+        return !m_commandHandlers.isEmpty();
+    }
+
+    Collection<String> getHandledCommands() {
+        return m_commandHandlers.keySet();
+    }
+
+    CommandHandler getCommandHandler(String commandName) {
+        return m_commandHandlers.get(commandName);
+    }
+
     public String getFullName() {
         return m_fullName;
     }
@@ -62,6 +108,10 @@ public abstract class StartGuestScienceService {
         m_manager.sendData(type, topic, data);
     }
 
+    public void sendLargeData(MessageType type, String topic, byte[] data) {
+        m_manager.sendLargeData(type, topic, data);
+    }
+
     public void sendStarted(String topic) {
         sendData(MessageType.JSON, topic, "{\"Summary\": \"Started\"}");
     }
@@ -0,0 +1,282 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience.command;
+
+import gov.nasa.arc.astrobee.ros.guestscience.Command;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes custom commands against the syntaxes in commands.xml, compiled
+ * once when the app loads. A command is read in one pass, straight into
+ * typed values, and anything that doesn't match its syntax is rejected
+ * before the app sees it.
+ *
+ * Which command a JSON object is comes from its discriminator field:
+ * "name" if every syntax has it, otherwise the first field of the first
+ * syntax (the Bunny Rabbit example uses "action").
+ */
+public final class CommandDecoder {
+    private static final Log logger = LogFactory.getLog(CommandDecoder.class);
+
+    private static final String DEFAULT_DISCRIMINATOR = "name";
+
+    private final String m_discriminator;
+    private final Map<String, CommandSyntax> m_syntaxes;
+
+    private CommandDecoder(String discriminator, Map<String, CommandSyntax> syntaxes) {
+        m_discriminator = discriminator;
+        m_syntaxes = syntaxes;
+    }
+
+    /**
+     * Compile the syntaxes of an app's commands. A syntax that doesn't
+     * compile is logged and left out, so only that command has to be
+     * handled the old way.
+     */
+    public static CommandDecoder compile(List<Command> commands) {
+        final String discriminator = findDiscriminator(commands);
+        final Map<String, CommandSyntax> syntaxes = new LinkedHashMap<>();
+        if (discriminator != null) {
+            for (Command command : commands) {
+                try {
+                    final CommandSyntax syntax =
+                            CommandSyntax.compile(command.getName(), discriminator, command.getSyntax());
+                    if (syntaxes.containsKey(syntax.getCommandName()))
+                        throw new CommandSyntaxException("Another command is also " + syntax.getCommandName());
+                    syntaxes.put(syntax.getCommandName(), syntax);
+                } catch (CommandSyntaxException e) {
+                    logger.warn("Can't compile the syntax of command " + command.getName() + ": " + e.getMessage());
+                }
+            }
+        }
+        return new CommandDecoder(discriminator, syntaxes);
+    }
+
+    private static String findDiscriminator(List<Command> commands) {
+        if (commands == null || commands.isEmpty())
+            return null;
+        String first = null;
+        boolean allNamed = true;
+        for (Command command : commands) {
+            final List<String> keys = new ArrayList<>();
+            try {
+                final FlatJsonScanner scanner = new FlatJsonScanner(command.getSyntax());
+                while (scanner.next())
+                    keys.add(scanner.key());
+            } catch (CommandSyntaxException e) {
+                // Reported when it's compiled
+                continue;
+            }
+            if (first == null && !keys.isEmpty())
+                first = keys.get(0);
+            allNamed &= keys.contains(DEFAULT_DISCRIMINATOR);
+        }
+        return allNamed ? DEFAULT_DISCRIMINATOR : first;
+    }
+
+    /**
+     * @return The field that says which command an object is, or null if
+     *         there are no usable syntaxes.
+     */
+    public String getDiscriminator() {
+        return m_discriminator;
+    }
+
+    /**
+     * @return The syntax for a command, by the value of its discriminator
+     *         field, or null.
+     */
+    public CommandSyntax getSyntax(String commandName) {
+        return m_syntaxes.get(commandName);
+    }
+
+    public Collection<CommandSyntax> getSyntaxes() {
+        return Collections.unmodifiableCollection(m_syntaxes.values());
+    }
+
+    /**
+     * Decode a command. Thread safe.
+     *
+     * @throws UnknownCommandException if it can't be matched to a syntax:
+     *         it isn't valid JSON up to its discriminator, or lacks one, or
+     *         names a command with no compiled syntax.
+     * @throws CommandSyntaxException if it has fields its syntax doesn't,
+     *         lacks fields its syntax has, has a value of the wrong type or
+     *         isn't valid JSON after its discriminator.
+     */
+    public DecodedCommand decode(final String text) throws CommandSyntaxException {
+        return decode(text, null);
+    }
+
+    /**
+     * Like {@link #decode(String)}, but commands not named in
+     * {@code commandNames} are unknown too. Thread safe if the collection
+     * is.
+     *
+     * @param commandNames The commands to decode, or null for all of them.
+     */
+    public DecodedCommand decode(final String text, final Collection<String> commandNames)
+            throws CommandSyntaxException {
+        if (m_discriminator == null)
+            throw new UnknownCommandException("The app has no command syntaxes");
+
+        // Fields may come in any order, and we can't know which syntax
+        // applies until the discriminator turns up, so note what we see
+        // until then.
+        final FlatJsonScanner scanner = scan(text);
+        CommandSyntax syntax = null;
+        String[] strings = null;
+        long[] values = null;
+        boolean[] seen = null;
+        List<Pending> pending = null;
+
+        while (next(scanner, syntax)) {
+            final String key = scanner.key();
+            if (key.equals(m_discriminator)) {
+                if (syntax != null)
+                    throw new CommandSyntaxException("Field " + key + " appears twice");
+                if (scanner.kind() != FlatJsonScanner.Kind.STRING)
+                    throw new UnknownCommandException("Field " + key + " must be a string");
+                final String name = scanner.stringValue();
+                if (commandNames != null && !commandNames.contains(name))
+                    throw new UnknownCommandException("Unknown command " + name);
+                syntax = m_syntaxes.get(name);
+                if (syntax == null)
+                    throw new UnknownCommandException("Unknown command " + name);
+                strings = new String[syntax.getFieldCount()];
+                values = new long[syntax.getFieldCount()];
+                seen = new boolean[syntax.getFieldCount()];
+                if (pending != null) {
+                    for (Pending p : pending)
+                        store(syntax, p.key, p.kind, p.string, p.bits, strings, values, seen);
+                }
+            } else if (syntax != null) {
+                store(syntax, key, scanner.kind(), scanner.stringValue(), bits(scanner), strings, values, seen);
+            } else {
+                if (pending == null)
+                    pending = new ArrayList<>(4);
+                pending.add(new Pending(key, scanner.kind(), scanner.stringValue(), bits(scanner)));
+            }
+        }
+
+        if (syntax == null)
+            throw new UnknownCommandException("Command has no " + m_discriminator + " field");
+        for (int i = 0; i < seen.length; i++) {
+            if (!seen[i])
+                throw new CommandSyntaxException("Command " + syntax.getCommandName()
+                        + " is missing field " + syntax.fieldName(i));
+        }
+        return new DecodedCommand(syntax, text, strings, values);
+    }
+
+    /**
+     * Move to the next field. Until the syntax is known, JSON that doesn't
+     * scan means the command can't be matched to one.
+     */
+    private static boolean next(FlatJsonScanner scanner, CommandSyntax syntax) throws CommandSyntaxException {
+        if (syntax != null)
+            return scanner.next();
+        try {
+            return scanner.next();
+        } catch (CommandSyntaxException e) {
+            throw new UnknownCommandException(e.getMessage());
+        }
+    }
+
+    private static FlatJsonScanner scan(String text) throws UnknownCommandException {
+        try {
+            return new FlatJsonScanner(text);
+        } catch (CommandSyntaxException e) {
+            throw new UnknownCommandException(e.getMessage());
+        }
+    }
+
+    private static long bits(FlatJsonScanner scanner) {
+        switch (scanner.kind()) {
+            case INTEGER:
+                return scanner.longValue();
+            case NUMBER:
+                return Double.doubleToRawLongBits(scanner.doubleValue());
+            case BOOLEAN:
+                return scanner.booleanValue() ? 1 : 0;
+            default:
+                return 0;
+        }
+    }
+
+    private static void store(CommandSyntax syntax, String key, FlatJsonScanner.Kind kind,
+                              String string, long bits, String[] strings, long[] values, boolean[] seen)
+            throws CommandSyntaxException {
+        final int index = syntax.indexOf(key);
+        if (index < 0)
+            throw new CommandSyntaxException("Command " + syntax.getCommandName() + " has no field " + key);
+        if (seen[index])
+            throw new CommandSyntaxException("Field " + key + " appears twice");
+        seen[index] = true;
+
+        final CommandSyntax.FieldType expected = syntax.getFieldType(index);
+        final CommandSyntax.FieldType actual = CommandSyntax.toFieldType(kind);
+        if (expected == CommandSyntax.FieldType.NUMBER && actual == CommandSyntax.FieldType.INTEGER) {
+            // A whole number will do for a number
+            values[index] = Double.doubleToRawLongBits(bits);
+            return;
+        }
+        if (expected != actual)
+            throw new CommandSyntaxException("Field " + key + " must be " + describe(expected));
+        if (actual == CommandSyntax.FieldType.STRING)
+            strings[index] = string;
+        else
+            values[index] = bits;
+    }
+
+    private static String describe(CommandSyntax.FieldType type) {
+        switch (type) {
+            case STRING:
+                return "a string";
+            case INTEGER:
+                return "a whole number";
+            case NUMBER:
+                return "a number";
+            default:
+                return "true or false";
+        }
+    }
+
+    private static final class Pending {
+        final String key;
+        final FlatJsonScanner.Kind kind;
+        final String string;
+        final long bits;
+
+        Pending(String key, FlatJsonScanner.Kind kind, String string, long bits) {
+            this.key = key;
+            this.kind = kind;
+            this.string = string;
+            this.bits = bits;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience.command;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One command's syntax from commands.xml, compiled. The syntax is an example
+ * of the command, and the type of each example value is the type that
+ * field must have: a quoted string, a whole number, a number or a boolean.
+ * A whole number is also accepted where a number is expected.
+ */
+public final class CommandSyntax {
+    public enum FieldType { STRING, INTEGER, NUMBER, BOOLEAN }
+
+    private final String m_name;
+    private final String m_discriminator;
+    private final String m_value;
+    private final String[] m_fields;
+    private final FieldType[] m_types;
+    private final Map<String, Integer> m_indices = new HashMap<>();
+
+    private CommandSyntax(String name, String discriminator, String value,
+                          List<String> fields, List<FieldType> types) {
+        m_name = name;
+        m_discriminator = discriminator;
+        m_value = value;
+        m_fields = fields.toArray(new String[fields.size()]);
+        m_types = types.toArray(new FieldType[types.size()]);
+        for (int i = 0; i < m_fields.length; i++)
+            m_indices.put(m_fields[i], i);
+    }
+
+    /**
+     * @param name The command's display name.
+     * @param discriminator The field naming the command, usually "name".
+     * @param syntax The example command.
+     */
+    static CommandSyntax compile(String name, String discriminator, String syntax)
+            throws CommandSyntaxException {
+        final List<String> fields = new ArrayList<>();
+        final List<FieldType> types = new ArrayList<>();
+        String value = null;
+        final FlatJsonScanner scanner = new FlatJsonScanner(syntax);
+        while (scanner.next()) {
+            if (fields.contains(scanner.key()))
+                throw new CommandSyntaxException("Field " + scanner.key() + " appears twice");
+            if (scanner.key().equals(discriminator)) {
+                if (scanner.kind() != FlatJsonScanner.Kind.STRING)
+                    throw new CommandSyntaxException("Field " + discriminator + " must be a string");
+                value = scanner.stringValue();
+                continue;
+            }
+            fields.add(scanner.key());
+            types.add(toFieldType(scanner.kind()));
+        }
+        if (value == null)
+            throw new CommandSyntaxException("Syntax has no " + discriminator + " field");
+        return new CommandSyntax(name, discriminator, value, fields, types);
+    }
+
+    static FieldType toFieldType(FlatJsonScanner.Kind kind) {
+        switch (kind) {
+            case STRING:
+                return FieldType.STRING;
+            case INTEGER:
+                return FieldType.INTEGER;
+            case NUMBER:
+                return FieldType.NUMBER;
+            default:
+                return FieldType.BOOLEAN;
+        }
+    }
+
+    /**
+     * @return The command's display name in commands.xml.
+     */
+    public String getName() {
+        return m_name;
+    }
+
+    /**
+     * @return The field that says which command this is.
+     */
+    public String getDiscriminator() {
+        return m_discriminator;
+    }
+
+    /**
+     * @return The value of the discriminator field for this command, which
+     *         is what handlers are registered under.
+     */
+    public String getCommandName() {
+        return m_value;
+    }
+
+    /**
+     * @return The fields besides the discriminator, in syntax order.
+     */
+    public List<String> getFields() {
+        return Collections.unmodifiableList(Arrays.asList(m_fields));
+    }
+
+    public int getFieldCount() {
+        return m_fields.length;
+    }
+
+    public FieldType getFieldType(int index) {
+        return m_types[index];
+    }
+
+    /**
+     * @return The field's index, or -1 if the syntax doesn't have it.
+     */
+    public int indexOf(String field) {
+        final Integer index = m_indices.get(field);
+        return index == null ? -1 : index;
+    }
+
+    String fieldName(int index) {
+        return m_fields[index];
+    }
+}
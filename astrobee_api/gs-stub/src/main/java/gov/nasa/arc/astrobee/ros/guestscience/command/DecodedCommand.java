@@ -0,0 +1,127 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience.command;
+
+/**
+ * A custom command that matched its syntax. Every field in the syntax is
+ * present with the right type. Values are kept unboxed, so reading them
+ * by index is cheap; reading by name looks the index up first.
+ */
+public final class DecodedCommand {
+    private final CommandSyntax m_syntax;
+    private final String m_text;
+    private final String[] m_strings;
+    // Whole numbers, numbers as raw double bits, and booleans as 0 or 1
+    private final long[] m_values;
+
+    DecodedCommand(CommandSyntax syntax, String text, String[] strings, long[] values) {
+        m_syntax = syntax;
+        m_text = text;
+        m_strings = strings;
+        m_values = values;
+    }
+
+    public CommandSyntax getSyntax() {
+        return m_syntax;
+    }
+
+    /**
+     * @return The value of the discriminator field.
+     */
+    public String getCommandName() {
+        return m_syntax.getCommandName();
+    }
+
+    /**
+     * @return The command as it was received.
+     */
+    public String getText() {
+        return m_text;
+    }
+
+    public String getString(String field) {
+        return getString(index(field));
+    }
+
+    public String getString(int index) {
+        check(index, CommandSyntax.FieldType.STRING);
+        return m_strings[index];
+    }
+
+    public long getLong(String field) {
+        return getLong(index(field));
+    }
+
+    public long getLong(int index) {
+        check(index, CommandSyntax.FieldType.INTEGER);
+        return m_values[index];
+    }
+
+    public int getInt(String field) {
+        return getInt(index(field));
+    }
+
+    public int getInt(int index) {
+        final long value = getLong(index);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+            throw new ArithmeticException("Field " + m_syntax.fieldName(index) + " does not fit in an int");
+        return (int) value;
+    }
+
+    /**
+     * Works for whole number fields too.
+     */
+    public double getDouble(String field) {
+        return getDouble(index(field));
+    }
+
+    public double getDouble(int index) {
+        if (m_syntax.getFieldType(index) == CommandSyntax.FieldType.INTEGER)
+            return m_values[index];
+        check(index, CommandSyntax.FieldType.NUMBER);
+        return Double.longBitsToDouble(m_values[index]);
+    }
+
+    public boolean getBoolean(String field) {
+        return getBoolean(index(field));
+    }
+
+    public boolean getBoolean(int index) {
+        check(index, CommandSyntax.FieldType.BOOLEAN);
+        return m_values[index] != 0;
+    }
+
+    private int index(String field) {
+        final int index = m_syntax.indexOf(field);
+        if (index < 0)
+            throw new IllegalArgumentException("Command " + getCommandName() + " has no field " + field);
+        return index;
+    }
+
+    private void check(int index, CommandSyntax.FieldType type) {
+        if (m_syntax.getFieldType(index) != type)
+            throw new IllegalArgumentException("Field " + m_syntax.fieldName(index) + " of command "
+                    + getCommandName() + " is " + m_syntax.getFieldType(index) + ", not " + type);
+    }
+
+    @Override
+    public String toString() {
+        return m_text;
+    }
+}
@@ -0,0 +1,230 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience.command;
+
+/**
+ * Reads a flat JSON object, one member at a time, without building a tree.
+ * Values must be strings, numbers or booleans; commands.xml syntaxes have
+ * nothing else.
+ */
+final class FlatJsonScanner {
+    enum Kind { STRING, INTEGER, NUMBER, BOOLEAN }
+
+    private final String m_text;
+    private int m_pos = 0;
+    private boolean m_first = true;
+
+    // The member just read by next()
+    private String m_key;
+    private Kind m_kind;
+    private String m_string;
+    private long m_long;
+    private double m_double;
+    private boolean m_boolean;
+
+    FlatJsonScanner(final String text) throws CommandSyntaxException {
+        m_text = text;
+        skipSpace();
+        expect('{');
+    }
+
+    /**
+     * Read the next member.
+     *
+     * @return false at the end of the object.
+     */
+    boolean next() throws CommandSyntaxException {
+        skipSpace();
+        if (peek() == '}') {
+            m_pos++;
+            skipSpace();
+            if (m_pos != m_text.length())
+                throw error("Unexpected text after the command");
+            return false;
+        }
+        if (!m_first) {
+            expect(',');
+            skipSpace();
+        }
+        m_first = false;
+
+        if (peek() != '"')
+            throw error("Expected a field name");
+        m_key = readString();
+        skipSpace();
+        expect(':');
+        skipSpace();
+        readValue();
+        return true;
+    }
+
+    String key() {
+        return m_key;
+    }
+
+    Kind kind() {
+        return m_kind;
+    }
+
+    String stringValue() {
+        return m_string;
+    }
+
+    long longValue() {
+        return m_long;
+    }
+
+    double doubleValue() {
+        return m_kind == Kind.INTEGER ? m_long : m_double;
+    }
+
+    boolean booleanValue() {
+        return m_boolean;
+    }
+
+    private void readValue() throws CommandSyntaxException {
+        final char c = peek();
+        if (c == '"') {
+            m_kind = Kind.STRING;
+            m_string = readString();
+        } else if (c == '-' || (c >= '0' && c <= '9')) {
+            readNumber();
+        } else if (m_text.startsWith("true", m_pos)) {
+            m_pos += 4;
+            m_kind = Kind.BOOLEAN;
+            m_boolean = true;
+        } else if (m_text.startsWith("false", m_pos)) {
+            m_pos += 5;
+            m_kind = Kind.BOOLEAN;
+            m_boolean = false;
+        } else if (c == '{' || c == '[') {
+            throw error("Field " + m_key + " may not be an object or array");
+        } else {
+            throw error("Field " + m_key + " has no valid value");
+        }
+    }
+
+    private void readNumber() throws CommandSyntaxException {
+        final int start = m_pos;
+        boolean integer = true;
+        if (peek() == '-')
+            m_pos++;
+        digits();
+        if (peek() == '.') {
+            integer = false;
+            m_pos++;
+            digits();
+        }
+        if (peek() == 'e' || peek() == 'E') {
+            integer = false;
+            m_pos++;
+            if (peek() == '+' || peek() == '-')
+                m_pos++;
+            digits();
+        }
+        final String number = m_text.substring(start, m_pos);
+        try {
+            if (integer) {
+                m_kind = Kind.INTEGER;
+                m_long = Long.parseLong(number);
+            } else {
+                m_kind = Kind.NUMBER;
+                m_double = Double.parseDouble(number);
+            }
+        } catch (NumberFormatException e) {
+            throw error("Field " + m_key + " has a bad number " + number);
+        }
+    }
+
+    private void digits() throws CommandSyntaxException {
+        final int start = m_pos;
+        while (m_pos < m_text.length() && m_text.charAt(m_pos) >= '0' && m_text.charAt(m_pos) <= '9')
+            m_pos++;
+        if (m_pos == start)
+            throw error("Expected a digit");
+    }
+
+    private String readString() throws CommandSyntaxException {
+        m_pos++;
+        final int start = m_pos;
+        // Most strings have no escapes, so don't copy them a char at a time
+        while (m_pos < m_text.length()) {
+            final char c = m_text.charAt(m_pos);
+            if (c == '"')
+                return m_text.substring(start, m_pos++);
+            if (c == '\\')
+                break;
+            m_pos++;
+        }
+
+        final StringBuilder sb = new StringBuilder(m_text.substring(start, m_pos));
+        while (m_pos < m_text.length()) {
+            final char c = m_text.charAt(m_pos++);
+            if (c == '"')
+                return sb.toString();
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (m_pos >= m_text.length())
+                break;
+            final char e = m_text.charAt(m_pos++);
+            switch (e) {
+                case '"': case '\\': case '/': sb.append(e); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    if (m_pos + 4 > m_text.length())
+                        throw error("Bad unicode escape");
+                    try {
+                        sb.append((char) Integer.parseInt(m_text.substring(m_pos, m_pos + 4), 16));
+                    } catch (NumberFormatException ex) {
+                        throw error("Bad unicode escape");
+                    }
+                    m_pos += 4;
+                    break;
+                default:
+                    throw error("Bad escape \\" + e);
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private char peek() {
+        return m_pos < m_text.length() ? m_text.charAt(m_pos) : '\0';
+    }
+
+    private void expect(char c) throws CommandSyntaxException {
+        if (peek() != c)
+            throw error("Expected '" + c + "'");
+        m_pos++;
+    }
+
+    private void skipSpace() {
+        while (m_pos < m_text.length() && Character.isWhitespace(m_text.charAt(m_pos)))
+            m_pos++;
+    }
+
+    private CommandSyntaxException error(String message) {
+        return new CommandSyntaxException(message + " at character " + m_pos);
+    }
+}
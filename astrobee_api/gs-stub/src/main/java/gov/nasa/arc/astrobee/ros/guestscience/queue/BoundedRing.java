@@ -0,0 +1,109 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience.queue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer (after Vyukov). Each slot carries a sequence
+ * number saying whose turn it is, so producers and consumers only contend
+ * on a CAS of the tail or head. Any thread may poll, which is what lets a
+ * producer drop the oldest item when the ring is full.
+ */
+final class BoundedRing<E> {
+    private final int m_mask;
+    private final AtomicReferenceArray<E> m_items;
+    private final AtomicLongArray m_sequences;
+    private final AtomicLong m_tail = new AtomicLong();
+    private final AtomicLong m_head = new AtomicLong();
+
+    BoundedRing(final int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("capacity must be a power of two");
+        m_mask = capacity - 1;
+        m_items = new AtomicReferenceArray<>(capacity);
+        m_sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++)
+            m_sequences.set(i, i);
+    }
+
+    int capacity() {
+        return m_mask + 1;
+    }
+
+    /**
+     * @return {@code false} if the ring is full.
+     */
+    boolean offer(final E item) {
+        while (true) {
+            final long pos = m_tail.get();
+            final int index = (int) (pos & m_mask);
+            final long diff = m_sequences.get(index) - pos;
+            if (diff == 0) {
+                if (m_tail.compareAndSet(pos, pos + 1)) {
+                    m_items.lazySet(index, item);
+                    // Publishes the item to consumers
+                    m_sequences.set(index, pos + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+            // Another producer got this slot first, try the next one
+        }
+    }
+
+    /**
+     * @return The oldest item, or {@code null} if there is none.
+     */
+    E poll() {
+        while (true) {
+            final long pos = m_head.get();
+            final int index = (int) (pos & m_mask);
+            final long diff = m_sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (m_head.compareAndSet(pos, pos + 1)) {
+                    final E item = m_items.get(index);
+                    m_items.lazySet(index, null);
+                    // Hands the slot back to producers
+                    m_sequences.set(index, pos + m_mask + 1);
+                    return item;
+                }
+            } else if (diff < 0) {
+                return null;
+            }
+            // Another consumer took this item first, try the next one
+        }
+    }
+
+    boolean isEmpty() {
+        final long pos = m_head.get();
+        return m_sequences.get((int) (pos & m_mask)) != pos + 1;
+    }
+
+    /**
+     * @return Roughly how many items are waiting.
+     */
+    int size() {
+        final long size = m_tail.get() - m_head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+}
@@ -0,0 +1,299 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience.queue;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Moves sending guest science data off the caller's thread. Callers put
+ * messages in a {@link BoundedRing}, which costs them a CAS in the common
+ * case, and a dedicated thread hands them to the {@link Sink} in order.
+ * What happens when the ring is full is up to the {@link OverflowPolicy}.
+ */
+public final class SendQueue {
+    private static final Log logger = LogFactory.getLog(SendQueue.class);
+
+    /**
+     * Where messages are sent, on the queue's thread.
+     */
+    public interface Sink {
+        void send(byte dataType, String topic, byte[] data);
+    }
+
+    /**
+     * Running totals for one topic.
+     */
+    public static final class TopicCounters {
+        private final AtomicLong m_enqueued = new AtomicLong();
+        private final AtomicLong m_sent = new AtomicLong();
+        private final AtomicLong m_dropped = new AtomicLong();
+
+        TopicCounters() { }
+
+        public long getEnqueued() {
+            return m_enqueued.get();
+        }
+
+        public long getSent() {
+            return m_sent.get();
+        }
+
+        /**
+         * @return Messages lost to the overflow policy, to shutdown or to
+         *         errors sending them.
+         */
+        public long getDropped() {
+            return m_dropped.get();
+        }
+
+        @Override
+        public String toString() {
+            return "enqueued=" + getEnqueued() + " sent=" + getSent() + " dropped=" + getDropped();
+        }
+    }
+
+    private static final class Entry {
+        final byte dataType;
+        final String topic;
+        final byte[] data;
+        final TopicCounters counters;
+
+        Entry(byte dataType, String topic, byte[] data, TopicCounters counters) {
+            this.dataType = dataType;
+            this.topic = topic;
+            this.data = data;
+            this.counters = counters;
+        }
+    }
+
+    private final BoundedRing<Entry> m_ring;
+    private final OverflowPolicy m_policy;
+    private final Sink m_sink;
+    private final Thread m_thread;
+    private volatile boolean m_waiting = false;
+    private volatile boolean m_running = true;
+
+    // Senders waiting for room under BLOCK. The count only changes under
+    // the lock, and the sender thread reads it after every poll.
+    private final ReentrantLock m_roomLock = new ReentrantLock();
+    private final Condition m_room = m_roomLock.newCondition();
+    private volatile int m_blocked = 0;
+
+    private final ConcurrentMap<String, TopicCounters> m_counters = new ConcurrentHashMap<>();
+
+    /**
+     * @param capacity How many messages may wait, a power of two.
+     * @param policy What to do when that many are already waiting.
+     * @param sink Where to send.
+     */
+    public SendQueue(int capacity, final OverflowPolicy policy, final Sink sink) {
+        if (policy == null || sink == null)
+            throw new NullPointerException("policy and sink may not be null");
+        m_ring = new BoundedRing<>(capacity);
+        m_policy = policy;
+        m_sink = sink;
+        m_thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "Guest Science Sender");
+        m_thread.setDaemon(true);
+        m_thread.start();
+    }
+
+    public OverflowPolicy getPolicy() {
+        return m_policy;
+    }
+
+    public int getCapacity() {
+        return m_ring.capacity();
+    }
+
+    /**
+     * @return Roughly how many messages are waiting.
+     */
+    public int getQueued() {
+        return m_ring.size();
+    }
+
+    /**
+     * Queue a message. Only waits if the queue is full and the policy is
+     * {@link OverflowPolicy#BLOCK}.
+     *
+     * @return {@code false} if the message was dropped.
+     */
+    public boolean offer(byte dataType, String topic, byte[] data) {
+        final TopicCounters counters = countersFor(topic);
+        counters.m_enqueued.incrementAndGet();
+        if (!m_running) {
+            counters.m_dropped.incrementAndGet();
+            return false;
+        }
+
+        final Entry entry = new Entry(dataType, topic, data, counters);
+        while (!m_ring.offer(entry)) {
+            if (m_policy == OverflowPolicy.DROP_NEWEST || !m_running) {
+                counters.m_dropped.incrementAndGet();
+                return false;
+            } else if (m_policy == OverflowPolicy.DROP_OLDEST) {
+                final Entry oldest = m_ring.poll();
+                if (oldest != null)
+                    oldest.counters.m_dropped.incrementAndGet();
+            } else if (awaitRoom(entry)) {
+                break;
+            } else {
+                counters.m_dropped.incrementAndGet();
+                return false;
+            }
+        }
+        if (!m_running) {
+            // Raced with shutdown; the sender may have gone without it
+            drainAfterShutdown();
+        } else if (m_waiting) {
+            LockSupport.unpark(m_thread);
+        }
+        return true;
+    }
+
+    /**
+     * Wait until the entry fits, for {@link OverflowPolicy#BLOCK}.
+     *
+     * @return {@code false} if the queue was shut down first.
+     */
+    private boolean awaitRoom(final Entry entry) {
+        m_roomLock.lock();
+        m_blocked++;
+        try {
+            // The sender thread reads m_blocked after it frees a slot, and
+            // we try the ring again after raising it, so one of us notices.
+            while (m_running) {
+                if (m_ring.offer(entry))
+                    return true;
+                LockSupport.unpark(m_thread);
+                m_room.awaitUninterruptibly();
+            }
+            return false;
+        } finally {
+            m_blocked--;
+            m_roomLock.unlock();
+        }
+    }
+
+    private void signalRoom(final boolean all) {
+        m_roomLock.lock();
+        try {
+            if (all)
+                m_room.signalAll();
+            else
+                m_room.signal();
+        } finally {
+            m_roomLock.unlock();
+        }
+    }
+
+    private TopicCounters countersFor(String topic) {
+        TopicCounters counters = m_counters.get(topic);
+        if (counters == null) {
+            final TopicCounters created = new TopicCounters();
+            counters = m_counters.putIfAbsent(topic, created);
+            if (counters == null)
+                counters = created;
+        }
+        return counters;
+    }
+
+    /**
+     * @return Counters by topic, live and read-only. Topics are as sent, so
+     *         include any compression marker.
+     */
+    public Map<String, TopicCounters> getCounters() {
+        return Collections.unmodifiableMap(m_counters);
+    }
+
+    /**
+     * Stop after sending everything already queued, waiting up to a second
+     * for that.
+     */
+    public void shutdown() {
+        m_running = false;
+        signalRoom(true);
+        LockSupport.unpark(m_thread);
+        try {
+            m_thread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (m_thread.isAlive()) {
+            logger.warn("Guest science sender still busy after shutdown, " + getQueued() + " messages waiting");
+            return;
+        }
+        drainAfterShutdown();
+    }
+
+    // Count whatever raced in after the sender stopped as dropped
+    private void drainAfterShutdown() {
+        if (m_thread.isAlive())
+            return;
+        Entry entry;
+        while ((entry = m_ring.poll()) != null)
+            entry.counters.m_dropped.incrementAndGet();
+    }
+
+    private void drain() {
+        while (true) {
+            final Entry entry = m_ring.poll();
+            if (entry != null) {
+                if (m_blocked > 0)
+                    signalRoom(false);
+                try {
+                    m_sink.send(entry.dataType, entry.topic, entry.data);
+                    entry.counters.m_sent.incrementAndGet();
+                } catch (RuntimeException e) {
+                    logger.error("Unable to send guest science data on " + entry.topic, e);
+                    entry.counters.m_dropped.incrementAndGet();
+                }
+                continue;
+            }
+            if (!m_running)
+                return;
+
+            // offer() publishes its entry and then reads m_waiting; we set
+            // m_waiting and then look at the ring. Whichever goes second
+            // sees the other, so no timeout is needed. The loop only guards
+            // against spurious returns from park.
+            m_waiting = true;
+            while (m_ring.isEmpty() && m_running)
+                LockSupport.park(this);
+            m_waiting = false;
+        }
+    }
+}
@@ -0,0 +1,377 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience;
+
+import ff_msgs.AckCompletedStatus;
+import ff_msgs.AckStamped;
+import ff_msgs.CommandArg;
+import ff_msgs.CommandConstants;
+import ff_msgs.CommandStamped;
+import gov.nasa.arc.astrobee.ros.guestscience.command.CommandHandler;
+import gov.nasa.arc.astrobee.ros.guestscience.command.DecodedCommand;
+import gov.nasa.arc.astrobee.ros.internal.util.Constants;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.message.MessageFactory;
+import org.ros.message.Time;
+import org.ros.namespace.GraphName;
+import org.ros.node.ConnectedNode;
+import org.ros.node.NodeConfiguration;
+import org.ros.node.topic.Publisher;
+import org.ros.node.topic.Subscriber;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class GuestScienceNodeMainTest {
+    private static final String APK = "gov.nasa.arc.irg.test_apk";
+
+    private final MessageFactory m_factory = NodeConfiguration.newPrivate().getTopicMessageFactory();
+    // Acks as "cmdId status message", in the order they were published
+    private final List<String> m_acks = new ArrayList<>();
+    private final GuestScienceNodeMain m_nodeMain = new GuestScienceNodeMain();
+    private int m_nextId = 0;
+
+    /**
+     * Blocks in onGuestScienceStart until let go, and can be made to fail.
+     */
+    private static final class App extends StartGuestScienceService {
+        final CountDownLatch startEntered = new CountDownLatch(1);
+        volatile CountDownLatch startGate = new CountDownLatch(0);
+        volatile boolean failStart = false;
+        // Run in onGuestScienceStop, as an app terminating itself would
+        volatile Runnable onStop = null;
+        final AtomicInteger starts = new AtomicInteger();
+        final AtomicInteger stops = new AtomicInteger();
+        final List<String> customCommands = new CopyOnWriteArrayList<>();
+
+        App(String xmlFilePath) {
+            super(xmlFilePath);
+        }
+
+        @Override
+        public void onGuestScienceStart() {
+            starts.incrementAndGet();
+            startEntered.countDown();
+            try {
+                startGate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failStart)
+                throw new IllegalStateException("no sensor");
+        }
+
+        @Override
+        public void onGuestScienceStop() {
+            stops.incrementAndGet();
+            if (onStop != null)
+                onStop.run();
+        }
+
+        @Override
+        public void onGuestScienceCustomCmd(String command) {
+            customCommands.add(command);
+        }
+    }
+
+    private File m_xml;
+    private App m_app;
+
+    @Before
+    public void setUp() throws IOException {
+        m_nodeMain.onStart(fakeNode());
+        m_xml = File.createTempFile("commands", ".xml");
+        final Writer writer = new FileWriter(m_xml);
+        try {
+            writer.write("<apkInfo><fullName>" + APK + "</fullName><primary>false</primary><commands>"
+                    + "<command name=\"Hop\" syntax=\"{&quot;name&quot;: &quot;hop&quot;, &quot;height&quot;: 1}\"/>"
+                    + "<command name=\"Stop\" syntax=\"{&quot;name&quot;: &quot;stop&quot;}\"/>"
+                    + "</commands></apkInfo>");
+        } finally {
+            writer.close();
+        }
+        m_app = new App(m_xml.getPath());
+        m_nodeMain.addApplication(m_app);
+        m_nodeMain.getCommandDispatcher(m_app).setAckMode(CommandDispatcher.AckMode.ON_COMPLETION);
+    }
+
+    @After
+    public void tearDown() {
+        m_app.startGate.countDown();
+        m_nodeMain.removeApplication(m_app);
+        m_xml.delete();
+    }
+
+    @Test
+    public void stopDuringStartWaitsForIt() throws Exception {
+        m_app.startGate = new CountDownLatch(1);
+        final String start = send(CommandConstants.CMD_NAME_START_GUEST_SCIENCE);
+        assertTrue(m_app.startEntered.await(10, TimeUnit.SECONDS));
+
+        final String stop = send(CommandConstants.CMD_NAME_STOP_GUEST_SCIENCE);
+        assertEquals(0, acks().size());
+
+        m_app.startGate.countDown();
+        awaitAcks(2);
+        assertEquals(ok(start), acks().get(0));
+        assertEquals(ok(stop), acks().get(1));
+        assertEquals(1, m_app.stops.get());
+    }
+
+    @Test
+    public void stopBehindFailedStartIsFailed() throws Exception {
+        m_app.startGate = new CountDownLatch(1);
+        m_app.failStart = true;
+        final String start = send(CommandConstants.CMD_NAME_START_GUEST_SCIENCE);
+        assertTrue(m_app.startEntered.await(10, TimeUnit.SECONDS));
+        final String stop = send(CommandConstants.CMD_NAME_STOP_GUEST_SCIENCE);
+
+        m_app.startGate.countDown();
+        awaitAcks(2);
+        assertTrue(acks().get(0).startsWith(start + " " + AckCompletedStatus.EXEC_FAILED));
+        assertEquals(failed(stop, "Apk " + APK + " is already stopped."), acks().get(1));
+        assertEquals(0, m_app.stops.get());
+
+        // Nothing is left pending, so the app can be started again
+        m_app.failStart = false;
+        final String again = send(CommandConstants.CMD_NAME_START_GUEST_SCIENCE);
+        awaitAcks(3);
+        assertEquals(ok(again), acks().get(2));
+    }
+
+    @Test
+    public void secondStartIsFailed() throws Exception {
+        m_app.startGate = new CountDownLatch(1);
+        final String start = send(CommandConstants.CMD_NAME_START_GUEST_SCIENCE);
+        assertTrue(m_app.startEntered.await(10, TimeUnit.SECONDS));
+
+        final String again = send(CommandConstants.CMD_NAME_START_GUEST_SCIENCE);
+        assertEquals(failed(again, "Apk " + APK + " is already starting."), acks().get(0));
+
+        m_app.startGate.countDown();
+        awaitAcks(2);
+        assertEquals(ok(start), acks().get(1));
+        assertEquals(1, m_app.starts.get());
+
+        final String third = send(CommandConstants.CMD_NAME_START_GUEST_SCIENCE);
+        assertEquals(failed(third, "Apk " + APK + " is already running."), acks().get(2));
+    }
+
+    @Test
+    public void stopWhenStoppedIsFailed() {
+        final String stop = send(CommandConstants.CMD_NAME_STOP_GUEST_SCIENCE);
+        assertEquals(failed(stop, "Apk " + APK + " is already stopped."), acks().get(0));
+    }
+
+    @Test
+    public void stopIsAckedWhenTheAppRemovesItself() throws Exception {
+        final String start = send(CommandConstants.CMD_NAME_START_GUEST_SCIENCE);
+        awaitAcks(1);
+        assertEquals(ok(start), acks().get(0));
+
+        m_app.onStop = new Runnable() {
+            @Override
+            public void run() {
+                m_nodeMain.removeApplication(m_app);
+            }
+        };
+        final String stop = send(CommandConstants.CMD_NAME_STOP_GUEST_SCIENCE);
+        awaitAcks(2);
+        assertEquals(ok(stop), acks().get(1));
+        assertNull(m_nodeMain.getCommandDispatcher(m_app));
+    }
+
+    @Test
+    public void customCommandsWithoutAHandlerGoToTheApp() throws Exception {
+        final List<Integer> hops = new CopyOnWriteArrayList<>();
+        m_app.setCommandHandler("hop", new CommandHandler() {
+            @Override
+            public void onCommand(DecodedCommand command) {
+                hops.add(command.getInt("height"));
+            }
+        });
+
+        final String hop = sendCustom("{\"name\": \"hop\", \"height\": 3}");
+        final String badHop = sendCustom("{\"name\": \"hop\", \"height\": \"high\"}");
+        // A syntax but no handler, and not even checked against the syntax
+        final String stop = sendCustom("{\"name\": \"stop\", \"now\": true}");
+        // No syntax at all
+        final String dance = sendCustom("{\"name\": \"dance\"}");
+        final String legacy = sendCustom("dance");
+        awaitAcks(5);
+
+        assertTrue(acks().contains(ok(hop)));
+        assertTrue(acks().contains(ok(stop)));
+        assertTrue(acks().contains(ok(dance)));
+        assertTrue(acks().contains(ok(legacy)));
+        boolean badHopFailed = false;
+        for (String ack : acks())
+            badHopFailed |= ack.startsWith(badHop + " " + AckCompletedStatus.BAD_SYNTAX);
+        assertTrue(badHopFailed);
+
+        assertEquals(Arrays.asList(3), hops);
+        assertEquals(Arrays.asList("{\"name\": \"stop\", \"now\": true}", "{\"name\": \"dance\"}", "dance"),
+                     m_app.customCommands);
+    }
+
+    @Test
+    public void startAndStopAckedOnEnqueue() throws Exception {
+        m_nodeMain.getCommandDispatcher(m_app).setAckMode(CommandDispatcher.AckMode.ON_ENQUEUE);
+        m_app.startGate = new CountDownLatch(1);
+        final String start = send(CommandConstants.CMD_NAME_START_GUEST_SCIENCE);
+        final String stop = send(CommandConstants.CMD_NAME_STOP_GUEST_SCIENCE);
+        assertEquals(ok(start), acks().get(0));
+        assertEquals(ok(stop), acks().get(1));
+
+        m_app.startGate.countDown();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (m_app.stops.get() == 0 && System.nanoTime() < deadline)
+            Thread.sleep(1);
+        assertEquals(1, m_app.stops.get());
+    }
+
+    private String send(String cmdName) {
+        final CommandStamped cmd = m_factory.newFromType(CommandStamped._TYPE);
+        final String cmdId = "cmd" + m_nextId++;
+        cmd.setCmdId(cmdId);
+        cmd.setCmdName(cmdName);
+        final CommandArg apk = m_factory.newFromType(CommandArg._TYPE);
+        apk.setDataType(CommandArg.DATA_TYPE_STRING);
+        apk.setS(APK);
+        final List<CommandArg> args = new ArrayList<>();
+        args.add(apk);
+        cmd.setArgs(args);
+        m_nodeMain.onNewMessage(cmd);
+        return cmdId;
+    }
+
+    private String sendCustom(String command) {
+        final CommandStamped cmd = m_factory.newFromType(CommandStamped._TYPE);
+        final String cmdId = "cmd" + m_nextId++;
+        cmd.setCmdId(cmdId);
+        cmd.setCmdName(CommandConstants.CMD_NAME_CUSTOM_GUEST_SCIENCE);
+        final List<CommandArg> args = new ArrayList<>();
+        for (String s : new String[] { APK, command }) {
+            final CommandArg arg = m_factory.newFromType(CommandArg._TYPE);
+            arg.setDataType(CommandArg.DATA_TYPE_STRING);
+            arg.setS(s);
+            args.add(arg);
+        }
+        cmd.setArgs(args);
+        m_nodeMain.onNewMessage(cmd);
+        return cmdId;
+    }
+
+    private static String ok(String cmdId) {
+        return cmdId + " " + AckCompletedStatus.OK + " ";
+    }
+
+    private static String failed(String cmdId, String message) {
+        return cmdId + " " + AckCompletedStatus.EXEC_FAILED + " " + message;
+    }
+
+    private List<String> acks() {
+        synchronized (m_acks) {
+            return new ArrayList<>(m_acks);
+        }
+    }
+
+    private void awaitAcks(int count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        synchronized (m_acks) {
+            while (m_acks.size() < count) {
+                final long left = deadline - System.nanoTime();
+                assertTrue("only " + m_acks.size() + " of " + count + " acks", left > 0);
+                TimeUnit.NANOSECONDS.timedWait(m_acks, left);
+            }
+        }
+    }
+
+    /**
+     * Just enough of a node for the node main: publishers hand out fresh
+     * messages and record acks, and everything else is a no-op.
+     */
+    private ConnectedNode fakeNode() {
+        return proxy(ConnectedNode.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object self, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getTopicMessageFactory":
+                        return m_factory;
+                    case "getCurrentTime":
+                        return Time.fromMillis(System.currentTimeMillis());
+                    case "getName":
+                        return GraphName.of("test");
+                    case "newPublisher":
+                        return publisher(args[0].toString(), (String) args[1]);
+                    case "newSubscriber":
+                        return proxy(Subscriber.class, new InvocationHandler() {
+                            @Override
+                            public Object invoke(Object self, Method method, Object[] args) {
+                                return null;
+                            }
+                        });
+                    default:
+                        return null;
+                }
+            }
+        });
+    }
+
+    private Publisher<?> publisher(final String topic, final String type) {
+        return proxy(Publisher.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object self, Method method, Object[] args) {
+                if (method.getName().equals("newMessage"))
+                    return m_factory.newFromType(type);
+                if (method.getName().equals("publish") && topic.equals(Constants.TOPIC_GUEST_SCIENCE_MANAGER_ACK)) {
+                    final AckStamped ack = (AckStamped) args[0];
+                    synchronized (m_acks) {
+                        m_acks.add(ack.getCmdId() + " " + ack.getCompletedStatus().getStatus()
+                                + " " + ack.getMessage());
+                        m_acks.notifyAll();
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(GuestScienceNodeMainTest.class.getClassLoader(),
+                                          new Class<?>[] { type }, handler);
+    }
+}
@@ -0,0 +1,214 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience.command;
+
+import gov.nasa.arc.astrobee.ros.guestscience.Command;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CommandDecoderTest {
+    private static final CommandDecoder DECODER = CommandDecoder.compile(Arrays.asList(
+            new Command("No Op", "{\"name\": \"noOp\"}"),
+            new Command("Take Picture", "{\"name\": \"takePicture\", \"count\": 3, \"exposure\": 0.5,"
+                    + " \"flash\": false, \"label\": \"dock\"}")));
+
+    @Test
+    public void usesNameWhenEverySyntaxHasIt() {
+        assertEquals("name", DECODER.getDiscriminator());
+        assertEquals(2, DECODER.getSyntaxes().size());
+        final CommandSyntax syntax = DECODER.getSyntax("takePicture");
+        assertEquals("Take Picture", syntax.getName());
+        assertEquals(Arrays.asList("count", "exposure", "flash", "label"), syntax.getFields());
+        assertEquals(CommandSyntax.FieldType.INTEGER, syntax.getFieldType(0));
+        assertEquals(CommandSyntax.FieldType.NUMBER, syntax.getFieldType(1));
+        assertEquals(CommandSyntax.FieldType.BOOLEAN, syntax.getFieldType(2));
+        assertEquals(CommandSyntax.FieldType.STRING, syntax.getFieldType(3));
+        assertEquals(-1, syntax.indexOf("name"));
+    }
+
+    @Test
+    public void otherwiseUsesFirstField() throws Exception {
+        final CommandDecoder decoder = CommandDecoder.compile(Arrays.asList(
+                new Command("Hop", "{\"action\": \"hop\", \"height\": 2}"),
+                new Command("Stop", "{\"action\": \"stop\"}")));
+        assertEquals("action", decoder.getDiscriminator());
+        assertEquals(5, decoder.decode("{\"height\": 5, \"action\": \"hop\"}").getInt("height"));
+    }
+
+    @Test
+    public void decodesTypedValues() throws Exception {
+        final DecodedCommand cmd = DECODER.decode(
+                "{\"name\": \"takePicture\", \"count\": 7, \"exposure\": 0.25, \"flash\": true, \"label\": \"hatch\"}");
+        assertEquals("takePicture", cmd.getCommandName());
+        assertEquals(7, cmd.getInt("count"));
+        assertEquals(7L, cmd.getLong(0));
+        assertEquals(0.25, cmd.getDouble("exposure"), 0);
+        assertTrue(cmd.getBoolean("flash"));
+        assertEquals("hatch", cmd.getString("label"));
+        assertEquals(7.0, cmd.getDouble("count"), 0);
+    }
+
+    @Test
+    public void fieldsMayComeBeforeTheName() throws Exception {
+        final DecodedCommand cmd = DECODER.decode(
+                "{\"label\": \"a\", \"flash\": true, \"count\": 1, \"exposure\": 2, \"name\": \"takePicture\"}");
+        assertEquals("a", cmd.getString("label"));
+        assertEquals(1, cmd.getInt("count"));
+        // A whole number will do for a number
+        assertEquals(2.0, cmd.getDouble("exposure"), 0);
+    }
+
+    @Test
+    public void commandWithNoFields() throws Exception {
+        assertEquals("noOp", DECODER.decode("{\"name\": \"noOp\"}").getCommandName());
+    }
+
+    @Test
+    public void rejectsCommandsThatDontMatch() {
+        assertUnknown(DECODER, "{\"name\": \"fly\"}", "Unknown command fly");
+        assertUnknown(DECODER, "{\"count\": 1}", "Command has no name field");
+        assertUnknown(DECODER, "{\"name\": 4}", "Field name must be a string");
+        assertBad("{\"name\": \"noOp\", \"name\": \"noOp\"}", "Field name appears twice");
+        assertBad("{\"name\": \"noOp\", \"extra\": 1}", "Command noOp has no field extra");
+        assertBad("{\"extra\": 1, \"name\": \"noOp\"}", "Command noOp has no field extra");
+        assertBad(picture("3", "0.5", "false", "\"dock\"").replace(", \"label\": \"dock\"", ""),
+                  "Command takePicture is missing field label");
+        assertBad(picture("3", "0.5", "false", "\"dock\"").replace("}", ", \"count\": 3}"),
+                  "Field count appears twice");
+    }
+
+    @Test
+    public void rejectsWrongTypes() {
+        assertBad(picture("3.5", "0.5", "false", "\"dock\""), "Field count must be a whole number");
+        assertBad(picture("3", "\"0.5\"", "false", "\"dock\""), "Field exposure must be a number");
+        assertBad(picture("3", "0.5", "0", "\"dock\""), "Field flash must be true or false");
+        assertBad(picture("3", "0.5", "false", "4"), "Field label must be a string");
+    }
+
+    @Test
+    public void rejectsBadJson() {
+        assertBad("{\"name\": \"noOp\"", "Expected ','");
+        assertUnknown(DECODER, "noOp", "Expected '{'");
+        assertUnknown(DECODER, "{\"count\": 1,", "Expected");
+    }
+
+    @Test
+    public void badSyntaxesAreLeftOut() throws Exception {
+        final CommandDecoder decoder = CommandDecoder.compile(Arrays.asList(
+                new Command("Good", "{\"name\": \"good\"}"),
+                new Command("Broken", "{\"name\": \"broken\", \"pose\": [1, 2]}"),
+                new Command("Twice", "{\"name\": \"good\", \"x\": 1}")));
+        assertEquals(1, decoder.getSyntaxes().size());
+        assertNotNull(decoder.decode("{\"name\": \"good\"}"));
+        assertUnknown(decoder, "{\"name\": \"broken\"}", "Unknown command broken");
+    }
+
+    @Test
+    public void noSyntaxes() {
+        final CommandDecoder decoder = CommandDecoder.compile(new ArrayList<Command>());
+        assertNull(decoder.getDiscriminator());
+        assertUnknown(decoder, "{\"name\": \"noOp\"}", "The app has no command syntaxes");
+    }
+
+    @Test
+    public void onlyTheNamedCommandsAreDecoded() throws Exception {
+        final List<String> names = Arrays.asList("takePicture");
+        assertEquals("takePicture",
+                     DECODER.decode(picture("3", "0.5", "false", "\"dock\""), names).getCommandName());
+        assertUnknown(DECODER, "{\"name\": \"noOp\"}", names, "Unknown command noOp");
+        // Not checked against its syntax, as it isn't to be decoded
+        assertUnknown(DECODER, "{\"name\": \"noOp\", \"extra\": 1}", names, "Unknown command noOp");
+        assertBad(DECODER, picture("3.5", "0.5", "false", "\"dock\""), names, "Field count must be a whole number");
+    }
+
+    @Test
+    public void gettersCheckTheFieldType() throws Exception {
+        final DecodedCommand cmd = DECODER.decode(picture("3", "0.5", "false", "\"dock\""));
+        try {
+            cmd.getString("count");
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            cmd.getInt("focus");
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void getIntChecksTheRange() throws Exception {
+        final DecodedCommand cmd = DECODER.decode(picture("3000000000", "0.5", "false", "\"dock\""));
+        assertEquals(3000000000L, cmd.getLong("count"));
+        try {
+            cmd.getInt("count");
+            fail();
+        } catch (ArithmeticException e) {
+            // expected
+        }
+    }
+
+    private static String picture(String count, String exposure, String flash, String label) {
+        return "{\"name\": \"takePicture\", \"count\": " + count + ", \"exposure\": " + exposure
+                + ", \"flash\": " + flash + ", \"label\": " + label + "}";
+    }
+
+    private static void assertBad(String text, String message) {
+        assertBad(DECODER, text, message);
+    }
+
+    private static void assertBad(CommandDecoder decoder, String text, String message) {
+        assertBad(decoder, text, null, message);
+    }
+
+    private static void assertBad(CommandDecoder decoder, String text, List<String> names, String message) {
+        try {
+            decoder.decode(text, names);
+        } catch (UnknownCommandException e) {
+            fail("Not matched to a syntax: " + text);
+        } catch (CommandSyntaxException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+            return;
+        }
+        fail("Accepted " + text);
+    }
+
+    private static void assertUnknown(CommandDecoder decoder, String text, String message) {
+        assertUnknown(decoder, text, null, message);
+    }
+
+    private static void assertUnknown(CommandDecoder decoder, String text, List<String> names, String message) {
+        try {
+            decoder.decode(text, names);
+        } catch (UnknownCommandException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+            return;
+        } catch (CommandSyntaxException e) {
+            fail("Matched to a syntax: " + text + ": " + e.getMessage());
+        }
+        fail("Accepted " + text);
+    }
+}
@@ -0,0 +1,127 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience.command;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FlatJsonScannerTest {
+    @Test
+    public void readsEveryKind() throws Exception {
+        final FlatJsonScanner scanner = new FlatJsonScanner(
+                " { \"name\" : \"move\", \"count\": -12, \"speed\": 1.5e2, \"fast\": true, \"slow\": false } ");
+
+        assertTrue(scanner.next());
+        assertEquals("name", scanner.key());
+        assertEquals(FlatJsonScanner.Kind.STRING, scanner.kind());
+        assertEquals("move", scanner.stringValue());
+
+        assertTrue(scanner.next());
+        assertEquals("count", scanner.key());
+        assertEquals(FlatJsonScanner.Kind.INTEGER, scanner.kind());
+        assertEquals(-12, scanner.longValue());
+        assertEquals(-12.0, scanner.doubleValue(), 0);
+
+        assertTrue(scanner.next());
+        assertEquals(FlatJsonScanner.Kind.NUMBER, scanner.kind());
+        assertEquals(150.0, scanner.doubleValue(), 0);
+
+        assertTrue(scanner.next());
+        assertEquals(FlatJsonScanner.Kind.BOOLEAN, scanner.kind());
+        assertTrue(scanner.booleanValue());
+
+        assertTrue(scanner.next());
+        assertFalse(scanner.booleanValue());
+
+        assertFalse(scanner.next());
+    }
+
+    @Test
+    public void emptyObject() throws Exception {
+        assertFalse(new FlatJsonScanner("{}").next());
+    }
+
+    @Test
+    public void unescapesStrings() throws Exception {
+        final FlatJsonScanner scanner = new FlatJsonScanner(
+                "{\"k\\\"ey\": \"a\\\\b\\/c\\n\\t\\u00e9\\\"\"}");
+        assertTrue(scanner.next());
+        assertEquals("k\"ey", scanner.key());
+        assertEquals("a\\b/c\n\t\u00e9\"", scanner.stringValue());
+    }
+
+    @Test
+    public void rejectsNonObjects() {
+        assertBad("");
+        assertBad("[1, 2]");
+        assertBad("\"name\"");
+    }
+
+    @Test
+    public void rejectsNestedValues() {
+        assertBad("{\"a\": {\"b\": 1}}", "may not be an object or array");
+        assertBad("{\"a\": [1]}", "may not be an object or array");
+        assertBad("{\"a\": null}", "has no valid value");
+    }
+
+    @Test
+    public void rejectsBadNumbers() {
+        assertBad("{\"a\": -}", "Expected a digit");
+        assertBad("{\"a\": 1.}", "Expected a digit");
+        assertBad("{\"a\": 1e}", "Expected a digit");
+        assertBad("{\"a\": 99999999999999999999}", "bad number");
+    }
+
+    @Test
+    public void rejectsBadStrings() {
+        assertBad("{\"a\": \"open}", "Unterminated string");
+        assertBad("{\"a\": \"x\\", "Unterminated string");
+        assertBad("{\"a\": \"\\q\"}", "Bad escape");
+        assertBad("{\"a\": \"\\u12\"}", "Bad unicode escape");
+        assertBad("{\"a\": \"\\uzzzz\"}", "Bad unicode escape");
+    }
+
+    @Test
+    public void rejectsBadPunctuation() {
+        assertBad("{\"a\" 1}", "Expected ':'");
+        assertBad("{\"a\": 1 \"b\": 2}", "Expected ','");
+        assertBad("{a: 1}", "Expected a field name");
+        assertBad("{\"a\": 1,}", "Expected a field name");
+        assertBad("{\"a\": 1", "Expected ','");
+        assertBad("{\"a\": 1} x", "Unexpected text after the command");
+        assertBad("{\"a\": truex}", "Expected ','");
+    }
+
+    private static void assertBad(String text) {
+        assertBad(text, "");
+    }
+
+    private static void assertBad(String text, String message) {
+        try {
+            final FlatJsonScanner scanner = new FlatJsonScanner(text);
+            while (scanner.next())
+                ;
+        } catch (CommandSyntaxException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+            return;
+        }
+        fail("Accepted " + text);
+    }
+}
@@ -0,0 +1,120 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience.queue;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+public class BoundedRingTest {
+    @Test
+    public void capacityMustBeAPowerOfTwo() {
+        for (int capacity : new int[] { -1, 0, 1, 3, 12 }) {
+            try {
+                new BoundedRing<Integer>(capacity);
+                fail("accepted " + capacity);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        assertEquals(2, new BoundedRing<Integer>(2).capacity());
+    }
+
+    @Test
+    public void firstInFirstOutUntilFull() {
+        final BoundedRing<Integer> ring = new BoundedRing<>(4);
+        assertTrue(ring.isEmpty());
+        assertNull(ring.poll());
+        for (int i = 0; i < 4; i++)
+            assertTrue(ring.offer(i));
+        assertFalse(ring.offer(4));
+        assertEquals(4, ring.size());
+
+        for (int i = 0; i < 4; i++)
+            assertEquals(Integer.valueOf(i), ring.poll());
+        assertTrue(ring.isEmpty());
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    public void wrapsAroundManyTimes() {
+        final BoundedRing<Integer> ring = new BoundedRing<>(4);
+        int next = 0;
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(ring.offer(i));
+            if (i % 3 == 2) {
+                while (!ring.isEmpty())
+                    assertEquals(Integer.valueOf(next++), ring.poll());
+            }
+        }
+        while (!ring.isEmpty())
+            assertEquals(Integer.valueOf(next++), ring.poll());
+        assertEquals(10000, next);
+    }
+
+    @Test
+    public void everyItemIsTakenExactlyOnceUnderContention() throws InterruptedException {
+        final int producers = 4;
+        final int consumers = 3;
+        final int perProducer = 20000;
+        final BoundedRing<Integer> ring = new BoundedRing<>(16);
+        final AtomicIntegerArray seen = new AtomicIntegerArray(producers * perProducer);
+        final CountDownLatch producing = new CountDownLatch(producers);
+        final Thread[] threads = new Thread[producers + consumers];
+
+        for (int p = 0; p < producers; p++) {
+            final int base = p * perProducer;
+            threads[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perProducer; i++) {
+                        while (!ring.offer(base + i))
+                            Thread.yield();
+                    }
+                    producing.countDown();
+                }
+            });
+        }
+        for (int c = 0; c < consumers; c++) {
+            threads[producers + c] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (true) {
+                        final Integer item = ring.poll();
+                        if (item != null)
+                            seen.incrementAndGet(item);
+                        else if (producing.getCount() == 0 && ring.isEmpty())
+                            return;
+                        else
+                            Thread.yield();
+                    }
+                }
+            });
+        }
+        for (Thread t : threads)
+            t.start();
+        for (Thread t : threads)
+            t.join(60000);
+
+        for (int i = 0; i < seen.length(); i++)
+            assertEquals("item " + i, 1, seen.get(i));
+    }
+}
@@ -0,0 +1,268 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience.queue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class SendQueueTest {
+    private static final byte STRING = 1;
+
+    /**
+     * Records what it is sent. While closed, the sender thread waits in
+     * send(), so the queue backs up.
+     */
+    private static final class Sink implements SendQueue.Sink {
+        final List<String> sent = new ArrayList<>();
+        final CountDownLatch entered = new CountDownLatch(1);
+        volatile CountDownLatch gate = new CountDownLatch(0);
+        volatile String failOn = null;
+
+        @Override
+        public void send(final byte dataType, final String topic, final byte[] data) {
+            entered.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (topic.equals(failOn))
+                throw new IllegalStateException("link down");
+            synchronized (this) {
+                sent.add(topic + data[0]);
+                notifyAll();
+            }
+        }
+
+        synchronized void awaitSent(int count) throws InterruptedException {
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (sent.size() < count) {
+                final long left = deadline - System.nanoTime();
+                assertTrue("only " + sent.size() + " of " + count + " sent", left > 0);
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            }
+        }
+
+        synchronized List<String> sent() {
+            return new ArrayList<>(sent);
+        }
+    }
+
+    private final Sink m_sink = new Sink();
+    private SendQueue m_queue;
+
+    @After
+    public void tearDown() {
+        m_sink.gate.countDown();
+        if (m_queue != null)
+            m_queue.shutdown();
+    }
+
+    private static byte[] data(int i) {
+        return new byte[] { (byte) i };
+    }
+
+    /**
+     * Hold the sender thread inside the sink with one message, so the next
+     * ones pile up in the ring.
+     */
+    private void stall() throws InterruptedException {
+        m_sink.gate = new CountDownLatch(1);
+        assertTrue(m_queue.offer(STRING, "held", data(0)));
+        assertTrue(m_sink.entered.await(10, TimeUnit.SECONDS));
+    }
+
+    private static void awaitState(final Thread t, final Thread.State state) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (t.getState() != state) {
+            assertTrue("thread is " + t.getState(), System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void sendsInOrderAndCountsByTopic() throws InterruptedException {
+        m_queue = new SendQueue(8, OverflowPolicy.BLOCK, m_sink);
+        for (int i = 0; i < 100; i++)
+            assertTrue(m_queue.offer(STRING, i % 2 == 0 ? "even" : "odd", data(i)));
+        m_sink.awaitSent(100);
+
+        final List<String> sent = m_sink.sent();
+        assertEquals("even0", sent.get(0));
+        assertEquals("odd99", sent.get(99));
+        assertEquals(50, m_queue.getCounters().get("even").getSent());
+        assertEquals(50, m_queue.getCounters().get("odd").getEnqueued());
+        assertEquals(0, m_queue.getCounters().get("odd").getDropped());
+    }
+
+    @Test
+    public void anIdleSenderWakesUpForTheNextMessage() throws InterruptedException {
+        m_queue = new SendQueue(8, OverflowPolicy.BLOCK, m_sink);
+        m_queue.offer(STRING, "t", data(1));
+        m_sink.awaitSent(1);
+
+        // Give the sender time to go to sleep with nothing to do
+        Thread.sleep(50);
+        m_queue.offer(STRING, "t", data(2));
+        m_sink.awaitSent(2);
+    }
+
+    @Test
+    public void blockWaitsForRoomInsteadOfSpinning() throws Exception {
+        m_queue = new SendQueue(2, OverflowPolicy.BLOCK, m_sink);
+        stall();
+        assertTrue(m_queue.offer(STRING, "t", data(1)));
+        assertTrue(m_queue.offer(STRING, "t", data(2)));
+
+        final AtomicBoolean offered = new AtomicBoolean();
+        final Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                offered.set(m_queue.offer(STRING, "t", data(3)));
+            }
+        });
+        producer.start();
+        // Parked on the condition, not runnable
+        awaitState(producer, Thread.State.WAITING);
+
+        m_sink.gate.countDown();
+        producer.join(10000);
+        assertTrue(offered.get());
+        m_sink.awaitSent(4);
+        assertEquals("[held0, t1, t2, t3]", m_sink.sent().toString());
+        assertEquals(0, m_queue.getCounters().get("t").getDropped());
+    }
+
+    @Test
+    public void blockLosesNothingWithManySenders() throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 2000;
+        m_queue = new SendQueue(4, OverflowPolicy.BLOCK, m_sink);
+        final Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final String topic = "p" + p;
+            threads[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perProducer; i++)
+                        m_queue.offer(STRING, topic, data(i));
+                }
+            });
+            threads[p].start();
+        }
+        for (Thread t : threads)
+            t.join(60000);
+        m_sink.awaitSent(producers * perProducer);
+
+        // Each sender's messages stay in order
+        final int[] next = new int[producers];
+        for (String s : m_sink.sent()) {
+            final int p = s.charAt(1) - '0';
+            assertEquals(s, (byte) next[p]++, Byte.parseByte(s.substring(2)));
+        }
+        for (int p = 0; p < producers; p++)
+            assertEquals(0, m_queue.getCounters().get("p" + p).getDropped());
+    }
+
+    @Test
+    public void shutdownReleasesBlockedSenders() throws Exception {
+        m_queue = new SendQueue(2, OverflowPolicy.BLOCK, m_sink);
+        stall();
+        m_queue.offer(STRING, "t", data(1));
+        m_queue.offer(STRING, "t", data(2));
+
+        final AtomicBoolean offered = new AtomicBoolean(true);
+        final Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                offered.set(m_queue.offer(STRING, "t", data(3)));
+            }
+        });
+        producer.start();
+        awaitState(producer, Thread.State.WAITING);
+
+        // The sender is still stuck in the sink, so this gives up waiting
+        // for it, but the blocked offer must not stay blocked
+        m_queue.shutdown();
+        producer.join(10000);
+        assertFalse(producer.isAlive());
+        assertFalse(offered.get());
+        assertEquals(1, m_queue.getCounters().get("t").getDropped());
+    }
+
+    @Test
+    public void dropNewestRefusesWhenFull() throws InterruptedException {
+        m_queue = new SendQueue(2, OverflowPolicy.DROP_NEWEST, m_sink);
+        stall();
+        assertTrue(m_queue.offer(STRING, "t", data(1)));
+        assertTrue(m_queue.offer(STRING, "t", data(2)));
+        assertFalse(m_queue.offer(STRING, "t", data(3)));
+        assertEquals(1, m_queue.getCounters().get("t").getDropped());
+
+        m_sink.gate.countDown();
+        m_sink.awaitSent(3);
+        assertEquals("[held0, t1, t2]", m_sink.sent().toString());
+    }
+
+    @Test
+    public void dropOldestMakesRoom() throws InterruptedException {
+        m_queue = new SendQueue(2, OverflowPolicy.DROP_OLDEST, m_sink);
+        stall();
+        for (int i = 1; i <= 5; i++)
+            assertTrue(m_queue.offer(STRING, "t", data(i)));
+        assertEquals(3, m_queue.getCounters().get("t").getDropped());
+
+        m_sink.gate.countDown();
+        m_sink.awaitSent(3);
+        assertEquals("[held0, t4, t5]", m_sink.sent().toString());
+    }
+
+    @Test
+    public void sinkErrorsCountAsDropped() throws InterruptedException {
+        m_queue = new SendQueue(4, OverflowPolicy.BLOCK, m_sink);
+        m_sink.failOn = "bad";
+        m_queue.offer(STRING, "bad", data(1));
+        m_queue.offer(STRING, "good", data(2));
+        m_sink.awaitSent(1);
+        assertEquals("[good2]", m_sink.sent().toString());
+        assertEquals(1, m_queue.getCounters().get("bad").getDropped());
+    }
+
+    @Test
+    public void shutdownSendsWhatIsQueuedThenRefuses() throws InterruptedException {
+        m_queue = new SendQueue(8, OverflowPolicy.BLOCK, m_sink);
+        stall();
+        for (int i = 1; i <= 3; i++)
+            m_queue.offer(STRING, "t", data(i));
+        m_sink.gate.countDown();
+        m_queue.shutdown();
+
+        assertEquals(4, m_sink.sent().size());
+        assertFalse(m_queue.offer(STRING, "t", data(4)));
+        assertEquals(1, m_queue.getCounters().get("t").getDropped());
+    }
+}
@@ -0,0 +1,118 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience.chunk;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Wire format for several small messages packed into one GuestScienceData
+ * message. A batch is sent as BINARY data on {@link #TOPIC} and holds, after
+ * a big-endian header, one record per message:
+ * <pre>
+ * header:  magic 1 byte (0xB7), version 1 byte, record count 2 bytes
+ * record:  data type 1 byte, topic length 1 byte, topic (UTF-8),
+ *          data length 2 bytes, data
+ * </pre>
+ */
+public final class BatchFormat {
+    private BatchFormat() { }
+
+    public static final byte MAGIC = (byte) 0xB7;
+    public static final byte VERSION = 1;
+
+    public static final String TOPIC = "*batch";
+
+    public static final int HEADER_SIZE = 4;
+    public static final int MAX_FRAME_SIZE = 2048;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * One message out of a batch.
+     */
+    public static final class Record {
+        private final byte m_dataType;
+        private final String m_topic;
+        private final byte[] m_data;
+
+        Record(byte dataType, String topic, byte[] data) {
+            m_dataType = dataType;
+            m_topic = topic;
+            m_data = data;
+        }
+
+        /**
+         * @return The GuestScienceData type the app sent it as.
+         */
+        public byte getDataType() {
+            return m_dataType;
+        }
+
+        public String getTopic() {
+            return m_topic;
+        }
+
+        public byte[] getData() {
+            return m_data;
+        }
+    }
+
+    /**
+     * How many bytes a message takes up in a batch.
+     */
+    public static int recordSize(byte[] topic, int dataLength) {
+        return 1 + 1 + topic.length + 2 + dataLength;
+    }
+
+    public static boolean isBatch(String topic) {
+        return TOPIC.equals(topic);
+    }
+
+    /**
+     * Split a batch back into its messages.
+     *
+     * @throws IllegalArgumentException if it isn't a well-formed batch.
+     */
+    public static List<Record> parse(byte[] frame) {
+        try {
+            final ByteBuffer in = ByteBuffer.wrap(frame);
+            if (in.get() != MAGIC || in.get() != VERSION)
+                throw new IllegalArgumentException("Not a guest science data batch");
+            final int count = in.getShort() & 0xFFFF;
+            final List<Record> records = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                final byte dataType = in.get();
+                final byte[] topic = new byte[in.get() & 0xFF];
+                in.get(topic);
+                final byte[] data = new byte[in.getShort() & 0xFFFF];
+                in.get(data);
+                records.add(new Record(dataType, new String(topic, UTF8), data));
+            }
+            return Collections.unmodifiableList(records);
+        } catch (RuntimeException e) {
+            if (e instanceof IllegalArgumentException)
+                throw e;
+            throw new IllegalArgumentException("Truncated guest science data batch", e);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience.chunk;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Wire format for payloads too big for one GuestScienceData message.
+ *
+ * A payload is cut into frames of at most {@link #MAX_FRAME_SIZE} bytes,
+ * each sent as BINARY data on the payload's topic with {@link #TOPIC_PREFIX}
+ * in front. Every frame starts with a big-endian header:
+ * <pre>
+ *  0  magic            1 byte, 0xC7
+ *  1  version          1 byte
+ *  2  data type        1 byte, the GuestScienceData type of the payload
+ *  3  reserved         1 byte
+ *  4  transfer id      4 bytes
+ *  8  frame index      4 bytes
+ * 12  frame count      4 bytes
+ * 16  payload CRC-32   4 bytes
+ * </pre>
+ */
+public final class ChunkFormat {
+    private ChunkFormat() { }
+
+    public static final byte MAGIC = (byte) 0xC7;
+    public static final byte VERSION = 1;
+
+    public static final int HEADER_SIZE = 20;
+    public static final int MAX_FRAME_SIZE = 2048;
+    public static final int MAX_CHUNK_SIZE = MAX_FRAME_SIZE - HEADER_SIZE;
+
+    public static final String TOPIC_PREFIX = "#";
+    public static final int MAX_TOPIC_LENGTH = 32 - TOPIC_PREFIX.length();
+
+    public static int frameCount(int payloadLength) {
+        return Math.max(1, (payloadLength + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+    }
+
+    /**
+     * Build one frame of a payload.
+     */
+    public static byte[] frame(byte dataType, int transferId, int crc, byte[] payload, int index) {
+        final int count = frameCount(payload.length);
+        final int offset = index * MAX_CHUNK_SIZE;
+        final int length = Math.min(MAX_CHUNK_SIZE, payload.length - offset);
+        final byte[] frame = new byte[HEADER_SIZE + length];
+        ByteBuffer.wrap(frame)
+                .put(MAGIC)
+                .put(VERSION)
+                .put(dataType)
+                .put((byte) 0)
+                .putInt(transferId)
+                .putInt(index)
+                .putInt(count)
+                .putInt(crc)
+                .put(payload, offset, length);
+        return frame;
+    }
+}
@@ -0,0 +1,241 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience.chunk;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Puts {@link ChunkFormat} frames back together on the ground. Feed it every
+ * guest science data message; it hands back a payload once all of its frames
+ * have arrived, in any order. Incomplete transfers are dropped once they go
+ * too long without a new frame, or when too many are open at once.
+ */
+public final class ChunkReassembler {
+
+    /**
+     * A reassembled payload.
+     */
+    public static final class Payload {
+        private final String m_apkName;
+        private final String m_topic;
+        private final byte m_dataType;
+        private final byte[] m_data;
+
+        Payload(String apkName, String topic, byte dataType, byte[] data) {
+            m_apkName = apkName;
+            m_topic = topic;
+            m_dataType = dataType;
+            m_data = data;
+        }
+
+        public String getApkName() {
+            return m_apkName;
+        }
+
+        /**
+         * @return The topic the app sent it on, without the chunk prefix.
+         */
+        public String getTopic() {
+            return m_topic;
+        }
+
+        /**
+         * @return The GuestScienceData type the app sent it as.
+         */
+        public byte getDataType() {
+            return m_dataType;
+        }
+
+        public byte[] getData() {
+            return m_data;
+        }
+    }
+
+    private static final class Partial {
+        final String apkName;
+        final String topic;
+        final byte dataType;
+        final int crc;
+        final byte[][] frames;
+        int received = 0;
+        long lastFrame;
+
+        Partial(String apkName, String topic, byte dataType, int crc, int count) {
+            this.apkName = apkName;
+            this.topic = topic;
+            this.dataType = dataType;
+            this.crc = crc;
+            this.frames = new byte[count][];
+        }
+    }
+
+    // Cap on frames per transfer, 64MiB worth
+    private static final int MAX_FRAMES = (64 * 1024 * 1024) / ChunkFormat.MAX_CHUNK_SIZE;
+
+    private final int m_maxTransfers;
+    private final long m_timeoutNanos;
+
+    // In order of last activity, oldest first
+    private final LinkedHashMap<String, Partial> m_partials = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long m_completed = 0;
+    private long m_corrupt = 0;
+    private long m_expired = 0;
+    private long m_duplicates = 0;
+
+    public ChunkReassembler() {
+        this(64, 60 * 1000);
+    }
+
+    /**
+     * @param maxTransfers How many transfers may be incomplete at once.
+     * @param timeoutMillis How long a transfer may go without a new frame.
+     */
+    public ChunkReassembler(int maxTransfers, long timeoutMillis) {
+        if (maxTransfers < 1 || timeoutMillis < 1)
+            throw new IllegalArgumentException("maxTransfers and timeoutMillis must be positive");
+        m_maxTransfers = maxTransfers;
+        m_timeoutNanos = timeoutMillis * 1000000;
+    }
+
+    /**
+     * @return Whether data on this topic is a chunk frame.
+     */
+    public static boolean isChunked(String topic) {
+        return topic != null && topic.startsWith(ChunkFormat.TOPIC_PREFIX);
+    }
+
+    /**
+     * Take in one guest science data message.
+     *
+     * @return The payload if this frame completed one, otherwise null. Also
+     *         null for data that isn't chunked, which the caller should
+     *         handle as before.
+     */
+    public synchronized Payload accept(String apkName, String topic, byte[] frame) {
+        if (!isChunked(topic))
+            return null;
+        final long now = System.nanoTime();
+        expire(now);
+
+        if (frame.length < ChunkFormat.HEADER_SIZE) {
+            m_corrupt++;
+            return null;
+        }
+        final ByteBuffer header = ByteBuffer.wrap(frame);
+        final byte magic = header.get();
+        final byte version = header.get();
+        final byte dataType = header.get();
+        header.get();
+        final int id = header.getInt();
+        final int index = header.getInt();
+        final int count = header.getInt();
+        final int crc = header.getInt();
+        if (magic != ChunkFormat.MAGIC || version != ChunkFormat.VERSION
+                || count < 1 || count > MAX_FRAMES || index < 0 || index >= count) {
+            m_corrupt++;
+            return null;
+        }
+
+        final String key = apkName + '\0' + topic + '\0' + id;
+        Partial p = m_partials.get(key);
+        if (p == null) {
+            p = new Partial(apkName, topic.substring(ChunkFormat.TOPIC_PREFIX.length()), dataType, crc, count);
+            m_partials.put(key, p);
+            while (m_partials.size() > m_maxTransfers) {
+                final Iterator<Partial> it = m_partials.values().iterator();
+                it.next();
+                it.remove();
+                m_expired++;
+            }
+        } else if (p.frames.length != count || p.crc != crc) {
+            m_corrupt++;
+            return null;
+        }
+        p.lastFrame = now;
+
+        if (p.frames[index] != null) {
+            m_duplicates++;
+            return null;
+        }
+        p.frames[index] = frame;
+        if (++p.received < count)
+            return null;
+
+        m_partials.remove(key);
+        int length = 0;
+        for (byte[] f : p.frames)
+            length += f.length - ChunkFormat.HEADER_SIZE;
+        final byte[] data = new byte[length];
+        int offset = 0;
+        for (byte[] f : p.frames) {
+            System.arraycopy(f, ChunkFormat.HEADER_SIZE, data, offset, f.length - ChunkFormat.HEADER_SIZE);
+            offset += f.length - ChunkFormat.HEADER_SIZE;
+        }
+
+        final CRC32 crc32 = new CRC32();
+        crc32.update(data);
+        if ((int) crc32.getValue() != p.crc) {
+            m_corrupt++;
+            return null;
+        }
+        m_completed++;
+        return new Payload(p.apkName, p.topic, p.dataType, data);
+    }
+
+    public synchronized int getPendingTransfers() {
+        return m_partials.size();
+    }
+
+    public synchronized long getCompleted() {
+        return m_completed;
+    }
+
+    /**
+     * @return Frames with a bad header, and payloads whose checksum failed.
+     */
+    public synchronized long getCorrupt() {
+        return m_corrupt;
+    }
+
+    /**
+     * @return Transfers dropped before they completed.
+     */
+    public synchronized long getExpired() {
+        return m_expired;
+    }
+
+    public synchronized long getDuplicates() {
+        return m_duplicates;
+    }
+
+    private void expire(long now) {
+        final Iterator<Map.Entry<String, Partial>> it = m_partials.entrySet().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().getValue().lastFrame < m_timeoutNanos)
+                break;
+            it.remove();
+            m_expired++;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience.chunk;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Sends large payloads as {@link ChunkFormat} frames, paced to a configured
+ * rate by a background thread. {@link #send} only queues the payload, so an
+ * app can hand over a megabyte without waiting for it to go out.
+ */
+public final class ChunkedSender {
+    /**
+     * Where frames go, normally the guest science data topic.
+     */
+    public interface FrameSink {
+        void sendFrame(String topic, byte[] frame);
+    }
+
+    private static final long TICK_MILLIS = 20;
+
+    private static final class Transfer {
+        final byte dataType;
+        final String topic;
+        final byte[] payload;
+        final int id;
+        final int crc;
+        final int count;
+        int next = 0;
+
+        Transfer(byte dataType, String topic, byte[] payload, int id) {
+            this.dataType = dataType;
+            this.topic = topic;
+            this.payload = payload;
+            this.id = id;
+            final CRC32 crc32 = new CRC32();
+            crc32.update(payload);
+            this.crc = (int) crc32.getValue();
+            this.count = ChunkFormat.frameCount(payload.length);
+        }
+    }
+
+    private final FrameSink m_sink;
+    private final ScheduledExecutorService m_executor;
+
+    private final Object m_lock = new Object();
+    private final ArrayDeque<Transfer> m_transfers = new ArrayDeque<>();
+    private long m_queuedBytes = 0;
+    private long m_maxQueuedBytes = 16 * 1024 * 1024;
+    private long m_bytesPerSecond;
+    private double m_credit = 0;
+    private long m_lastTick = 0;
+    private ScheduledFuture<?> m_pump = null;
+    private int m_nextId = new Random().nextInt();
+
+    private long m_framesSent = 0;
+    private long m_sendFailures = 0;
+
+    private final Runnable m_tick = new Runnable() {
+        @Override
+        public void run() {
+            tick();
+        }
+    };
+
+    /**
+     * @param sink Where to send frames.
+     * @param bytesPerSecond How fast to send them, headers included.
+     */
+    public ChunkedSender(final FrameSink sink, long bytesPerSecond) {
+        if (sink == null)
+            throw new NullPointerException("sink may not be null");
+        m_sink = sink;
+        setRate(bytesPerSecond);
+        m_executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, "Guest Science Chunk Sender");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    public void setRate(long bytesPerSecond) {
+        if (bytesPerSecond < ChunkFormat.MAX_FRAME_SIZE)
+            throw new IllegalArgumentException("bytesPerSecond must be at least " + ChunkFormat.MAX_FRAME_SIZE);
+        synchronized (m_lock) {
+            m_bytesPerSecond = bytesPerSecond;
+        }
+    }
+
+    /**
+     * The most payload bytes that may be waiting to go out. Further sends
+     * fail until the backlog drains.
+     */
+    public void setMaxQueuedBytes(long bytes) {
+        if (bytes < 1)
+            throw new IllegalArgumentException("bytes must be positive");
+        synchronized (m_lock) {
+            m_maxQueuedBytes = bytes;
+        }
+    }
+
+    /**
+     * Queue a payload to be sent in frames.
+     *
+     * @param dataType The GuestScienceData type of the payload.
+     * @param topic The payload's topic, without the chunk prefix.
+     * @param payload The data. It must not be changed until it has been sent.
+     * @return The id of the transfer, as found in each frame's header.
+     */
+    public int send(byte dataType, String topic, byte[] payload) {
+        if (topic.length() > ChunkFormat.MAX_TOPIC_LENGTH)
+            throw new IllegalArgumentException("topic must be no more than "
+                    + ChunkFormat.MAX_TOPIC_LENGTH + " characters for chunked data");
+        final String chunkTopic = ChunkFormat.TOPIC_PREFIX + topic;
+
+        synchronized (m_lock) {
+            if (m_queuedBytes + payload.length > m_maxQueuedBytes)
+                throw new RuntimeException("Too much chunked data waiting to be sent, "
+                        + m_queuedBytes + " bytes already queued");
+            final Transfer transfer = new Transfer(dataType, chunkTopic, payload, m_nextId++);
+            m_transfers.add(transfer);
+            m_queuedBytes += payload.length;
+            if (m_pump == null) {
+                // Let the first frame out right away
+                m_credit = ChunkFormat.MAX_FRAME_SIZE;
+                m_lastTick = System.nanoTime();
+                m_pump = m_executor.scheduleAtFixedRate(m_tick, 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            return transfer.id;
+        }
+    }
+
+    public long getQueuedBytes() {
+        synchronized (m_lock) {
+            return m_queuedBytes;
+        }
+    }
+
+    public long getFramesSent() {
+        synchronized (m_lock) {
+            return m_framesSent;
+        }
+    }
+
+    public long getSendFailures() {
+        synchronized (m_lock) {
+            return m_sendFailures;
+        }
+    }
+
+    /**
+     * Drop anything not yet sent and stop the sending thread.
+     */
+    public void shutdown() {
+        synchronized (m_lock) {
+            m_transfers.clear();
+            m_queuedBytes = 0;
+        }
+        m_executor.shutdownNow();
+    }
+
+    private void tick() {
+        final List<Transfer> transfers = new ArrayList<>();
+        final List<byte[]> frames = new ArrayList<>();
+        synchronized (m_lock) {
+            final long now = System.nanoTime();
+            m_credit += m_bytesPerSecond * ((now - m_lastTick) / 1e9);
+            m_lastTick = now;
+
+            // Don't let an idle spell turn into a burst
+            final double maxCredit = Math.max(ChunkFormat.MAX_FRAME_SIZE,
+                    m_bytesPerSecond * TICK_MILLIS * 2 / 1000.0);
+            if (m_credit > maxCredit)
+                m_credit = maxCredit;
+
+            while (!m_transfers.isEmpty()) {
+                final Transfer t = m_transfers.peek();
+                final int length = ChunkFormat.HEADER_SIZE
+                        + Math.min(ChunkFormat.MAX_CHUNK_SIZE, t.payload.length - t.next * ChunkFormat.MAX_CHUNK_SIZE);
+                if (m_credit < length)
+                    break;
+                m_credit -= length;
+                frames.add(ChunkFormat.frame(t.dataType, t.id, t.crc, t.payload, t.next));
+                transfers.add(t);
+                if (++t.next == t.count) {
+                    m_transfers.poll();
+                    m_queuedBytes -= t.payload.length;
+                }
+            }
+
+            if (m_transfers.isEmpty() && m_pump != null) {
+                m_pump.cancel(false);
+                m_pump = null;
+            }
+        }
+
+        int sent = 0;
+        int failed = 0;
+        for (int i = 0; i < frames.size(); i++) {
+            try {
+                m_sink.sendFrame(transfers.get(i).topic, frames.get(i));
+                sent++;
+            } catch (RuntimeException e) {
+                failed++;
+            }
+        }
+        synchronized (m_lock) {
+            m_framesSent += sent;
+            m_sendFailures += failed;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience.chunk;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packs small messages into {@link BatchFormat} batches. A batch goes out
+ * when the next message would not fit, or when its first message has waited
+ * for the linger time, whichever comes first. A message too big to share a
+ * batch goes out on its own, after whatever was batched ahead of it, so
+ * messages always leave in the order they were added.
+ */
+public final class MessageBatcher {
+    /**
+     * Where batches, and messages that go out on their own, are sent.
+     */
+    public interface Sink {
+        void send(byte dataType, String topic, byte[] data);
+    }
+
+    // GuestScienceData.BINARY
+    private static final byte BINARY = 2;
+
+    private final Sink m_sink;
+    private final long m_lingerMillis;
+    private final ScheduledExecutorService m_timer;
+
+    private final byte[] m_frame = new byte[BatchFormat.MAX_FRAME_SIZE];
+    private final ByteBuffer m_out = ByteBuffer.wrap(m_frame);
+    private int m_count = 0;
+    private ScheduledFuture<?> m_linger = null;
+
+    private long m_messages = 0;
+    private long m_batches = 0;
+
+    private final Runnable m_flush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * @param sink Where to send.
+     * @param lingerMillis The longest a message waits for company.
+     */
+    public MessageBatcher(final Sink sink, long lingerMillis) {
+        if (sink == null)
+            throw new NullPointerException("sink may not be null");
+        if (lingerMillis < 1)
+            throw new IllegalArgumentException("lingerMillis must be positive");
+        m_sink = sink;
+        m_lingerMillis = lingerMillis;
+        m_timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, "Guest Science Batcher");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        reset();
+    }
+
+    /**
+     * Add a message to the current batch.
+     *
+     * @param dataType Its GuestScienceData type.
+     */
+    public synchronized void add(byte dataType, String topic, byte[] data) {
+        m_messages++;
+        final byte[] topicBytes = topic.getBytes(BatchFormat.UTF8);
+        final int size = BatchFormat.recordSize(topicBytes, data.length);
+        if (topicBytes.length > 0xFF || BatchFormat.HEADER_SIZE + size > BatchFormat.MAX_FRAME_SIZE) {
+            flush();
+            m_sink.send(dataType, topic, data);
+            return;
+        }
+
+        if (m_out.remaining() < size)
+            flush();
+        m_out.put(dataType)
+                .put((byte) topicBytes.length)
+                .put(topicBytes)
+                .putShort((short) data.length)
+                .put(data);
+        m_count++;
+
+        if (m_count == 1)
+            m_linger = m_timer.schedule(m_flush, m_lingerMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send the current batch now, if there is one.
+     */
+    public synchronized void flush() {
+        if (m_linger != null) {
+            m_linger.cancel(false);
+            m_linger = null;
+        }
+        if (m_count == 0)
+            return;
+
+        m_out.putShort(2, (short) m_count);
+        final byte[] batch = new byte[m_out.position()];
+        System.arraycopy(m_frame, 0, batch, 0, batch.length);
+        reset();
+        m_batches++;
+        m_sink.send(BINARY, BatchFormat.TOPIC, batch);
+    }
+
+    /**
+     * @return Messages added so far.
+     */
+    public synchronized long getMessages() {
+        return m_messages;
+    }
+
+    /**
+     * @return Batches sent so far.
+     */
+    public synchronized long getBatches() {
+        return m_batches;
+    }
+
+    /**
+     * Send what is waiting and stop the linger timer.
+     */
+    public void shutdown() {
+        flush();
+        m_timer.shutdownNow();
+    }
+
+    private void reset() {
+        m_out.clear();
+        m_out.put(BatchFormat.MAGIC).put(BatchFormat.VERSION).putShort((short) 0);
+        m_count = 0;
+    }
+}
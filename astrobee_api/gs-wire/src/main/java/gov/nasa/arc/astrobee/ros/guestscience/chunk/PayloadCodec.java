@@ -0,0 +1,158 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience.chunk;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate compression for guest science data, optionally primed with a
+ * preset dictionary of typical messages. Compressed data is sent in zlib
+ * format on the original topic with {@link #TOPIC_PREFIX} in front, so the
+ * ground can tell it apart; the zlib header names the dictionary, if any.
+ */
+public final class PayloadCodec {
+    public static final String TOPIC_PREFIX = "~";
+    public static final int MAX_TOPIC_LENGTH = 32 - TOPIC_PREFIX.length();
+
+    // Refuse to inflate past this, whatever the sender claims
+    private static final int MAX_INFLATED_SIZE = 64 * 1024 * 1024;
+
+    private final byte[] m_dictionary;
+    private final Deflater m_deflater;
+    private boolean m_closed = false;
+
+    public PayloadCodec() {
+        this(null);
+    }
+
+    /**
+     * @param dictionary Bytes likely to appear in messages, such as from
+     *                   {@link #buildDictionary}, or {@code null}. Sender and
+     *                   ground must use the same one.
+     */
+    public PayloadCodec(final byte[] dictionary) {
+        m_dictionary = dictionary == null ? null : dictionary.clone();
+        m_deflater = new Deflater(Deflater.BEST_COMPRESSION);
+    }
+
+    public static boolean isCompressed(String topic) {
+        return topic != null && topic.startsWith(TOPIC_PREFIX);
+    }
+
+    /**
+     * @return The topic with the compression marker removed.
+     */
+    public static String originalTopic(String topic) {
+        return isCompressed(topic) ? topic.substring(TOPIC_PREFIX.length()) : topic;
+    }
+
+    /**
+     * Build a preset dictionary from sample messages. Deflate looks back
+     * from the end of the dictionary, so the last samples count most.
+     *
+     * @param maxSize Dictionary size limit; deflate uses at most 32KiB.
+     */
+    public static byte[] buildDictionary(final Iterable<byte[]> samples, int maxSize) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("maxSize must be positive");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] sample : samples)
+            out.write(sample, 0, sample.length);
+        final byte[] all = out.toByteArray();
+        return all.length <= maxSize ? all : Arrays.copyOfRange(all, all.length - maxSize, all.length);
+    }
+
+    /**
+     * Compress a message.
+     *
+     * @return The compressed bytes, or {@code null} if they would not be
+     *         smaller than the original.
+     */
+    public byte[] compress(final byte[] data) {
+        final byte[] out = new byte[data.length];
+        final int length;
+        synchronized (m_deflater) {
+            if (m_closed)
+                return null;
+            m_deflater.reset();
+            if (m_dictionary != null)
+                m_deflater.setDictionary(m_dictionary);
+            m_deflater.setInput(data);
+            m_deflater.finish();
+            length = m_deflater.deflate(out);
+            if (!m_deflater.finished())
+                return null;
+        }
+        return length < data.length ? Arrays.copyOf(out, length) : null;
+    }
+
+    /**
+     * Release the compressor. From then on {@link #compress} returns
+     * {@code null}; the codec can still decompress.
+     */
+    public void close() {
+        synchronized (m_deflater) {
+            m_closed = true;
+            m_deflater.end();
+        }
+    }
+
+    /**
+     * Undo {@link #compress}.
+     *
+     * @throws DataFormatException if the data is corrupt or needs a
+     *         dictionary other than this codec's.
+     */
+    public byte[] decompress(final byte[] data) throws DataFormatException {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] out = new byte[Math.max(64, data.length * 4)];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == out.length) {
+                    if (out.length >= MAX_INFLATED_SIZE)
+                        throw new DataFormatException("Inflated data too large");
+                    out = Arrays.copyOf(out, Math.min(out.length * 2, MAX_INFLATED_SIZE));
+                }
+                final int n = inflater.inflate(out, length, out.length - length);
+                length += n;
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        if (m_dictionary == null)
+                            throw new DataFormatException("Data needs a preset dictionary");
+                        inflater.setDictionary(m_dictionary);
+                    } else if (inflater.needsInput()) {
+                        throw new DataFormatException("Compressed data is truncated");
+                    }
+                }
+            }
+            return Arrays.copyOf(out, length);
+        } catch (IllegalArgumentException e) {
+            // setDictionary throws this when the dictionary doesn't match
+            throw new DataFormatException("Data needs a different preset dictionary");
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience.chunk;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BatchFormatTest {
+    private static byte[] batch(final Object... records) {
+        final ByteBuffer out = ByteBuffer.allocate(BatchFormat.MAX_FRAME_SIZE);
+        out.put(BatchFormat.MAGIC).put(BatchFormat.VERSION).putShort((short) (records.length / 3));
+        for (int i = 0; i < records.length; i += 3) {
+            final byte[] topic = ((String) records[i + 1]).getBytes(BatchFormat.UTF8);
+            final byte[] data = (byte[]) records[i + 2];
+            out.put((Byte) records[i]).put((byte) topic.length).put(topic)
+                    .putShort((short) data.length).put(data);
+        }
+        final byte[] frame = new byte[out.position()];
+        System.arraycopy(out.array(), 0, frame, 0, frame.length);
+        return frame;
+    }
+
+    @Test
+    public void parsesEveryRecordInOrder() {
+        final List<BatchFormat.Record> records = BatchFormat.parse(batch(
+                (byte) 0, "status", "ok".getBytes(BatchFormat.UTF8),
+                (byte) 2, "raw", new byte[] { 1, 2, 3 }));
+        assertEquals(2, records.size());
+        assertEquals(0, records.get(0).getDataType());
+        assertEquals("status", records.get(0).getTopic());
+        assertArrayEquals("ok".getBytes(BatchFormat.UTF8), records.get(0).getData());
+        assertEquals(2, records.get(1).getDataType());
+        assertEquals("raw", records.get(1).getTopic());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, records.get(1).getData());
+    }
+
+    @Test
+    public void emptyTopicsAndDataSurvive() {
+        final List<BatchFormat.Record> records = BatchFormat.parse(batch((byte) 1, "", new byte[0]));
+        assertEquals("", records.get(0).getTopic());
+        assertEquals(0, records.get(0).getData().length);
+    }
+
+    @Test
+    public void topicsAreUtf8() {
+        final String topic = "caf\u00e9";
+        final List<BatchFormat.Record> records = BatchFormat.parse(batch((byte) 1, topic, new byte[1]));
+        assertEquals(topic, records.get(0).getTopic());
+        assertEquals(1 + 1 + 5 + 2 + 1, BatchFormat.recordSize(topic.getBytes(BatchFormat.UTF8), 1));
+    }
+
+    @Test
+    public void lengthsAreUnsigned() {
+        final byte[] data = new byte[BatchFormat.MAX_FRAME_SIZE - 300];
+        data[data.length - 1] = 9;
+        final String topic = new String(new char[200]).replace('\0', 't');
+        final List<BatchFormat.Record> records = BatchFormat.parse(batch((byte) 1, topic, data));
+        assertEquals(200, records.get(0).getTopic().length());
+        assertEquals(9, records.get(0).getData()[data.length - 1]);
+    }
+
+    @Test
+    public void anEmptyBatchHasNoRecords() {
+        assertTrue(BatchFormat.parse(batch()).isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void recordsCannotBeChanged() {
+        BatchFormat.parse(batch((byte) 1, "t", new byte[1])).clear();
+    }
+
+    @Test
+    public void rejectsOtherData() {
+        final byte[] frame = batch((byte) 1, "t", new byte[1]);
+        frame[0] = 0;
+        assertRejected(frame, "Not a guest science data batch");
+
+        final byte[] version = batch((byte) 1, "t", new byte[1]);
+        version[1] = BatchFormat.VERSION + 1;
+        assertRejected(version, "Not a guest science data batch");
+    }
+
+    @Test
+    public void rejectsTruncatedBatches() {
+        final byte[] frame = batch((byte) 1, "topic", new byte[10], (byte) 1, "other", new byte[10]);
+        for (int length = 0; length < frame.length; length++) {
+            final byte[] cut = new byte[length];
+            System.arraycopy(frame, 0, cut, 0, length);
+            assertRejected(cut, length < 2 ? null : "Truncated guest science data batch");
+        }
+    }
+
+    private static void assertRejected(final byte[] frame, final String message) {
+        try {
+            BatchFormat.parse(frame);
+            fail("accepted " + frame.length + " bytes");
+        } catch (IllegalArgumentException e) {
+            if (message != null)
+                assertEquals(message, e.getMessage());
+        }
+    }
+
+    @Test
+    public void onlyTheBatchTopicIsABatch() {
+        assertTrue(BatchFormat.isBatch(BatchFormat.TOPIC));
+        assertFalse(BatchFormat.isBatch("batch"));
+        assertFalse(BatchFormat.isBatch(null));
+    }
+}
@@ -0,0 +1,229 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience.chunk;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+public class ChunkReassemblerTest {
+    private static final byte BINARY = 2;
+
+    static byte[] payload(int length, long seed) {
+        final byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    static int crc(final byte[] data) {
+        final CRC32 crc32 = new CRC32();
+        crc32.update(data);
+        return (int) crc32.getValue();
+    }
+
+    private static List<byte[]> frames(int id, final byte[] data) {
+        final List<byte[]> frames = new ArrayList<>();
+        for (int i = 0; i < ChunkFormat.frameCount(data.length); i++)
+            frames.add(ChunkFormat.frame(BINARY, id, crc(data), data, i));
+        return frames;
+    }
+
+    @Test
+    public void frameCountRoundsUp() {
+        assertEquals(1, ChunkFormat.frameCount(0));
+        assertEquals(1, ChunkFormat.frameCount(1));
+        assertEquals(1, ChunkFormat.frameCount(ChunkFormat.MAX_CHUNK_SIZE));
+        assertEquals(2, ChunkFormat.frameCount(ChunkFormat.MAX_CHUNK_SIZE + 1));
+    }
+
+    @Test
+    public void framesCarryTheHeaderAndStayUnderTheLimit() {
+        final byte[] data = payload(ChunkFormat.MAX_CHUNK_SIZE * 2 + 10, 1);
+        final List<byte[]> frames = frames(42, data);
+        assertEquals(3, frames.size());
+        assertEquals(ChunkFormat.MAX_FRAME_SIZE, frames.get(0).length);
+        assertEquals(ChunkFormat.HEADER_SIZE + 10, frames.get(2).length);
+
+        final ByteBuffer header = ByteBuffer.wrap(frames.get(1));
+        assertEquals(ChunkFormat.MAGIC, header.get());
+        assertEquals(ChunkFormat.VERSION, header.get());
+        assertEquals(BINARY, header.get());
+        header.get();
+        assertEquals(42, header.getInt());
+        assertEquals(1, header.getInt());
+        assertEquals(3, header.getInt());
+        assertEquals(crc(data), header.getInt());
+    }
+
+    @Test
+    public void reassemblesFramesInAnyOrder() {
+        final byte[] data = payload(ChunkFormat.MAX_CHUNK_SIZE * 3 + 500, 2);
+        final List<byte[]> frames = frames(7, data);
+        Collections.shuffle(frames, new Random(3));
+
+        final ChunkReassembler reassembler = new ChunkReassembler();
+        ChunkReassembler.Payload result = null;
+        for (int i = 0; i < frames.size(); i++) {
+            assertNull(result);
+            result = reassembler.accept("apk", "#image", frames.get(i));
+        }
+        assertNotNull(result);
+        assertEquals("apk", result.getApkName());
+        assertEquals("image", result.getTopic());
+        assertEquals(BINARY, result.getDataType());
+        assertArrayEquals(data, result.getData());
+        assertEquals(1, reassembler.getCompleted());
+        assertEquals(0, reassembler.getPendingTransfers());
+    }
+
+    @Test
+    public void emptyPayloadIsOneFrame() {
+        final List<byte[]> frames = frames(1, new byte[0]);
+        assertEquals(1, frames.size());
+        final ChunkReassembler.Payload result = new ChunkReassembler().accept("apk", "#t", frames.get(0));
+        assertEquals(0, result.getData().length);
+    }
+
+    @Test
+    public void ignoresDataThatIsNotChunked() {
+        final ChunkReassembler reassembler = new ChunkReassembler();
+        assertNull(reassembler.accept("apk", "plain", new byte[1]));
+        assertNull(reassembler.accept("apk", null, new byte[1]));
+        assertEquals(0, reassembler.getCorrupt());
+        assertFalse(ChunkReassembler.isChunked("plain"));
+        assertTrue(ChunkReassembler.isChunked("#plain"));
+    }
+
+    @Test
+    public void countsDuplicatesOnce() {
+        final List<byte[]> frames = frames(1, payload(ChunkFormat.MAX_CHUNK_SIZE + 1, 4));
+        final ChunkReassembler reassembler = new ChunkReassembler();
+        assertNull(reassembler.accept("apk", "#t", frames.get(0)));
+        assertNull(reassembler.accept("apk", "#t", frames.get(0)));
+        assertEquals(1, reassembler.getDuplicates());
+        assertNotNull(reassembler.accept("apk", "#t", frames.get(1)));
+    }
+
+    @Test
+    public void rejectsBadHeaders() {
+        final ChunkReassembler reassembler = new ChunkReassembler();
+        final byte[] good = frames(1, payload(10, 5)).get(0);
+
+        assertNull(reassembler.accept("apk", "#t", new byte[ChunkFormat.HEADER_SIZE - 1]));
+
+        final byte[] magic = good.clone();
+        magic[0] = 0;
+        assertNull(reassembler.accept("apk", "#t", magic));
+
+        final byte[] version = good.clone();
+        version[1] = ChunkFormat.VERSION + 1;
+        assertNull(reassembler.accept("apk", "#t", version));
+
+        final byte[] index = good.clone();
+        ByteBuffer.wrap(index).putInt(8, 1);
+        assertNull(reassembler.accept("apk", "#t", index));
+
+        final byte[] count = good.clone();
+        ByteBuffer.wrap(count).putInt(12, 0);
+        assertNull(reassembler.accept("apk", "#t", count));
+
+        assertEquals(5, reassembler.getCorrupt());
+        assertEquals(0, reassembler.getPendingTransfers());
+    }
+
+    @Test
+    public void rejectsPayloadsThatFailTheChecksum() {
+        final List<byte[]> frames = frames(1, payload(ChunkFormat.MAX_CHUNK_SIZE + 100, 6));
+        frames.get(1)[ChunkFormat.HEADER_SIZE + 3] ^= 1;
+
+        final ChunkReassembler reassembler = new ChunkReassembler();
+        assertNull(reassembler.accept("apk", "#t", frames.get(0)));
+        assertNull(reassembler.accept("apk", "#t", frames.get(1)));
+        assertEquals(1, reassembler.getCorrupt());
+        assertEquals(0, reassembler.getCompleted());
+        assertEquals(0, reassembler.getPendingTransfers());
+    }
+
+    @Test
+    public void rejectsFramesThatDisagreeWithTheirTransfer() {
+        final byte[] data = payload(ChunkFormat.MAX_CHUNK_SIZE * 2, 7);
+        final ChunkReassembler reassembler = new ChunkReassembler();
+        assertNull(reassembler.accept("apk", "#t", frames(1, data).get(0)));
+
+        // Same id, different payload
+        final byte[] other = payload(ChunkFormat.MAX_CHUNK_SIZE * 3, 8);
+        assertNull(reassembler.accept("apk", "#t", frames(1, other).get(1)));
+        assertEquals(1, reassembler.getCorrupt());
+    }
+
+    @Test
+    public void keepsTransfersFromDifferentSendersApart() {
+        final byte[] a = payload(ChunkFormat.MAX_CHUNK_SIZE + 1, 9);
+        final byte[] b = payload(ChunkFormat.MAX_CHUNK_SIZE + 1, 10);
+        final ChunkReassembler reassembler = new ChunkReassembler();
+        assertNull(reassembler.accept("one", "#t", frames(1, a).get(0)));
+        assertNull(reassembler.accept("two", "#t", frames(1, b).get(0)));
+        assertNull(reassembler.accept("one", "#u", frames(1, b).get(0)));
+        assertEquals(3, reassembler.getPendingTransfers());
+
+        assertArrayEquals(b, reassembler.accept("two", "#t", frames(1, b).get(1)).getData());
+        assertArrayEquals(a, reassembler.accept("one", "#t", frames(1, a).get(1)).getData());
+    }
+
+    @Test
+    public void dropsTheLeastRecentTransferWhenTooManyAreOpen() {
+        final ChunkReassembler reassembler = new ChunkReassembler(2, 60000);
+        final byte[][] data = new byte[3][];
+        for (int i = 0; i < 3; i++)
+            data[i] = payload(ChunkFormat.MAX_CHUNK_SIZE + 1, 20 + i);
+
+        assertNull(reassembler.accept("apk", "#t", frames(0, data[0]).get(0)));
+        assertNull(reassembler.accept("apk", "#t", frames(1, data[1]).get(0)));
+        assertNull(reassembler.accept("apk", "#t", frames(2, data[2]).get(0)));
+        assertEquals(2, reassembler.getPendingTransfers());
+        assertEquals(1, reassembler.getExpired());
+
+        // The first one is gone, so its last frame starts it over
+        assertNull(reassembler.accept("apk", "#t", frames(0, data[0]).get(1)));
+        assertNotNull(reassembler.accept("apk", "#t", frames(2, data[2]).get(1)));
+    }
+
+    @Test
+    public void dropsTransfersThatStall() throws InterruptedException {
+        final ChunkReassembler reassembler = new ChunkReassembler(8, 1);
+        final byte[] data = payload(ChunkFormat.MAX_CHUNK_SIZE + 1, 30);
+        assertNull(reassembler.accept("apk", "#t", frames(1, data).get(0)));
+        Thread.sleep(5);
+        assertNull(reassembler.accept("apk", "#t", frames(1, data).get(1)));
+        assertEquals(1, reassembler.getExpired());
+        assertEquals(1, reassembler.getPendingTransfers());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void needsRoomForATransfer() {
+        new ChunkReassembler(0, 1000);
+    }
+}
@@ -0,0 +1,142 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience.chunk;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ChunkedSenderTest {
+    private static final byte STRING = 1;
+
+    /**
+     * Feeds every frame to a reassembler and keeps what comes out.
+     */
+    private static final class Ground implements ChunkedSender.FrameSink {
+        final ChunkReassembler reassembler = new ChunkReassembler();
+        final List<ChunkReassembler.Payload> payloads = new ArrayList<>();
+        final CountDownLatch done;
+        int frames = 0;
+
+        Ground(int expected) {
+            done = new CountDownLatch(expected);
+        }
+
+        @Override
+        public synchronized void sendFrame(final String topic, final byte[] frame) {
+            frames++;
+            assertTrue(frame.length <= ChunkFormat.MAX_FRAME_SIZE);
+            final ChunkReassembler.Payload p = reassembler.accept("apk", topic, frame);
+            if (p != null) {
+                payloads.add(p);
+                done.countDown();
+            }
+        }
+    }
+
+    @Test
+    public void payloadsArriveWholeAndInOrder() throws InterruptedException {
+        final Ground ground = new Ground(2);
+        final ChunkedSender sender = new ChunkedSender(ground, 10 * 1024 * 1024);
+        try {
+            final byte[] first = ChunkReassemblerTest.payload(ChunkFormat.MAX_CHUNK_SIZE * 5 + 3, 1);
+            final byte[] second = ChunkReassemblerTest.payload(100, 2);
+            sender.send(STRING, "first", first);
+            sender.send(STRING, "second", second);
+            assertTrue(ground.done.await(10, TimeUnit.SECONDS));
+
+            synchronized (ground) {
+                assertEquals("first", ground.payloads.get(0).getTopic());
+                assertArrayEquals(first, ground.payloads.get(0).getData());
+                assertEquals(STRING, ground.payloads.get(0).getDataType());
+                assertEquals("second", ground.payloads.get(1).getTopic());
+                assertArrayEquals(second, ground.payloads.get(1).getData());
+                assertEquals(7, ground.frames);
+            }
+            // Frames are counted after the whole batch has gone to the sink
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while ((sender.getFramesSent() < 7 || sender.getQueuedBytes() > 0) && System.nanoTime() < deadline)
+                Thread.sleep(1);
+            assertEquals(0, sender.getQueuedBytes());
+            assertEquals(7, sender.getFramesSent());
+        } finally {
+            sender.shutdown();
+        }
+    }
+
+    @Test
+    public void aFailingSinkIsCountedAndSendingGoesOn() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(2);
+        final ChunkedSender sender = new ChunkedSender(new ChunkedSender.FrameSink() {
+            @Override
+            public void sendFrame(final String topic, final byte[] frame) {
+                done.countDown();
+                throw new IllegalStateException("link down");
+            }
+        }, 10 * 1024 * 1024);
+        try {
+            sender.send(STRING, "t", new byte[ChunkFormat.MAX_CHUNK_SIZE + 1]);
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (sender.getSendFailures() < 2 && System.nanoTime() < deadline)
+                Thread.sleep(1);
+            assertEquals(2, sender.getSendFailures());
+            assertEquals(0, sender.getFramesSent());
+        } finally {
+            sender.shutdown();
+        }
+    }
+
+    @Test
+    public void refusesMoreThanTheBacklogLimit() {
+        // Slow enough that nothing much leaves during the test
+        final ChunkedSender sender = new ChunkedSender(new Ground(0), ChunkFormat.MAX_FRAME_SIZE);
+        try {
+            sender.setMaxQueuedBytes(ChunkFormat.MAX_CHUNK_SIZE * 4);
+            sender.send(STRING, "t", new byte[ChunkFormat.MAX_CHUNK_SIZE * 3]);
+            try {
+                sender.send(STRING, "t", new byte[ChunkFormat.MAX_CHUNK_SIZE * 2]);
+                fail("backlog limit not enforced");
+            } catch (RuntimeException expected) {
+            }
+        } finally {
+            sender.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void topicMustLeaveRoomForThePrefix() {
+        final ChunkedSender sender = new ChunkedSender(new Ground(0), ChunkFormat.MAX_FRAME_SIZE);
+        try {
+            sender.send(STRING, "0123456789012345678901234567890123", new byte[1]);
+        } finally {
+            sender.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rateMustAllowAFullFrame() {
+        new ChunkedSender(new Ground(0), ChunkFormat.MAX_FRAME_SIZE - 1);
+    }
+}
@@ -0,0 +1,175 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience.chunk;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MessageBatcherTest {
+    private static final byte STRING = 1;
+    private static final byte BINARY = 2;
+
+    /**
+     * Everything sent, with batches split back into their records.
+     */
+    private static final class Ground implements MessageBatcher.Sink {
+        final List<String> topics = new ArrayList<>();
+        final List<byte[]> data = new ArrayList<>();
+        int batches = 0;
+        int singles = 0;
+        volatile CountDownLatch sent = new CountDownLatch(1);
+
+        @Override
+        public synchronized void send(final byte dataType, final String topic, final byte[] frame) {
+            assertTrue(frame.length <= BatchFormat.MAX_FRAME_SIZE || !BatchFormat.isBatch(topic));
+            if (BatchFormat.isBatch(topic)) {
+                assertEquals(BINARY, dataType);
+                batches++;
+                for (BatchFormat.Record r : BatchFormat.parse(frame)) {
+                    topics.add(r.getTopic());
+                    data.add(r.getData());
+                }
+            } else {
+                singles++;
+                topics.add(topic);
+                data.add(frame);
+            }
+            sent.countDown();
+        }
+    }
+
+    private final Ground m_ground = new Ground();
+    private final MessageBatcher m_batcher = new MessageBatcher(m_ground, 60000);
+
+    @After
+    public void tearDown() {
+        m_batcher.shutdown();
+    }
+
+    @Test
+    public void smallMessagesShareABatch() {
+        for (int i = 0; i < 10; i++)
+            m_batcher.add(STRING, "t" + i, new byte[] { (byte) i });
+        assertEquals(0, m_ground.batches);
+        m_batcher.flush();
+
+        assertEquals(1, m_ground.batches);
+        assertEquals(10, m_ground.topics.size());
+        assertEquals("t7", m_ground.topics.get(7));
+        assertEquals(7, m_ground.data.get(7)[0]);
+        assertEquals(10, m_batcher.getMessages());
+        assertEquals(1, m_batcher.getBatches());
+    }
+
+    @Test
+    public void aFullBatchGoesOutBeforeTheNextMessage() {
+        final byte[] data = new byte[500];
+        final int perBatch = (BatchFormat.MAX_FRAME_SIZE - BatchFormat.HEADER_SIZE)
+                / BatchFormat.recordSize("t".getBytes(BatchFormat.UTF8), data.length);
+        for (int i = 0; i <= perBatch; i++)
+            m_batcher.add(STRING, "t", data);
+        assertEquals(1, m_ground.batches);
+        assertEquals(perBatch, m_ground.topics.size());
+        m_batcher.flush();
+        assertEquals(perBatch + 1, m_ground.topics.size());
+    }
+
+    @Test
+    public void aMessageThatExactlyFillsABatchIsBatched() {
+        final byte[] topic = "t".getBytes(BatchFormat.UTF8);
+        final int length = BatchFormat.MAX_FRAME_SIZE - BatchFormat.HEADER_SIZE - BatchFormat.recordSize(topic, 0);
+        m_batcher.add(STRING, "t", new byte[length]);
+        m_batcher.flush();
+        assertEquals(1, m_ground.batches);
+        assertEquals(0, m_ground.singles);
+    }
+
+    @Test
+    public void bigMessagesGoOutAloneAndInOrder() {
+        m_batcher.add(STRING, "before", new byte[1]);
+        m_batcher.add(STRING, "big", new byte[BatchFormat.MAX_FRAME_SIZE]);
+        m_batcher.add(STRING, "after", new byte[1]);
+        m_batcher.flush();
+
+        assertEquals(2, m_ground.batches);
+        assertEquals(1, m_ground.singles);
+        assertEquals("before", m_ground.topics.get(0));
+        assertEquals("big", m_ground.topics.get(1));
+        assertEquals(BatchFormat.MAX_FRAME_SIZE, m_ground.data.get(1).length);
+        assertEquals("after", m_ground.topics.get(2));
+    }
+
+    @Test
+    public void longTopicsGoOutAlone() {
+        final String topic = new String(new char[256]).replace('\0', 't');
+        m_batcher.add(STRING, topic, new byte[1]);
+        assertEquals(1, m_ground.singles);
+        assertEquals(topic, m_ground.topics.get(0));
+    }
+
+    @Test
+    public void flushingNothingSendsNothing() {
+        m_batcher.flush();
+        assertEquals(0, m_ground.batches);
+        assertEquals(0, m_batcher.getBatches());
+    }
+
+    @Test
+    public void aLoneMessageGoesOutAfterTheLinger() throws InterruptedException {
+        final Ground ground = new Ground();
+        final MessageBatcher batcher = new MessageBatcher(ground, 20);
+        try {
+            batcher.add(STRING, "t", new byte[1]);
+            assertTrue(ground.sent.await(10, TimeUnit.SECONDS));
+            synchronized (ground) {
+                assertEquals(1, ground.batches);
+            }
+
+            // The timer starts over with the next batch
+            ground.sent = new CountDownLatch(1);
+            batcher.add(STRING, "u", new byte[1]);
+            assertTrue(ground.sent.await(10, TimeUnit.SECONDS));
+            synchronized (ground) {
+                assertEquals(2, ground.batches);
+                assertEquals("u", ground.topics.get(1));
+            }
+        } finally {
+            batcher.shutdown();
+        }
+    }
+
+    @Test
+    public void shutdownSendsWhatIsWaiting() {
+        m_batcher.add(STRING, "t", new byte[1]);
+        m_batcher.shutdown();
+        assertEquals(1, m_ground.batches);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lingerMustBePositive() {
+        new MessageBatcher(m_ground, 0);
+    }
+}
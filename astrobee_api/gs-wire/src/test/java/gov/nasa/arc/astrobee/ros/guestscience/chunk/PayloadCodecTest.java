@@ -0,0 +1,171 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.guestscience.chunk;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+
+import static org.junit.Assert.*;
+
+public class PayloadCodecTest {
+    private static byte[] telemetry(int i) {
+        return String.format(Locale.US,
+                "{\"time\":%d,\"co2\":%.2f,\"temperature\":%.2f,\"humidity\":%.1f,\"state\":\"SAMPLING\"}",
+                1500000000L + i, 400 + i * 0.37, 21 + i * 0.01, 40 + i * 0.1).getBytes(BatchFormat.UTF8);
+    }
+
+    private static byte[] dictionary(int first) {
+        final List<byte[]> samples = new ArrayList<>();
+        for (int i = first; i < first + 20; i++)
+            samples.add(telemetry(i));
+        return PayloadCodec.buildDictionary(samples, 4096);
+    }
+
+    private static void assertFails(final PayloadCodec codec, final byte[] data, final String message) {
+        try {
+            codec.decompress(data);
+            fail("decompressed " + data.length + " bytes");
+        } catch (DataFormatException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    @Test
+    public void roundTripsWithAndWithoutADictionary() throws DataFormatException {
+        final byte[] message = telemetry(1000);
+        for (byte[] dictionary : new byte[][] { null, dictionary(0) }) {
+            final PayloadCodec codec = new PayloadCodec(dictionary);
+            final byte[] compressed = codec.compress(message);
+            assertNotNull(compressed);
+            assertTrue(compressed.length < message.length);
+            assertArrayEquals(message, codec.decompress(compressed));
+        }
+    }
+
+    @Test
+    public void aDictionaryHelpsShortMessages() {
+        final byte[] message = telemetry(1000);
+        final byte[] plain = new PayloadCodec().compress(message);
+        final byte[] primed = new PayloadCodec(dictionary(0)).compress(message);
+        assertTrue(primed.length + " vs " + plain.length, primed.length < plain.length);
+    }
+
+    @Test
+    public void largePayloadsRoundTrip() throws DataFormatException {
+        final StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 2000; i++)
+            json.append(i == 0 ? "" : ",").append(new String(telemetry(i), BatchFormat.UTF8));
+        final byte[] message = json.append(']').toString().getBytes(BatchFormat.UTF8);
+
+        final PayloadCodec codec = new PayloadCodec();
+        final byte[] compressed = codec.compress(message);
+        assertTrue(compressed.length < message.length / 4);
+        // Inflates to more than four times the input, so the buffer grows
+        assertArrayEquals(message, codec.decompress(compressed));
+    }
+
+    @Test
+    public void incompressibleDataIsLeftAlone() {
+        final byte[] random = new byte[1000];
+        new Random(1).nextBytes(random);
+        final PayloadCodec codec = new PayloadCodec();
+        assertNull(codec.compress(random));
+        assertNull(codec.compress(new byte[0]));
+        assertNull(codec.compress(new byte[] { 1 }));
+    }
+
+    @Test
+    public void missingDictionaryIsReported() {
+        final byte[] compressed = new PayloadCodec(dictionary(0)).compress(telemetry(1000));
+        assertFails(new PayloadCodec(), compressed, "Data needs a preset dictionary");
+    }
+
+    @Test
+    public void mismatchedDictionaryIsReported() {
+        final byte[] compressed = new PayloadCodec(dictionary(0)).compress(telemetry(1000));
+        assertFails(new PayloadCodec(dictionary(500)), compressed, "Data needs a different preset dictionary");
+    }
+
+    @Test
+    public void dataWithoutADictionaryDecodesEitherWay() throws DataFormatException {
+        final byte[] message = telemetry(1000);
+        final byte[] compressed = new PayloadCodec().compress(message);
+        assertArrayEquals(message, new PayloadCodec(dictionary(0)).decompress(compressed));
+    }
+
+    @Test
+    public void theDictionaryIsCopied() throws DataFormatException {
+        final byte[] dictionary = dictionary(0);
+        final PayloadCodec codec = new PayloadCodec(dictionary);
+        final byte[] compressed = codec.compress(telemetry(1000));
+        Arrays.fill(dictionary, (byte) 0);
+        assertArrayEquals(telemetry(1000), codec.decompress(compressed));
+    }
+
+    @Test
+    public void truncatedDataIsReported() {
+        final PayloadCodec codec = new PayloadCodec(dictionary(0));
+        final byte[] compressed = codec.compress(telemetry(1000));
+        // Cut anywhere after the zlib header, so the dictionary id is intact
+        for (int length = 6; length < compressed.length; length++)
+            assertFails(codec, Arrays.copyOf(compressed, length), "Compressed data is truncated");
+    }
+
+    @Test
+    public void corruptDataIsReported() {
+        final byte[] garbage = new byte[100];
+        new Random(2).nextBytes(garbage);
+        try {
+            new PayloadCodec().decompress(garbage);
+            fail("decompressed garbage");
+        } catch (DataFormatException expected) {
+        }
+    }
+
+    @Test
+    public void closingStopsCompressionButNotDecompression() throws DataFormatException {
+        final PayloadCodec codec = new PayloadCodec();
+        final byte[] compressed = codec.compress(telemetry(1));
+        codec.close();
+        assertNull(codec.compress(telemetry(1)));
+        assertArrayEquals(telemetry(1), codec.decompress(compressed));
+    }
+
+    @Test
+    public void dictionaryKeepsTheLatestSamples() {
+        final List<byte[]> samples = Arrays.asList(new byte[] { 1, 2 }, new byte[] { 3, 4, 5 });
+        assertArrayEquals(new byte[] { 1, 2, 3, 4, 5 }, PayloadCodec.buildDictionary(samples, 10));
+        assertArrayEquals(new byte[] { 4, 5 }, PayloadCodec.buildDictionary(samples, 2));
+    }
+
+    @Test
+    public void topicMarker() {
+        assertTrue(PayloadCodec.isCompressed("~data"));
+        assertFalse(PayloadCodec.isCompressed("data"));
+        assertFalse(PayloadCodec.isCompressed(null));
+        assertEquals("data", PayloadCodec.originalTopic("~data"));
+        assertEquals("data", PayloadCodec.originalTopic("data"));
+    }
+}
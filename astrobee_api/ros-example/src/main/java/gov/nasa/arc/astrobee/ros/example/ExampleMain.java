@@ -43,13 +43,7 @@ public class ExampleMain {
             self = factory.getRobot();
 
             logger.info("Waiting for robot to acquire position");
-            Kinematics k;
-            while (true) {
-                k = self.getCurrentKinematics();
-                if (k.getConfidence() == Kinematics.Confidence.GOOD)
-                    break;
-                Thread.sleep(250);
-            }
+            Kinematics k = self.awaitConfidence(Kinematics.Confidence.GOOD);
 
             logger.info("Moving the bee");
             Point currPosition = k.getPosition();
@@ -0,0 +1,132 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros;
+
+/**
+ * A snapshot of what happened to every command of one name: how many were
+ * sent and how they ended, and how long they took.
+ */
+public final class CommandMetrics {
+    private final String m_name;
+    private final long m_published;
+    private final long m_queued;
+    private final long m_requeued;
+    private final long m_succeeded;
+    private final long m_failed;
+    private final long m_canceled;
+    private final LatencyStats m_firstAck;
+    private final LatencyStats m_completed;
+
+    public CommandMetrics(final String name,
+                          final long published,
+                          final long queued,
+                          final long requeued,
+                          final long succeeded,
+                          final long failed,
+                          final long canceled,
+                          final LatencyStats firstAck,
+                          final LatencyStats completed) {
+        m_name = name;
+        m_published = published;
+        m_queued = queued;
+        m_requeued = requeued;
+        m_succeeded = succeeded;
+        m_failed = failed;
+        m_canceled = canceled;
+        m_firstAck = firstAck;
+        m_completed = completed;
+    }
+
+    /**
+     * @return The command name, e.g. "simpleMove6DOF".
+     */
+    public String getName() {
+        return m_name;
+    }
+
+    /**
+     * @return Commands handed to the API for sending.
+     */
+    public long getPublished() {
+        return m_published;
+    }
+
+    /**
+     * @return Commands held back because nobody was subscribed yet.
+     */
+    public long getQueued() {
+        return m_queued;
+    }
+
+    /**
+     * @return Commands sent again after a subscriber went away and came back.
+     */
+    public long getRequeued() {
+        return m_requeued;
+    }
+
+    /**
+     * @return Commands that completed with OK.
+     */
+    public long getSucceeded() {
+        return m_succeeded;
+    }
+
+    /**
+     * @return Commands that completed with an error, or were given up on.
+     */
+    public long getFailed() {
+        return m_failed;
+    }
+
+    /**
+     * @return Commands that completed as canceled.
+     */
+    public long getCanceled() {
+        return m_canceled;
+    }
+
+    /**
+     * @return Time from publishing to the first ack.
+     */
+    public LatencyStats getFirstAckLatency() {
+        return m_firstAck;
+    }
+
+    /**
+     * @return Time from publishing to the completed ack.
+     */
+    public LatencyStats getCompletedLatency() {
+        return m_completed;
+    }
+
+    @Override
+    public String toString() {
+        return "CommandMetrics{" +
+                "name=" + m_name + "; " +
+                "published=" + m_published + "; " +
+                "queued=" + m_queued + "; " +
+                "requeued=" + m_requeued + "; " +
+                "succeeded=" + m_succeeded + "; " +
+                "failed=" + m_failed + "; " +
+                "canceled=" + m_canceled + "; " +
+                "firstAck=" + m_firstAck + "; " +
+                "completed=" + m_completed + "}";
+    }
+}
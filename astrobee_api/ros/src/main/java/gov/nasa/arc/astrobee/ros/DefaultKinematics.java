@@ -20,6 +20,7 @@ package gov.nasa.arc.astrobee.ros;
 
 import ff_msgs.EkfState;
 import gov.nasa.arc.astrobee.Kinematics;
+import gov.nasa.arc.astrobee.KinematicsSnapshot;
 import gov.nasa.arc.astrobee.types.Point;
 import gov.nasa.arc.astrobee.types.Quaternion;
 import gov.nasa.arc.astrobee.types.Vec3d;
@@ -75,6 +76,15 @@ public class DefaultKinematics implements Kinematics {
         }
     }
 
+    public DefaultKinematics(final KinematicsSnapshot snapshot) {
+        m_position = snapshot.getPosition();
+        m_orientation = snapshot.getOrientation();
+        m_linearVelocity = snapshot.getLinearVelocity();
+        m_angularVelocity = snapshot.getAngularVelocity();
+        m_linearAcceleration = snapshot.getLinearAcceleration();
+        m_confidence = snapshot.getConfidence();
+    }
+
     public DefaultKinematics() {
         m_position = new Point();
         m_orientation = new Quaternion();
@@ -27,30 +27,93 @@ import org.apache.commons.logging.LogFactory;
 import org.ros.node.*;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Hands out {@link Robot}s backed by ROS nodes. "This" robot is started right
+ * away; named robots are started the first time they are asked for, with
+ * their topics in a namespace of that name.
+ *
+ * Named robots always attach to a {@link SharedNode}, so an extra robot costs
+ * only its command bookkeeping rather than a node, a master registration and
+ * a set of servers. With the shared node enabled that is the process-wide
+ * one, which the local robot attaches to as well. Otherwise the local robot
+ * keeps a node of its own, and the named robots share a second one, on
+ * ephemeral ports and under a name of its own so it can't clash with the
+ * local robot's. All nodes run on the one {@link NodeMainExecutor}.
+ */
 public class DefaultRobotFactory implements RobotFactory {
     private final Log logger = LogFactory.getLog(DefaultRobotFactory.class);
 
     private final RobotConfiguration m_robotConfiguration;
+    private final NodeMainExecutor m_executor;
+    // Whether the executor is the process-wide one, which we shut down
+    private final boolean m_ownExecutor;
+
+    // The node named robots attach to when the shared node is disabled.
+    // Guarded by this.
+    private SharedNode m_namedNode = null;
+
+    private final RobotNode m_local;
+    private final ConcurrentMap<String, RobotNode> m_remote = new ConcurrentHashMap<>();
+    private volatile boolean m_shutdown = false;
+
+    /**
+     * One robot's node, and whether it has come up yet.
+     */
+    private final class RobotNode extends DefaultNodeListener {
+        private final String m_name;
+        private final boolean m_attach;
+        private final RobotNodeMain m_nodeMain;
+        private SharedNode m_shared = null;
 
-    private RobotNodeMain m_nodeMain = new RobotNodeMain();
+        private final Lock m_lock = new ReentrantLock();
+        private final Condition m_changed = m_lock.newCondition();
+        private boolean m_running = false;
+        private Throwable m_error = null;
 
-    private final Lock m_lock = new ReentrantLock();
-    private final Condition m_changed = m_lock.newCondition();
-    private boolean m_running = false;
-    private Throwable m_error = null;
+        private final CountDownLatch m_shutdownLatch = new CountDownLatch(1);
+        private long m_startedAt = 0;
 
-    private CountDownLatch m_shutdownLatch = null;
+        RobotNode(final String name) {
+            m_name = name;
+            m_attach = name != null || m_robotConfiguration.isSharedNodeEnabled();
+            // On a node of its own, the node's namespace takes care of the
+            // robot name; on the shared one the topics have to.
+            m_nodeMain = new RobotNodeMain(m_robotConfiguration, m_attach ? name : null);
+        }
+
+        void start() {
+            m_startedAt = System.nanoTime();
+            if (m_attach) {
+                m_shared = m_name == null ? SharedNode.get(m_robotConfiguration) : getNamedNode();
+                try {
+                    m_shared.attach(m_nodeMain, this);
+                } catch (IllegalStateException e) {
+                    // Went down between getting it and attaching
+                    onError(null, e);
+                }
+                return;
+            }
+            final NodeConfiguration nodeConf = m_robotConfiguration.build();
+            final ArrayList<NodeListener> listeners = new ArrayList<>();
+            listeners.add(this);
+            m_executor.execute(m_nodeMain, nodeConf, listeners);
+        }
 
-    private final class ReadyListener extends DefaultNodeListener {
         @Override
         public void onStart(ConnectedNode connectedNode) {
+            logger.info("Node up" + describe() + " after "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - m_startedAt) + "ms");
             m_lock.lock();
             try {
                 m_running = true;
@@ -63,7 +126,7 @@ public class DefaultRobotFactory implements RobotFactory {
 
         @Override
         public void onShutdownComplete(Node node) {
-            logger.debug("Node shutdown complete");
+            logger.debug("Node shutdown complete" + describe());
             m_lock.lock();
             try {
                 m_running = false;
@@ -72,13 +135,12 @@ public class DefaultRobotFactory implements RobotFactory {
                 m_lock.unlock();
             }
 
-            if (m_shutdownLatch != null)
-                m_shutdownLatch.countDown();
+            m_shutdownLatch.countDown();
         }
 
         @Override
         public void onError(final Node node, Throwable throwable) {
-            logger.error("Node error", throwable);
+            logger.error("Node error" + describe(), throwable);
             m_lock.lock();
             try {
                 m_running = false;
@@ -88,7 +150,62 @@ public class DefaultRobotFactory implements RobotFactory {
                 m_lock.unlock();
             }
 
-            shutdownNode();
+            shutdown();
+        }
+
+        void shutdown() {
+            logger.debug("Attempting to shutdown node" + describe());
+            if (m_shared != null) {
+                m_shared.detach(m_nodeMain);
+                return;
+            }
+            m_executor.getScheduledExecutorService().submit(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            m_executor.shutdownNodeMain(m_nodeMain);
+                        }
+                    }
+            );
+        }
+
+        boolean awaitShutdown(long timeout, TimeUnit units) throws InterruptedException {
+            return m_shutdownLatch.await(timeout, units);
+        }
+
+        Robot getRobot() throws AstrobeeException, InterruptedException {
+            m_lock.lock();
+            try {
+                while (!m_running && m_error == null)
+                    m_changed.await();
+                if (m_error != null)
+                    throw new AstrobeeException(m_error);
+                return new DefaultRobot(m_nodeMain);
+            } finally {
+                m_lock.unlock();
+            }
+        }
+
+        Robot getRobot(long timeout, TimeUnit units)
+                throws AstrobeeException, InterruptedException, TimeoutException {
+            long remaining = units.toNanos(timeout);
+            m_lock.lock();
+            try {
+                while (!m_running && m_error == null) {
+                    if (remaining <= 0)
+                        throw new TimeoutException("Timed out waiting for Robot" + describe());
+                    remaining = m_changed.awaitNanos(remaining);
+                }
+                if (m_error != null)
+                    throw new AstrobeeException(m_error);
+                return new DefaultRobot(m_nodeMain);
+            } finally {
+                m_lock.unlock();
+            }
+        }
+
+        private String describe() {
+            return m_name == null ? "" : " for " + m_name;
         }
     }
 
@@ -98,50 +215,98 @@ public class DefaultRobotFactory implements RobotFactory {
     }
 
     public DefaultRobotFactory(final RobotConfiguration configuration) {
+        this(configuration, NodeExecutorHolder.getExecutor(), true);
+    }
+
+    /**
+     * Run the nodes on a given executor, which is left running on shutdown.
+     */
+    DefaultRobotFactory(final RobotConfiguration configuration, final NodeMainExecutor executor) {
+        this(configuration, executor, false);
+    }
+
+    private DefaultRobotFactory(final RobotConfiguration configuration,
+                                final NodeMainExecutor executor,
+                                final boolean ownExecutor) {
         m_robotConfiguration = configuration;
-        final NodeConfiguration nodeConf = configuration.build();
+        m_executor = executor;
+        m_ownExecutor = ownExecutor;
+        m_local = new RobotNode(null);
+        m_local.start();
+    }
 
-        final ArrayList<NodeListener> listeners = new ArrayList<>();
-        listeners.add(new ReadyListener());
-        NodeExecutorHolder.getExecutor().execute(m_nodeMain, nodeConf, listeners);
+    private synchronized SharedNode getNamedNode() {
+        if (m_robotConfiguration.isSharedNodeEnabled())
+            return SharedNode.get(m_robotConfiguration);
+        if (m_namedNode == null || m_namedNode.isShutdown())
+            m_namedNode = SharedNode.start(m_executor, m_robotConfiguration.buildForNamedRobots());
+        return m_namedNode;
+    }
+
+    /**
+     * Get the node for the named robot, starting it if this is the first time
+     * anyone asked for it.
+     */
+    private RobotNode getNode(final String name) {
+        if (name == null || name.length() == 0 || name.equals(getLocalName()))
+            return m_local;
+        if (m_shutdown)
+            throw new IllegalStateException("Factory has been shut down");
+
+        RobotNode node = m_remote.get(name);
+        if (node != null)
+            return node;
+
+        final RobotNode created = new RobotNode(name);
+        node = m_remote.putIfAbsent(name, created);
+        if (node != null)
+            return node;
+        created.start();
+        return created;
     }
 
     void shutdownNode() {
-        logger.debug("Attempting to shutdown node");
-        m_shutdownLatch = new CountDownLatch(1);
-        NodeExecutorHolder.getExecutor().getScheduledExecutorService().submit(
-                new Runnable() {
-                    @Override
-                    public void run() {
-                        NodeExecutorHolder.getExecutor().shutdownNodeMain(m_nodeMain);
-                    }
-                }
-        );
-        NodeExecutorHolder.getLocalExecutor().submit(
-                new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            if (!m_shutdownLatch.await(5, TimeUnit.SECONDS)) {
-                                logger.warn("Node did not shut down in a timely manner, forcing shut down.");
-                                NodeExecutorHolder.shutdownExecutor(1, TimeUnit.SECONDS);
-                            }
-                        } catch (InterruptedException e) {
-                            logger.debug("Interrupted exception.");
-                        }
-                    }
-                }
-        );
+        m_local.shutdown();
+        for (RobotNode node : m_remote.values())
+            node.shutdown();
     }
 
     @Override
     public void shutdown() {
+        m_shutdown = true;
         shutdownNode();
-        NodeExecutorHolder.getLocalExecutor().submit(
+
+        final List<RobotNode> nodes = new ArrayList<>(m_remote.values());
+        nodes.add(m_local);
+        final ExecutorService waiter = m_ownExecutor
+                ? NodeExecutorHolder.getLocalExecutor()
+                : m_executor.getScheduledExecutorService();
+        waiter.submit(
                 new Runnable() {
                     @Override
                     public void run() {
-                        NodeExecutorHolder.shutdownExecutor(2, TimeUnit.SECONDS);
+                        // Give every node the same five seconds, then stop
+                        // waiting on the stragglers
+                        final long start = System.nanoTime();
+                        final long deadline = start + TimeUnit.SECONDS.toNanos(5);
+                        try {
+                            boolean done = true;
+                            for (RobotNode node : nodes) {
+                                final long left = deadline - System.nanoTime();
+                                if (!node.awaitShutdown(Math.max(left, 0), TimeUnit.NANOSECONDS)) {
+                                    logger.warn("Node did not shut down in a timely manner, forcing shut down.");
+                                    done = false;
+                                    break;
+                                }
+                            }
+                            if (done)
+                                logger.info(nodes.size() + " node(s) down after "
+                                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+                        } catch (InterruptedException e) {
+                            logger.debug("Interrupted exception.");
+                        }
+                        if (m_ownExecutor)
+                            NodeExecutorHolder.shutdownExecutor(2, TimeUnit.SECONDS);
                     }
                 }
         );
@@ -152,44 +317,23 @@ public class DefaultRobotFactory implements RobotFactory {
         return getRobot(null);
     }
 
+    /**
+     * Get a robot by name. Commands to a named robot go out on the topics in
+     * its namespace, and it keeps its own pending commands and kinematics.
+     */
     @Override
     public Robot getRobot(final String name) throws AstrobeeException, InterruptedException {
-        if (name != null && name.length() > 0)
-            throw new RuntimeException("Not implemented yet, sorry.");
-
-        m_lock.lock();
-        try {
-            while (!m_running && m_error == null)
-                m_changed.await();
-            if (m_error != null)
-                throw new AstrobeeException(m_error);
-            return new DefaultRobot(m_nodeMain);
-        } finally {
-            m_lock.unlock();
-        }
+        return getNode(name).getRobot();
     }
 
     @Override
     public Robot getRobot(long timeout, TimeUnit units) throws AstrobeeException, InterruptedException, TimeoutException {
-        return getRobot(null);
+        return getRobot(null, timeout, units);
     }
 
     @Override
     public Robot getRobot(String name, long timeout, TimeUnit units) throws AstrobeeException, InterruptedException, TimeoutException {
-        if (name != null && name.length() > 0)
-            throw new RuntimeException("Not implemented yet, sorry.");
-
-        m_lock.lock();
-        try {
-            while (!m_running && m_error == null)
-                if (!m_changed.await(timeout, units))
-                    throw new TimeoutException("Timed out waiting for Robot");
-            if (m_error != null)
-                throw new AstrobeeException(m_error);
-            return new DefaultRobot(m_nodeMain);
-        } finally {
-            m_lock.unlock();
-        }
+        return getNode(name).getRobot(timeout, units);
     }
 
     @Override
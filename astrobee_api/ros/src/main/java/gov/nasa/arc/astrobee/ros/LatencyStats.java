@@ -0,0 +1,117 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of a latency distribution. Percentiles come from log-linear
+ * buckets and are accurate to within about 12%.
+ */
+public final class LatencyStats {
+    private final long m_count;
+    private final long m_min;
+    private final long m_max;
+    private final long m_sum;
+    private final long[] m_bucketCounts;
+    private final long[] m_bucketValues;
+
+    /**
+     * @param bucketCounts Number of samples per bucket, in increasing order.
+     * @param bucketValues A representative value of each bucket, in nanoseconds.
+     */
+    public LatencyStats(final long count,
+                        final long min,
+                        final long max,
+                        final long sum,
+                        final long[] bucketCounts,
+                        final long[] bucketValues) {
+        m_count = count;
+        m_min = min;
+        m_max = max;
+        m_sum = sum;
+        m_bucketCounts = bucketCounts;
+        m_bucketValues = bucketValues;
+    }
+
+    public long getCount() {
+        return m_count;
+    }
+
+    /**
+     * @return Smallest sample in nanoseconds, or 0 if there are none.
+     */
+    public long getMin() {
+        return m_count == 0 ? 0 : m_min;
+    }
+
+    /**
+     * @return Largest sample in nanoseconds, or 0 if there are none.
+     */
+    public long getMax() {
+        return m_max;
+    }
+
+    /**
+     * @return Mean in nanoseconds, or 0 if there are no samples.
+     */
+    public long getMean() {
+        return m_count == 0 ? 0 : m_sum / m_count;
+    }
+
+    /**
+     * @param percentile Between 0 and 100.
+     * @return The latency in nanoseconds below which {@code percentile}
+     *         percent of the samples fall, or 0 if there are none.
+     */
+    public long getPercentile(final double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        long total = 0;
+        for (long c : m_bucketCounts)
+            total += c;
+        if (total == 0)
+            return 0;
+
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < m_bucketCounts.length; i++) {
+            seen += m_bucketCounts[i];
+            if (seen >= rank)
+                return Math.max(getMin(), Math.min(m_max, m_bucketValues[i]));
+        }
+        return m_max;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyStats{" +
+                "count=" + m_count + "; " +
+                "min=" + millis(getMin()) + "; " +
+                "p50=" + millis(getPercentile(50)) + "; " +
+                "p90=" + millis(getPercentile(90)) + "; " +
+                "p99=" + millis(getPercentile(99)) + "; " +
+                "max=" + millis(m_max) + "; " +
+                "mean=" + millis(getMean()) + "}";
+    }
+
+    private static String millis(final long nanos) {
+        return String.format("%.3fms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
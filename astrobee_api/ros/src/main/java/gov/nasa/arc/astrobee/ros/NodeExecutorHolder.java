@@ -57,7 +57,7 @@ public final class NodeExecutorHolder {
     private static NodeMainExecutor s_executor = null;
     private static ExecutorService s_local = null;
 
-    public static NodeMainExecutor getExecutor() {
+    public static synchronized NodeMainExecutor getExecutor() {
         if (s_local == null) {
             s_local = Executors.newSingleThreadExecutor(new NamedThreadFactory("NodeMain Local", true));
         }
@@ -68,23 +68,27 @@ public final class NodeExecutorHolder {
     }
 
     // TODO(Katie/Ted) Remove public when we merge Robbie's branch into master
-    public static ExecutorService getLocalExecutor() {
+    public static synchronized ExecutorService getLocalExecutor() {
         return s_local;
     }
 
     // TODO(Katie/Ted) Remove public when we merge Robbie's branch into master
     public static void shutdownExecutor(long time, TimeUnit units) {
-        if (s_executor == null)
+        final NodeMainExecutor executor;
+        synchronized (NodeExecutorHolder.class) {
+            executor = s_executor;
+            s_executor = null;
+        }
+        if (executor == null)
             return;
         logger.info("Attempting to shutdown ROS executor service.");
-        s_executor.getScheduledExecutorService().shutdown();
+        executor.getScheduledExecutorService().shutdown();
         try {
             logger.info("Waiting " + time + " " + units + " for termination");
-            if (!s_executor.getScheduledExecutorService().awaitTermination(time, units)) {
+            if (!executor.getScheduledExecutorService().awaitTermination(time, units)) {
                 logger.warn("ROS did not shut down in a timely manner, forcing shut down.");
-                s_executor.getScheduledExecutorService().shutdownNow();
+                executor.getScheduledExecutorService().shutdownNow();
             }
         } catch (InterruptedException e) { }
-        s_executor = null;
     }
 }
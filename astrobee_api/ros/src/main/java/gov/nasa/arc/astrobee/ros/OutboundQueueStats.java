@@ -0,0 +1,122 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros;
+
+/**
+ * A snapshot of the queue of commands waiting for a subscriber to the
+ * command topic.
+ */
+public final class OutboundQueueStats {
+    private final int m_depth;
+    private final int m_priorityDepth;
+    private final int m_peakDepth;
+    private final int m_capacity;
+    private final long m_enqueued;
+    private final long m_dropped;
+    private final long m_coalesced;
+    private final long m_requeued;
+
+    public OutboundQueueStats(final int depth,
+                              final int priorityDepth,
+                              final int peakDepth,
+                              final int capacity,
+                              final long enqueued,
+                              final long dropped,
+                              final long coalesced,
+                              final long requeued) {
+        m_depth = depth;
+        m_priorityDepth = priorityDepth;
+        m_peakDepth = peakDepth;
+        m_capacity = capacity;
+        m_enqueued = enqueued;
+        m_dropped = dropped;
+        m_coalesced = coalesced;
+        m_requeued = requeued;
+    }
+
+    /**
+     * @return Ordinary commands currently queued.
+     */
+    public int getDepth() {
+        return m_depth;
+    }
+
+    /**
+     * @return Safety commands currently queued, ahead of all others.
+     */
+    public int getPriorityDepth() {
+        return m_priorityDepth;
+    }
+
+    /**
+     * @return The most ordinary commands that were ever queued at once.
+     */
+    public int getPeakDepth() {
+        return m_peakDepth;
+    }
+
+    /**
+     * @return The most ordinary commands allowed in the queue.
+     */
+    public int getCapacity() {
+        return m_capacity;
+    }
+
+    /**
+     * @return Commands queued since the node started, requeues included.
+     */
+    public long getEnqueued() {
+        return m_enqueued;
+    }
+
+    /**
+     * @return Commands failed to make room in a full queue.
+     */
+    public long getDropped() {
+        return m_dropped;
+    }
+
+    /**
+     * @return Commands replaced by a newer one of the same name.
+     */
+    public long getCoalesced() {
+        return m_coalesced;
+    }
+
+    /**
+     * @return Commands queued again because the subscriber went away before
+     *         acknowledging them.
+     */
+    public long getRequeued() {
+        return m_requeued;
+    }
+
+    @Override
+    public String toString() {
+        return "OutboundQueueStats{" +
+                "depth=" + m_depth + "; " +
+                "priorityDepth=" + m_priorityDepth + "; " +
+                "peakDepth=" + m_peakDepth + "; " +
+                "capacity=" + m_capacity + "; " +
+                "enqueued=" + m_enqueued + "; " +
+                "dropped=" + m_dropped + "; " +
+                "coalesced=" + m_coalesced + "; " +
+                "requeued=" + m_requeued + "}";
+    }
+}
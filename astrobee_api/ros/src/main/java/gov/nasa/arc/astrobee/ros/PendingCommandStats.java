@@ -0,0 +1,110 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros;
+
+/**
+ * A snapshot of the table of commands that have been published but not yet
+ * completed.
+ */
+public final class PendingCommandStats {
+    private final int m_inFlight;
+    private final int m_peakInFlight;
+    private final int m_capacity;
+    private final long m_registered;
+    private final long m_expired;
+    private final long m_rejected;
+    private final long m_evicted;
+
+    public PendingCommandStats(final int inFlight,
+                               final int peakInFlight,
+                               final int capacity,
+                               final long registered,
+                               final long expired,
+                               final long rejected,
+                               final long evicted) {
+        m_inFlight = inFlight;
+        m_peakInFlight = peakInFlight;
+        m_capacity = capacity;
+        m_registered = registered;
+        m_expired = expired;
+        m_rejected = rejected;
+        m_evicted = evicted;
+    }
+
+    /**
+     * @return Commands currently waiting for their final ack.
+     */
+    public int getInFlight() {
+        return m_inFlight;
+    }
+
+    /**
+     * @return The most commands that were ever waiting at once.
+     */
+    public int getPeakInFlight() {
+        return m_peakInFlight;
+    }
+
+    /**
+     * @return The most commands allowed to wait at once.
+     */
+    public int getCapacity() {
+        return m_capacity;
+    }
+
+    /**
+     * @return Commands published since the node started.
+     */
+    public long getRegistered() {
+        return m_registered;
+    }
+
+    /**
+     * @return Commands failed because no ack arrived before their timeout.
+     */
+    public long getExpired() {
+        return m_expired;
+    }
+
+    /**
+     * @return Commands refused because the table was full.
+     */
+    public long getRejected() {
+        return m_rejected;
+    }
+
+    /**
+     * @return Commands given up on to make room for newer ones.
+     */
+    public long getEvicted() {
+        return m_evicted;
+    }
+
+    @Override
+    public String toString() {
+        return "PendingCommandStats{" +
+                "inFlight=" + m_inFlight + "; " +
+                "peakInFlight=" + m_peakInFlight + "; " +
+                "capacity=" + m_capacity + "; " +
+                "registered=" + m_registered + "; " +
+                "expired=" + m_expired + "; " +
+                "rejected=" + m_rejected + "; " +
+                "evicted=" + m_evicted + "}";
+    }
+}
@@ -0,0 +1,42 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros;
+
+/**
+ * What to do when a command is published while nobody is subscribed to the
+ * command topic and the queue of commands waiting to go out is full.
+ */
+public enum QueueOverflowPolicy {
+    /**
+     * Make the publishing thread wait until there is room.
+     */
+    BLOCK,
+
+    /**
+     * Give up on the oldest queued command, failing its PendingResult.
+     */
+    DROP_OLDEST,
+
+    /**
+     * A newer command replaces a queued one of the same name, failing the
+     * older PendingResult, whether or not the queue is full. If none matches
+     * and the queue is full, the oldest is dropped.
+     */
+    COALESCE
+}
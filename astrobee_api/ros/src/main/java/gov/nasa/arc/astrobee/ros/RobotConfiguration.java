@@ -32,6 +32,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class RobotConfiguration {
     private URI m_masterUri = null;
@@ -42,6 +43,22 @@ public class RobotConfiguration {
     private int m_tcpPort = 0;
     private int m_rpcPort = 0;
 
+    private long m_commandTimeoutMillis = TimeUnit.MINUTES.toMillis(10);
+    private int m_maxPendingCommands = 1024;
+    private PendingOverflowPolicy m_pendingOverflowPolicy = PendingOverflowPolicy.EVICT_OLDEST;
+    private boolean m_sharedNode = false;
+    private boolean m_publisherThread = false;
+    private int m_outboundQueueCapacity = 256;
+    private QueueOverflowPolicy m_outboundQueuePolicy = QueueOverflowPolicy.DROP_OLDEST;
+
+    // About eight seconds of EKF output at 62.5Hz
+    private int m_kinematicsHistorySize = 512;
+
+    private File m_journalDirectory = null;
+    private long m_journalSegmentSize = 16 * 1024 * 1024;
+
+    private long m_metricsPeriodMillis = 0;
+
     private final Map<String, String> m_environment;
     private final Map<GraphName, GraphName> m_remappings;
 
@@ -55,23 +72,51 @@ public class RobotConfiguration {
     }
 
     public NodeConfiguration build() {
+        return build(null);
+    }
+
+    /**
+     * Build the node configuration for a named robot. Its topics live in a
+     * namespace of that name, below the one given by ROS_NAMESPACE. A named
+     * robot's node always binds ephemeral ports, so that it can run next to
+     * the local one.
+     *
+     * @param robotName The robot, or {@code null} for the default namespace.
+     */
+    public NodeConfiguration build(final String robotName) {
         final NodeConfiguration config = NodeConfiguration.newPublic(getHost());
         config.setMasterUri(getMasterUri());
-        config.setParentResolver(buildParentResolver());
+        config.setParentResolver(buildParentResolver(robotName));
         config.setRosRoot(null);
         config.setRosPackagePath(getRosPackagePath());
         if (m_nodeName != null) {
             config.setNodeName(m_nodeName);
         }
-        if (m_tcpPort > 0) {
+        final boolean named = robotName != null && robotName.length() > 0;
+        if (m_tcpPort > 0 && !named) {
             config.setTcpRosBindAddress(BindAddress.newPublic(m_tcpPort));
         }
-        if (m_rpcPort > 0) {
+        if (m_rpcPort > 0 && !named) {
             config.setXmlRpcBindAddress(BindAddress.newPublic(m_rpcPort));
         }
         return config;
     }
 
+    /**
+     * Build the node configuration for the node that named robots share
+     * when the local robot has a node of its own. Like a named robot's node
+     * it binds ephemeral ports, and it is given a name of its own so that
+     * the master doesn't take it for the local node or the process-wide
+     * {@link SharedNode}, and shut one of them down.
+     */
+    NodeConfiguration buildForNamedRobots() {
+        final NodeConfiguration config = build(null);
+        config.setTcpRosBindAddress(BindAddress.newPublic());
+        config.setXmlRpcBindAddress(BindAddress.newPublic());
+        config.setNodeName(m_nodeName != null ? m_nodeName + "_robots" : "astrobee_api_robots");
+        return config;
+    }
+
     private String getHost() {
         if (m_host != null)
             return m_host;
@@ -103,11 +148,14 @@ public class RobotConfiguration {
         }
     }
 
-    private NameResolver buildParentResolver() {
+    private NameResolver buildParentResolver(final String robotName) {
         GraphName namespace = GraphName.root();
         if (m_environment.containsKey(org.ros.EnvironmentVariables.ROS_NAMESPACE)) {
             namespace = GraphName.of(m_environment.get(org.ros.EnvironmentVariables.ROS_NAMESPACE)).toGlobal();
         }
+        if (robotName != null && robotName.length() > 0) {
+            namespace = namespace.join(GraphName.of(robotName).toRelative());
+        }
         return new NameResolver(namespace, m_remappings);
     }
 
@@ -143,6 +191,10 @@ public class RobotConfiguration {
         return this;
     }
 
+    /**
+     * Fix the TCPROS port of the local robot's node. Named robots' nodes
+     * always use an ephemeral one.
+     */
     public RobotConfiguration setTcpPort(int port) {
         if (port < 0 || port > 0xFFFF)
             throw new IllegalArgumentException("port must be between 0 and 65535");
@@ -150,6 +202,10 @@ public class RobotConfiguration {
         return this;
     }
 
+    /**
+     * Fix the XML-RPC port of the local robot's node. Named robots' nodes
+     * always use an ephemeral one.
+     */
     public RobotConfiguration setRpcPort(int port) {
         if (port < 0 || port > 0xFFFF)
             throw new IllegalArgumentException("port must be between 0 and 65535");
@@ -166,4 +222,157 @@ public class RobotConfiguration {
         m_nodeName = name;
         return this;
     }
+
+    public long getCommandTimeoutMillis() {
+        return m_commandTimeoutMillis;
+    }
+
+    /**
+     * How long a command may go without any ack before its PendingResult is
+     * failed with a timeout. Every ack received restarts the clock.
+     */
+    public RobotConfiguration setCommandTimeout(long timeout, TimeUnit units) {
+        if (timeout <= 0)
+            throw new IllegalArgumentException("timeout must be positive");
+        m_commandTimeoutMillis = units.toMillis(timeout);
+        return this;
+    }
+
+    public int getMaxPendingCommands() {
+        return m_maxPendingCommands;
+    }
+
+    /**
+     * The most commands that may be waiting for their final ack at once.
+     */
+    public RobotConfiguration setMaxPendingCommands(int max) {
+        if (max < 1)
+            throw new IllegalArgumentException("max must be positive");
+        m_maxPendingCommands = max;
+        return this;
+    }
+
+    public PendingOverflowPolicy getPendingOverflowPolicy() {
+        return m_pendingOverflowPolicy;
+    }
+
+    public RobotConfiguration setPendingOverflowPolicy(final PendingOverflowPolicy policy) {
+        if (policy == null)
+            throw new NullPointerException("policy may not be null");
+        m_pendingOverflowPolicy = policy;
+        return this;
+    }
+
+    public boolean isSharedNodeEnabled() {
+        return m_sharedNode;
+    }
+
+    /**
+     * Run on the process-wide {@link SharedNode} rather than a node of our
+     * own. Off by default. Named robots attach to a shared node either way,
+     * with their topics below a namespace of their name: this one if
+     * enabled, otherwise one that only they share.
+     */
+    public RobotConfiguration setSharedNodeEnabled(boolean enabled) {
+        m_sharedNode = enabled;
+        return this;
+    }
+
+    public boolean isPublisherThreadEnabled() {
+        return m_publisherThread;
+    }
+
+    /**
+     * Send commands from a dedicated thread. Callers then only pay for
+     * handing the command over, at the price of one thread switch before it
+     * goes out. Off by default.
+     */
+    public RobotConfiguration setPublisherThreadEnabled(boolean enabled) {
+        m_publisherThread = enabled;
+        return this;
+    }
+
+    public int getOutboundQueueCapacity() {
+        return m_outboundQueueCapacity;
+    }
+
+    /**
+     * The most commands to hold while nobody is subscribed to the command
+     * topic. Safety commands such as stopAllMotion don't count.
+     */
+    public RobotConfiguration setOutboundQueueCapacity(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive");
+        m_outboundQueueCapacity = capacity;
+        return this;
+    }
+
+    public QueueOverflowPolicy getOutboundQueuePolicy() {
+        return m_outboundQueuePolicy;
+    }
+
+    public RobotConfiguration setOutboundQueuePolicy(final QueueOverflowPolicy policy) {
+        if (policy == null)
+            throw new NullPointerException("policy may not be null");
+        m_outboundQueuePolicy = policy;
+        return this;
+    }
+
+    public int getKinematicsHistorySize() {
+        return m_kinematicsHistorySize;
+    }
+
+    /**
+     * How many EKF samples to keep for Robot.getKinematicsAt(). This bounds
+     * how far back in time a lookup can reach.
+     */
+    public RobotConfiguration setKinematicsHistorySize(int samples) {
+        if (samples < 2)
+            throw new IllegalArgumentException("samples must be at least 2");
+        m_kinematicsHistorySize = samples;
+        return this;
+    }
+
+    public File getJournalDirectory() {
+        return m_journalDirectory;
+    }
+
+    /**
+     * Record every command sent and ack received to memory-mapped files in
+     * this directory. Off (null) by default.
+     */
+    public RobotConfiguration setJournalDirectory(final File directory) {
+        m_journalDirectory = directory;
+        return this;
+    }
+
+    public long getJournalSegmentSize() {
+        return m_journalSegmentSize;
+    }
+
+    /**
+     * Size of each journal file. A new one is started when one fills up.
+     */
+    public RobotConfiguration setJournalSegmentSize(long bytes) {
+        if (bytes < 4096 || bytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("bytes must be between 4KiB and 2GiB");
+        m_journalSegmentSize = bytes;
+        return this;
+    }
+
+    public long getMetricsPeriodMillis() {
+        return m_metricsPeriodMillis;
+    }
+
+    /**
+     * How often to publish command metrics on the "robot_api/command_metrics"
+     * topic. Zero, the default, publishes nothing; the metrics are always
+     * available from DefaultRobot.getCommandMetrics().
+     */
+    public RobotConfiguration setMetricsPeriod(long period, TimeUnit units) {
+        if (period < 0)
+            throw new IllegalArgumentException("period may not be negative");
+        m_metricsPeriodMillis = units.toMillis(period);
+        return this;
+    }
 }
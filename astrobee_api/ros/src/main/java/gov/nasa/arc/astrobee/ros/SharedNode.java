@@ -0,0 +1,541 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ros.message.MessageListener;
+import org.ros.namespace.GraphName;
+import org.ros.node.AbstractNodeMain;
+import org.ros.node.ConnectedNode;
+import org.ros.node.Node;
+import org.ros.node.NodeConfiguration;
+import org.ros.node.NodeListener;
+import org.ros.node.NodeMain;
+import org.ros.node.NodeMainExecutor;
+import org.ros.node.topic.Publisher;
+import org.ros.node.topic.Subscriber;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One ROS node per process that several components can hang their
+ * publishers and subscribers off, instead of each starting a node of its own
+ * (and with it a master registration and a set of XML-RPC and TCPROS
+ * servers).
+ *
+ * Components are ordinary {@link NodeMain}s. Attaching one calls its
+ * {@code onStart} once the node is up, or right away if it already is. Each
+ * component gets a view of the shared {@link ConnectedNode} that keeps track
+ * of the publishers and subscribers it opens and the message listeners it
+ * adds. Detaching calls {@code onShutdown}, removes the component's message
+ * listeners and shuts down the topics no other component has open, then
+ * calls {@code onShutdownComplete}. The node itself goes down with the last
+ * component.
+ *
+ * rosjava hands out the same publisher or subscriber to everyone who opens a
+ * given topic on a node, so a component that shuts down a topic through its
+ * view only gives up its own hold on it.
+ */
+public final class SharedNode {
+    private static final Log logger = LogFactory.getLog(SharedNode.class);
+
+    private static SharedNode s_instance = null;
+
+    private static final class Component {
+        final NodeMain main;
+        final NodeListener[] listeners;
+
+        // Guarded by m_lock. The topics it opened, once per time it opened
+        // them, and the message listeners it added to its subscribers.
+        ConnectedNode view = null;
+        final List<Object> topics = new ArrayList<>();
+        final List<Subscription> subscriptions = new ArrayList<>();
+
+        Component(final NodeMain main, final NodeListener[] listeners) {
+            this.main = main;
+            this.listeners = listeners;
+        }
+    }
+
+    private static final class Subscription {
+        final Subscriber<?> subscriber;
+        final Object listener;
+
+        Subscription(final Subscriber<?> subscriber, final Object listener) {
+            this.subscriber = subscriber;
+            this.listener = listener;
+        }
+    }
+
+    private final NodeMainExecutor m_executor;
+    private final Object m_lock = new Object();
+    private final List<Component> m_components = new ArrayList<>();
+    private ConnectedNode m_node = null;
+    private boolean m_shutdown = false;
+    // How many times the components still attached have opened each topic.
+    // Guarded by m_lock.
+    private final Map<Object, Integer> m_topicRefs = new IdentityHashMap<>();
+
+    private final long m_executedAt = System.nanoTime();
+
+    private final NodeMain m_nodeMain = new AbstractNodeMain() {
+        @Override
+        public GraphName getDefaultNodeName() {
+            return GraphName.of("astrobee_api");
+        }
+
+        @Override
+        public void onStart(final ConnectedNode connectedNode) {
+            final Component[] components;
+            synchronized (m_lock) {
+                m_node = connectedNode;
+                components = m_components.toArray(new Component[m_components.size()]);
+            }
+            logger.info("Shared node up in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - m_executedAt) + "ms with "
+                    + components.length + " component(s)");
+            for (Component c : components)
+                start(c, connectedNode);
+        }
+
+        @Override
+        public void onShutdown(final Node node) {
+            for (Component c : release()) {
+                final Node view = viewOf(c, node);
+                c.main.onShutdown(view);
+                for (NodeListener l : c.listeners)
+                    l.onShutdown(view);
+            }
+        }
+
+        @Override
+        public void onShutdownComplete(final Node node) {
+            final Component[] components = release();
+            for (Component c : components) {
+                final Node view = viewOf(c, node);
+                c.main.onShutdownComplete(view);
+                for (NodeListener l : c.listeners)
+                    l.onShutdownComplete(view);
+            }
+            synchronized (SharedNode.class) {
+                if (s_instance == SharedNode.this)
+                    s_instance = null;
+            }
+        }
+
+        @Override
+        public void onError(final Node node, final Throwable throwable) {
+            final Component[] components;
+            synchronized (m_lock) {
+                components = m_components.toArray(new Component[m_components.size()]);
+            }
+            for (Component c : components)
+                error(c, viewOf(c, node), throwable);
+        }
+    };
+
+    // Components that were attached when the node went down. Both shutdown
+    // callbacks need them, so the list is only emptied by the second.
+    private Component[] m_released = null;
+
+    private SharedNode(final NodeMainExecutor executor) {
+        m_executor = executor;
+    }
+
+    /**
+     * Get the shared node, starting it with the given configuration if it
+     * isn't running. The configuration is ignored if it is.
+     *
+     * @param configuration Where to find the master and what to call the node.
+     * @return The process-wide {@link SharedNode}.
+     */
+    public static synchronized SharedNode get(final RobotConfiguration configuration) {
+        if (s_instance == null)
+            s_instance = start(NodeExecutorHolder.getExecutor(), configuration.build());
+        return s_instance;
+    }
+
+    /**
+     * Start a node to share that is not the process-wide one, for example
+     * the one the named robots of a {@link DefaultRobotFactory} share.
+     */
+    static SharedNode start(final NodeMainExecutor executor, final NodeConfiguration configuration) {
+        final SharedNode node = new SharedNode(executor);
+        executor.execute(node.m_nodeMain, configuration);
+        return node;
+    }
+
+    /**
+     * Attach a component to the shared node.
+     *
+     * @param main The component.
+     * @param listeners Told about the node's life cycle along with the
+     *                  component, as if they had been passed to
+     *                  {@link org.ros.node.NodeMainExecutor#execute}.
+     */
+    public void attach(final NodeMain main, final NodeListener... listeners) {
+        if (main == null)
+            throw new NullPointerException("main may not be null");
+        final Component c = new Component(main, listeners);
+        final ConnectedNode node;
+        synchronized (m_lock) {
+            if (m_shutdown)
+                throw new IllegalStateException("Shared node has been shut down");
+            m_components.add(c);
+            node = m_node;
+        }
+        if (node == null)
+            return;
+
+        // Keep the caller off the component's onStart, like a node of its own
+        node.getScheduledExecutorService().execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (m_lock) {
+                    if (!m_components.contains(c))
+                        return;
+                }
+                start(c, node);
+            }
+        });
+    }
+
+    /**
+     * Detach a component, shutting it down along with the topics it opened.
+     * Detaching the last component shuts down the node.
+     *
+     * @param main The component passed to {@link #attach}.
+     */
+    public void detach(final NodeMain main) {
+        Component found = null;
+        final ConnectedNode node;
+        final boolean last;
+        synchronized (m_lock) {
+            for (Component c : m_components) {
+                if (c.main == main) {
+                    found = c;
+                    break;
+                }
+            }
+            if (found == null)
+                return;
+            m_components.remove(found);
+            node = m_node;
+            last = m_components.isEmpty();
+        }
+
+        final Node view = viewOf(found, node);
+        found.main.onShutdown(view);
+        for (NodeListener l : found.listeners)
+            l.onShutdown(view);
+        // After onShutdown, which may still want to publish
+        closeTopics(found);
+        found.main.onShutdownComplete(view);
+        for (NodeListener l : found.listeners)
+            l.onShutdownComplete(view);
+
+        if (last)
+            shutdown();
+    }
+
+    /**
+     * Shut down the node and every component still attached.
+     */
+    public void shutdown() {
+        synchronized (m_lock) {
+            if (m_shutdown)
+                return;
+            m_shutdown = true;
+        }
+        synchronized (SharedNode.class) {
+            if (s_instance == this)
+                s_instance = null;
+        }
+        m_executor.getScheduledExecutorService().submit(new Runnable() {
+            @Override
+            public void run() {
+                m_executor.shutdownNodeMain(m_nodeMain);
+            }
+        });
+    }
+
+    boolean isShutdown() {
+        synchronized (m_lock) {
+            return m_shutdown;
+        }
+    }
+
+    private Component[] release() {
+        synchronized (m_lock) {
+            m_shutdown = true;
+            m_node = null;
+            if (m_released == null) {
+                m_released = m_components.toArray(new Component[m_components.size()]);
+                m_components.clear();
+                return m_released;
+            }
+            final Component[] released = m_released;
+            m_released = new Component[0];
+            return released;
+        }
+    }
+
+    private void start(final Component c, final ConnectedNode node) {
+        final ConnectedNode view;
+        synchronized (m_lock) {
+            if (c.view == null)
+                c.view = proxy(ConnectedNode.class, new ComponentNode(c, node));
+            view = c.view;
+        }
+        try {
+            c.main.onStart(view);
+            for (NodeListener l : c.listeners)
+                l.onStart(view);
+        } catch (RuntimeException e) {
+            logger.error("Component failed to start on the shared node", e);
+            error(c, view, e);
+        }
+    }
+
+    private Node viewOf(final Component c, final Node node) {
+        synchronized (m_lock) {
+            return c.view != null ? c.view : node;
+        }
+    }
+
+    /**
+     * Remove every message listener a component added, and give up its hold
+     * on the topics it opened, shutting down those nobody else has open.
+     */
+    private void closeTopics(final Component c) {
+        final List<Subscription> subscriptions;
+        final List<Object> unused = new ArrayList<>();
+        synchronized (m_lock) {
+            subscriptions = new ArrayList<>(c.subscriptions);
+            c.subscriptions.clear();
+            for (Object topic : c.topics) {
+                if (unref(topic))
+                    unused.add(topic);
+            }
+            c.topics.clear();
+        }
+        removeListeners(subscriptions);
+        shutdownTopics(unused);
+    }
+
+    /**
+     * Give up one of a component's holds on a topic, because it shut the
+     * topic down through its view.
+     */
+    private void closeTopic(final Component c, final Object topic) {
+        final List<Subscription> subscriptions = new ArrayList<>();
+        boolean unused = false;
+        synchronized (m_lock) {
+            if (c.topics.remove(topic)) {
+                unused = unref(topic);
+                // The listeners go with the last of the component's holds
+                if (!c.topics.contains(topic)) {
+                    for (int i = c.subscriptions.size() - 1; i >= 0; i--) {
+                        if (c.subscriptions.get(i).subscriber == topic)
+                            subscriptions.add(c.subscriptions.remove(i));
+                    }
+                }
+            }
+        }
+        removeListeners(subscriptions);
+        if (unused)
+            shutdownTopics(Collections.singletonList(topic));
+    }
+
+    /**
+     * Called with the lock held.
+     *
+     * @return Whether nobody has the topic open any more.
+     */
+    private boolean unref(final Object topic) {
+        final Integer refs = m_topicRefs.get(topic);
+        if (refs == null || refs <= 1) {
+            m_topicRefs.remove(topic);
+            return true;
+        }
+        m_topicRefs.put(topic, refs - 1);
+        return false;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static void removeListeners(final List<Subscription> subscriptions) {
+        for (Subscription s : subscriptions)
+            ((Subscriber) s.subscriber).removeMessageListener((MessageListener) s.listener);
+    }
+
+    private static void shutdownTopics(final List<Object> topics) {
+        for (Object topic : topics) {
+            try {
+                if (topic instanceof Publisher)
+                    ((Publisher<?>) topic).shutdown();
+                else
+                    ((Subscriber<?>) topic).shutdown();
+            } catch (RuntimeException e) {
+                logger.warn("Unable to shut down a detached component's topic", e);
+            }
+        }
+    }
+
+    /**
+     * A component's view of the node: records the topics opened through it
+     * and hands out views of them in turn.
+     */
+    private final class ComponentNode implements InvocationHandler {
+        private final Component m_component;
+        private final ConnectedNode m_node;
+
+        ComponentNode(final Component component, final ConnectedNode node) {
+            m_component = component;
+            m_node = node;
+        }
+
+        @Override
+        public Object invoke(final Object self, final Method method, final Object[] args) throws Throwable {
+            if (isIdentityMethod(method))
+                return identity(self, method, args);
+            final Object result = forward(m_node, method, args);
+            if (result == null)
+                return null;
+            switch (method.getName()) {
+                case "newPublisher":
+                    opened(result);
+                    return proxy(Publisher.class, new ComponentTopic(m_component, result));
+                case "newSubscriber":
+                    opened(result);
+                    return proxy(Subscriber.class, new ComponentTopic(m_component, result));
+                default:
+                    return result;
+            }
+        }
+
+        private void opened(final Object topic) {
+            synchronized (m_lock) {
+                m_component.topics.add(topic);
+                final Integer refs = m_topicRefs.get(topic);
+                m_topicRefs.put(topic, refs == null ? 1 : refs + 1);
+            }
+        }
+    }
+
+    /**
+     * A component's view of a publisher or subscriber: records the message
+     * listeners added through it, and turns shutting it down into giving up
+     * the component's hold on it.
+     */
+    private final class ComponentTopic implements InvocationHandler {
+        private final Component m_component;
+        private final Object m_topic;
+
+        ComponentTopic(final Component component, final Object topic) {
+            m_component = component;
+            m_topic = topic;
+        }
+
+        @Override
+        public Object invoke(final Object self, final Method method, final Object[] args) throws Throwable {
+            if (isIdentityMethod(method))
+                return identity(self, method, args);
+            switch (method.getName()) {
+                case "shutdown":
+                    closeTopic(m_component, m_topic);
+                    return null;
+                case "addMessageListener":
+                    synchronized (m_lock) {
+                        m_component.subscriptions.add(new Subscription((Subscriber<?>) m_topic, args[0]));
+                    }
+                    break;
+                case "removeMessageListener":
+                    synchronized (m_lock) {
+                        for (int i = 0; i < m_component.subscriptions.size(); i++) {
+                            final Subscription s = m_component.subscriptions.get(i);
+                            if (s.subscriber == m_topic && s.listener == args[0]) {
+                                m_component.subscriptions.remove(i);
+                                break;
+                            }
+                        }
+                    }
+                    break;
+                case "removeAllMessageListeners": {
+                    // Only this component's, the others still want theirs
+                    final List<Subscription> mine = new ArrayList<>();
+                    synchronized (m_lock) {
+                        for (int i = m_component.subscriptions.size() - 1; i >= 0; i--) {
+                            if (m_component.subscriptions.get(i).subscriber == m_topic)
+                                mine.add(m_component.subscriptions.remove(i));
+                        }
+                    }
+                    removeListeners(mine);
+                    return null;
+                }
+                default:
+                    break;
+            }
+            return forward(m_topic, method, args);
+        }
+    }
+
+    private static boolean isIdentityMethod(final Method method) {
+        return method.getDeclaringClass() == Object.class;
+    }
+
+    private static Object identity(final Object self, final Method method, final Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return self == args[0];
+            case "hashCode":
+                return System.identityHashCode(self);
+            default:
+                return self.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(self));
+        }
+    }
+
+    private static Object forward(final Object target, final Method method, final Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(SharedNode.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    private static void error(final Component c, final Node node, final Throwable throwable) {
+        c.main.onError(node, throwable);
+        for (NodeListener l : c.listeners)
+            l.onError(node, throwable);
+    }
+}
@@ -0,0 +1,45 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out command ids. They look like UUIDs, as before, but only the first
+ * one is random: the rest count up from it, so ids never collide within a
+ * process and no SecureRandom is touched per command.
+ */
+final class CommandIdGenerator {
+    private static final long s_base;
+    private static final long s_high;
+    private static final AtomicLong s_counter = new AtomicLong();
+
+    static {
+        final UUID seed = UUID.randomUUID();
+        s_high = seed.getMostSignificantBits();
+        s_base = seed.getLeastSignificantBits();
+    }
+
+    private CommandIdGenerator() { }
+
+    static String next() {
+        return new UUID(s_high, s_base + s_counter.getAndIncrement()).toString();
+    }
+}
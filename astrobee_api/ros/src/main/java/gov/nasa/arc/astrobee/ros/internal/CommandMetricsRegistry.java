@@ -0,0 +1,122 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal;
+
+import gov.nasa.arc.astrobee.Result;
+import gov.nasa.arc.astrobee.ros.CommandMetrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per command name counters and latency histograms. Each command looks up
+ * its {@link Entry} once when published, after that everything is atomic
+ * increments.
+ */
+final class CommandMetricsRegistry {
+    static final class Entry {
+        private final String m_name;
+        private final AtomicLong m_published = new AtomicLong();
+        private final AtomicLong m_queued = new AtomicLong();
+        private final AtomicLong m_requeued = new AtomicLong();
+        private final AtomicLong m_succeeded = new AtomicLong();
+        private final AtomicLong m_failed = new AtomicLong();
+        private final AtomicLong m_canceled = new AtomicLong();
+        private final LatencyHistogram m_firstAck = new LatencyHistogram();
+        private final LatencyHistogram m_completed = new LatencyHistogram();
+
+        Entry(final String name) {
+            m_name = name;
+        }
+
+        void published() {
+            m_published.incrementAndGet();
+        }
+
+        void queued() {
+            m_queued.incrementAndGet();
+        }
+
+        void requeued() {
+            m_requeued.incrementAndGet();
+        }
+
+        void firstAck(final long nanos) {
+            m_firstAck.record(nanos);
+        }
+
+        void completed(final Result.Status status, final long nanos) {
+            m_completed.record(nanos);
+            switch (status) {
+                case OK:
+                    m_succeeded.incrementAndGet();
+                    break;
+                case CANCELED:
+                    m_canceled.incrementAndGet();
+                    break;
+                default:
+                    m_failed.incrementAndGet();
+                    break;
+            }
+        }
+
+        void failed() {
+            m_failed.incrementAndGet();
+        }
+
+        CommandMetrics snapshot() {
+            return new CommandMetrics(m_name,
+                                      m_published.get(),
+                                      m_queued.get(),
+                                      m_requeued.get(),
+                                      m_succeeded.get(),
+                                      m_failed.get(),
+                                      m_canceled.get(),
+                                      m_firstAck.snapshot(),
+                                      m_completed.snapshot());
+        }
+    }
+
+    private final ConcurrentMap<String, Entry> m_entries = new ConcurrentHashMap<>();
+
+    Entry get(final String name) {
+        final String key = name != null ? name : "";
+        Entry entry = m_entries.get(key);
+        if (entry == null) {
+            final Entry created = new Entry(key);
+            entry = m_entries.putIfAbsent(key, created);
+            if (entry == null)
+                entry = created;
+        }
+        return entry;
+    }
+
+    /**
+     * @return Metrics of every command name seen so far, sorted by name.
+     */
+    Map<String, CommandMetrics> snapshot() {
+        final Map<String, CommandMetrics> result = new TreeMap<>();
+        for (Entry e : m_entries.values())
+            result.put(e.m_name, e.snapshot());
+        return result;
+    }
+}
@@ -0,0 +1,171 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal;
+
+import gov.nasa.arc.astrobee.AstrobeeException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A dedicated thread that does all the work of sending commands: stamping,
+ * registering, journaling and serializing. Callers just drop the command in
+ * an {@link MpscRing}, which in the common case costs them one CAS. If the
+ * ring is full they wait on a condition, which the publisher thread only
+ * signals when someone is actually waiting.
+ */
+final class CommandPublisherThread implements Runnable {
+    private static final Log logger = LogFactory.getLog(CommandPublisherThread.class);
+
+    interface Handler {
+        /**
+         * Actually send a command. Called on the publisher thread only.
+         */
+        void dispatch(DefaultPendingResult pr);
+    }
+
+    private final MpscRing<DefaultPendingResult> m_ring;
+    private final Handler m_handler;
+    private final Thread m_thread;
+    private volatile boolean m_waiting = false;
+    private volatile boolean m_running = true;
+
+    // Producers waiting for room in a full ring. Only changed under the lock.
+    private final ReentrantLock m_roomLock = new ReentrantLock();
+    private final Condition m_room = m_roomLock.newCondition();
+    private volatile int m_blocked = 0;
+
+    CommandPublisherThread(final int capacity, final Handler handler) {
+        m_ring = new MpscRing<>(capacity);
+        m_handler = handler;
+        m_thread = new Thread(this, "Command Publisher");
+        m_thread.setDaemon(true);
+    }
+
+    void start() {
+        m_thread.start();
+    }
+
+    /**
+     * Hand a command to the publisher thread. Only waits if the ring is full.
+     */
+    void submit(final DefaultPendingResult pr) {
+        if (!m_running) {
+            pr.setThrowable(new AstrobeeException("Node shut down before the command was sent"));
+            return;
+        }
+        if (!m_ring.offer(pr) && !awaitRoom(pr)) {
+            pr.setThrowable(new AstrobeeException("Node shut down before the command was sent"));
+            return;
+        }
+        if (m_waiting)
+            LockSupport.unpark(m_thread);
+    }
+
+    /**
+     * Slow path of {@link #submit}: wait until the command fits in the ring.
+     *
+     * @return {@code false} if we shut down first.
+     */
+    private boolean awaitRoom(final DefaultPendingResult pr) {
+        m_roomLock.lock();
+        m_blocked++;
+        try {
+            // m_blocked is published before we look at the ring again, so
+            // the publisher thread either sees us waiting or has already
+            // made the room we'll find.
+            while (m_running) {
+                if (m_ring.offer(pr))
+                    return true;
+                LockSupport.unpark(m_thread);
+                m_room.awaitUninterruptibly();
+            }
+            return false;
+        } finally {
+            m_blocked--;
+            m_roomLock.unlock();
+        }
+    }
+
+    private void signalRoom(final boolean all) {
+        m_roomLock.lock();
+        try {
+            if (all)
+                m_room.signalAll();
+            else
+                m_room.signal();
+        } finally {
+            m_roomLock.unlock();
+        }
+    }
+
+    /**
+     * Stop after sending everything already submitted.
+     */
+    void shutdown() {
+        m_running = false;
+        signalRoom(true);
+        LockSupport.unpark(m_thread);
+        try {
+            m_thread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (m_thread.isAlive())
+            return;
+
+        // The consumer is gone, so we may poll. Fail whatever raced in late.
+        DefaultPendingResult pr;
+        while ((pr = m_ring.poll()) != null)
+            pr.setThrowable(new AstrobeeException("Node shut down before the command was sent"));
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            final DefaultPendingResult pr = m_ring.poll();
+            if (pr != null) {
+                if (m_blocked > 0)
+                    signalRoom(false);
+                try {
+                    m_handler.dispatch(pr);
+                } catch (RuntimeException e) {
+                    logger.error("Unable to publish command " + pr.getCommand().getCmdId(), e);
+                    pr.setThrowable(e);
+                }
+                continue;
+            }
+            if (!m_running)
+                return;
+
+            // A submit either sees m_waiting and unparks us, or its item is
+            // in the ring by the time we look: both are volatile, so they
+            // can't both miss. The loop covers spurious wake-ups.
+            m_waiting = true;
+            while (m_ring.isEmpty() && m_running)
+                LockSupport.park(this);
+            m_waiting = false;
+        }
+    }
+}
@@ -29,23 +29,38 @@ import std_msgs.Header;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 class DefaultCommandBuilder implements CommandBuilder {
+    // How many arguments each command had last time it was built, so the
+    // list can be sized right up front. Commands are a small fixed set. This
+    // is only a capacity hint: the argument messages themselves are still
+    // created per command, see newArgument().
+    private static final ConcurrentMap<String, Integer> s_argCounts = new ConcurrentHashMap<>();
+    private static final int DEFAULT_ARG_COUNT = 4;
+
     private final MessageFactory m_messageFactory;
     private final CommandStamped m_cmd;
-    private final List<CommandArg> m_args = new ArrayList<>();
+    private List<CommandArg> m_args = null;
 
     DefaultCommandBuilder(final MessageFactory messageFactory) {
         m_messageFactory = messageFactory;
         m_cmd = m_messageFactory.newFromType(CommandStamped._TYPE);
-        m_cmd.setHeader((Header) m_messageFactory.newFromType(Header._TYPE));
+        // rosjava fills in nested messages with defaults already, only make
+        // a header if this factory didn't.
+        if (m_cmd.getHeader() == null)
+            m_cmd.setHeader((Header) m_messageFactory.newFromType(Header._TYPE));
         m_cmd.setCmdOrigin("guest_science");
     }
 
     @Override
     public CommandBuilder setName(final String name) {
         m_cmd.setCmdName(name);
+        if (m_args == null) {
+            final Integer count = s_argCounts.get(name);
+            m_args = new ArrayList<>(count != null ? count : DEFAULT_ARG_COUNT);
+        }
         return this;
     }
 
@@ -57,73 +72,57 @@ class DefaultCommandBuilder implements CommandBuilder {
 
     @Override
     public CommandBuilder addArgument(final String name, int value) {
-        final CommandArg arg = m_messageFactory.newFromType(CommandArg._TYPE);
-        arg.setDataType(CommandArg.DATA_TYPE_INT);
+        final CommandArg arg = newArgument(CommandArg.DATA_TYPE_INT);
         arg.setI(value);
-        m_args.add(arg);
         return this;
     }
 
     @Override
     public CommandBuilder addArgument(final String name, long value) {
-        final CommandArg arg = m_messageFactory.newFromType(CommandArg._TYPE);
-        arg.setDataType(CommandArg.DATA_TYPE_LONGLONG);
+        final CommandArg arg = newArgument(CommandArg.DATA_TYPE_LONGLONG);
         arg.setLl(value);
-        m_args.add(arg);
         return this;
     }
 
     @Override
     public CommandBuilder addArgument(final String name, float value) {
-        final CommandArg arg = m_messageFactory.newFromType(CommandArg._TYPE);
-        arg.setDataType(CommandArg.DATA_TYPE_FLOAT);
+        final CommandArg arg = newArgument(CommandArg.DATA_TYPE_FLOAT);
         arg.setF(value);
-        m_args.add(arg);
         return this;
     }
 
     @Override
     public CommandBuilder addArgument(final String name, double value) {
-        final CommandArg arg = m_messageFactory.newFromType(CommandArg._TYPE);
-        arg.setDataType(CommandArg.DATA_TYPE_DOUBLE);
+        final CommandArg arg = newArgument(CommandArg.DATA_TYPE_DOUBLE);
         arg.setD(value);
-        m_args.add(arg);
         return this;
     }
 
     @Override
     public CommandBuilder addArgument(final String name, boolean value) {
-        final CommandArg arg = m_messageFactory.newFromType(CommandArg._TYPE);
-        arg.setDataType(CommandArg.DATA_TYPE_BOOL);
+        final CommandArg arg = newArgument(CommandArg.DATA_TYPE_BOOL);
         arg.setB(value);
-        m_args.add(arg);
         return this;
     }
 
     @Override
     public CommandBuilder addArgument(final String name, final Vec3d value) {
-        final CommandArg arg = m_messageFactory.newFromType(CommandArg._TYPE);
-        arg.setDataType(CommandArg.DATA_TYPE_VEC3d);
+        final CommandArg arg = newArgument(CommandArg.DATA_TYPE_VEC3d);
         arg.setVec3d(value.toArray());
-        m_args.add(arg);
         return this;
     }
 
     @Override
     public CommandBuilder addArgument(final String name, final Mat33f value) {
-        final CommandArg arg = m_messageFactory.newFromType(CommandArg._TYPE);
-        arg.setDataType(CommandArg.DATA_TYPE_MAT33f);
+        final CommandArg arg = newArgument(CommandArg.DATA_TYPE_MAT33f);
         arg.setMat33f(value.toArray());
-        m_args.add(arg);
         return this;
     }
 
     @Override
     public CommandBuilder addArgument(final String name, final String value) {
-        final CommandArg arg = m_messageFactory.newFromType(CommandArg._TYPE);
-        arg.setDataType(CommandArg.DATA_TYPE_STRING);
+        final CommandArg arg = newArgument(CommandArg.DATA_TYPE_STRING);
         arg.setS(value);
-        m_args.add(arg);
         return this;
     }
 
@@ -135,8 +134,25 @@ class DefaultCommandBuilder implements CommandBuilder {
 
     @Override
     public Publishable build() {
-        m_cmd.setCmdId(UUID.randomUUID().toString());
-        m_cmd.setArgs(m_args);
+        m_cmd.setCmdId(CommandIdGenerator.next());
+        if (m_args != null) {
+            m_cmd.setArgs(m_args);
+            final String name = m_cmd.getCmdName();
+            final Integer count = s_argCounts.get(name);
+            if (count == null || count != m_args.size())
+                s_argCounts.put(name, m_args.size());
+        }
         return new CommandHolder(m_cmd);
     }
+
+    // The ff_msgs CommandArg has no name field, arguments are positional on
+    // the wire, so names are only used by callers for readability.
+    private CommandArg newArgument(final byte dataType) {
+        final CommandArg arg = m_messageFactory.newFromType(CommandArg._TYPE);
+        arg.setDataType(dataType);
+        if (m_args == null)
+            m_args = new ArrayList<>(DEFAULT_ARG_COUNT);
+        m_args.add(arg);
+        return arg;
+    }
 }
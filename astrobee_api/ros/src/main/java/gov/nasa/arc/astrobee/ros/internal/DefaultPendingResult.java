@@ -20,27 +20,19 @@ package gov.nasa.arc.astrobee.ros.internal;
 
 import ff_msgs.AckStamped;
 import ff_msgs.CommandStamped;
-import gov.nasa.arc.astrobee.AstrobeeException;
-import gov.nasa.arc.astrobee.PendingResult;
-import gov.nasa.arc.astrobee.Result;
-
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-
-class DefaultPendingResult implements PendingResult {
-    private Status m_status = Status.EXECUTING;
-
-    // Synchronization object protecting the result and exception
-    private final Object m_sync = new Object();
-    private DefaultResult m_result = null;
-    private AstrobeeException m_exception = null;
-
-    private final CountDownLatch m_latch = new CountDownLatch(1);
+import gov.nasa.arc.astrobee.internal.AbstractPendingResult;
 
+class DefaultPendingResult extends AbstractPendingResult {
     private final CommandStamped m_cmd;
 
+    // Where to report latency and outcome, null if not measured
+    private CommandMetricsRegistry.Entry m_metrics = null;
+    private long m_publishedAt = 0;
+    private volatile boolean m_acked = false;
+    private volatile boolean m_sent = false;
+
     DefaultPendingResult(final CommandStamped cmd) {
+        super(Status.EXECUTING);
         m_cmd = cmd;
     }
 
@@ -48,64 +40,81 @@ class DefaultPendingResult implements PendingResult {
         return m_cmd;
     }
 
-    @Override
-    public synchronized boolean isFinished() {
-        return m_status == Status.COMPLETED;
+    /**
+     * Start timing this command. Must be called before it is published.
+     */
+    void measure(final CommandMetricsRegistry.Entry metrics, final long publishedAt) {
+        m_metrics = metrics;
+        m_publishedAt = publishedAt;
     }
 
-    @Override
-    public synchronized Status getStatus() {
-        return m_status;
+    void update(final AckStamped ack) {
+        final Status status = Status.fromValue(ack.getStatus().getStatus());
+        if (!m_acked) {
+            m_acked = true;
+            if (m_metrics != null)
+                m_metrics.firstAck(System.nanoTime() - m_publishedAt);
+        }
+        updateStatus(status);
+        if (status == Status.COMPLETED) {
+            final DefaultResult result = new DefaultResult(ack);
+            if (complete(result) && m_metrics != null)
+                m_metrics.completed(result.getStatus(), System.nanoTime() - m_publishedAt);
+        }
     }
 
-    void update(final AckStamped ack) {
-        setStatus(Status.fromValue(ack.getStatus().getStatus()));
-        if (m_status == Status.COMPLETED)
-            setResult(new DefaultResult(ack));
+    boolean isAcked() {
+        return m_acked;
     }
 
-    synchronized void setStatus(Status status) {
-        m_status = status;
+    boolean isSent() {
+        return m_sent;
     }
 
-    void setResult(final DefaultResult r) {
-        synchronized (m_sync) {
-            // If the count has hit zero, then someone has already set either
-            // a result or an exception, so bail.
-            if (m_latch.getCount() == 0)
-                return;
-
-            // We are the first, set our result/exception.
-            m_result = r;
-            m_latch.countDown();
-        }
+    /**
+     * The command was handed to the publisher.
+     */
+    void sent() {
+        m_sent = true;
     }
 
-    void setThrowable(final Throwable t) {
-        synchronized (m_sync) {
-            if (m_latch.getCount() == 0)
-                return;
-            if (t instanceof AstrobeeException)
-                m_exception = (AstrobeeException) t;
+    /**
+     * The command is being held until someone subscribes. Doesn't notify
+     * anyone, so it is safe to call with a lock held; follow up with
+     * {@link #notifyQueued()} once it is released.
+     *
+     * @param again Whether it had been sent before, to a subscriber that
+     *              went away without acknowledging it.
+     */
+    void queued(final boolean again) {
+        m_sent = false;
+        if (m_metrics != null) {
+            if (again)
+                m_metrics.requeued();
             else
-                m_exception = new AstrobeeException(t);
-            m_latch.countDown();
+                m_metrics.queued();
         }
     }
 
-    @Override
-    public Result getResult() throws AstrobeeException, InterruptedException {
-        m_latch.await();
-        if (m_exception != null)
-            throw m_exception;
-        return m_result;
+    /**
+     * Tell status listeners the command is queued, unless it has been sent
+     * or acked since.
+     */
+    void notifyQueued() {
+        if (!m_sent && !m_acked)
+            updateStatus(Status.QUEUED);
+    }
+
+    void setStatus(Status status) {
+        updateStatus(status);
     }
 
-    @Override
-    public Result getResult(long timeout, TimeUnit unit) throws AstrobeeException, InterruptedException, TimeoutException {
-        m_latch.await(timeout, unit);
-        if (m_exception != null)
-            throw m_exception;
-        return m_result;
+    void setResult(final DefaultResult r) {
+        complete(r);
+    }
+
+    void setThrowable(final Throwable t) {
+        if (fail(t) && m_metrics != null)
+            m_metrics.failed();
     }
 }
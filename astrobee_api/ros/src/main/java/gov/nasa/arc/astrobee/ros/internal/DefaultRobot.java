@@ -19,10 +19,20 @@
 package gov.nasa.arc.astrobee.ros.internal;
 
 import gov.nasa.arc.astrobee.PendingResult;
+import gov.nasa.arc.astrobee.PendingResults;
 import gov.nasa.arc.astrobee.Kinematics;
+import gov.nasa.arc.astrobee.KinematicsSnapshot;
 import gov.nasa.arc.astrobee.internal.CommandBuilder;
 import gov.nasa.arc.astrobee.internal.Publishable;
 import gov.nasa.arc.astrobee.internal.RobotImpl;
+import gov.nasa.arc.astrobee.ros.CommandMetrics;
+import gov.nasa.arc.astrobee.ros.OutboundQueueStats;
+import gov.nasa.arc.astrobee.ros.PendingCommandStats;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class DefaultRobot extends RobotImpl {
     private final RobotNodeMain m_nodeMain;
@@ -46,4 +56,81 @@ public class DefaultRobot extends RobotImpl {
     public Kinematics getCurrentKinematics() {
         return m_nodeMain.getKinematics();
     }
+
+    @Override
+    public KinematicsSnapshot copyCurrentKinematics(final KinematicsSnapshot into) {
+        return m_nodeMain.copyKinematics(into);
+    }
+
+    @Override
+    public Kinematics getKinematicsAt(final long timestamp) {
+        final KinematicsSnapshot snapshot = new KinematicsSnapshot();
+        if (!m_nodeMain.copyKinematicsAt(timestamp, snapshot))
+            return null;
+        return snapshot;
+    }
+
+    @Override
+    public boolean copyKinematicsAt(final long timestamp, final KinematicsSnapshot into) {
+        return m_nodeMain.copyKinematicsAt(timestamp, into);
+    }
+
+    @Override
+    public void addKinematicsListener(final KinematicsListener listener, final double maxRateHz) {
+        addKinematicsListener(listener, maxRateHz, PendingResults.getDefaultExecutor());
+    }
+
+    @Override
+    public void addKinematicsListener(final KinematicsListener listener,
+                                      final double maxRateHz,
+                                      final Executor executor) {
+        m_nodeMain.getKinematicsDispatcher().addListener(this, listener, maxRateHz, executor);
+    }
+
+    @Override
+    public void removeKinematicsListener(final KinematicsListener listener) {
+        m_nodeMain.getKinematicsDispatcher().removeListener(listener);
+    }
+
+    @Override
+    public Kinematics awaitConfidence(final Kinematics.Confidence confidence) throws InterruptedException {
+        try {
+            return m_nodeMain.getKinematicsDispatcher().awaitConfidence(
+                    confidence, -1, TimeUnit.NANOSECONDS, new KinematicsSnapshot());
+        } catch (TimeoutException e) {
+            // Cannot happen without a timeout
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public Kinematics awaitConfidence(final Kinematics.Confidence confidence,
+                                      final long timeout,
+                                      final TimeUnit unit)
+            throws InterruptedException, TimeoutException {
+        return m_nodeMain.getKinematicsDispatcher().awaitConfidence(
+                confidence, timeout, unit, new KinematicsSnapshot());
+    }
+
+    /**
+     * @return Occupancy and expiry counters of the commands waiting for acks.
+     */
+    public PendingCommandStats getPendingCommandStats() {
+        return m_nodeMain.getPendingCommandStats();
+    }
+
+    /**
+     * @return Depth and drop counters of the commands held while nobody is
+     *         subscribed to the command topic.
+     */
+    public OutboundQueueStats getOutboundQueueStats() {
+        return m_nodeMain.getOutboundQueueStats();
+    }
+
+    /**
+     * @return Counters and latencies of every command sent so far, by name.
+     */
+    public Map<String, CommandMetrics> getCommandMetrics() {
+        return m_nodeMain.getCommandMetrics();
+    }
 }
@@ -0,0 +1,275 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal;
+
+import gov.nasa.arc.astrobee.AstrobeeException;
+import gov.nasa.arc.astrobee.ros.PendingCommandStats;
+import gov.nasa.arc.astrobee.ros.PendingOverflowPolicy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Commands that have been published but not yet completed, keyed by command
+ * id. Every entry carries a deadline; a hashed timer wheel, advanced by
+ * {@link #tick()}, fails the ones whose ack never shows up. The table also
+ * has a hard capacity, enforced according to a {@link PendingOverflowPolicy}.
+ */
+final class InFlightTable {
+    static final long TICK_MILLIS = 100;
+    private static final int WHEEL_SIZE = 512;
+
+    interface ExpiryListener {
+        /**
+         * Called after a command has been dropped from the table and its
+         * pending result failed, be it through expiry or eviction.
+         */
+        void onDropped(DefaultPendingResult pr);
+    }
+
+    private static final class Entry {
+        final String id;
+        final DefaultPendingResult pr;
+        final long seq;
+        volatile long deadline;
+        volatile boolean done = false;
+
+        Entry(final String id, final DefaultPendingResult pr, final long seq, final long deadline) {
+            this.id = id;
+            this.pr = pr;
+            this.seq = seq;
+            this.deadline = deadline;
+        }
+    }
+
+    private final long m_ttlNanos;
+    private final long m_tickNanos = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+    private final int m_capacity;
+    private final PendingOverflowPolicy m_policy;
+    private final ExpiryListener m_listener;
+
+    private final ConcurrentMap<String, Entry> m_entries = new ConcurrentHashMap<>();
+    private final List<ConcurrentLinkedQueue<Entry>> m_wheel;
+    private final AtomicLong m_tick = new AtomicLong();
+
+    private final AtomicInteger m_size = new AtomicInteger();
+    private final AtomicInteger m_peak = new AtomicInteger();
+    private final AtomicLong m_seq = new AtomicLong();
+    private final AtomicLong m_expired = new AtomicLong();
+    private final AtomicLong m_rejected = new AtomicLong();
+    private final AtomicLong m_evicted = new AtomicLong();
+
+    InFlightTable(final long ttl, final TimeUnit unit,
+                  final int capacity,
+                  final PendingOverflowPolicy policy,
+                  final ExpiryListener listener) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive");
+        m_ttlNanos = unit.toNanos(ttl);
+        m_capacity = capacity;
+        m_policy = policy;
+        m_listener = listener;
+
+        m_wheel = new ArrayList<>(WHEEL_SIZE);
+        for (int i = 0; i < WHEEL_SIZE; i++)
+            m_wheel.add(new ConcurrentLinkedQueue<Entry>());
+    }
+
+    /**
+     * Add a command to the table.
+     *
+     * @return false if the table was full and the command was rejected, in
+     *         which case its pending result has already been failed.
+     */
+    boolean register(final String id, final DefaultPendingResult pr) {
+        final int size = m_size.incrementAndGet();
+        if (size > m_capacity) {
+            if (m_policy == PendingOverflowPolicy.REJECT || !evictOldest()) {
+                m_size.decrementAndGet();
+                m_rejected.incrementAndGet();
+                pr.setThrowable(new AstrobeeException(
+                        "Too many commands waiting for an ack (" + m_capacity + ")"));
+                return false;
+            }
+        }
+
+        final int current = m_size.get();
+        int peak = m_peak.get();
+        while (current > peak && !m_peak.compareAndSet(peak, current))
+            peak = m_peak.get();
+
+        final Entry e = new Entry(id, pr, m_seq.incrementAndGet(), System.nanoTime() + m_ttlNanos);
+        final Entry old = m_entries.put(id, e);
+        schedule(e, m_ttlNanos);
+        if (old != null) {
+            // Same id published twice, the newer one wins. Acks can't tell
+            // them apart, so the older one will never hear back.
+            old.done = true;
+            m_size.decrementAndGet();
+            old.pr.setThrowable(new AstrobeeException(
+                    "Command " + id + " replaced by a newer command with the same id"));
+            m_listener.onDropped(old.pr);
+        }
+        return true;
+    }
+
+    /**
+     * Look up a command an ack arrived for. Any ack shows the executive is
+     * still working on it, so this pushes the deadline back.
+     */
+    DefaultPendingResult acked(final String id) {
+        final Entry e = m_entries.get(id);
+        if (e == null)
+            return null;
+        e.deadline = System.nanoTime() + m_ttlNanos;
+        return e.pr;
+    }
+
+    /**
+     * Remove a command that completed.
+     */
+    void remove(final String id, final DefaultPendingResult pr) {
+        final Entry e = m_entries.get(id);
+        if (e == null || e.pr != pr)
+            return;
+        if (m_entries.remove(id, e)) {
+            e.done = true;
+            m_size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Advance the wheel by one slot, expiring everything that is due there.
+     */
+    void tick() {
+        final long tick = m_tick.incrementAndGet();
+        final ConcurrentLinkedQueue<Entry> slot = m_wheel.get((int) (tick % WHEEL_SIZE));
+        final long now = System.nanoTime();
+
+        // Only look at what is in the slot now, entries rescheduled below may
+        // land right back in it.
+        for (int n = slot.size(); n > 0; n--) {
+            final Entry e = slot.poll();
+            if (e == null)
+                break;
+            if (e.done)
+                continue;
+
+            final long remaining = e.deadline - now;
+            if (remaining > m_tickNanos / 2) {
+                schedule(e, remaining);
+                continue;
+            }
+
+            if (drop(e)) {
+                m_expired.incrementAndGet();
+                e.pr.setThrowable(new TimeoutException(
+                        "No ack for command " + e.id + " within " +
+                        TimeUnit.NANOSECONDS.toMillis(m_ttlNanos) + " ms"));
+                m_listener.onDropped(e.pr);
+            }
+        }
+    }
+
+    /**
+     * Fail and forget every command in the table.
+     */
+    void failAll(final Throwable t) {
+        for (Entry e : m_entries.values()) {
+            if (drop(e))
+                e.pr.setThrowable(t);
+        }
+    }
+
+    /**
+     * @return Commands that were sent but have not had a single ack yet,
+     *         oldest first.
+     */
+    List<DefaultPendingResult> unacknowledged() {
+        final List<Entry> found = new ArrayList<>();
+        for (Entry e : m_entries.values()) {
+            if (!e.done && e.pr.isSent() && !e.pr.isAcked())
+                found.add(e);
+        }
+        Collections.sort(found, new Comparator<Entry>() {
+            @Override
+            public int compare(final Entry a, final Entry b) {
+                return a.seq < b.seq ? -1 : (a.seq == b.seq ? 0 : 1);
+            }
+        });
+        final List<DefaultPendingResult> result = new ArrayList<>(found.size());
+        for (Entry e : found)
+            result.add(e.pr);
+        return result;
+    }
+
+    PendingCommandStats getStats() {
+        return new PendingCommandStats(
+                m_size.get(),
+                m_peak.get(),
+                m_capacity,
+                m_seq.get(),
+                m_expired.get(),
+                m_rejected.get(),
+                m_evicted.get());
+    }
+
+    private boolean evictOldest() {
+        // Only happens when the table is full, so a scan is acceptable
+        Entry oldest = null;
+        for (Entry e : m_entries.values()) {
+            if (oldest == null || e.seq < oldest.seq)
+                oldest = e;
+        }
+        if (oldest == null || !drop(oldest))
+            return false;
+
+        m_evicted.incrementAndGet();
+        oldest.pr.setThrowable(new AstrobeeException(
+                "Command " + oldest.id + " evicted, too many commands waiting for an ack"));
+        m_listener.onDropped(oldest.pr);
+        return true;
+    }
+
+    private boolean drop(final Entry e) {
+        if (!m_entries.remove(e.id, e))
+            return false;
+        e.done = true;
+        m_size.decrementAndGet();
+        return true;
+    }
+
+    private void schedule(final Entry e, final long delayNanos) {
+        long ticks = (delayNanos + m_tickNanos - 1) / m_tickNanos;
+        if (ticks < 1)
+            ticks = 1;
+        else if (ticks >= WHEEL_SIZE)
+            ticks = WHEEL_SIZE - 1; // we'll look again on the next lap
+        m_wheel.get((int) ((m_tick.get() + ticks) % WHEEL_SIZE)).add(e);
+    }
+}
@@ -0,0 +1,217 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal;
+
+import gov.nasa.arc.astrobee.Kinematics;
+import gov.nasa.arc.astrobee.KinematicsSnapshot;
+import gov.nasa.arc.astrobee.Robot;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pushes kinematics updates from the EKF subscriber to listeners and wakes
+ * threads waiting for a given confidence.
+ *
+ * Each listener is decimated to its own maximum rate, and never has more
+ * than one delivery outstanding: if it falls behind, it simply gets the
+ * latest state when it catches up.
+ */
+final class KinematicsDispatcher {
+    private static final Log logger = LogFactory.getLog(KinematicsDispatcher.class);
+
+    private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+
+    private final KinematicsStore m_store;
+
+    // Copy-on-write, so the EKF thread never takes a lock to fan out
+    private final Object m_sync = new Object();
+    private volatile Subscription[] m_subscriptions = NO_SUBSCRIPTIONS;
+
+    private final ReentrantLock m_lock = new ReentrantLock();
+    private final Condition m_updated = m_lock.newCondition();
+    private volatile int m_waiters = 0;
+
+    private final class Subscription implements Runnable {
+        final Robot robot;
+        final Robot.KinematicsListener listener;
+        final Executor executor;
+        final long periodNanos;
+
+        // Owned by whichever thread is delivering, handed over via m_scheduled
+        final KinematicsSnapshot snapshot = new KinematicsSnapshot();
+        final AtomicBoolean scheduled = new AtomicBoolean(false);
+        volatile boolean dirty = false;
+        volatile boolean removed = false;
+
+        // Only touched by the EKF thread
+        long lastOffered;
+        boolean offeredOnce = false;
+
+        Subscription(final Robot robot,
+                     final Robot.KinematicsListener listener,
+                     final double maxRateHz,
+                     final Executor executor) {
+            this.robot = robot;
+            this.listener = listener;
+            this.executor = executor;
+            this.periodNanos = maxRateHz > 0 ? (long) (1e9 / maxRateHz) : 0;
+        }
+
+        void offer(final long now) {
+            if (offeredOnce && now - lastOffered < periodNanos)
+                return;
+            offeredOnce = true;
+            lastOffered = now;
+            dirty = true;
+            if (scheduled.compareAndSet(false, true))
+                executor.execute(this);
+        }
+
+        @Override
+        public void run() {
+            do {
+                dirty = false;
+                if (!removed) {
+                    m_store.read(snapshot);
+                    try {
+                        listener.onKinematicsChanged(robot, snapshot);
+                    } catch (RuntimeException e) {
+                        logger.error("Kinematics listener threw", e);
+                    }
+                }
+                scheduled.set(false);
+                // Anything that came in while we were busy gets coalesced
+                // into one more round.
+            } while (dirty && !removed && scheduled.compareAndSet(false, true));
+        }
+    }
+
+    KinematicsDispatcher(final KinematicsStore store) {
+        m_store = store;
+    }
+
+    void addListener(final Robot robot,
+                     final Robot.KinematicsListener listener,
+                     final double maxRateHz,
+                     final Executor executor) {
+        if (listener == null || executor == null)
+            throw new NullPointerException("listener and executor may not be null");
+        synchronized (m_sync) {
+            final Subscription[] old = m_subscriptions;
+            final Subscription[] updated = new Subscription[old.length + 1];
+            System.arraycopy(old, 0, updated, 0, old.length);
+            updated[old.length] = new Subscription(robot, listener, maxRateHz, executor);
+            m_subscriptions = updated;
+        }
+    }
+
+    void removeListener(final Robot.KinematicsListener listener) {
+        synchronized (m_sync) {
+            final Subscription[] old = m_subscriptions;
+            int index = -1;
+            for (int i = 0; i < old.length; i++) {
+                if (old[i].listener == listener) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0)
+                return;
+
+            old[index].removed = true;
+            final Subscription[] updated = new Subscription[old.length - 1];
+            System.arraycopy(old, 0, updated, 0, index);
+            System.arraycopy(old, index + 1, updated, index, old.length - index - 1);
+            m_subscriptions = updated;
+        }
+    }
+
+    /**
+     * Called from the EKF thread after every store update.
+     */
+    void updated() {
+        final Subscription[] subscriptions = m_subscriptions;
+        if (subscriptions.length != 0) {
+            final long now = System.nanoTime();
+            for (Subscription s : subscriptions)
+                s.offer(now);
+        }
+
+        if (m_waiters != 0) {
+            m_lock.lock();
+            try {
+                m_updated.signalAll();
+            } finally {
+                m_lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Block until the estimate is at least as confident as asked.
+     *
+     * @param confidence The worst acceptable {@link Kinematics.Confidence}.
+     * @param timeout    How long to wait, or a negative value to wait forever.
+     * @param unit       The unit of {@code timeout}.
+     * @param into       Filled with the first state that qualifies.
+     * @return {@code into}.
+     */
+    KinematicsSnapshot awaitConfidence(final Kinematics.Confidence confidence,
+                                       final long timeout,
+                                       final TimeUnit unit,
+                                       final KinematicsSnapshot into)
+            throws InterruptedException, TimeoutException {
+        if (good(m_store.read(into), confidence))
+            return into;
+
+        long remaining = timeout < 0 ? Long.MAX_VALUE : unit.toNanos(timeout);
+        m_lock.lockInterruptibly();
+        try {
+            m_waiters++;
+            try {
+                // Check again now that updated() is bound to signal us
+                while (!good(m_store.read(into), confidence)) {
+                    if (remaining <= 0)
+                        throw new TimeoutException("Timed out waiting for " + confidence + " confidence");
+                    if (timeout < 0)
+                        m_updated.await();
+                    else
+                        remaining = m_updated.awaitNanos(remaining);
+                }
+                return into;
+            } finally {
+                m_waiters--;
+            }
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    private static boolean good(final KinematicsSnapshot k, final Kinematics.Confidence confidence) {
+        // Confidence is declared best first
+        return k.getVersion() != 0 && k.getConfidence().ordinal() <= confidence.ordinal();
+    }
+}
@@ -0,0 +1,202 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal;
+
+import gov.nasa.arc.astrobee.Kinematics;
+import gov.nasa.arc.astrobee.KinematicsSnapshot;
+import gov.nasa.arc.astrobee.types.MutableQuaternion;
+import gov.nasa.arc.astrobee.types.VecMath;
+
+/**
+ * Fixed-size ring of recent EKF samples, stored column-wise in primitive
+ * arrays, that can be queried for the state at an arbitrary past time.
+ *
+ * Samples are appended from the EKF thread in timestamp order. Lookups do a
+ * binary search over the ring and interpolate between the two neighbouring
+ * samples: linearly for vectors and by slerp for the orientation. Neither
+ * adding nor querying allocates.
+ */
+final class KinematicsHistory {
+    // values() clones on every call
+    private static final Kinematics.Confidence[] s_confidences = Kinematics.Confidence.values();
+
+    private final int m_capacity;
+    private final long[] m_stamp;
+    private final long[] m_version;
+    private final double[] m_px, m_py, m_pz;
+    private final double[] m_qx, m_qy, m_qz, m_qw;
+    private final double[] m_vx, m_vy, m_vz;
+    private final double[] m_wx, m_wy, m_wz;
+    private final double[] m_ax, m_ay, m_az;
+    private final byte[] m_confidence;
+
+    // Scratch space for get(). Guarded by this.
+    private final MutableQuaternion m_qa = new MutableQuaternion();
+    private final MutableQuaternion m_qb = new MutableQuaternion();
+
+    // Index of the oldest sample, and how many there are. Guarded by this.
+    private int m_head = 0;
+    private int m_size = 0;
+
+    KinematicsHistory(final int capacity) {
+        if (capacity < 2)
+            throw new IllegalArgumentException("capacity must be at least 2");
+        m_capacity = capacity;
+        m_stamp = new long[capacity];
+        m_version = new long[capacity];
+        m_px = new double[capacity];
+        m_py = new double[capacity];
+        m_pz = new double[capacity];
+        m_qx = new double[capacity];
+        m_qy = new double[capacity];
+        m_qz = new double[capacity];
+        m_qw = new double[capacity];
+        m_vx = new double[capacity];
+        m_vy = new double[capacity];
+        m_vz = new double[capacity];
+        m_wx = new double[capacity];
+        m_wy = new double[capacity];
+        m_wz = new double[capacity];
+        m_ax = new double[capacity];
+        m_ay = new double[capacity];
+        m_az = new double[capacity];
+        m_confidence = new byte[capacity];
+    }
+
+    synchronized void add(final KinematicsSnapshot k) {
+        final long stamp = k.getTimestamp();
+        if (m_size > 0) {
+            final long newest = m_stamp[slot(m_size - 1)];
+            if (stamp == newest)
+                return;
+            if (stamp < newest) {
+                // Clock went backwards (simulator restart, bag loop), the
+                // old samples no longer describe the same timeline.
+                m_size = 0;
+            }
+        }
+
+        final int i;
+        if (m_size < m_capacity) {
+            i = slot(m_size);
+            m_size++;
+        } else {
+            i = m_head;
+            m_head = (m_head + 1) % m_capacity;
+        }
+
+        m_stamp[i] = stamp;
+        m_version[i] = k.getVersion();
+        m_px[i] = k.getPosition(0);
+        m_py[i] = k.getPosition(1);
+        m_pz[i] = k.getPosition(2);
+        m_qx[i] = k.getOrientation(0);
+        m_qy[i] = k.getOrientation(1);
+        m_qz[i] = k.getOrientation(2);
+        m_qw[i] = k.getOrientation(3);
+        m_vx[i] = k.getLinearVelocity(0);
+        m_vy[i] = k.getLinearVelocity(1);
+        m_vz[i] = k.getLinearVelocity(2);
+        m_wx[i] = k.getAngularVelocity(0);
+        m_wy[i] = k.getAngularVelocity(1);
+        m_wz[i] = k.getAngularVelocity(2);
+        m_ax[i] = k.getLinearAcceleration(0);
+        m_ay[i] = k.getLinearAcceleration(1);
+        m_az[i] = k.getLinearAcceleration(2);
+        m_confidence[i] = (byte) k.getConfidence().ordinal();
+    }
+
+    synchronized void clear() {
+        m_head = 0;
+        m_size = 0;
+    }
+
+    /**
+     * Interpolate the state at a given time.
+     *
+     * @param timestamp ROS time, in nanoseconds.
+     * @param into      Filled in when the time is covered.
+     * @return Whether {@code timestamp} lies within the recorded history. If
+     *         not, {@code into} is left untouched.
+     */
+    synchronized boolean get(final long timestamp, final KinematicsSnapshot into) {
+        if (m_size == 0)
+            return false;
+        final long oldest = m_stamp[m_head];
+        final long newest = m_stamp[slot(m_size - 1)];
+        if (timestamp < oldest || timestamp > newest)
+            return false;
+
+        // Find the last sample at or before timestamp
+        int lo = 0;
+        int hi = m_size - 1;
+        while (lo < hi) {
+            final int mid = (lo + hi + 1) >>> 1;
+            if (m_stamp[slot(mid)] <= timestamp)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+
+        final int a = slot(lo);
+        if (m_stamp[a] == timestamp || lo == m_size - 1) {
+            copy(a, into);
+            return true;
+        }
+
+        final int b = slot(lo + 1);
+        final double t = (double) (timestamp - m_stamp[a]) / (double) (m_stamp[b] - m_stamp[a]);
+        into.setPosition(lerp(m_px, a, b, t), lerp(m_py, a, b, t), lerp(m_pz, a, b, t));
+        into.setLinearVelocity(lerp(m_vx, a, b, t), lerp(m_vy, a, b, t), lerp(m_vz, a, b, t));
+        into.setAngularVelocity(lerp(m_wx, a, b, t), lerp(m_wy, a, b, t), lerp(m_wz, a, b, t));
+        into.setLinearAcceleration(lerp(m_ax, a, b, t), lerp(m_ay, a, b, t), lerp(m_az, a, b, t));
+        slerp(a, b, t, into);
+        // An interpolated state is only as good as its worst neighbour
+        into.setConfidence(s_confidences[Math.max(m_confidence[a], m_confidence[b])]);
+        into.setTimestamp(timestamp);
+        into.setVersion(m_version[a]);
+        return true;
+    }
+
+    private int slot(final int offset) {
+        return (m_head + offset) % m_capacity;
+    }
+
+    private void copy(final int i, final KinematicsSnapshot into) {
+        into.setPosition(m_px[i], m_py[i], m_pz[i]);
+        into.setOrientation(m_qx[i], m_qy[i], m_qz[i], m_qw[i]);
+        into.setLinearVelocity(m_vx[i], m_vy[i], m_vz[i]);
+        into.setAngularVelocity(m_wx[i], m_wy[i], m_wz[i]);
+        into.setLinearAcceleration(m_ax[i], m_ay[i], m_az[i]);
+        into.setConfidence(s_confidences[m_confidence[i]]);
+        into.setTimestamp(m_stamp[i]);
+        into.setVersion(m_version[i]);
+    }
+
+    private static double lerp(final double[] column, final int a, final int b, final double t) {
+        return column[a] + (column[b] - column[a]) * t;
+    }
+
+    private void slerp(final int a, final int b, final double t, final KinematicsSnapshot into) {
+        m_qa.set(m_qx[a], m_qy[a], m_qz[a], m_qw[a]);
+        m_qb.set(m_qx[b], m_qy[b], m_qz[b], m_qw[b]);
+        VecMath.slerp(m_qa, m_qb, t, m_qa);
+        into.setOrientation(m_qa.getX(), m_qa.getY(), m_qa.getZ(), m_qa.getW());
+    }
+}
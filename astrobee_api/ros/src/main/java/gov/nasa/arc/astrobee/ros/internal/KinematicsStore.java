@@ -0,0 +1,157 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal;
+
+import ff_msgs.EkfState;
+import geometry_msgs.Pose;
+import gov.nasa.arc.astrobee.Kinematics;
+import gov.nasa.arc.astrobee.KinematicsSnapshot;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latest EKF state, kept as primitives and overwritten in place so that
+ * neither updates nor reads allocate.
+ *
+ * There is a single writer (the EKF subscriber). Readers use a sequence lock:
+ * the sequence is odd while an update is in progress, and a read is retried
+ * if the sequence moved underneath it. All slots are volatile so the retry
+ * check is sound under the Java memory model.
+ */
+final class KinematicsStore {
+    private static final int POSITION = 0;
+    private static final int ORIENTATION = 3;
+    private static final int VELOCITY = 7;
+    private static final int OMEGA = 10;
+    private static final int ACCEL = 13;
+    private static final int CONFIDENCE = 16;
+    private static final int STAMP = 17;
+    private static final int SIZE = 18;
+
+    private static final Kinematics.Confidence[] s_confidences = Kinematics.Confidence.values();
+
+    private final AtomicLongArray m_data = new AtomicLongArray(SIZE);
+    private final AtomicLong m_seq = new AtomicLong(0);
+
+    KinematicsStore() {
+        // Identity orientation until we hear otherwise
+        putDouble(ORIENTATION + 3, 1);
+        m_data.set(CONFIDENCE, Kinematics.Confidence.LOST.ordinal());
+    }
+
+    /**
+     * Unpack an EKF message. The snapshot's version is left alone.
+     */
+    static KinematicsSnapshot fromEkf(final EkfState ekf, final KinematicsSnapshot into) {
+        final Pose pose = ekf.getPose();
+        into.setPosition(pose.getPosition().getX(), pose.getPosition().getY(), pose.getPosition().getZ());
+        into.setOrientation(pose.getOrientation().getX(), pose.getOrientation().getY(),
+                            pose.getOrientation().getZ(), pose.getOrientation().getW());
+        into.setLinearVelocity(ekf.getVelocity().getX(), ekf.getVelocity().getY(), ekf.getVelocity().getZ());
+        into.setAngularVelocity(ekf.getOmega().getX(), ekf.getOmega().getY(), ekf.getOmega().getZ());
+        into.setLinearAcceleration(ekf.getAccel().getX(), ekf.getAccel().getY(), ekf.getAccel().getZ());
+        into.setConfidence(toConfidence(ekf.getConfidence()));
+        into.setTimestamp(ekf.getHeader().getStamp().totalNsecs());
+        return into;
+    }
+
+    /**
+     * Overwrite the stored state. Must only ever be called from one thread.
+     *
+     * @param k The new state. Its version is set to that of the update.
+     */
+    void update(final KinematicsSnapshot k) {
+        final long seq = m_seq.get();
+        m_seq.set(seq + 1);
+
+        for (int i = 0; i < 3; i++) {
+            putDouble(POSITION + i, k.getPosition(i));
+            putDouble(VELOCITY + i, k.getLinearVelocity(i));
+            putDouble(OMEGA + i, k.getAngularVelocity(i));
+            putDouble(ACCEL + i, k.getLinearAcceleration(i));
+        }
+        for (int i = 0; i < 4; i++)
+            putDouble(ORIENTATION + i, k.getOrientation(i));
+        m_data.set(CONFIDENCE, k.getConfidence().ordinal());
+        m_data.set(STAMP, k.getTimestamp());
+
+        m_seq.set(seq + 2);
+        k.setVersion((seq + 2) >>> 1);
+    }
+
+    /**
+     * @return How many updates have been stored so far.
+     */
+    long getVersion() {
+        return m_seq.get() >>> 1;
+    }
+
+    /**
+     * Copy a consistent view of the stored state.
+     *
+     * @param into The snapshot to fill in.
+     * @return {@code into}.
+     */
+    KinematicsSnapshot read(final KinematicsSnapshot into) {
+        while (true) {
+            final long before = m_seq.get();
+            if ((before & 1) != 0) {
+                // Writer is mid-update, it will be done momentarily
+                Thread.yield();
+                continue;
+            }
+
+            into.setPosition(getDouble(POSITION), getDouble(POSITION + 1), getDouble(POSITION + 2));
+            into.setOrientation(getDouble(ORIENTATION), getDouble(ORIENTATION + 1),
+                                getDouble(ORIENTATION + 2), getDouble(ORIENTATION + 3));
+            into.setLinearVelocity(getDouble(VELOCITY), getDouble(VELOCITY + 1), getDouble(VELOCITY + 2));
+            into.setAngularVelocity(getDouble(OMEGA), getDouble(OMEGA + 1), getDouble(OMEGA + 2));
+            into.setLinearAcceleration(getDouble(ACCEL), getDouble(ACCEL + 1), getDouble(ACCEL + 2));
+            final long confidence = m_data.get(CONFIDENCE);
+            final long stamp = m_data.get(STAMP);
+
+            if (m_seq.get() == before) {
+                into.setConfidence(s_confidences[(int) confidence]);
+                into.setTimestamp(stamp);
+                into.setVersion(before >>> 1);
+                return into;
+            }
+        }
+    }
+
+    private static Kinematics.Confidence toConfidence(final byte value) {
+        switch (value) {
+            case EkfState.CONFIDENCE_GOOD:
+                return Kinematics.Confidence.GOOD;
+            case EkfState.CONFIDENCE_POOR:
+                return Kinematics.Confidence.POOR;
+            default:
+                return Kinematics.Confidence.LOST;
+        }
+    }
+
+    private void putDouble(final int index, final double value) {
+        m_data.set(index, Double.doubleToRawLongBits(value));
+    }
+
+    private double getDouble(final int index) {
+        return Double.longBitsToDouble(m_data.get(index));
+    }
+}
@@ -0,0 +1,91 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal;
+
+import gov.nasa.arc.astrobee.ros.LatencyStats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of nanosecond latencies. Buckets are log-linear, in
+ * the style of HdrHistogram: each power of two is split into eight equal
+ * sub-buckets, so recording is a couple of shifts and one atomic increment,
+ * and any value is off by at most one sub-bucket (12.5%).
+ */
+final class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+
+    private static final long[] s_bucketValues = new long[BUCKETS];
+    static {
+        for (int i = 0; i < BUCKETS; i++)
+            s_bucketValues[i] = upperBound(i);
+    }
+
+    private final AtomicLongArray m_counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong m_count = new AtomicLong();
+    private final AtomicLong m_sum = new AtomicLong();
+    private final AtomicLong m_min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong m_max = new AtomicLong(0);
+
+    void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        m_counts.incrementAndGet(index(nanos));
+        m_count.incrementAndGet();
+        m_sum.addAndGet(nanos);
+
+        long cur;
+        while (nanos < (cur = m_min.get()) && !m_min.compareAndSet(cur, nanos)) { }
+        while (nanos > (cur = m_max.get()) && !m_max.compareAndSet(cur, nanos)) { }
+    }
+
+    /**
+     * Not atomic as a whole: a sample recorded concurrently may show up in
+     * some of the figures and not others.
+     */
+    LatencyStats snapshot() {
+        final long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            counts[i] = m_counts.get(i);
+        return new LatencyStats(m_count.get(), m_min.get(), m_max.get(), m_sum.get(),
+                                counts, s_bucketValues);
+    }
+
+    static int index(final long value) {
+        if (value < SUB_COUNT)
+            return (int) value;
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    private static long upperBound(final int index) {
+        if (index < SUB_COUNT)
+            return index;
+        final int exponent = index / SUB_COUNT + SUB_BITS - 1;
+        final long sub = index % SUB_COUNT;
+        final long width = 1L << (exponent - SUB_BITS);
+        final long lower = (SUB_COUNT + sub) * width;
+        // The last bucket would overflow, it is capped by the real max anyway
+        return lower + width - 1 < 0 ? Long.MAX_VALUE : lower + width - 1;
+    }
+}
@@ -0,0 +1,94 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded multi-producer, single-consumer ring buffer (after Vyukov). Each
+ * slot carries a sequence number saying whose turn it is, so producers only
+ * contend on a single CAS of the tail and the consumer never takes a lock.
+ */
+final class MpscRing<E> {
+    private final int m_mask;
+    private final AtomicReferenceArray<E> m_items;
+    private final AtomicLongArray m_sequences;
+    private final AtomicLong m_tail = new AtomicLong();
+
+    // Only touched by the consumer
+    private long m_head = 0;
+
+    MpscRing(final int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("capacity must be a power of two");
+        m_mask = capacity - 1;
+        m_items = new AtomicReferenceArray<>(capacity);
+        m_sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++)
+            m_sequences.set(i, i);
+    }
+
+    /**
+     * @return {@code false} if the ring is full.
+     */
+    boolean offer(final E item) {
+        while (true) {
+            final long pos = m_tail.get();
+            final int index = (int) (pos & m_mask);
+            final long diff = m_sequences.get(index) - pos;
+            if (diff == 0) {
+                if (m_tail.compareAndSet(pos, pos + 1)) {
+                    m_items.lazySet(index, item);
+                    // Publishes the item to the consumer
+                    m_sequences.set(index, pos + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+            // Another producer got this slot first, try the next one
+        }
+    }
+
+    /**
+     * Consumer only.
+     *
+     * @return The oldest item, or {@code null} if there is none yet.
+     */
+    E poll() {
+        final long pos = m_head;
+        final int index = (int) (pos & m_mask);
+        if (m_sequences.get(index) != pos + 1)
+            return null;
+        final E item = m_items.get(index);
+        m_items.lazySet(index, null);
+        m_sequences.set(index, pos + m_mask + 1);
+        m_head = pos + 1;
+        return item;
+    }
+
+    /**
+     * Consumer only.
+     */
+    boolean isEmpty() {
+        return m_sequences.get((int) (m_head & m_mask)) != m_head + 1;
+    }
+}
@@ -0,0 +1,395 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal;
+
+import ff_msgs.CommandStamped;
+import gov.nasa.arc.astrobee.ros.OutboundQueueStats;
+import gov.nasa.arc.astrobee.ros.QueueOverflowPolicy;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Commands waiting for someone to subscribe to the command topic.
+ *
+ * While closed, commands are held in a bounded queue managed according to a
+ * {@link QueueOverflowPolicy}. Safety commands go in a separate lane that is
+ * never dropped and is always sent first. Opening the queue sends
+ * everything held and lets later commands go straight through, until it is
+ * closed again when the subscriber goes away.
+ *
+ * Nothing outside this class is called with the lock held: commands are
+ * sent, failed and marked queued for listeners only after it is released.
+ */
+final class OutboundQueue {
+    private static final Set<String> s_priorityCommands = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("stopAllMotion", "idlePropulsion", "stopArm", "fault")));
+
+    interface Sender {
+        void send(DefaultPendingResult pr);
+    }
+
+    interface DropListener {
+        /**
+         * Called, without any lock held, for each command given up on.
+         */
+        void onDropped(DefaultPendingResult pr, String reason);
+    }
+
+    private final int m_capacity;
+    private final QueueOverflowPolicy m_policy;
+    private final DropListener m_listener;
+
+    private final ReentrantLock m_lock = new ReentrantLock();
+    private final Condition m_notFull = m_lock.newCondition();
+    private final ArrayDeque<DefaultPendingResult> m_normal = new ArrayDeque<>();
+    private final ArrayDeque<DefaultPendingResult> m_priority = new ArrayDeque<>();
+    private boolean m_open = false;
+    private boolean m_closed = false;
+    // Someone is sending the backlog outside the lock
+    private boolean m_draining = false;
+
+    private int m_peak = 0;
+    private long m_enqueued = 0;
+    private long m_dropped = 0;
+    private long m_coalesced = 0;
+    private long m_requeued = 0;
+
+    OutboundQueue(final int capacity, final QueueOverflowPolicy policy, final DropListener listener) {
+        m_capacity = capacity;
+        m_policy = policy;
+        m_listener = listener;
+    }
+
+    static boolean isPriority(final CommandStamped cmd) {
+        return s_priorityCommands.contains(cmd.getCmdName());
+    }
+
+    /**
+     * Hold a command until the queue opens.
+     *
+     * @return {@code false} if the queue is open, in which case the caller
+     *         should send the command itself.
+     * @throws InterruptedException If interrupted while waiting for room
+     *                              under {@link QueueOverflowPolicy#BLOCK}.
+     */
+    boolean enqueue(final DefaultPendingResult pr) throws InterruptedException {
+        return enqueue(pr, true);
+    }
+
+    /**
+     * Under {@link QueueOverflowPolicy#BLOCK}, wait until a command like
+     * {@code pr} would fit, without queueing it. Safety commands and the
+     * other policies never wait.
+     *
+     * This is for callers that hand commands to another thread to queue: they
+     * wait here first, so that thread never has to and a safety command
+     * behind them is never held up.
+     */
+    void awaitRoom(final DefaultPendingResult pr) throws InterruptedException {
+        if (m_policy != QueueOverflowPolicy.BLOCK || isPriority(pr.getCommand()))
+            return;
+        m_lock.lock();
+        try {
+            while (m_normal.size() >= m_capacity && !m_open && !m_closed)
+                m_notFull.await();
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * @param mayBlock Whether to wait for room under
+     *                 {@link QueueOverflowPolicy#BLOCK}. If not, the command
+     *                 is queued even if that goes over capacity, as the
+     *                 caller is expected to have waited in
+     *                 {@link #awaitRoom} already.
+     * @see #enqueue(DefaultPendingResult)
+     */
+    boolean enqueue(final DefaultPendingResult pr, final boolean mayBlock) throws InterruptedException {
+        final List<DefaultPendingResult> dropped = new ArrayList<>(1);
+        final String[] reason = new String[1];
+        boolean queued = false;
+        m_lock.lock();
+        try {
+            if (m_open)
+                return false;
+            if (isPriority(pr.getCommand())) {
+                if (!m_closed) {
+                    pr.queued(false);
+                    m_priority.add(pr);
+                    m_enqueued++;
+                    queued = true;
+                }
+            } else if (makeRoom(pr, mayBlock, dropped, reason)) {
+                pr.queued(false);
+                m_normal.add(pr);
+                m_enqueued++;
+                m_peak = Math.max(m_peak, m_normal.size());
+                queued = true;
+            } else if (m_open) {
+                // Opened while we waited for room
+                return false;
+            }
+            if (!queued) {
+                dropped.add(pr);
+                reason[0] = "Node shut down before the command was sent";
+            }
+        } finally {
+            m_lock.unlock();
+        }
+        if (queued)
+            pr.notifyQueued();
+        for (DefaultPendingResult d : dropped)
+            m_listener.onDropped(d, reason[0]);
+        return true;
+    }
+
+    /**
+     * Start holding commands again because the subscriber went away, and put
+     * the commands it never acknowledged back in line.
+     *
+     * Requeued commands go ahead of anything queued since, and are subject
+     * to the overflow policy like any other: with {@code DROP_OLDEST} the
+     * oldest are dropped to get back to capacity, with {@code COALESCE} a
+     * requeued command is dropped if a newer one of the same name is already
+     * queued. With {@code BLOCK} they are all kept, since the caller can't
+     * wait; publishers block until the queue is back under capacity.
+     *
+     * @param unacknowledged Commands to send again, oldest first.
+     * @return Whether the queue was open, if not nothing was done.
+     */
+    boolean suspend(final List<DefaultPendingResult> unacknowledged) {
+        final List<DefaultPendingResult> requeued = new ArrayList<>(unacknowledged.size());
+        final List<DefaultPendingResult> coalesced = new ArrayList<>();
+        final List<DefaultPendingResult> dropped = new ArrayList<>();
+        m_lock.lock();
+        try {
+            if (!m_open || m_closed)
+                return false;
+            m_open = false;
+            for (int i = unacknowledged.size() - 1; i >= 0; i--) {
+                final DefaultPendingResult pr = unacknowledged.get(i);
+                if (pr.isAcked() || pr.isFinished())
+                    continue;
+                if (isPriority(pr.getCommand())) {
+                    m_priority.addFirst(pr);
+                } else if (m_policy == QueueOverflowPolicy.COALESCE && hasNewer(pr)) {
+                    coalesced.add(pr);
+                    m_coalesced++;
+                    continue;
+                } else {
+                    m_normal.addFirst(pr);
+                }
+                pr.queued(true);
+                requeued.add(pr);
+                m_enqueued++;
+                m_requeued++;
+            }
+            if (m_policy != QueueOverflowPolicy.BLOCK) {
+                while (m_normal.size() > m_capacity) {
+                    dropped.add(m_normal.poll());
+                    m_dropped++;
+                }
+            }
+            m_peak = Math.max(m_peak, m_normal.size());
+        } finally {
+            m_lock.unlock();
+        }
+        for (DefaultPendingResult pr : requeued)
+            pr.notifyQueued();
+        for (DefaultPendingResult pr : coalesced)
+            m_listener.onDropped(pr, "Replaced by a newer " + pr.getCommand().getCmdName() +
+                                     " before it was sent again");
+        for (DefaultPendingResult pr : dropped)
+            m_listener.onDropped(pr, "Dropped from the full outbound queue");
+        return true;
+    }
+
+    /**
+     * Send everything held, safety commands first, and let later commands
+     * through.
+     *
+     * The backlog is sent outside the lock. Commands published meanwhile are
+     * still queued behind it and sent in the next round, so nothing
+     * overtakes the backlog. If another thread is already sending it, this
+     * returns right away and leaves opening to that thread.
+     */
+    void open(final Sender sender) {
+        final List<DefaultPendingResult> batch = new ArrayList<>();
+        m_lock.lock();
+        try {
+            if (m_closed || m_open || m_draining)
+                return;
+            m_draining = true;
+        } finally {
+            m_lock.unlock();
+        }
+
+        try {
+            while (true) {
+                m_lock.lock();
+                try {
+                    if (m_closed)
+                        return;
+                    if (m_priority.isEmpty() && m_normal.isEmpty()) {
+                        m_open = true;
+                        m_notFull.signalAll();
+                        return;
+                    }
+                    batch.addAll(m_priority);
+                    m_priority.clear();
+                    batch.addAll(m_normal);
+                    m_normal.clear();
+                    m_notFull.signalAll();
+                } finally {
+                    m_lock.unlock();
+                }
+
+                for (DefaultPendingResult pr : batch)
+                    sender.send(pr);
+                batch.clear();
+            }
+        } finally {
+            m_lock.lock();
+            try {
+                m_draining = false;
+            } finally {
+                m_lock.unlock();
+            }
+        }
+    }
+
+    boolean isOpen() {
+        m_lock.lock();
+        try {
+            return m_open;
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Forget a command that is no longer wanted, e.g. because it expired.
+     */
+    void remove(final DefaultPendingResult pr) {
+        m_lock.lock();
+        try {
+            if (m_normal.remove(pr))
+                m_notFull.signal();
+            else
+                m_priority.remove(pr);
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Stop for good, dropping everything held and waking blocked callers.
+     */
+    void close() {
+        m_lock.lock();
+        try {
+            m_closed = true;
+            m_open = false;
+            m_normal.clear();
+            m_priority.clear();
+            m_notFull.signalAll();
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    OutboundQueueStats getStats() {
+        m_lock.lock();
+        try {
+            return new OutboundQueueStats(m_normal.size(), m_priority.size(), m_peak, m_capacity,
+                                          m_enqueued, m_dropped, m_coalesced, m_requeued);
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Whether a command of the same name as {@code pr} is queued. Called with
+     * the lock held.
+     */
+    private boolean hasNewer(final DefaultPendingResult pr) {
+        final String name = pr.getCommand().getCmdName();
+        for (DefaultPendingResult queued : m_normal) {
+            if (name.equals(queued.getCommand().getCmdName()))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Apply the overflow policy for a new command. Called with the lock held.
+     *
+     * @return Whether the command may be added. If not, the queue has either
+     *         opened or closed while we waited for room.
+     */
+    private boolean makeRoom(final DefaultPendingResult pr,
+                             final boolean mayBlock,
+                             final List<DefaultPendingResult> dropped,
+                             final String[] reason)
+            throws InterruptedException {
+        if (m_closed)
+            return false;
+
+        if (m_policy == QueueOverflowPolicy.COALESCE) {
+            final String name = pr.getCommand().getCmdName();
+            final Iterator<DefaultPendingResult> it = m_normal.iterator();
+            while (it.hasNext()) {
+                final DefaultPendingResult queued = it.next();
+                if (name.equals(queued.getCommand().getCmdName())) {
+                    it.remove();
+                    dropped.add(queued);
+                    reason[0] = "Replaced by a newer " + name + " before it was sent";
+                    m_coalesced++;
+                    return true;
+                }
+            }
+        }
+
+        if (m_normal.size() < m_capacity)
+            return true;
+
+        if (m_policy == QueueOverflowPolicy.BLOCK) {
+            if (!mayBlock)
+                return true;
+            while (m_normal.size() >= m_capacity && !m_open && !m_closed)
+                m_notFull.await();
+            return !m_open && !m_closed;
+        }
+
+        dropped.add(m_normal.poll());
+        reason[0] = "Dropped from the full outbound queue";
+        m_dropped++;
+        return true;
+    }
+}
@@ -20,10 +20,17 @@ package gov.nasa.arc.astrobee.ros.internal;
 import ff_msgs.AckStamped;
 import ff_msgs.CommandStamped;
 import ff_msgs.EkfState;
+import gov.nasa.arc.astrobee.AstrobeeException;
 import gov.nasa.arc.astrobee.AstrobeeRuntimeException;
 import gov.nasa.arc.astrobee.Kinematics;
+import gov.nasa.arc.astrobee.KinematicsSnapshot;
 import gov.nasa.arc.astrobee.PendingResult;
+import gov.nasa.arc.astrobee.ros.CommandMetrics;
 import gov.nasa.arc.astrobee.ros.DefaultKinematics;
+import gov.nasa.arc.astrobee.ros.OutboundQueueStats;
+import gov.nasa.arc.astrobee.ros.PendingCommandStats;
+import gov.nasa.arc.astrobee.ros.RobotConfiguration;
+import gov.nasa.arc.astrobee.ros.internal.journal.CommandJournal;
 import gov.nasa.arc.astrobee.ros.internal.util.Stringer;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -38,106 +45,374 @@ import org.ros.node.topic.DefaultPublisherListener;
 import org.ros.node.topic.Publisher;
 import org.ros.node.topic.Subscriber;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public class RobotNodeMain extends AbstractNodeMain implements MessageListener<AckStamped> {
     private final Log logger = LogFactory.getLog(RobotNodeMain.class);
 
-    private ConnectedNode m_node = null;
-    private Publisher<CommandStamped> m_cmdPublisher = null;
-    private boolean m_ready = false;
+    private volatile ConnectedNode m_node = null;
+    private volatile Publisher<CommandStamped> m_cmdPublisher = null;
 
-    private final Map<String, DefaultPendingResult> m_pending = new HashMap<>();
-    private final Queue<CommandStamped> m_queue = new LinkedBlockingDeque<>();
+    // In-flight commands by id. Acks and publishers touch this concurrently,
+    // so the node monitor is never taken on the ack path.
+    private final InFlightTable m_pending;
+    private ScheduledFuture<?> m_reaper = null;
+
+    private final CommandMetricsRegistry m_metrics = new CommandMetricsRegistry();
+    private final long m_metricsPeriodMillis;
+    private ScheduledFuture<?> m_metricsPublisher = null;
+
+    // Holds commands while nobody is subscribed to the command topic. Once
+    // open, commands go straight through without touching its lock.
+    private final OutboundQueue m_outbound;
+
+    // Sends commands on behalf of callers when enabled, null otherwise
+    private final boolean m_publisherThreadEnabled;
+    private CommandPublisherThread m_publisherThread = null;
+    private static final int PUBLISHER_RING_SIZE = 1024;
+
+    // Written in place on every EKF message, so the estimator rate does not
+    // turn into garbage. getKinematics() only builds an object when asked.
+    private final KinematicsStore m_kinematics = new KinematicsStore();
+    private final KinematicsHistory m_history;
+    private final KinematicsDispatcher m_kinematicsDispatcher = new KinematicsDispatcher(m_kinematics);
+    // Only touched by the EKF subscriber thread
+    private final KinematicsSnapshot m_ekfScratch = new KinematicsSnapshot();
+    // Optional record of all commands and acks, null when off
+    private final CommandJournal m_journal;
 
     private final Object m_kinematics_lock = new Object();
-    private DefaultKinematics m_kinematics = new DefaultKinematics();
+    private final KinematicsSnapshot m_kinematicsScratch = new KinematicsSnapshot();
+    private DefaultKinematics m_lastKinematics = new DefaultKinematics();
+    private long m_lastKinematicsVersion = 0;
+
+    // Prepended to every topic name, empty unless we share a node
+    private final String m_topicPrefix;
+
+    public RobotNodeMain() {
+        this(new RobotConfiguration());
+    }
+
+    public RobotNodeMain(final RobotConfiguration configuration) {
+        this(configuration, null);
+    }
+
+    /**
+     * @param robotName If not {@code null}, every topic is opened below a
+     *                  namespace of this name, relative to the node's own. This
+     *                  lets several robots share one node.
+     */
+    public RobotNodeMain(final RobotConfiguration configuration, final String robotName) {
+        m_topicPrefix = robotName == null || robotName.isEmpty() ? "" : robotName + "/";
+        m_history = new KinematicsHistory(configuration.getKinematicsHistorySize());
+        m_journal = openJournal(configuration);
+        m_metricsPeriodMillis = configuration.getMetricsPeriodMillis();
+        m_publisherThreadEnabled = configuration.isPublisherThreadEnabled();
+        m_pending = new InFlightTable(
+                configuration.getCommandTimeoutMillis(), TimeUnit.MILLISECONDS,
+                configuration.getMaxPendingCommands(),
+                configuration.getPendingOverflowPolicy(),
+                new InFlightTable.ExpiryListener() {
+                    @Override
+                    public void onDropped(final DefaultPendingResult pr) {
+                        // Don't let a given-up command go out late
+                        m_outbound.remove(pr);
+                        logger.warn("Gave up waiting on command " + pr.getCommand().getCmdId());
+                    }
+                });
+        m_outbound = new OutboundQueue(
+                configuration.getOutboundQueueCapacity(),
+                configuration.getOutboundQueuePolicy(),
+                new OutboundQueue.DropListener() {
+                    @Override
+                    public void onDropped(final DefaultPendingResult pr, final String reason) {
+                        m_pending.remove(pr.getCommand().getCmdId(), pr);
+                        pr.setThrowable(new AstrobeeException(reason));
+                    }
+                });
+    }
 
     @Override
     public synchronized void onStart(final ConnectedNode connectedNode) {
         m_node = connectedNode;
-        m_cmdPublisher = connectedNode.newPublisher("command", CommandStamped._TYPE);
+        m_reaper = connectedNode.getScheduledExecutorService().scheduleAtFixedRate(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        m_pending.tick();
+                        checkSubscriber();
+                    }
+                },
+                InFlightTable.TICK_MILLIS, InFlightTable.TICK_MILLIS, TimeUnit.MILLISECONDS);
+        if (m_metricsPeriodMillis > 0)
+            m_metricsPublisher = startMetricsPublisher(connectedNode);
+        m_cmdPublisher = connectedNode.newPublisher(m_topicPrefix + "command", CommandStamped._TYPE);
+        if (m_publisherThreadEnabled) {
+            m_publisherThread = new CommandPublisherThread(PUBLISHER_RING_SIZE,
+                    new CommandPublisherThread.Handler() {
+                        @Override
+                        public void dispatch(final DefaultPendingResult pr) {
+                            // publish() already waited for room
+                            send(pr, false);
+                        }
+                    });
+            m_publisherThread.start();
+        }
         m_cmdPublisher.addListener(new DefaultPublisherListener<CommandStamped>() {
             @Override
-            public void onNewSubscriber(Publisher<CommandStamped> publisher, SubscriberIdentifier subscriberIdentifier) {
-                while (!m_queue.isEmpty()) {
-                    CommandStamped cmd = m_queue.poll();
-                    publisher.publish(cmd);
-                }
-                synchronized(RobotNodeMain.this) {
-                    m_ready = true;
-                }
+            public void onNewSubscriber(final Publisher<CommandStamped> publisher,
+                                        final SubscriberIdentifier subscriberIdentifier) {
+                openOutbound(publisher);
             }
         });
-        Subscriber<AckStamped> subscriber = connectedNode.newSubscriber("mgt/ack", AckStamped._TYPE);
+        Subscriber<AckStamped> subscriber = connectedNode.newSubscriber(m_topicPrefix + "mgt/ack", AckStamped._TYPE);
         subscriber.addMessageListener(this);
 
-        Subscriber<EkfState> ekfSub = connectedNode.newSubscriber("gnc/ekf", EkfState._TYPE);
+        Subscriber<EkfState> ekfSub = connectedNode.newSubscriber(m_topicPrefix + "gnc/ekf", EkfState._TYPE);
         ekfSub.addMessageListener(new MessageListener<EkfState>() {
             @Override
             public void onNewMessage(final EkfState ekfState) {
-                synchronized(m_kinematics_lock) {
-                    m_kinematics = new DefaultKinematics(ekfState);
-                }
+                KinematicsStore.fromEkf(ekfState, m_ekfScratch);
+                m_kinematics.update(m_ekfScratch);
+                m_history.add(m_ekfScratch);
+                m_kinematicsDispatcher.updated();
             }
         });
     }
 
+    private CommandJournal openJournal(final RobotConfiguration configuration) {
+        if (configuration.getJournalDirectory() == null)
+            return null;
+        try {
+            return new CommandJournal(configuration.getJournalDirectory(),
+                                      configuration.getJournalSegmentSize(),
+                                      configuration.getMaxPendingCommands() * 4);
+        } catch (IOException e) {
+            logger.error("Unable to open command journal, continuing without", e);
+            return null;
+        }
+    }
+
+    private void openOutbound(final Publisher<CommandStamped> publisher) {
+        m_outbound.open(new OutboundQueue.Sender() {
+            @Override
+            public void send(final DefaultPendingResult pr) {
+                pr.sent();
+                publisher.publish(pr.getCommand());
+            }
+        });
+    }
+
+    /**
+     * rosjava doesn't tell us when a subscriber leaves, so look every tick.
+     * Whatever was sent to it and never acknowledged went nowhere, so send
+     * it again once somebody subscribes.
+     */
+    private void checkSubscriber() {
+        final Publisher<CommandStamped> publisher = m_cmdPublisher;
+        if (publisher == null || publisher.getNumberOfSubscribers() > 0 || !m_outbound.isOpen())
+            return;
+
+        final List<DefaultPendingResult> unacknowledged = m_pending.unacknowledged();
+        if (!m_outbound.suspend(unacknowledged))
+            return;
+        logger.warn("Command subscriber went away, holding commands and requeueing " +
+                    unacknowledged.size() + " unacknowledged");
+
+        // It may have come back before we suspended, in which case we'd
+        // never hear about it again.
+        if (publisher.getNumberOfSubscribers() > 0)
+            openOutbound(publisher);
+    }
+
+    public OutboundQueueStats getOutboundQueueStats() {
+        return m_outbound.getStats();
+    }
+
+    private ScheduledFuture<?> startMetricsPublisher(final ConnectedNode node) {
+        final Publisher<std_msgs.String> publisher =
+                node.newPublisher(m_topicPrefix + "robot_api/command_metrics", std_msgs.String._TYPE);
+        return node.getScheduledExecutorService().scheduleAtFixedRate(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        final StringBuilder sb = new StringBuilder();
+                        for (CommandMetrics m : m_metrics.snapshot().values())
+                            sb.append(m).append('\n');
+                        final std_msgs.String msg = publisher.newMessage();
+                        msg.setData(sb.toString());
+                        publisher.publish(msg);
+                    }
+                },
+                m_metricsPeriodMillis, m_metricsPeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
     @Override
-    public synchronized void onNewMessage(final AckStamped ack) {
-        if (!m_pending.containsKey(ack.getCmdId())) {
-            logger.warn("Unmatched Ack received: " + Stringer.toString(ack));
+    public void onNewMessage(final AckStamped ack) {
+        if (m_journal != null)
+            m_journal.ack(ack);
+
+        final String cmdId = ack.getCmdId();
+        final DefaultPendingResult pr = m_pending.acked(cmdId);
+        if (pr == null) {
+            if (logger.isWarnEnabled())
+                logger.warn("Unmatched Ack received: " + Stringer.toString(ack));
             return;
         }
 
-        final DefaultPendingResult pr = m_pending.get(ack.getCmdId());
-        logger.debug("Updating status for " + Stringer.toString(pr.getCommand()));
+        if (logger.isDebugEnabled())
+            logger.debug("Updating status for " + Stringer.toString(pr.getCommand()));
         pr.update(ack);
         if (pr.isFinished()) {
-            m_pending.remove(ack.getCmdId());
+            m_pending.remove(cmdId, pr);
         }
     }
 
     @Override
     public synchronized void onShutdown(Node node) {
+        // First, so that a publisher thread blocked on a full queue under
+        // BLOCK is released and can be joined
+        m_outbound.close();
+        if (m_publisherThread != null) {
+            m_publisherThread.shutdown();
+            m_publisherThread = null;
+        }
         m_node = null;
         m_cmdPublisher = null;
+        if (m_reaper != null) {
+            m_reaper.cancel(false);
+            m_reaper = null;
+        }
+        if (m_metricsPublisher != null) {
+            m_metricsPublisher.cancel(false);
+            m_metricsPublisher = null;
+        }
+        m_history.clear();
+        m_pending.failAll(new AstrobeeException("Node shut down before the command completed"));
+        if (m_journal != null)
+            m_journal.close();
+    }
+
+    public PendingCommandStats getPendingCommandStats() {
+        return m_pending.getStats();
+    }
+
+    public Map<String, CommandMetrics> getCommandMetrics() {
+        return m_metrics.snapshot();
     }
 
     public Kinematics getKinematics() {
         synchronized(m_kinematics_lock) {
-            return m_kinematics;
+            // Callers polling faster than the EKF get the same object back
+            if (m_kinematics.getVersion() != m_lastKinematicsVersion) {
+                m_kinematics.read(m_kinematicsScratch);
+                m_lastKinematics = new DefaultKinematics(m_kinematicsScratch);
+                m_lastKinematicsVersion = m_kinematicsScratch.getVersion();
+            }
+            return m_lastKinematics;
         }
     }
 
-    synchronized MessageFactory getTopicMessageFactory() {
-        if (m_node == null)
+    public KinematicsSnapshot copyKinematics(final KinematicsSnapshot into) {
+        return m_kinematics.read(into);
+    }
+
+    KinematicsDispatcher getKinematicsDispatcher() {
+        return m_kinematicsDispatcher;
+    }
+
+    public boolean copyKinematicsAt(final long timestamp, final KinematicsSnapshot into) {
+        return m_history.get(timestamp, into);
+    }
+
+    MessageFactory getTopicMessageFactory() {
+        final ConnectedNode node = m_node;
+        if (node == null)
             throw new AstrobeeRuntimeException("Node is not ready or died");
-        return m_node.getTopicMessageFactory();
+        return node.getTopicMessageFactory();
     }
 
-    synchronized PendingResult publish(CommandStamped cmd) {
-        if (m_cmdPublisher == null)
+    /**
+     * Start tracking a command as in flight without sending it. Used to
+     * replay journals offline.
+     */
+    public PendingResult track(final CommandStamped cmd) {
+        final DefaultPendingResult pr = new DefaultPendingResult(cmd);
+        m_pending.register(cmd.getCmdId(), pr);
+        return pr;
+    }
+
+    PendingResult publish(CommandStamped cmd) {
+        if (m_node == null || m_cmdPublisher == null)
             throw new AstrobeeRuntimeException("Node not ready or dead");
 
-        cmd.getHeader().setStamp(m_node.getCurrentTime());
-        DefaultPendingResult pr = new DefaultPendingResult(cmd);
+        final DefaultPendingResult pr = new DefaultPendingResult(cmd);
+        final CommandMetricsRegistry.Entry metrics = m_metrics.get(cmd.getCmdName());
+        metrics.published();
+        pr.measure(metrics, System.nanoTime());
 
-        if (m_ready) {
-            logger.debug("Publishing " + Stringer.toString(cmd));
-            m_cmdPublisher.publish(cmd);
-        } else {
-            m_queue.add(cmd);
-            pr.setStatus(PendingResult.Status.QUEUED);
+        final CommandPublisherThread thread = m_publisherThread;
+        if (thread == null) {
+            send(pr, true);
+            return pr;
         }
 
-        m_pending.put(cmd.getCmdId(), pr);
+        // Wait for room here rather than on the publisher thread, where a
+        // blocked command would hold up any safety command behind it.
+        try {
+            m_outbound.awaitRoom(pr);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pr.setThrowable(new AstrobeeException("Interrupted waiting for room to queue the command"));
+            return pr;
+        }
+        thread.submit(pr);
         return pr;
     }
 
+    /**
+     * Stamp, register and send a command, on the caller's thread or the
+     * publisher thread.
+     *
+     * @param mayBlock Whether to wait for room in a full outbound queue.
+     */
+    private void send(final DefaultPendingResult pr, final boolean mayBlock) {
+        final CommandStamped cmd = pr.getCommand();
+        final ConnectedNode node = m_node;
+        final Publisher<CommandStamped> publisher = m_cmdPublisher;
+        if (node == null || publisher == null) {
+            pr.setThrowable(new AstrobeeException("Node shut down before the command was sent"));
+            return;
+        }
+
+        cmd.getHeader().setStamp(node.getCurrentTime());
+
+        // Register before sending so a fast ack can never beat us to the map
+        if (!m_pending.register(cmd.getCmdId(), pr))
+            return;
+        if (m_journal != null)
+            m_journal.command(cmd);
+
+        try {
+            if (m_outbound.enqueue(pr, mayBlock))
+                return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            m_pending.remove(cmd.getCmdId(), pr);
+            pr.setThrowable(new AstrobeeException("Interrupted waiting for room to queue the command"));
+            return;
+        }
+
+        if (logger.isDebugEnabled())
+            logger.debug("Publishing " + Stringer.toString(cmd));
+        pr.sent();
+        publisher.publish(cmd);
+    }
+
     @Override
     public GraphName getDefaultNodeName() {
         return GraphName.of("gs_node_main");
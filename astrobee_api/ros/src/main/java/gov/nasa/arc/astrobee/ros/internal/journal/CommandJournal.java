@@ -0,0 +1,322 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal.journal;
+
+import ff_msgs.AckStamped;
+import ff_msgs.CommandArg;
+import ff_msgs.CommandStamped;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only binary record of every command sent and every ack received.
+ *
+ * Callers only hand the message to a bounded queue, so they never wait on
+ * disk. A single background thread encodes records into memory-mapped
+ * segment files of a fixed size, starting a new one whenever the current
+ * one is full. If the writer falls behind, records are dropped and counted
+ * rather than stalling the caller.
+ *
+ * Segment layout: a header of {@link #MAGIC} and {@link #VERSION}, then
+ * records of {@code int length, byte type, long epochNanos, body}, then
+ * zeros. See {@link JournalReader} for the body of each type.
+ */
+public final class CommandJournal implements Closeable {
+    private static final Log logger = LogFactory.getLog(CommandJournal.class);
+
+    public static final int MAGIC = 0x41424a4c; // "ABJL"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 8;
+
+    public static final byte COMMAND = 1;
+    public static final byte ACK = 2;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+    static final String SUFFIX = ".journal";
+
+    // Anchors System.nanoTime() to the wall clock once, so stamps are both
+    // monotonic and comparable across runs.
+    private static final long s_epochOffset =
+            TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+
+    private static final Entry CLOSE = new Entry((byte) 0, 0, null);
+
+    private static final class Entry {
+        final byte type;
+        final long stamp;
+        final Object message;
+
+        Entry(final byte type, final long stamp, final Object message) {
+            this.type = type;
+            this.stamp = stamp;
+            this.message = message;
+        }
+    }
+
+    private final File m_directory;
+    private final String m_prefix;
+    private final long m_segmentSize;
+    private final BlockingQueue<Entry> m_queue;
+    private final AtomicLong m_dropped = new AtomicLong();
+    private final Thread m_writer;
+    private volatile boolean m_closed = false;
+
+    // Only touched by the writer thread
+    private ByteBuffer m_scratch = ByteBuffer.allocate(4096);
+    private RandomAccessFile m_file = null;
+    private MappedByteBuffer m_segment = null;
+    private int m_segmentIndex = 0;
+
+    /**
+     * @param directory   Where to put the segment files. Created if needed.
+     * @param segmentSize Size of each segment file, in bytes.
+     * @param capacity    How many records may wait for the writer.
+     */
+    public CommandJournal(final File directory, final long segmentSize, final int capacity)
+            throws IOException {
+        if (segmentSize < 4096 || segmentSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("segmentSize must be between 4KiB and 2GiB");
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create journal directory " + directory);
+        m_directory = directory;
+        m_prefix = String.format(Locale.US, "journal-%013d-", System.currentTimeMillis());
+        m_segmentSize = segmentSize;
+        m_queue = new ArrayBlockingQueue<>(capacity);
+        openSegment();
+
+        m_writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "Command Journal");
+        m_writer.setDaemon(true);
+        m_writer.start();
+    }
+
+    /**
+     * @return Nanoseconds since the epoch, as recorded in the journal.
+     */
+    public static long now() {
+        return s_epochOffset + System.nanoTime();
+    }
+
+    public void command(final CommandStamped cmd) {
+        offer(COMMAND, cmd);
+    }
+
+    public void ack(final AckStamped ack) {
+        offer(ACK, ack);
+    }
+
+    /**
+     * @return How many records were lost because the writer fell behind.
+     */
+    public long getDropped() {
+        return m_dropped.get();
+    }
+
+    /**
+     * Write out everything queued so far and release the files.
+     */
+    @Override
+    public void close() {
+        if (m_closed)
+            return;
+        m_closed = true;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                m_queue.put(CLOSE);
+                m_writer.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private void offer(final byte type, final Object message) {
+        if (m_closed)
+            return;
+        if (!m_queue.offer(new Entry(type, now(), message)))
+            m_dropped.incrementAndGet();
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                final Entry entry = m_queue.take();
+                if (entry == CLOSE)
+                    break;
+                try {
+                    write(entry);
+                } catch (IOException e) {
+                    logger.error("Unable to write to journal, giving up", e);
+                    m_closed = true;
+                    break;
+                } catch (RuntimeException e) {
+                    // A malformed message shouldn't take the journal down
+                    logger.warn("Unable to journal message", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.warn("Journal writer interrupted");
+        } finally {
+            closeSegment();
+        }
+    }
+
+    private void write(final Entry entry) throws IOException {
+        ByteBuffer body;
+        while (true) {
+            body = m_scratch;
+            body.clear();
+            try {
+                body.put(entry.type);
+                body.putLong(entry.stamp);
+                if (entry.type == COMMAND)
+                    encode(body, (CommandStamped) entry.message);
+                else
+                    encode(body, (AckStamped) entry.message);
+                break;
+            } catch (BufferOverflowException e) {
+                m_scratch = ByteBuffer.allocate(m_scratch.capacity() * 2);
+            }
+        }
+        body.flip();
+
+        final int needed = 4 + body.remaining();
+        if (needed > m_segmentSize - HEADER_SIZE) {
+            logger.warn("Record too large for a journal segment, dropped");
+            m_dropped.incrementAndGet();
+            return;
+        }
+        if (m_segment.remaining() < needed)
+            openSegment();
+        m_segment.putInt(body.remaining());
+        m_segment.put(body);
+    }
+
+    private static void encode(final ByteBuffer out, final CommandStamped cmd) {
+        putString(out, cmd.getCmdId());
+        putString(out, cmd.getCmdName());
+        putString(out, cmd.getSubsysName());
+        putString(out, cmd.getCmdSrc());
+        putString(out, cmd.getCmdOrigin());
+        out.putLong(cmd.getHeader().getStamp().totalNsecs());
+
+        final List<CommandArg> args = cmd.getArgs();
+        out.putShort((short) args.size());
+        for (CommandArg arg : args) {
+            out.put(arg.getDataType());
+            switch (arg.getDataType()) {
+                case CommandArg.DATA_TYPE_BOOL:
+                    out.put((byte) (arg.getB() ? 1 : 0));
+                    break;
+                case CommandArg.DATA_TYPE_DOUBLE:
+                    out.putDouble(arg.getD());
+                    break;
+                case CommandArg.DATA_TYPE_FLOAT:
+                    out.putFloat(arg.getF());
+                    break;
+                case CommandArg.DATA_TYPE_INT:
+                    out.putInt(arg.getI());
+                    break;
+                case CommandArg.DATA_TYPE_LONGLONG:
+                    out.putLong(arg.getLl());
+                    break;
+                case CommandArg.DATA_TYPE_STRING:
+                    putString(out, arg.getS());
+                    break;
+                case CommandArg.DATA_TYPE_VEC3d:
+                    for (double d : arg.getVec3d())
+                        out.putDouble(d);
+                    break;
+                case CommandArg.DATA_TYPE_MAT33f:
+                    for (float f : arg.getMat33f())
+                        out.putFloat(f);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument type " + arg.getDataType());
+            }
+        }
+    }
+
+    private static void encode(final ByteBuffer out, final AckStamped ack) {
+        putString(out, ack.getCmdId());
+        out.put(ack.getStatus().getStatus());
+        out.put(ack.getCompletedStatus().getStatus());
+        putString(out, ack.getMessage());
+        out.putLong(ack.getHeader().getStamp().totalNsecs());
+    }
+
+    private static void putString(final ByteBuffer out, final String s) {
+        if (s == null) {
+            out.putInt(-1);
+            return;
+        }
+        final byte[] bytes = s.getBytes(UTF8);
+        out.putInt(bytes.length);
+        out.put(bytes);
+    }
+
+    private void openSegment() throws IOException {
+        closeSegment();
+        final File file = new File(m_directory,
+                String.format(Locale.US, "%s%05d%s", m_prefix, m_segmentIndex++, SUFFIX));
+        m_file = new RandomAccessFile(file, "rw");
+        m_segment = m_file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, m_segmentSize);
+        m_segment.putInt(MAGIC);
+        m_segment.putInt(VERSION);
+    }
+
+    private void closeSegment() {
+        if (m_segment != null) {
+            m_segment.force();
+            m_segment = null;
+        }
+        if (m_file != null) {
+            try {
+                m_file.close();
+            } catch (IOException e) {
+                logger.warn("Unable to close journal segment", e);
+            }
+            m_file = null;
+        }
+    }
+}
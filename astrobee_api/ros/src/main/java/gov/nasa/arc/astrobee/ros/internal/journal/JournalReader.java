@@ -0,0 +1,183 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal.journal;
+
+import ff_msgs.CommandArg;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads back the segments written by a {@link CommandJournal}, in order.
+ */
+public final class JournalReader implements Closeable {
+    private final List<File> m_segments;
+    private int m_next = 0;
+    private RandomAccessFile m_file = null;
+    private MappedByteBuffer m_buffer = null;
+
+    /**
+     * @param path Either a directory, in which case every journal segment in
+     *             it is read in name order, or a single segment file.
+     */
+    public JournalReader(final File path) throws IOException {
+        if (path.isDirectory()) {
+            final File[] files = path.listFiles(new FilenameFilter() {
+                @Override
+                public boolean accept(final File dir, final String name) {
+                    return name.endsWith(CommandJournal.SUFFIX);
+                }
+            });
+            if (files == null)
+                throw new IOException("Unable to list " + path);
+            Arrays.sort(files);
+            m_segments = Arrays.asList(files);
+        } else if (path.isFile()) {
+            m_segments = Arrays.asList(path);
+        } else {
+            throw new IOException("No such journal: " + path);
+        }
+    }
+
+    /**
+     * @return The next record, or {@code null} at the end of the journal.
+     */
+    public JournalRecord next() throws IOException {
+        while (true) {
+            if (m_buffer == null && !openNext())
+                return null;
+            if (m_buffer.remaining() >= 4) {
+                final int length = m_buffer.getInt();
+                if (length > 0 && length <= m_buffer.remaining())
+                    return decode(m_buffer);
+            }
+            // Zero fill (or a torn record) marks the end of a segment
+            close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        m_buffer = null;
+        if (m_file != null) {
+            m_file.close();
+            m_file = null;
+        }
+    }
+
+    private boolean openNext() throws IOException {
+        if (m_next >= m_segments.size())
+            return false;
+        final File file = m_segments.get(m_next++);
+        m_file = new RandomAccessFile(file, "r");
+        m_buffer = m_file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, m_file.length());
+        if (m_buffer.remaining() < CommandJournal.HEADER_SIZE
+                || m_buffer.getInt() != CommandJournal.MAGIC
+                || m_buffer.getInt() != CommandJournal.VERSION) {
+            close();
+            throw new IOException(file + " is not a version " + CommandJournal.VERSION + " journal");
+        }
+        return true;
+    }
+
+    private static JournalRecord decode(final ByteBuffer in) throws IOException {
+        final byte type = in.get();
+        final long timestamp = in.getLong();
+        final String cmdId = getString(in);
+
+        if (type == CommandJournal.ACK) {
+            final byte status = in.get();
+            final byte completed = in.get();
+            final String message = getString(in);
+            final JournalRecord record = new JournalRecord(type, timestamp, cmdId, in.getLong());
+            record.setAck(status, completed, message);
+            return record;
+        }
+        if (type != CommandJournal.COMMAND)
+            throw new IOException("Unknown journal record type " + type);
+
+        final String name = getString(in);
+        final String subsystem = getString(in);
+        final String source = getString(in);
+        final String origin = getString(in);
+        final JournalRecord record = new JournalRecord(type, timestamp, cmdId, in.getLong());
+
+        final int count = in.getShort();
+        final List<Object> args = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final byte dataType = in.get();
+            switch (dataType) {
+                case CommandArg.DATA_TYPE_BOOL:
+                    args.add(in.get() != 0);
+                    break;
+                case CommandArg.DATA_TYPE_DOUBLE:
+                    args.add(in.getDouble());
+                    break;
+                case CommandArg.DATA_TYPE_FLOAT:
+                    args.add(in.getFloat());
+                    break;
+                case CommandArg.DATA_TYPE_INT:
+                    args.add(in.getInt());
+                    break;
+                case CommandArg.DATA_TYPE_LONGLONG:
+                    args.add(in.getLong());
+                    break;
+                case CommandArg.DATA_TYPE_STRING:
+                    args.add(getString(in));
+                    break;
+                case CommandArg.DATA_TYPE_VEC3d: {
+                    final double[] v = new double[3];
+                    for (int j = 0; j < v.length; j++)
+                        v[j] = in.getDouble();
+                    args.add(v);
+                    break;
+                }
+                case CommandArg.DATA_TYPE_MAT33f: {
+                    final float[] m = new float[9];
+                    for (int j = 0; j < m.length; j++)
+                        m[j] = in.getFloat();
+                    args.add(m);
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown argument type " + dataType);
+            }
+        }
+        record.setCommand(name, subsystem, source, origin, args);
+        return record;
+    }
+
+    private static String getString(final ByteBuffer in) {
+        final int length = in.getInt();
+        if (length < 0)
+            return null;
+        final byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, CommandJournal.UTF8);
+    }
+}
@@ -0,0 +1,157 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal.journal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One decoded entry of a {@link CommandJournal}: either a command that was
+ * sent or an ack that was received. Fields that do not apply to the type of
+ * record are null or zero.
+ */
+public final class JournalRecord {
+    private final byte m_type;
+    private final long m_timestamp;
+    private final String m_cmdId;
+    private final long m_stamp;
+
+    private String m_cmdName = null;
+    private String m_subsystem = null;
+    private String m_source = null;
+    private String m_origin = null;
+    private List<Object> m_args = Collections.emptyList();
+
+    private byte m_status = 0;
+    private byte m_completedStatus = 0;
+    private String m_message = null;
+
+    JournalRecord(final byte type, final long timestamp, final String cmdId, final long stamp) {
+        m_type = type;
+        m_timestamp = timestamp;
+        m_cmdId = cmdId;
+        m_stamp = stamp;
+    }
+
+    void setCommand(final String name, final String subsystem, final String source,
+                    final String origin, final List<Object> args) {
+        m_cmdName = name;
+        m_subsystem = subsystem;
+        m_source = source;
+        m_origin = origin;
+        m_args = Collections.unmodifiableList(args);
+    }
+
+    void setAck(final byte status, final byte completedStatus, final String message) {
+        m_status = status;
+        m_completedStatus = completedStatus;
+        m_message = message;
+    }
+
+    public boolean isCommand() {
+        return m_type == CommandJournal.COMMAND;
+    }
+
+    public boolean isAck() {
+        return m_type == CommandJournal.ACK;
+    }
+
+    /**
+     * @return When the record was journaled, in nanoseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return m_timestamp;
+    }
+
+    /**
+     * @return The ROS header stamp of the message, in nanoseconds.
+     */
+    public long getStamp() {
+        return m_stamp;
+    }
+
+    public String getCmdId() {
+        return m_cmdId;
+    }
+
+    public String getCmdName() {
+        return m_cmdName;
+    }
+
+    public String getSubsystem() {
+        return m_subsystem;
+    }
+
+    public String getSource() {
+        return m_source;
+    }
+
+    public String getOrigin() {
+        return m_origin;
+    }
+
+    /**
+     * @return Argument values of a command, boxed, with vectors and
+     *         matrices as {@code double[]} and {@code float[]}.
+     */
+    public List<Object> getArgs() {
+        return m_args;
+    }
+
+    public byte getStatus() {
+        return m_status;
+    }
+
+    public byte getCompletedStatus() {
+        return m_completedStatus;
+    }
+
+    public String getMessage() {
+        return m_message;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(m_timestamp).append(' ');
+        if (isCommand()) {
+            sb.append("CMD ").append(m_cmdId).append(' ').append(m_cmdName).append('(');
+            for (int i = 0; i < m_args.size(); i++) {
+                if (i > 0)
+                    sb.append(", ");
+                final Object arg = m_args.get(i);
+                if (arg instanceof double[])
+                    sb.append(Arrays.toString((double[]) arg));
+                else if (arg instanceof float[])
+                    sb.append(Arrays.toString((float[]) arg));
+                else
+                    sb.append(arg);
+            }
+            sb.append(')');
+        } else {
+            sb.append("ACK ").append(m_cmdId)
+              .append(" status=").append(m_status)
+              .append(" completed=").append(m_completedStatus);
+            if (m_message != null && !m_message.isEmpty())
+                sb.append(" \"").append(m_message).append('"');
+        }
+        return sb.toString();
+    }
+}
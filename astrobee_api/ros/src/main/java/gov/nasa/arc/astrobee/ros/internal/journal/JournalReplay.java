@@ -0,0 +1,183 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal.journal;
+
+import ff_msgs.AckStamped;
+import ff_msgs.CommandArg;
+import ff_msgs.CommandStamped;
+import gov.nasa.arc.astrobee.PendingResult;
+import gov.nasa.arc.astrobee.Result;
+import gov.nasa.arc.astrobee.ros.internal.RobotNodeMain;
+import org.ros.message.MessageFactory;
+import org.ros.message.Time;
+import org.ros.node.NodeConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offline tool for {@link CommandJournal}s: dumps them, or feeds the
+ * recorded acks back through a {@link RobotNodeMain} to see how the API
+ * tracked each command.
+ *
+ * Usage: {@code JournalReplay [--replay] [--realtime] <journal dir or file>}
+ */
+public final class JournalReplay {
+    private JournalReplay() { }
+
+    /**
+     * Register every journaled command with {@code nodeMain} as if it had
+     * been sent, arguments included, and deliver every journaled ack to it.
+     *
+     * @param reader   The journal to replay.
+     * @param nodeMain Receives the commands and acks. It need not be started.
+     * @param factory  Used to rebuild the messages.
+     * @param realTime Whether to keep the recorded spacing between records.
+     * @return The {@link PendingResult} of each command, by command id.
+     */
+    public static Map<String, PendingResult> replay(final JournalReader reader,
+                                                    final RobotNodeMain nodeMain,
+                                                    final MessageFactory factory,
+                                                    final boolean realTime)
+            throws IOException, InterruptedException {
+        final Map<String, PendingResult> results = new LinkedHashMap<>();
+        long previous = 0;
+        JournalRecord record;
+        while ((record = reader.next()) != null) {
+            if (realTime && previous != 0 && record.getTimestamp() > previous)
+                TimeUnit.NANOSECONDS.sleep(record.getTimestamp() - previous);
+            previous = record.getTimestamp();
+
+            if (record.isCommand()) {
+                results.put(record.getCmdId(), nodeMain.track(toCommand(record, factory)));
+            } else {
+                final AckStamped ack = factory.newFromType(AckStamped._TYPE);
+                ack.setCmdId(record.getCmdId());
+                ack.getStatus().setStatus(record.getStatus());
+                ack.getCompletedStatus().setStatus(record.getCompletedStatus());
+                ack.setMessage(record.getMessage() != null ? record.getMessage() : "");
+                ack.getHeader().setStamp(Time.fromNano(record.getStamp()));
+                nodeMain.onNewMessage(ack);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Rebuild the command a record was made from.
+     */
+    static CommandStamped toCommand(final JournalRecord record, final MessageFactory factory) {
+        final CommandStamped cmd = factory.newFromType(CommandStamped._TYPE);
+        cmd.setCmdId(record.getCmdId());
+        cmd.setCmdName(record.getCmdName());
+        cmd.setSubsysName(record.getSubsystem());
+        cmd.setCmdSrc(record.getSource());
+        cmd.setCmdOrigin(record.getOrigin());
+        cmd.getHeader().setStamp(Time.fromNano(record.getStamp()));
+
+        final List<CommandArg> args = new ArrayList<>(record.getArgs().size());
+        for (Object value : record.getArgs()) {
+            final CommandArg arg = factory.newFromType(CommandArg._TYPE);
+            // JournalReader boxes each argument type to a distinct class
+            if (value instanceof Boolean) {
+                arg.setDataType(CommandArg.DATA_TYPE_BOOL);
+                arg.setB((Boolean) value);
+            } else if (value instanceof Double) {
+                arg.setDataType(CommandArg.DATA_TYPE_DOUBLE);
+                arg.setD((Double) value);
+            } else if (value instanceof Float) {
+                arg.setDataType(CommandArg.DATA_TYPE_FLOAT);
+                arg.setF((Float) value);
+            } else if (value instanceof Integer) {
+                arg.setDataType(CommandArg.DATA_TYPE_INT);
+                arg.setI((Integer) value);
+            } else if (value instanceof Long) {
+                arg.setDataType(CommandArg.DATA_TYPE_LONGLONG);
+                arg.setLl((Long) value);
+            } else if (value instanceof double[]) {
+                arg.setDataType(CommandArg.DATA_TYPE_VEC3d);
+                arg.setVec3d((double[]) value);
+            } else if (value instanceof float[]) {
+                arg.setDataType(CommandArg.DATA_TYPE_MAT33f);
+                arg.setMat33f((float[]) value);
+            } else {
+                // Strings, including ones that were null on the way in
+                arg.setDataType(CommandArg.DATA_TYPE_STRING);
+                arg.setS(value != null ? (String) value : "");
+            }
+            args.add(arg);
+        }
+        cmd.setArgs(args);
+        return cmd;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean replay = false;
+        boolean realTime = false;
+        File path = null;
+        for (String arg : args) {
+            if (arg.equals("--replay"))
+                replay = true;
+            else if (arg.equals("--realtime"))
+                realTime = true;
+            else
+                path = new File(arg);
+        }
+        if (path == null) {
+            System.err.println("Usage: JournalReplay [--replay] [--realtime] <journal dir or file>");
+            System.exit(1);
+        }
+
+        final JournalReader reader = new JournalReader(path);
+        try {
+            if (!replay) {
+                JournalRecord record;
+                while ((record = reader.next()) != null)
+                    System.out.println(record);
+                return;
+            }
+
+            final MessageFactory factory = NodeConfiguration.newPrivate().getTopicMessageFactory();
+            final Map<String, PendingResult> results =
+                    replay(reader, new RobotNodeMain(), factory, realTime);
+            for (Map.Entry<String, PendingResult> e : results.entrySet()) {
+                final PendingResult pr = e.getValue();
+                final StringBuilder sb = new StringBuilder();
+                sb.append(e.getKey()).append(' ').append(pr.getStatus());
+                if (pr.isFinished()) {
+                    try {
+                        final Result result = pr.getResult();
+                        if (result != null)
+                            sb.append(' ').append(result.getStatus()).append(' ').append(result.getMessage());
+                    } catch (Exception ex) {
+                        sb.append(" failed: ").append(ex.getMessage());
+                    }
+                }
+                System.out.println(sb);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
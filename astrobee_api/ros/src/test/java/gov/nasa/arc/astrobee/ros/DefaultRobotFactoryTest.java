@@ -0,0 +1,147 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros;
+
+import gov.nasa.arc.astrobee.Robot;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class DefaultRobotFactoryTest {
+    private final FakeRos m_ros = new FakeRos();
+    private DefaultRobotFactory m_factory;
+
+    @Before
+    public void setUp() throws Exception {
+        final RobotConfiguration configuration = new RobotConfiguration(new HashMap<String, String>())
+                .setRobotName("local")
+                .setHostname("localhost");
+        m_factory = new DefaultRobotFactory(configuration, m_ros.executor);
+        m_ros.startAll();
+        assertNotNull(m_factory.getRobot(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() {
+        m_ros.scheduler.shutdownNow();
+    }
+
+    @Test
+    public void onlyTheLocalRobotStartsRightAway() {
+        assertEquals(1, m_ros.executedCount());
+        assertEquals(1, count("pub command"));
+        assertEquals(1, count("sub mgt/ack"));
+    }
+
+    @Test
+    public void localNameGetsTheLocalRobot() throws Exception {
+        assertNotNull(m_factory.getRobot("local", 5, TimeUnit.SECONDS));
+        assertNotNull(m_factory.getRobot("", 5, TimeUnit.SECONDS));
+        assertEquals(1, m_ros.executedCount());
+        assertEquals(1, count("pub command"));
+    }
+
+    @Test
+    public void namedRobotStartsWhenFirstAskedFor() throws Exception {
+        awaitTimeout("bumble");
+        assertEquals(2, m_ros.executedCount());
+
+        m_ros.startAll();
+        final Robot robot = m_factory.getRobot("bumble", 5, TimeUnit.SECONDS);
+        assertNotNull(robot);
+        assertEquals(1, count("pub bumble/command"));
+        assertEquals(1, count("sub bumble/mgt/ack"));
+    }
+
+    @Test
+    public void namedRobotsShareOneNode() throws Exception {
+        awaitTimeout("bumble");
+        awaitTimeout("honey");
+        // The local node and the one the named robots share
+        assertEquals(2, m_ros.executedCount());
+
+        m_ros.startAll();
+        assertNotNull(m_factory.getRobot("bumble", 5, TimeUnit.SECONDS));
+        assertNotNull(m_factory.getRobot("honey", 5, TimeUnit.SECONDS));
+
+        // Asking again doesn't start anything more
+        assertNotNull(m_factory.getRobot("bumble", 5, TimeUnit.SECONDS));
+        assertEquals(2, m_ros.executedCount());
+        assertEquals(1, count("pub bumble/command"));
+        assertEquals(1, count("pub honey/command"));
+    }
+
+    @Test
+    public void namedRobotAttachesToAnAlreadyRunningNode() throws Exception {
+        awaitTimeout("bumble");
+        m_ros.startAll();
+        assertNotNull(m_factory.getRobot("bumble", 5, TimeUnit.SECONDS));
+
+        assertNotNull(m_factory.getRobot("honey", 5, TimeUnit.SECONDS));
+        assertEquals(2, m_ros.executedCount());
+        assertEquals(1, count("pub honey/command"));
+    }
+
+    @Test
+    public void shutdownStopsEveryNode() throws Exception {
+        awaitTimeout("bumble");
+        m_ros.startAll();
+        assertNotNull(m_factory.getRobot("bumble", 5, TimeUnit.SECONDS));
+
+        m_factory.shutdown();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (m_ros.executedCount() > 0 && System.nanoTime() < deadline)
+            Thread.sleep(1);
+        assertEquals(0, m_ros.executedCount());
+
+        try {
+            m_factory.getRobot("honey");
+            fail("Expected the factory to refuse");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    /**
+     * Ask for a robot whose node can't be up yet.
+     */
+    private void awaitTimeout(final String name) throws Exception {
+        try {
+            m_factory.getRobot(name, 10, TimeUnit.MILLISECONDS);
+            fail("Expected " + name + " not to be up yet");
+        } catch (TimeoutException expected) {
+        }
+    }
+
+    private int count(final String topic) {
+        int n = 0;
+        synchronized (m_ros.opened) {
+            for (String t : m_ros.opened) {
+                if (t.equals(topic))
+                    n++;
+            }
+        }
+        return n;
+    }
+}
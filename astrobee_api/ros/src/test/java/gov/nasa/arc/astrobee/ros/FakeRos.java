@@ -0,0 +1,250 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros;
+
+import org.ros.message.MessageListener;
+import org.ros.message.Time;
+import org.ros.namespace.GraphName;
+import org.ros.node.ConnectedNode;
+import org.ros.node.NodeConfiguration;
+import org.ros.node.NodeListener;
+import org.ros.node.NodeMain;
+import org.ros.node.NodeMainExecutor;
+import org.ros.node.topic.Publisher;
+import org.ros.node.topic.Subscriber;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Just enough of rosjava to run node mains without a master: an executor
+ * that records what it was asked to run, and a node whose topics record
+ * being opened and shut down. Like rosjava, the node hands out the same
+ * publisher or subscriber for every open of a topic until it is shut down,
+ * and messages can be delivered to a subscriber's listeners by hand.
+ */
+final class FakeRos {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    // "pub <topic>" or "sub <topic>", in the order they were opened or shut down
+    final List<String> opened = Collections.synchronizedList(new ArrayList<String>());
+    final List<String> closed = Collections.synchronizedList(new ArrayList<String>());
+
+    // Open publishers and subscribers by "pub <topic>" or "sub <topic>"
+    private final Map<String, Object> m_topics = new HashMap<>();
+    // Message listeners on each subscriber
+    private final Map<String, List<MessageListener<Object>>> m_listeners = new HashMap<>();
+
+    // Node mains being run, and the listeners they were run with
+    private final Map<NodeMain, List<NodeListener>> m_executed = new LinkedHashMap<>();
+
+    final ConnectedNode node = proxy(ConnectedNode.class, new Handler("node") {
+        @Override
+        Object call(final Method method, final Object[] args) {
+            switch (method.getName()) {
+                case "getScheduledExecutorService":
+                    return scheduler;
+                case "getTopicMessageFactory":
+                    return NodeConfiguration.newPrivate().getTopicMessageFactory();
+                case "getCurrentTime":
+                    return Time.fromMillis(System.currentTimeMillis());
+                case "getName":
+                    return GraphName.of("fake");
+                case "newPublisher":
+                    return topic(Publisher.class, "pub " + args[0]);
+                case "newSubscriber":
+                    return topic(Subscriber.class, "sub " + args[0]);
+                default:
+                    return null;
+            }
+        }
+    });
+
+    final NodeMainExecutor executor = proxy(NodeMainExecutor.class, new Handler("executor") {
+        @Override
+        @SuppressWarnings("unchecked")
+        Object call(final Method method, final Object[] args) {
+            switch (method.getName()) {
+                case "getScheduledExecutorService":
+                    return scheduler;
+                case "execute":
+                    final List<NodeListener> listeners = new ArrayList<>();
+                    if (args.length > 2)
+                        listeners.addAll((Collection<NodeListener>) args[2]);
+                    synchronized (m_executed) {
+                        m_executed.put((NodeMain) args[0], listeners);
+                    }
+                    return null;
+                case "shutdownNodeMain":
+                    shutdown((NodeMain) args[0]);
+                    return null;
+                default:
+                    return null;
+            }
+        }
+    });
+
+    /**
+     * Hand a message to every listener on a subscribed topic.
+     *
+     * @return How many listeners there were.
+     */
+    int deliver(final String topic, final Object message) {
+        final List<MessageListener<Object>> listeners;
+        synchronized (m_topics) {
+            final List<MessageListener<Object>> current = m_listeners.get("sub " + topic);
+            listeners = current == null ? new ArrayList<MessageListener<Object>>() : new ArrayList<>(current);
+        }
+        for (MessageListener<Object> l : listeners)
+            l.onNewMessage(message);
+        return listeners.size();
+    }
+
+    int executedCount() {
+        synchronized (m_executed) {
+            return m_executed.size();
+        }
+    }
+
+    /**
+     * Bring up every node main run so far, as if its node had connected.
+     */
+    void startAll() {
+        for (Map.Entry<NodeMain, List<NodeListener>> e : executed().entrySet()) {
+            e.getKey().onStart(node);
+            for (NodeListener l : e.getValue())
+                l.onStart(node);
+        }
+    }
+
+    private void shutdown(final NodeMain main) {
+        final List<NodeListener> listeners;
+        synchronized (m_executed) {
+            listeners = m_executed.remove(main);
+        }
+        if (listeners == null)
+            return;
+        main.onShutdown(node);
+        for (NodeListener l : listeners)
+            l.onShutdown(node);
+        main.onShutdownComplete(node);
+        for (NodeListener l : listeners)
+            l.onShutdownComplete(node);
+    }
+
+    private Map<NodeMain, List<NodeListener>> executed() {
+        synchronized (m_executed) {
+            return new LinkedHashMap<>(m_executed);
+        }
+    }
+
+    private Object topic(final Class<?> type, final String name) {
+        opened.add(name);
+        synchronized (m_topics) {
+            final Object existing = m_topics.get(name);
+            if (existing != null)
+                return existing;
+            final List<MessageListener<Object>> listeners = new ArrayList<>();
+            final Object topic = proxy(type, new Handler(name) {
+                @Override
+                @SuppressWarnings("unchecked")
+                Object call(final Method method, final Object[] args) {
+                    synchronized (m_topics) {
+                        switch (method.getName()) {
+                            case "shutdown":
+                                closed.add(name);
+                                m_topics.remove(name);
+                                m_listeners.remove(name);
+                                return null;
+                            case "getTopicName":
+                                return GraphName.of(name.substring(4));
+                            case "addMessageListener":
+                                listeners.add((MessageListener<Object>) args[0]);
+                                return null;
+                            case "removeMessageListener":
+                                return listeners.remove(args[0]);
+                            case "removeAllMessageListeners":
+                                listeners.clear();
+                                return null;
+                            default:
+                                return null;
+                        }
+                    }
+                }
+            });
+            m_topics.put(name, topic);
+            m_listeners.put(name, listeners);
+            return topic;
+        }
+    }
+
+    /**
+     * Answers the Object methods, and defaults for primitives so that
+     * unboxing a null never throws.
+     */
+    private abstract static class Handler implements InvocationHandler {
+        private final String m_name;
+
+        Handler(final String name) {
+            m_name = name;
+        }
+
+        abstract Object call(Method method, Object[] args);
+
+        @Override
+        public Object invoke(final Object self, final Method method, final Object[] args) {
+            switch (method.getName()) {
+                case "equals":
+                    return self == args[0];
+                case "hashCode":
+                    return System.identityHashCode(self);
+                case "toString":
+                    return m_name;
+                default:
+                    break;
+            }
+            final Object result = call(method, args == null ? new Object[0] : args);
+            if (result != null || !method.getReturnType().isPrimitive())
+                return result;
+            final Class<?> type = method.getReturnType();
+            if (type == boolean.class)
+                return false;
+            if (type == void.class)
+                return null;
+            if (type == long.class)
+                return 0L;
+            return 0;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(FakeRos.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+}
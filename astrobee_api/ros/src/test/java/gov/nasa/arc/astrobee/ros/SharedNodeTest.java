@@ -0,0 +1,166 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.message.MessageListener;
+import org.ros.namespace.GraphName;
+import org.ros.node.AbstractNodeMain;
+import org.ros.node.ConnectedNode;
+import org.ros.node.Node;
+import org.ros.node.NodeConfiguration;
+import org.ros.node.topic.Subscriber;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SharedNodeTest {
+    private final FakeRos m_ros = new FakeRos();
+    private SharedNode m_shared;
+
+    /**
+     * Publishes on a topic of its own and counts what arrives on a common
+     * one.
+     */
+    private static final class Component extends AbstractNodeMain {
+        final String name;
+        final AtomicInteger received = new AtomicInteger();
+        volatile CountDownLatch started = new CountDownLatch(1);
+        volatile Subscriber<Object> subscriber;
+
+        Component(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public GraphName getDefaultNodeName() {
+            return GraphName.of(name);
+        }
+
+        @Override
+        public void onStart(final ConnectedNode node) {
+            node.newPublisher(name + "/out", std_msgs.String._TYPE);
+            subscriber = node.newSubscriber("in", std_msgs.String._TYPE);
+            subscriber.addMessageListener(new MessageListener<Object>() {
+                @Override
+                public void onNewMessage(final Object message) {
+                    received.incrementAndGet();
+                }
+            });
+            started.countDown();
+        }
+
+        @Override
+        public void onShutdown(final Node node) {
+            started = new CountDownLatch(1);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        m_shared = SharedNode.start(m_ros.executor, NodeConfiguration.newPrivate());
+        m_ros.startAll();
+    }
+
+    @After
+    public void tearDown() {
+        m_ros.scheduler.shutdownNow();
+    }
+
+    @Test
+    public void detachShutsDownTheComponentsTopics() throws Exception {
+        final Component a = attach("a");
+        assertEquals(1, m_ros.deliver("in", "hello"));
+        assertEquals(1, a.received.get());
+
+        m_shared.detach(a);
+        assertTrue(m_ros.closed.contains("pub a/out"));
+        assertTrue(m_ros.closed.contains("sub in"));
+        assertEquals(0, m_ros.deliver("in", "hello"));
+        assertEquals(1, a.received.get());
+    }
+
+    @Test
+    public void topicsOthersHaveOpenStayOpen() throws Exception {
+        final Component a = attach("a");
+        final Component b = attach("b");
+        m_ros.deliver("in", "hello");
+
+        m_shared.detach(a);
+        assertTrue(m_ros.closed.contains("pub a/out"));
+        assertFalse(m_ros.closed.contains("sub in"));
+
+        // Only b is still listening
+        assertEquals(1, m_ros.deliver("in", "hello"));
+        assertEquals(1, a.received.get());
+        assertEquals(2, b.received.get());
+    }
+
+    @Test
+    public void reattachingDoesNotDuplicateListeners() throws Exception {
+        final Component a = attach("a");
+        attach("b");
+        m_shared.detach(a);
+
+        m_shared.attach(a);
+        assertTrue(a.started.await(5, TimeUnit.SECONDS));
+        assertEquals(2, m_ros.deliver("in", "hello"));
+        assertEquals(1, a.received.get());
+    }
+
+    @Test
+    public void shuttingDownAViewOnlyGivesUpThatHold() throws Exception {
+        final Component a = attach("a");
+        final Component b = attach("b");
+
+        a.subscriber.shutdown();
+        assertFalse(m_ros.closed.contains("sub in"));
+        m_ros.deliver("in", "hello");
+        assertEquals(0, a.received.get());
+        assertEquals(1, b.received.get());
+
+        b.subscriber.shutdown();
+        assertTrue(m_ros.closed.contains("sub in"));
+    }
+
+    @Test
+    public void lastDetachShutsDownTheNode() throws Exception {
+        final Component a = attach("a");
+        assertEquals(1, m_ros.executedCount());
+
+        m_shared.detach(a);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (m_ros.executedCount() > 0 && System.nanoTime() < deadline)
+            Thread.sleep(1);
+        assertEquals(0, m_ros.executedCount());
+        assertTrue(m_shared.isShutdown());
+    }
+
+    private Component attach(final String name) throws InterruptedException {
+        final Component c = new Component(name);
+        m_shared.attach(c);
+        assertTrue(c.started.await(5, TimeUnit.SECONDS));
+        return c;
+    }
+}
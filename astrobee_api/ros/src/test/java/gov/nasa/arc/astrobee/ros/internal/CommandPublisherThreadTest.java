@@ -0,0 +1,185 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static gov.nasa.arc.astrobee.ros.internal.TestMessages.failure;
+import static gov.nasa.arc.astrobee.ros.internal.TestMessages.pending;
+import static org.junit.Assert.*;
+
+public class CommandPublisherThreadTest {
+    private final List<DefaultPendingResult> m_dispatched =
+            Collections.synchronizedList(new ArrayList<DefaultPendingResult>());
+
+    private final CommandPublisherThread.Handler m_handler = new CommandPublisherThread.Handler() {
+        @Override
+        public void dispatch(final DefaultPendingResult pr) {
+            m_dispatched.add(pr);
+        }
+    };
+
+    private static Thread publisherThread() {
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().equals("Command Publisher") && t.isAlive())
+                return t;
+        }
+        return null;
+    }
+
+    private void awaitDispatched(final int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (m_dispatched.size() < count && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        assertEquals(count, m_dispatched.size());
+    }
+
+    @Test
+    public void dispatchesInOrder() throws Exception {
+        final CommandPublisherThread publisher = new CommandPublisherThread(4, m_handler);
+        publisher.start();
+        final List<DefaultPendingResult> submitted = new ArrayList<>();
+        // More than fit in the ring, so submit has to wait for room
+        for (int i = 0; i < 100; i++) {
+            final DefaultPendingResult pr = pending("c" + i);
+            submitted.add(pr);
+            publisher.submit(pr);
+        }
+        awaitDispatched(100);
+        assertEquals(submitted, m_dispatched);
+        publisher.shutdown();
+    }
+
+    @Test
+    public void producersWaitingForRoomAllGetThrough() throws Exception {
+        final CommandPublisherThread publisher = new CommandPublisherThread(2, m_handler);
+        publisher.start();
+        final Thread[] producers = new Thread[8];
+        for (int p = 0; p < producers.length; p++) {
+            final int producer = p;
+            producers[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 500; i++)
+                        publisher.submit(pending(producer + "-" + i));
+                }
+            });
+            producers[p].start();
+        }
+        for (Thread t : producers)
+            t.join();
+        awaitDispatched(4000);
+        publisher.shutdown();
+    }
+
+    @Test
+    public void shutdownReleasesProducersWaitingForRoom() throws Exception {
+        final CountDownLatch stuck = new CountDownLatch(1);
+        final CommandPublisherThread publisher = new CommandPublisherThread(2,
+                new CommandPublisherThread.Handler() {
+                    @Override
+                    public void dispatch(final DefaultPendingResult pr) {
+                        try {
+                            stuck.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+        publisher.start();
+        // One being dispatched, two filling the ring
+        for (int i = 0; i < 3; i++)
+            publisher.submit(pending("c" + i));
+
+        final DefaultPendingResult blocked = pending("blocked");
+        final Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                publisher.submit(blocked);
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        publisher.shutdown();
+        producer.join(2000);
+        assertFalse(producer.isAlive());
+        assertNotNull(failure(blocked));
+        stuck.countDown();
+    }
+
+    @Test
+    public void idleThreadParksWithoutATimeout() throws Exception {
+        final CommandPublisherThread publisher = new CommandPublisherThread(4, m_handler);
+        publisher.start();
+        publisher.submit(pending("a"));
+        awaitDispatched(1);
+
+        final Thread thread = publisherThread();
+        assertNotNull(thread);
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (thread.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        assertEquals(Thread.State.WAITING, thread.getState());
+
+        // And still wakes up for the next one
+        publisher.submit(pending("b"));
+        awaitDispatched(2);
+        publisher.shutdown();
+    }
+
+    @Test
+    public void shutdownStopsTheThreadAndRefusesNewCommands() throws Exception {
+        final CommandPublisherThread publisher = new CommandPublisherThread(4, m_handler);
+        publisher.start();
+        publisher.shutdown();
+        assertNull(publisherThread());
+
+        final DefaultPendingResult late = pending("late");
+        publisher.submit(late);
+        assertNotNull(failure(late));
+        assertTrue(m_dispatched.isEmpty());
+    }
+
+    @Test
+    public void handlerFailuresFailTheCommandOnly() throws Exception {
+        final CommandPublisherThread publisher = new CommandPublisherThread(4,
+                new CommandPublisherThread.Handler() {
+                    @Override
+                    public void dispatch(final DefaultPendingResult pr) {
+                        if (pr.getCommand().getCmdId().equals("bad"))
+                            throw new IllegalStateException("boom");
+                        m_dispatched.add(pr);
+                    }
+                });
+        publisher.start();
+        final DefaultPendingResult bad = pending("bad");
+        publisher.submit(bad);
+        publisher.submit(pending("good"));
+        awaitDispatched(1);
+        assertTrue(failure(bad) instanceof IllegalStateException);
+        publisher.shutdown();
+    }
+}
@@ -0,0 +1,208 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal;
+
+import ff_msgs.AckCompletedStatus;
+import ff_msgs.AckStatus;
+import gov.nasa.arc.astrobee.AstrobeeException;
+import gov.nasa.arc.astrobee.ros.PendingCommandStats;
+import gov.nasa.arc.astrobee.ros.PendingOverflowPolicy;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static gov.nasa.arc.astrobee.ros.internal.TestMessages.ack;
+import static gov.nasa.arc.astrobee.ros.internal.TestMessages.failure;
+import static gov.nasa.arc.astrobee.ros.internal.TestMessages.pending;
+import static org.junit.Assert.*;
+
+public class InFlightTableTest {
+    private final List<DefaultPendingResult> m_dropped = new ArrayList<>();
+
+    private InFlightTable table(long ttlMillis, int capacity, PendingOverflowPolicy policy) {
+        return new InFlightTable(ttlMillis, TimeUnit.MILLISECONDS, capacity, policy,
+                new InFlightTable.ExpiryListener() {
+                    @Override
+                    public void onDropped(final DefaultPendingResult pr) {
+                        m_dropped.add(pr);
+                    }
+                });
+    }
+
+    @Test
+    public void expiresCommandsThatAreNeverAcked() throws Exception {
+        final InFlightTable table = table(1, 16, PendingOverflowPolicy.REJECT);
+        final DefaultPendingResult pr = pending("a");
+        assertTrue(table.register("a", pr));
+
+        Thread.sleep(5);
+        table.tick();
+
+        assertTrue(failure(pr) instanceof TimeoutException);
+        assertEquals(1, m_dropped.size());
+        assertSame(pr, m_dropped.get(0));
+        assertNull(table.acked("a"));
+
+        final PendingCommandStats stats = table.getStats();
+        assertEquals(0, stats.getInFlight());
+        assertEquals(1, stats.getExpired());
+    }
+
+    @Test
+    public void ackPushesTheDeadlineBack() throws Exception {
+        final InFlightTable table = table(300, 16, PendingOverflowPolicy.REJECT);
+        final DefaultPendingResult pr = pending("a");
+        table.register("a", pr);
+
+        Thread.sleep(200);
+        assertSame(pr, table.acked("a"));
+        Thread.sleep(200);
+        // Past the original deadline, but not the one the ack set
+        for (int i = 0; i < 3; i++)
+            table.tick();
+        assertNull(failure(pr));
+
+        Thread.sleep(250);
+        for (int i = 0; i < 8 && failure(pr) == null; i++)
+            table.tick();
+        assertTrue(failure(pr) instanceof TimeoutException);
+    }
+
+    @Test
+    public void removedCommandsDoNotExpire() throws Exception {
+        final InFlightTable table = table(1, 16, PendingOverflowPolicy.REJECT);
+        final DefaultPendingResult pr = pending("a");
+        table.register("a", pr);
+        table.remove("a", pr);
+
+        Thread.sleep(5);
+        table.tick();
+
+        assertNull(failure(pr));
+        assertTrue(m_dropped.isEmpty());
+        assertEquals(0, table.getStats().getInFlight());
+        assertEquals(0, table.getStats().getExpired());
+    }
+
+    @Test
+    public void removeIgnoresAStaleResultForAReusedId() {
+        final InFlightTable table = table(60000, 16, PendingOverflowPolicy.REJECT);
+        final DefaultPendingResult first = pending("a");
+        final DefaultPendingResult second = pending("a");
+        table.register("a", first);
+        table.register("a", second);
+        assertEquals(1, table.getStats().getInFlight());
+
+        table.remove("a", first);
+        assertSame(second, table.acked("a"));
+        assertEquals(1, table.getStats().getInFlight());
+    }
+
+    @Test
+    public void failsTheCommandAReusedIdReplaces() throws Exception {
+        final InFlightTable table = table(60000, 16, PendingOverflowPolicy.REJECT);
+        final DefaultPendingResult first = pending("a");
+        final DefaultPendingResult second = pending("a");
+        table.register("a", first);
+        table.register("a", second);
+
+        assertTrue(failure(first) instanceof AstrobeeException);
+        assertTrue(first.isFinished());
+        assertNull(failure(second));
+        assertEquals(1, m_dropped.size());
+        assertSame(first, m_dropped.get(0));
+    }
+
+    @Test
+    public void rejectsWhenFull() throws Exception {
+        final InFlightTable table = table(60000, 2, PendingOverflowPolicy.REJECT);
+        final DefaultPendingResult a = pending("a");
+        final DefaultPendingResult b = pending("b");
+        final DefaultPendingResult c = pending("c");
+        assertTrue(table.register("a", a));
+        assertTrue(table.register("b", b));
+        assertFalse(table.register("c", c));
+
+        assertTrue(failure(c) instanceof AstrobeeException);
+        assertNull(failure(a));
+        assertNull(table.acked("c"));
+        assertEquals(2, table.getStats().getInFlight());
+        assertEquals(1, table.getStats().getRejected());
+    }
+
+    @Test
+    public void evictsTheOldestWhenFull() throws Exception {
+        final InFlightTable table = table(60000, 2, PendingOverflowPolicy.EVICT_OLDEST);
+        final DefaultPendingResult a = pending("a");
+        final DefaultPendingResult b = pending("b");
+        final DefaultPendingResult c = pending("c");
+        table.register("a", a);
+        table.register("b", b);
+        assertTrue(table.register("c", c));
+
+        assertNotNull(failure(a));
+        assertNull(failure(c));
+        assertEquals(1, m_dropped.size());
+        assertSame(a, m_dropped.get(0));
+        assertNull(table.acked("a"));
+        assertSame(c, table.acked("c"));
+
+        final PendingCommandStats stats = table.getStats();
+        assertEquals(2, stats.getInFlight());
+        assertEquals(2, stats.getPeakInFlight());
+        assertEquals(1, stats.getEvicted());
+    }
+
+    @Test
+    public void listsUnacknowledgedCommandsOldestFirst() {
+        final InFlightTable table = table(60000, 16, PendingOverflowPolicy.REJECT);
+        final DefaultPendingResult a = pending("a");
+        final DefaultPendingResult b = pending("b");
+        final DefaultPendingResult c = pending("c");
+        final DefaultPendingResult unsent = pending("d");
+        for (DefaultPendingResult pr : new DefaultPendingResult[] { c, a, b, unsent })
+            table.register(pr.getCommand().getCmdId(), pr);
+        a.sent();
+        b.sent();
+        c.sent();
+        a.update(ack("a", AckStatus.EXECUTING, AckCompletedStatus.NOT));
+
+        final List<DefaultPendingResult> found = table.unacknowledged();
+        assertEquals(2, found.size());
+        assertSame(c, found.get(0));
+        assertSame(b, found.get(1));
+    }
+
+    @Test
+    public void failAllEmptiesTheTable() throws Exception {
+        final InFlightTable table = table(60000, 16, PendingOverflowPolicy.REJECT);
+        final DefaultPendingResult a = pending("a");
+        table.register("a", a);
+
+        table.failAll(new AstrobeeException("shut down"));
+
+        assertEquals("shut down", failure(a).getMessage());
+        assertEquals(0, table.getStats().getInFlight());
+        // A late ack finds nothing
+        assertNull(table.acked("a"));
+    }
+}
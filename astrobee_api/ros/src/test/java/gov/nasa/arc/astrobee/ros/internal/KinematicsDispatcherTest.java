@@ -0,0 +1,239 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal;
+
+import gov.nasa.arc.astrobee.Kinematics;
+import gov.nasa.arc.astrobee.KinematicsSnapshot;
+import gov.nasa.arc.astrobee.Robot;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class KinematicsDispatcherTest {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            command.run();
+        }
+    };
+
+    // Runs tasks only when asked to
+    private static final class ManualExecutor implements Executor {
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(final Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty())
+                tasks.poll().run();
+        }
+    }
+
+    private static final class Recorder implements Robot.KinematicsListener {
+        final List<Long> versions = new ArrayList<>();
+
+        @Override
+        public void onKinematicsChanged(final Robot robot, final KinematicsSnapshot kinematics) {
+            versions.add(kinematics.getVersion());
+        }
+    }
+
+    private final KinematicsStore m_store = new KinematicsStore();
+    private final KinematicsDispatcher m_dispatcher = new KinematicsDispatcher(m_store);
+
+    private void publish(final Kinematics.Confidence confidence) {
+        final KinematicsSnapshot k = new KinematicsSnapshot();
+        k.setConfidence(confidence);
+        m_store.update(k);
+        m_dispatcher.updated();
+    }
+
+    @Test
+    public void deliversEveryUpdateWithoutARateLimit() {
+        final Recorder recorder = new Recorder();
+        m_dispatcher.addListener(null, recorder, 0, DIRECT);
+        for (int i = 0; i < 5; i++)
+            publish(Kinematics.Confidence.GOOD);
+        assertEquals("[1, 2, 3, 4, 5]", recorder.versions.toString());
+    }
+
+    @Test
+    public void decimatesToTheMaximumRate() {
+        final Recorder recorder = new Recorder();
+        // One delivery every 1000 s, so only the first one gets through
+        m_dispatcher.addListener(null, recorder, 0.001, DIRECT);
+        for (int i = 0; i < 5; i++)
+            publish(Kinematics.Confidence.GOOD);
+        assertEquals("[1]", recorder.versions.toString());
+    }
+
+    @Test
+    public void coalescesUpdatesWhileADeliveryIsOutstanding() {
+        final Recorder recorder = new Recorder();
+        final ManualExecutor executor = new ManualExecutor();
+        m_dispatcher.addListener(null, recorder, 0, executor);
+        for (int i = 0; i < 5; i++)
+            publish(Kinematics.Confidence.GOOD);
+
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+        assertEquals("[5]", recorder.versions.toString());
+
+        publish(Kinematics.Confidence.GOOD);
+        executor.runAll();
+        assertEquals("[5, 6]", recorder.versions.toString());
+    }
+
+    @Test
+    public void removedListenersHearNothingMore() {
+        final Recorder kept = new Recorder();
+        final Recorder removed = new Recorder();
+        final ManualExecutor executor = new ManualExecutor();
+        m_dispatcher.addListener(null, kept, 0, DIRECT);
+        m_dispatcher.addListener(null, removed, 0, executor);
+        publish(Kinematics.Confidence.GOOD);
+
+        // Already scheduled, but removed before it ran
+        m_dispatcher.removeListener(removed);
+        executor.runAll();
+        publish(Kinematics.Confidence.GOOD);
+        executor.runAll();
+
+        assertEquals("[1, 2]", kept.versions.toString());
+        assertTrue(removed.versions.isEmpty());
+    }
+
+    @Test
+    public void aThrowingListenerDoesNotStopDelivery() {
+        final Recorder recorder = new Recorder();
+        m_dispatcher.addListener(null, new Robot.KinematicsListener() {
+            @Override
+            public void onKinematicsChanged(final Robot robot, final KinematicsSnapshot kinematics) {
+                throw new IllegalStateException("boom");
+            }
+        }, 0, DIRECT);
+        m_dispatcher.addListener(null, recorder, 0, DIRECT);
+        publish(Kinematics.Confidence.GOOD);
+        publish(Kinematics.Confidence.GOOD);
+        assertEquals("[1, 2]", recorder.versions.toString());
+    }
+
+    @Test
+    public void awaitReturnsAtOnceIfAlreadyConfidentEnough() throws Exception {
+        publish(Kinematics.Confidence.POOR);
+        final KinematicsSnapshot k = m_dispatcher.awaitConfidence(
+                Kinematics.Confidence.POOR, 0, TimeUnit.NANOSECONDS, new KinematicsSnapshot());
+        assertEquals(Kinematics.Confidence.POOR, k.getConfidence());
+        assertEquals(1, k.getVersion());
+    }
+
+    @Test
+    public void awaitNeverAcceptsTheInitialState() throws Exception {
+        // The store starts out LOST with version 0, which is not a real estimate
+        try {
+            m_dispatcher.awaitConfidence(Kinematics.Confidence.LOST, 10, TimeUnit.MILLISECONDS,
+                                         new KinematicsSnapshot());
+            fail("Expected a timeout");
+        } catch (TimeoutException expected) {
+        }
+    }
+
+    @Test
+    public void awaitTimesOutWhenNotConfidentEnough() throws Exception {
+        publish(Kinematics.Confidence.POOR);
+        try {
+            m_dispatcher.awaitConfidence(Kinematics.Confidence.GOOD, 10, TimeUnit.MILLISECONDS,
+                                         new KinematicsSnapshot());
+            fail("Expected a timeout");
+        } catch (TimeoutException expected) {
+        }
+    }
+
+    @Test
+    public void awaitWakesOnTheFirstGoodEnoughUpdate() throws Exception {
+        assertWakes(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void negativeTimeoutWaitsUntilAnUpdate() throws Exception {
+        assertWakes(-1, TimeUnit.NANOSECONDS);
+    }
+
+    @Test
+    public void awaitIsInterruptible() throws Exception {
+        final AtomicReference<Throwable> thrown = new AtomicReference<>();
+        final Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    m_dispatcher.awaitConfidence(Kinematics.Confidence.GOOD, -1, TimeUnit.NANOSECONDS,
+                                                 new KinematicsSnapshot());
+                } catch (Throwable t) {
+                    thrown.set(t);
+                }
+            }
+        });
+        waiter.start();
+        waiter.interrupt();
+        waiter.join(5000);
+        assertFalse(waiter.isAlive());
+        assertTrue(thrown.get() instanceof InterruptedException);
+    }
+
+    private void assertWakes(final long timeout, final TimeUnit unit) throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicReference<Object> result = new AtomicReference<>();
+        final Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    result.set(m_dispatcher.awaitConfidence(Kinematics.Confidence.GOOD, timeout, unit,
+                                                            new KinematicsSnapshot()));
+                } catch (Throwable t) {
+                    result.set(t);
+                }
+            }
+        });
+        waiter.start();
+        started.await();
+
+        publish(Kinematics.Confidence.LOST);
+        publish(Kinematics.Confidence.POOR);
+        publish(Kinematics.Confidence.GOOD);
+        waiter.join(5000);
+
+        assertFalse(waiter.isAlive());
+        final KinematicsSnapshot k = (KinematicsSnapshot) result.get();
+        assertEquals(Kinematics.Confidence.GOOD, k.getConfidence());
+        assertTrue(k.getVersion() >= 3);
+    }
+}
@@ -0,0 +1,203 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal;
+
+import gov.nasa.arc.astrobee.Kinematics;
+import gov.nasa.arc.astrobee.KinematicsSnapshot;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class KinematicsHistoryTest {
+    private static final double EPS = 1e-9;
+    private static final double HALF_SQRT2 = Math.sqrt(0.5);
+
+    private static KinematicsSnapshot sample(final long stamp, final double x) {
+        final KinematicsSnapshot k = new KinematicsSnapshot();
+        k.setPosition(x, 2 * x, -x);
+        k.setLinearVelocity(x, 0, 0);
+        k.setTimestamp(stamp);
+        k.setConfidence(Kinematics.Confidence.GOOD);
+        k.setVersion(stamp);
+        return k;
+    }
+
+    @Test
+    public void emptyHistoryCoversNothing() {
+        assertFalse(new KinematicsHistory(4).get(0, new KinematicsSnapshot()));
+    }
+
+    @Test
+    public void timesOutsideTheHistoryLeaveTheSnapshotAlone() {
+        final KinematicsHistory history = new KinematicsHistory(4);
+        history.add(sample(100, 1));
+        history.add(sample(200, 2));
+
+        final KinematicsSnapshot k = sample(7, 7);
+        assertFalse(history.get(99, k));
+        assertFalse(history.get(201, k));
+        assertEquals(7, k.getTimestamp());
+        assertEquals(7, k.getPosition(0), 0);
+    }
+
+    @Test
+    public void exactTimesReturnTheSample() {
+        final KinematicsHistory history = new KinematicsHistory(4);
+        history.add(sample(100, 1));
+        history.add(sample(200, 2));
+        history.add(sample(300, 3));
+
+        final KinematicsSnapshot k = new KinematicsSnapshot();
+        assertTrue(history.get(200, k));
+        assertEquals(2, k.getPosition(0), 0);
+        assertEquals(200, k.getVersion());
+        assertTrue(history.get(300, k));
+        assertEquals(3, k.getPosition(0), 0);
+    }
+
+    @Test
+    public void vectorsAreInterpolatedLinearly() {
+        final KinematicsHistory history = new KinematicsHistory(4);
+        history.add(sample(100, 1));
+        history.add(sample(200, 3));
+
+        final KinematicsSnapshot k = new KinematicsSnapshot();
+        assertTrue(history.get(125, k));
+        assertEquals(1.5, k.getPosition(0), EPS);
+        assertEquals(3, k.getPosition(1), EPS);
+        assertEquals(-1.5, k.getPosition(2), EPS);
+        assertEquals(1.5, k.getLinearVelocity(0), EPS);
+        assertEquals(125, k.getTimestamp());
+        // Version of the sample before
+        assertEquals(100, k.getVersion());
+    }
+
+    @Test
+    public void orientationIsSlerped() {
+        final KinematicsHistory history = new KinematicsHistory(4);
+        final KinematicsSnapshot a = sample(0, 0);
+        a.setOrientation(0, 0, 0, 1);
+        final KinematicsSnapshot b = sample(100, 0);
+        // 90 degrees about z
+        b.setOrientation(0, 0, HALF_SQRT2, HALF_SQRT2);
+        history.add(a);
+        history.add(b);
+
+        final KinematicsSnapshot k = new KinematicsSnapshot();
+        assertTrue(history.get(50, k));
+        // 45 degrees about z; a plain lerp would give the same axis but the
+        // wrong angle away from the midpoint, so check a quarter too.
+        assertEquals(Math.sin(Math.PI / 8), k.getOrientation(2), EPS);
+        assertEquals(Math.cos(Math.PI / 8), k.getOrientation(3), EPS);
+
+        assertTrue(history.get(25, k));
+        assertEquals(Math.sin(Math.PI / 16), k.getOrientation(2), EPS);
+        assertEquals(Math.cos(Math.PI / 16), k.getOrientation(3), EPS);
+    }
+
+    @Test
+    public void slerpTakesTheShortWayRound() {
+        final KinematicsHistory history = new KinematicsHistory(4);
+        final KinematicsSnapshot a = sample(0, 0);
+        a.setOrientation(0, 0, 0, 1);
+        final KinematicsSnapshot b = sample(100, 0);
+        // Same 90 degree rotation as above, with the opposite sign
+        b.setOrientation(0, 0, -HALF_SQRT2, -HALF_SQRT2);
+        history.add(a);
+        history.add(b);
+
+        final KinematicsSnapshot k = new KinematicsSnapshot();
+        assertTrue(history.get(50, k));
+        assertEquals(Math.sin(Math.PI / 8), k.getOrientation(2), EPS);
+        assertEquals(Math.cos(Math.PI / 8), k.getOrientation(3), EPS);
+    }
+
+    @Test
+    public void nearlyEqualOrientationsStayNormalized() {
+        final KinematicsHistory history = new KinematicsHistory(4);
+        final KinematicsSnapshot a = sample(0, 0);
+        a.setOrientation(0, 0, 0, 1);
+        final KinematicsSnapshot b = sample(100, 0);
+        b.setOrientation(0, 0, Math.sin(1e-4), Math.cos(1e-4));
+        history.add(a);
+        history.add(b);
+
+        final KinematicsSnapshot k = new KinematicsSnapshot();
+        assertTrue(history.get(50, k));
+        double norm = 0;
+        for (int i = 0; i < 4; i++)
+            norm += k.getOrientation(i) * k.getOrientation(i);
+        assertEquals(1, norm, EPS);
+        assertEquals(Math.sin(0.5e-4), k.getOrientation(2), 1e-7);
+    }
+
+    @Test
+    public void interpolatedConfidenceIsTheWorseOfTheTwo() {
+        final KinematicsHistory history = new KinematicsHistory(4);
+        final KinematicsSnapshot a = sample(0, 0);
+        final KinematicsSnapshot b = sample(100, 0);
+        b.setConfidence(Kinematics.Confidence.POOR);
+        history.add(a);
+        history.add(b);
+
+        final KinematicsSnapshot k = new KinematicsSnapshot();
+        assertTrue(history.get(10, k));
+        assertEquals(Kinematics.Confidence.POOR, k.getConfidence());
+    }
+
+    @Test
+    public void oldestSamplesFallOffWhenFull() {
+        final KinematicsHistory history = new KinematicsHistory(3);
+        for (int i = 1; i <= 5; i++)
+            history.add(sample(i * 100, i));
+
+        final KinematicsSnapshot k = new KinematicsSnapshot();
+        assertFalse(history.get(250, k));
+        // Spans the point where the ring wraps
+        assertTrue(history.get(350, k));
+        assertEquals(3.5, k.getPosition(0), EPS);
+        assertTrue(history.get(450, k));
+        assertEquals(4.5, k.getPosition(0), EPS);
+    }
+
+    @Test
+    public void repeatedTimestampsAreIgnored() {
+        final KinematicsHistory history = new KinematicsHistory(4);
+        history.add(sample(100, 1));
+        history.add(sample(100, 5));
+        history.add(sample(200, 2));
+
+        final KinematicsSnapshot k = new KinematicsSnapshot();
+        assertTrue(history.get(100, k));
+        assertEquals(1, k.getPosition(0), 0);
+    }
+
+    @Test
+    public void clockGoingBackwardsStartsOver() {
+        final KinematicsHistory history = new KinematicsHistory(4);
+        history.add(sample(1000, 1));
+        history.add(sample(2000, 2));
+        history.add(sample(100, 3));
+
+        final KinematicsSnapshot k = new KinematicsSnapshot();
+        assertFalse(history.get(1500, k));
+        assertTrue(history.get(100, k));
+        assertEquals(3, k.getPosition(0), 0);
+    }
+}
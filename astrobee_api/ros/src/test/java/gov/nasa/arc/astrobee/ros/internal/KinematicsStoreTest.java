@@ -0,0 +1,142 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal;
+
+import ff_msgs.EkfState;
+import gov.nasa.arc.astrobee.Kinematics;
+import gov.nasa.arc.astrobee.KinematicsSnapshot;
+import org.junit.Test;
+import org.ros.message.Time;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class KinematicsStoreTest {
+    private static KinematicsSnapshot sample(final long n) {
+        final KinematicsSnapshot k = new KinematicsSnapshot();
+        k.setPosition(n, n + 1, n + 2);
+        k.setOrientation(n, n, n, n);
+        k.setLinearVelocity(n, n, n);
+        k.setAngularVelocity(n, n, n);
+        k.setLinearAcceleration(n, n, n);
+        k.setConfidence(Kinematics.Confidence.values()[(int) (n % 3)]);
+        k.setTimestamp(n);
+        return k;
+    }
+
+    @Test
+    public void startsLostWithIdentityOrientation() {
+        final KinematicsSnapshot k = new KinematicsStore().read(new KinematicsSnapshot());
+        assertEquals(Kinematics.Confidence.LOST, k.getConfidence());
+        assertEquals(1.0, k.getOrientation(3), 0);
+        assertEquals(0, k.getVersion());
+    }
+
+    @Test
+    public void readReturnsWhatWasStored() {
+        final KinematicsStore store = new KinematicsStore();
+        final KinematicsSnapshot written = sample(7);
+        store.update(written);
+        store.update(written);
+
+        final KinematicsSnapshot k = store.read(new KinematicsSnapshot());
+        assertEquals(2, written.getVersion());
+        assertEquals(2, k.getVersion());
+        assertEquals(2, store.getVersion());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(7 + i, k.getPosition(i), 0);
+            assertEquals(7, k.getLinearVelocity(i), 0);
+            assertEquals(7, k.getAngularVelocity(i), 0);
+            assertEquals(7, k.getLinearAcceleration(i), 0);
+        }
+        assertEquals(7, k.getOrientation(3), 0);
+        assertEquals(written.getConfidence(), k.getConfidence());
+        assertEquals(7, k.getTimestamp());
+    }
+
+    @Test
+    public void readersNeverSeeAHalfWrittenUpdate() throws Exception {
+        final KinematicsStore store = new KinematicsStore();
+        store.update(sample(1));
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicReference<String> torn = new AtomicReference<>();
+
+        final Thread[] readers = new Thread[3];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    final KinematicsSnapshot k = new KinematicsSnapshot();
+                    long lastVersion = 0;
+                    while (!stop.get()) {
+                        store.read(k);
+                        final long n = k.getTimestamp();
+                        if (k.getPosition(0) != n || k.getPosition(2) != n + 2
+                                || k.getOrientation(1) != n || k.getLinearAcceleration(2) != n
+                                || k.getConfidence().ordinal() != n % 3) {
+                            torn.compareAndSet(null, "fields from different updates at " + n);
+                        }
+                        if (k.getVersion() < lastVersion)
+                            torn.compareAndSet(null, "version went backwards at " + n);
+                        lastVersion = k.getVersion();
+                    }
+                }
+            });
+            readers[r].start();
+        }
+
+        // The single writer
+        final KinematicsSnapshot k = new KinematicsSnapshot();
+        for (long n = 1; n <= 200000; n++) {
+            k.set(sample(n));
+            store.update(k);
+        }
+        stop.set(true);
+        for (Thread reader : readers)
+            reader.join();
+
+        assertNull(torn.get());
+        assertEquals(200001, store.getVersion());
+    }
+
+    @Test
+    public void unpacksEkfMessages() {
+        final EkfState ekf = TestMessages.factory().newFromType(EkfState._TYPE);
+        ekf.getPose().getPosition().setX(1);
+        ekf.getPose().getPosition().setY(2);
+        ekf.getPose().getPosition().setZ(3);
+        ekf.getPose().getOrientation().setW(1);
+        ekf.getVelocity().setX(4);
+        ekf.getOmega().setY(5);
+        ekf.getAccel().setZ(6);
+        ekf.setConfidence(EkfState.CONFIDENCE_POOR);
+        ekf.getHeader().setStamp(new Time(2, 500));
+
+        final KinematicsSnapshot k = KinematicsStore.fromEkf(ekf, new KinematicsSnapshot());
+        assertEquals(3, k.getPosition(2), 0);
+        assertEquals(1, k.getOrientation(3), 0);
+        assertEquals(4, k.getLinearVelocity(0), 0);
+        assertEquals(5, k.getAngularVelocity(1), 0);
+        assertEquals(6, k.getLinearAcceleration(2), 0);
+        assertEquals(Kinematics.Confidence.POOR, k.getConfidence());
+        assertEquals(2000000500L, k.getTimestamp());
+    }
+}
@@ -0,0 +1,135 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal;
+
+import gov.nasa.arc.astrobee.ros.LatencyStats;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    @Test
+    public void smallValuesGetABucketEach() {
+        for (int v = 0; v < 16; v++)
+            assertEquals(v, LatencyHistogram.index(v));
+        // From 16 on the sub-buckets are two wide
+        assertEquals(16, LatencyHistogram.index(16));
+        assertEquals(16, LatencyHistogram.index(17));
+        assertEquals(17, LatencyHistogram.index(18));
+        assertEquals(23, LatencyHistogram.index(31));
+        assertEquals(24, LatencyHistogram.index(32));
+    }
+
+    @Test
+    public void indicesAreContiguousAcrossPowersOfTwo() {
+        for (int exponent = 3; exponent < 63; exponent++) {
+            final long edge = 1L << exponent;
+            for (long v = Math.max(0, edge - 3); v < edge + 3; v++) {
+                final int step = LatencyHistogram.index(v + 1) - LatencyHistogram.index(v);
+                assertTrue("step at " + v, step == 0 || step == 1);
+            }
+        }
+    }
+
+    @Test
+    public void largestValueHasABucket() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        final LatencyStats stats = histogram.snapshot();
+        assertEquals(Long.MAX_VALUE, stats.getMax());
+        assertEquals(Long.MAX_VALUE, stats.getPercentile(100));
+    }
+
+    @Test
+    public void bucketsAreWithinAnEighthOfTheValue() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            final long v = (long) Math.exp(random.nextDouble() * Math.log(1e12));
+            final LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(v);
+            // A larger sample so the percentile isn't clamped to the max
+            histogram.record(Long.MAX_VALUE / 2);
+
+            final long bucket = histogram.snapshot().getPercentile(50);
+            assertTrue(v + " in bucket " + bucket, bucket >= v && bucket <= v + v / 8);
+        }
+    }
+
+    @Test
+    public void negativeLatenciesCountAsZero() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        final LatencyStats stats = histogram.snapshot();
+        assertEquals(1, stats.getCount());
+        assertEquals(0, stats.getMin());
+        assertEquals(0, stats.getMax());
+    }
+
+    @Test
+    public void summaryFigures() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i * 1000);
+
+        final LatencyStats stats = histogram.snapshot();
+        assertEquals(100, stats.getCount());
+        assertEquals(1000, stats.getMin());
+        assertEquals(100000, stats.getMax());
+        assertEquals(50500, stats.getMean());
+        final long p0 = stats.getPercentile(0);
+        assertTrue(p0 >= 1000 && p0 <= 1000 + 1000 / 8);
+        assertEquals(100000, stats.getPercentile(100));
+        final long p50 = stats.getPercentile(50);
+        assertTrue(p50 >= 50000 && p50 <= 50000 + 50000 / 8);
+    }
+
+    @Test
+    public void emptySnapshot() {
+        final LatencyStats stats = new LatencyHistogram().snapshot();
+        assertEquals(0, stats.getCount());
+        assertEquals(0, stats.getMin());
+        assertEquals(0, stats.getPercentile(99));
+    }
+
+    @Test
+    public void concurrentRecordsAreAllCounted() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 50000; i++)
+                        histogram.record(offset * 1000 + i % 1000);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads)
+            t.join();
+
+        final LatencyStats stats = histogram.snapshot();
+        assertEquals(200000, stats.getCount());
+        assertEquals(0, stats.getMin());
+        assertEquals(3999, stats.getMax());
+    }
+}
@@ -0,0 +1,120 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class MpscRingTest {
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBeAPowerOfTwo() {
+        new MpscRing<Integer>(6);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBeAtLeastTwo() {
+        new MpscRing<Integer>(1);
+    }
+
+    @Test
+    public void firstInFirstOut() {
+        final MpscRing<Integer> ring = new MpscRing<>(4);
+        assertTrue(ring.isEmpty());
+        assertNull(ring.poll());
+        for (int i = 0; i < 3; i++)
+            assertTrue(ring.offer(i));
+        assertFalse(ring.isEmpty());
+        for (int i = 0; i < 3; i++)
+            assertEquals(Integer.valueOf(i), ring.poll());
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void refusesOffersWhenFull() {
+        final MpscRing<Integer> ring = new MpscRing<>(4);
+        for (int i = 0; i < 4; i++)
+            assertTrue(ring.offer(i));
+        assertFalse(ring.offer(4));
+        assertEquals(Integer.valueOf(0), ring.poll());
+        assertTrue(ring.offer(4));
+        assertFalse(ring.offer(5));
+    }
+
+    @Test
+    public void wrapsAroundManyTimes() {
+        final MpscRing<Integer> ring = new MpscRing<>(2);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(ring.offer(i));
+            assertTrue(ring.offer(-i));
+            assertEquals(Integer.valueOf(i), ring.poll());
+            assertEquals(Integer.valueOf(-i), ring.poll());
+            assertNull(ring.poll());
+        }
+    }
+
+    @Test
+    public void concurrentProducersLoseNothingAndKeepTheirOrder() throws Exception {
+        final int producers = 4;
+        final int perProducer = 100000;
+        final MpscRing<long[]> ring = new MpscRing<>(64);
+        final CountDownLatch go = new CountDownLatch(1);
+
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            final Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (long i = 0; i < perProducer; i++) {
+                        final long[] item = { producer, i };
+                        while (!ring.offer(item))
+                            Thread.yield();
+                    }
+                }
+            });
+            t.setDaemon(true);
+            t.start();
+        }
+        go.countDown();
+
+        final long[] next = new long[producers];
+        long received = 0;
+        final long deadline = System.nanoTime() + 30000000000L;
+        while (received < (long) producers * perProducer) {
+            final long[] item = ring.poll();
+            if (item == null) {
+                assertTrue("timed out", System.nanoTime() < deadline);
+                Thread.yield();
+                continue;
+            }
+            final int producer = (int) item[0];
+            assertEquals(next[producer], item[1]);
+            next[producer]++;
+            received++;
+        }
+        assertNull(ring.poll());
+    }
+}
@@ -0,0 +1,436 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal;
+
+import ff_msgs.AckCompletedStatus;
+import ff_msgs.AckStatus;
+import gov.nasa.arc.astrobee.PendingResult;
+import gov.nasa.arc.astrobee.PendingResults;
+import gov.nasa.arc.astrobee.ros.OutboundQueueStats;
+import gov.nasa.arc.astrobee.ros.QueueOverflowPolicy;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static gov.nasa.arc.astrobee.ros.internal.TestMessages.ack;
+import static gov.nasa.arc.astrobee.ros.internal.TestMessages.command;
+import static org.junit.Assert.*;
+
+public class OutboundQueueTest {
+    private final List<DefaultPendingResult> m_dropped = Collections.synchronizedList(
+            new ArrayList<DefaultPendingResult>());
+    private final List<String> m_reasons = Collections.synchronizedList(new ArrayList<String>());
+    private final List<DefaultPendingResult> m_sent = new ArrayList<>();
+
+    private OutboundQueue queue(final int capacity, final QueueOverflowPolicy policy) {
+        return new OutboundQueue(capacity, policy, new OutboundQueue.DropListener() {
+            @Override
+            public void onDropped(final DefaultPendingResult pr, final String reason) {
+                m_dropped.add(pr);
+                m_reasons.add(reason);
+            }
+        });
+    }
+
+    private final OutboundQueue.Sender m_sender = new OutboundQueue.Sender() {
+        @Override
+        public void send(final DefaultPendingResult pr) {
+            pr.sent();
+            m_sent.add(pr);
+        }
+    };
+
+    private static DefaultPendingResult pending(final String id, final String name) {
+        return new DefaultPendingResult(command(id, name));
+    }
+
+    /**
+     * Whether another thread can take the queue's lock right now.
+     */
+    private static boolean lockIsFree(final OutboundQueue queue) throws InterruptedException {
+        final Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                queue.getStats();
+            }
+        });
+        t.start();
+        t.join(2000);
+        return !t.isAlive();
+    }
+
+    @Test
+    public void holdsCommandsUntilOpenedThenLetsThemThrough() throws Exception {
+        final OutboundQueue queue = queue(8, QueueOverflowPolicy.DROP_OLDEST);
+        final DefaultPendingResult a = pending("a", "noOp");
+        final DefaultPendingResult b = pending("b", "noOp");
+        final DefaultPendingResult stop = pending("s", "stopAllMotion");
+        assertTrue(queue.enqueue(a));
+        assertTrue(queue.enqueue(b));
+        assertTrue(queue.enqueue(stop));
+        assertEquals(PendingResult.Status.QUEUED, a.getStatus());
+
+        queue.open(m_sender);
+        assertTrue(queue.isOpen());
+        // Safety commands first, then the rest in order
+        assertEquals(Arrays.asList(stop, a, b), m_sent);
+        assertTrue(a.isSent());
+        assertFalse(queue.enqueue(pending("c", "noOp")));
+        assertEquals(0, queue.getStats().getDepth());
+    }
+
+    @Test
+    public void dropOldestFailsTheOldest() throws Exception {
+        final OutboundQueue queue = queue(2, QueueOverflowPolicy.DROP_OLDEST);
+        final DefaultPendingResult a = pending("a", "noOp");
+        final DefaultPendingResult b = pending("b", "noOp");
+        final DefaultPendingResult c = pending("c", "noOp");
+        queue.enqueue(a);
+        queue.enqueue(b);
+        queue.enqueue(c);
+
+        assertEquals(Collections.singletonList(a), m_dropped);
+        final OutboundQueueStats stats = queue.getStats();
+        assertEquals(2, stats.getDepth());
+        assertEquals(2, stats.getPeakDepth());
+        assertEquals(1, stats.getDropped());
+        queue.open(m_sender);
+        assertEquals(Arrays.asList(b, c), m_sent);
+    }
+
+    @Test
+    public void safetyCommandsAreNeverDropped() throws Exception {
+        final OutboundQueue queue = queue(1, QueueOverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 5; i++)
+            queue.enqueue(pending("s" + i, "stopAllMotion"));
+        assertTrue(m_dropped.isEmpty());
+        assertEquals(5, queue.getStats().getPriorityDepth());
+    }
+
+    @Test
+    public void coalesceReplacesTheSameCommand() throws Exception {
+        final OutboundQueue queue = queue(2, QueueOverflowPolicy.COALESCE);
+        final DefaultPendingResult move1 = pending("m1", "simpleMove6DOF");
+        final DefaultPendingResult dock = pending("d", "dock");
+        final DefaultPendingResult move2 = pending("m2", "simpleMove6DOF");
+        queue.enqueue(move1);
+        queue.enqueue(dock);
+        queue.enqueue(move2);
+        assertEquals(Collections.singletonList(move1), m_dropped);
+        assertEquals(1, queue.getStats().getCoalesced());
+
+        // Nothing of that name queued and full: the oldest goes
+        final DefaultPendingResult noOp = pending("n", "noOp");
+        queue.enqueue(noOp);
+        assertEquals(Arrays.asList(move1, dock), m_dropped);
+
+        queue.open(m_sender);
+        assertEquals(Arrays.asList(move2, noOp), m_sent);
+    }
+
+    @Test
+    public void blockWaitsForRoom() throws Exception {
+        final OutboundQueue queue = queue(1, QueueOverflowPolicy.BLOCK);
+        final DefaultPendingResult a = pending("a", "noOp");
+        queue.enqueue(a);
+
+        final AtomicReference<Boolean> held = new AtomicReference<>();
+        final Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    held.set(queue.enqueue(pending("b", "noOp")));
+                } catch (InterruptedException e) {
+                    // held stays null
+                }
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        queue.remove(a);
+        producer.join(2000);
+        assertFalse(producer.isAlive());
+        assertEquals(Boolean.TRUE, held.get());
+        assertTrue(m_dropped.isEmpty());
+    }
+
+    @Test
+    public void blockedProducersSendThemselvesOnceOpen() throws Exception {
+        final OutboundQueue queue = queue(1, QueueOverflowPolicy.BLOCK);
+        queue.enqueue(pending("a", "noOp"));
+
+        final AtomicReference<Boolean> held = new AtomicReference<>();
+        final Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    held.set(queue.enqueue(pending("b", "noOp")));
+                } catch (InterruptedException e) {
+                    // held stays null
+                }
+            }
+        });
+        producer.start();
+        producer.join(200);
+
+        queue.open(m_sender);
+        producer.join(2000);
+        assertFalse(producer.isAlive());
+        // Either queued in time for the drain and sent by it, or told to send
+        // itself once open
+        if (held.get())
+            assertEquals(2, m_sent.size());
+        else
+            assertEquals(1, m_sent.size());
+    }
+
+    @Test
+    public void closeReleasesBlockedProducers() throws Exception {
+        final OutboundQueue queue = queue(1, QueueOverflowPolicy.BLOCK);
+        queue.enqueue(pending("a", "noOp"));
+
+        final DefaultPendingResult b = pending("b", "noOp");
+        final Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queue.enqueue(b);
+                } catch (InterruptedException e) {
+                    // Not expected, the assertions below catch it
+                }
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        queue.close();
+        producer.join(2000);
+        assertFalse(producer.isAlive());
+        assertEquals(Collections.singletonList(b), m_dropped);
+    }
+
+    @Test
+    public void awaitRoomWaitsWithoutQueueing() throws Exception {
+        final OutboundQueue queue = queue(1, QueueOverflowPolicy.BLOCK);
+        final DefaultPendingResult a = pending("a", "noOp");
+        queue.enqueue(a);
+
+        final Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queue.awaitRoom(pending("b", "noOp"));
+                } catch (InterruptedException e) {
+                    // Not expected, the assertions below catch it
+                }
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        queue.remove(a);
+        producer.join(2000);
+        assertFalse(producer.isAlive());
+        assertEquals(0, queue.getStats().getDepth());
+    }
+
+    @Test
+    public void safetyCommandsNeverWaitForRoom() throws Exception {
+        final OutboundQueue queue = queue(1, QueueOverflowPolicy.BLOCK);
+        queue.enqueue(pending("a", "noOp"));
+
+        // Would block forever if it waited
+        queue.awaitRoom(pending("s", "stopAllMotion"));
+        assertTrue(queue.enqueue(pending("s", "stopAllMotion"), true));
+        assertEquals(1, queue.getStats().getPriorityDepth());
+    }
+
+    @Test
+    public void nonBlockingEnqueueGoesOverCapacityUnderBlock() throws Exception {
+        final OutboundQueue queue = queue(1, QueueOverflowPolicy.BLOCK);
+        queue.enqueue(pending("a", "noOp"));
+
+        // The publisher thread's caller already waited, so it must not
+        // wait again and hold up what is behind it.
+        assertTrue(queue.enqueue(pending("b", "noOp"), false));
+        assertEquals(2, queue.getStats().getDepth());
+        assertTrue(m_dropped.isEmpty());
+    }
+
+    @Test
+    public void nonBlockingEnqueueStillAppliesDropPolicies() throws Exception {
+        final OutboundQueue queue = queue(1, QueueOverflowPolicy.DROP_OLDEST);
+        final DefaultPendingResult a = pending("a", "noOp");
+        queue.enqueue(a);
+        queue.awaitRoom(pending("b", "noOp"));
+        assertTrue(queue.enqueue(pending("b", "noOp"), false));
+        assertEquals(Collections.singletonList(a), m_dropped);
+    }
+
+    @Test
+    public void unacknowledgedCommandsGoBackAheadOfNewOnes() throws Exception {
+        final OutboundQueue queue = queue(8, QueueOverflowPolicy.DROP_OLDEST);
+        assertFalse(queue.suspend(Collections.<DefaultPendingResult>emptyList()));
+        queue.open(m_sender);
+
+        final DefaultPendingResult a = pending("a", "noOp");
+        final DefaultPendingResult b = pending("b", "noOp");
+        final DefaultPendingResult c = pending("c", "noOp");
+        a.sent();
+        b.sent();
+        c.sent();
+        b.update(ack("b", AckStatus.EXECUTING, AckCompletedStatus.NOT));
+
+        assertTrue(queue.suspend(Arrays.asList(a, b, c)));
+        assertFalse(queue.isOpen());
+        assertFalse(a.isSent());
+        assertEquals(PendingResult.Status.QUEUED, a.getStatus());
+        assertEquals(PendingResult.Status.EXECUTING, b.getStatus());
+
+        final DefaultPendingResult d = pending("d", "noOp");
+        queue.enqueue(d);
+        final OutboundQueueStats stats = queue.getStats();
+        assertEquals(3, stats.getDepth());
+        assertEquals(2, stats.getRequeued());
+
+        m_sent.clear();
+        queue.open(m_sender);
+        assertEquals(Arrays.asList(a, c, d), m_sent);
+    }
+
+    @Test
+    public void requeueRespectsTheCapacity() throws Exception {
+        final OutboundQueue queue = queue(2, QueueOverflowPolicy.DROP_OLDEST);
+        queue.open(m_sender);
+        final List<DefaultPendingResult> unacked = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final DefaultPendingResult pr = pending("p" + i, "noOp");
+            pr.sent();
+            unacked.add(pr);
+        }
+        queue.suspend(unacked);
+
+        assertEquals(unacked.subList(0, 2), m_dropped);
+        assertEquals(2, queue.getStats().getDepth());
+        assertEquals(2, queue.getStats().getDropped());
+    }
+
+    @Test
+    public void requeueUnderBlockKeepsEverything() throws Exception {
+        final OutboundQueue queue = queue(2, QueueOverflowPolicy.BLOCK);
+        queue.open(m_sender);
+        final List<DefaultPendingResult> unacked = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final DefaultPendingResult pr = pending("p" + i, "noOp");
+            pr.sent();
+            unacked.add(pr);
+        }
+        queue.suspend(unacked);
+        assertTrue(m_dropped.isEmpty());
+        assertEquals(4, queue.getStats().getDepth());
+    }
+
+    @Test
+    public void requeueCoalescesOlderDuplicates() throws Exception {
+        final OutboundQueue queue = queue(8, QueueOverflowPolicy.COALESCE);
+        queue.open(m_sender);
+        final DefaultPendingResult move1 = pending("m1", "simpleMove6DOF");
+        final DefaultPendingResult move2 = pending("m2", "simpleMove6DOF");
+        move1.sent();
+        move2.sent();
+        queue.suspend(Arrays.asList(move1, move2));
+
+        assertEquals(Collections.singletonList(move1), m_dropped);
+        m_sent.clear();
+        queue.open(m_sender);
+        assertEquals(Collections.singletonList(move2), m_sent);
+    }
+
+    @Test
+    public void backlogIsSentWithoutTheLock() throws Exception {
+        final OutboundQueue queue = queue(8, QueueOverflowPolicy.DROP_OLDEST);
+        queue.enqueue(pending("a", "noOp"));
+        final AtomicBoolean free = new AtomicBoolean();
+        queue.open(new OutboundQueue.Sender() {
+            @Override
+            public void send(final DefaultPendingResult pr) {
+                try {
+                    free.set(lockIsFree(queue));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(free.get());
+    }
+
+    @Test
+    public void commandsPublishedDuringTheBacklogStayBehindIt() throws Exception {
+        final OutboundQueue queue = queue(8, QueueOverflowPolicy.DROP_OLDEST);
+        final DefaultPendingResult a = pending("a", "noOp");
+        final DefaultPendingResult b = pending("b", "noOp");
+        final DefaultPendingResult late = pending("late", "noOp");
+        queue.enqueue(a);
+        queue.enqueue(b);
+        queue.open(new OutboundQueue.Sender() {
+            @Override
+            public void send(final DefaultPendingResult pr) {
+                m_sent.add(pr);
+                if (pr == a) {
+                    try {
+                        // Not open yet, so it has to wait its turn
+                        assertTrue(queue.enqueue(late));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+        assertEquals(Arrays.asList(a, b, late), m_sent);
+        assertTrue(queue.isOpen());
+    }
+
+    @Test
+    public void statusListenersRunWithoutTheLock() throws Exception {
+        final OutboundQueue queue = queue(8, QueueOverflowPolicy.DROP_OLDEST);
+        final DefaultPendingResult a = pending("a", "noOp");
+        final AtomicReference<Boolean> free = new AtomicReference<>();
+        a.addStatusListener(new PendingResult.StatusListener() {
+            @Override
+            public void onStatusChanged(final PendingResult pending, final PendingResult.Status status) {
+                try {
+                    free.set(lockIsFree(queue));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, PendingResults.directExecutor());
+        queue.enqueue(a);
+        assertEquals(Boolean.TRUE, free.get());
+    }
+}
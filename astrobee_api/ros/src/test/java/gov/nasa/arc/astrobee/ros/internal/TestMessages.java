@@ -0,0 +1,81 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal;
+
+import ff_msgs.AckCompletedStatus;
+import ff_msgs.AckStamped;
+import ff_msgs.AckStatus;
+import ff_msgs.CommandStamped;
+import gov.nasa.arc.astrobee.AstrobeeException;
+import org.ros.message.MessageFactory;
+import org.ros.node.NodeConfiguration;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Builds the commands and acks tests feed through the API, without a node.
+ */
+public final class TestMessages {
+    private TestMessages() { }
+
+    private static final MessageFactory s_factory =
+            NodeConfiguration.newPrivate().getTopicMessageFactory();
+
+    public static MessageFactory factory() {
+        return s_factory;
+    }
+
+    public static CommandStamped command(final String id, final String name) {
+        final CommandStamped cmd = s_factory.newFromType(CommandStamped._TYPE);
+        cmd.setCmdId(id);
+        cmd.setCmdName(name);
+        return cmd;
+    }
+
+    public static AckStamped ack(final String id, final byte status, final byte completedStatus) {
+        final AckStamped ack = s_factory.newFromType(AckStamped._TYPE);
+        ack.setCmdId(id);
+        final AckStatus s = s_factory.newFromType(AckStatus._TYPE);
+        s.setStatus(status);
+        ack.setStatus(s);
+        final AckCompletedStatus cs = s_factory.newFromType(AckCompletedStatus._TYPE);
+        cs.setStatus(completedStatus);
+        ack.setCompletedStatus(cs);
+        return ack;
+    }
+
+    static DefaultPendingResult pending(final String id) {
+        return new DefaultPendingResult(command(id, "noOp"));
+    }
+
+    /**
+     * What a pending result failed with, or null if it hasn't failed.
+     */
+    static Throwable failure(final DefaultPendingResult pr) throws InterruptedException {
+        try {
+            pr.getResult(0, TimeUnit.MILLISECONDS);
+            return null;
+        } catch (AstrobeeException e) {
+            return e.getCause() != null ? e.getCause() : e;
+        } catch (TimeoutException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.ros.internal.journal;
+
+import ff_msgs.AckCompletedStatus;
+import ff_msgs.AckStamped;
+import ff_msgs.AckStatus;
+import ff_msgs.CommandArg;
+import ff_msgs.CommandStamped;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.message.MessageFactory;
+import org.ros.message.Time;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static gov.nasa.arc.astrobee.ros.internal.TestMessages.ack;
+import static gov.nasa.arc.astrobee.ros.internal.TestMessages.command;
+import static gov.nasa.arc.astrobee.ros.internal.TestMessages.factory;
+import static org.junit.Assert.*;
+
+public class CommandJournalTest {
+    private File m_dir;
+
+    @Before
+    public void setUp() throws IOException {
+        m_dir = File.createTempFile("journal", "");
+        assertTrue(m_dir.delete());
+        assertTrue(m_dir.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = m_dir.listFiles();
+        if (files != null) {
+            for (File f : files)
+                f.delete();
+        }
+        m_dir.delete();
+    }
+
+    private static CommandStamped commandWithArgs(final String id) {
+        final MessageFactory factory = factory();
+        final CommandStamped cmd = command(id, "simpleMove6DOF");
+        cmd.setSubsysName("mobility");
+        cmd.setCmdSrc("test");
+        cmd.setCmdOrigin("guest_science");
+        cmd.getHeader().setStamp(new Time(12, 34));
+
+        final List<CommandArg> args = new ArrayList<>();
+        final byte[] types = {
+                CommandArg.DATA_TYPE_BOOL, CommandArg.DATA_TYPE_DOUBLE, CommandArg.DATA_TYPE_FLOAT,
+                CommandArg.DATA_TYPE_INT, CommandArg.DATA_TYPE_LONGLONG, CommandArg.DATA_TYPE_STRING,
+                CommandArg.DATA_TYPE_VEC3d, CommandArg.DATA_TYPE_MAT33f
+        };
+        for (byte type : types) {
+            final CommandArg arg = factory.newFromType(CommandArg._TYPE);
+            arg.setDataType(type);
+            args.add(arg);
+        }
+        args.get(0).setB(true);
+        args.get(1).setD(1.5);
+        args.get(2).setF(2.5f);
+        args.get(3).setI(-3);
+        args.get(4).setLl(1L << 40);
+        args.get(5).setS("world \u00e9");
+        args.get(6).setVec3d(new double[] { 1, 2, 3 });
+        args.get(7).setMat33f(new float[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+        cmd.setArgs(args);
+        return cmd;
+    }
+
+    private static AckStamped completedAck(final String id) {
+        final AckStamped ack = ack(id, AckStatus.COMPLETED, AckCompletedStatus.EXEC_FAILED);
+        ack.setMessage("nope");
+        ack.getHeader().setStamp(new Time(56, 78));
+        return ack;
+    }
+
+    private static List<JournalRecord> readAll(final File path) throws IOException {
+        final List<JournalRecord> records = new ArrayList<>();
+        final JournalReader reader = new JournalReader(path);
+        try {
+            JournalRecord record;
+            while ((record = reader.next()) != null)
+                records.add(record);
+        } finally {
+            reader.close();
+        }
+        return records;
+    }
+
+    @Test
+    public void commandsAndAcksRoundTrip() throws Exception {
+        final long before = CommandJournal.now();
+        final CommandJournal journal = new CommandJournal(m_dir, 64 * 1024, 16);
+        journal.command(commandWithArgs("a"));
+        journal.ack(completedAck("a"));
+        journal.close();
+        assertEquals(0, journal.getDropped());
+
+        final List<JournalRecord> records = readAll(m_dir);
+        assertEquals(2, records.size());
+
+        final JournalRecord cmd = records.get(0);
+        assertTrue(cmd.isCommand());
+        assertEquals("a", cmd.getCmdId());
+        assertEquals("simpleMove6DOF", cmd.getCmdName());
+        assertEquals("mobility", cmd.getSubsystem());
+        assertEquals("test", cmd.getSource());
+        assertEquals("guest_science", cmd.getOrigin());
+        assertEquals(12000000034L, cmd.getStamp());
+        assertTrue(cmd.getTimestamp() >= before);
+
+        final List<Object> args = cmd.getArgs();
+        assertEquals(8, args.size());
+        assertEquals(Boolean.TRUE, args.get(0));
+        assertEquals(1.5, args.get(1));
+        assertEquals(2.5f, args.get(2));
+        assertEquals(-3, args.get(3));
+        assertEquals(1L << 40, args.get(4));
+        assertEquals("world \u00e9", args.get(5));
+        assertTrue(Arrays.equals(new double[] { 1, 2, 3 }, (double[]) args.get(6)));
+        assertTrue(Arrays.equals(new float[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 }, (float[]) args.get(7)));
+
+        final JournalRecord ack = records.get(1);
+        assertTrue(ack.isAck());
+        assertEquals("a", ack.getCmdId());
+        assertEquals(AckStatus.COMPLETED, ack.getStatus());
+        assertEquals(AckCompletedStatus.EXEC_FAILED, ack.getCompletedStatus());
+        assertEquals("nope", ack.getMessage());
+        assertEquals(56000000078L, ack.getStamp());
+        assertTrue(ack.getTimestamp() >= cmd.getTimestamp());
+    }
+
+    @Test
+    public void nullStringsStayNull() throws Exception {
+        final CommandJournal journal = new CommandJournal(m_dir, 4096, 16);
+        final CommandStamped cmd = command("a", "noOp");
+        cmd.setSubsysName(null);
+        cmd.setCmdSrc(null);
+        cmd.getHeader().setStamp(new Time(1, 0));
+        journal.command(cmd);
+        journal.close();
+
+        final JournalRecord record = readAll(m_dir).get(0);
+        assertNull(record.getSubsystem());
+        assertNull(record.getSource());
+        assertTrue(record.getArgs().isEmpty());
+    }
+
+    @Test
+    public void fullSegmentsRollOverInOrder() throws Exception {
+        final CommandJournal journal = new CommandJournal(m_dir, 4096, 1024);
+        for (int i = 0; i < 100; i++)
+            journal.command(commandWithArgs("cmd-" + i));
+        journal.close();
+        assertEquals(0, journal.getDropped());
+
+        final File[] segments = m_dir.listFiles();
+        assertNotNull(segments);
+        assertTrue(segments.length > 1);
+        for (File segment : segments)
+            assertEquals(4096, segment.length());
+
+        final List<JournalRecord> records = readAll(m_dir);
+        assertEquals(100, records.size());
+        for (int i = 0; i < 100; i++)
+            assertEquals("cmd-" + i, records.get(i).getCmdId());
+    }
+
+    @Test
+    public void nothingIsRecordedAfterClose() throws Exception {
+        final CommandJournal journal = new CommandJournal(m_dir, 4096, 16);
+        journal.command(commandWithArgs("a"));
+        journal.close();
+        journal.command(commandWithArgs("b"));
+        journal.close();
+        assertEquals(1, readAll(m_dir).size());
+    }
+
+    @Test(expected = IOException.class)
+    public void otherFilesAreRefused() throws Exception {
+        final File file = new File(m_dir, "bogus" + CommandJournal.SUFFIX);
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[64]);
+        } finally {
+            out.close();
+        }
+        readAll(file);
+    }
+
+    @Test
+    public void replayRestoresArguments() throws Exception {
+        final CommandJournal journal = new CommandJournal(m_dir, 4096, 16);
+        final CommandStamped original = commandWithArgs("a");
+        journal.command(original);
+        journal.close();
+
+        final CommandStamped cmd = JournalReplay.toCommand(readAll(m_dir).get(0), factory());
+        assertEquals("a", cmd.getCmdId());
+        assertEquals("simpleMove6DOF", cmd.getCmdName());
+        assertEquals(12000000034L, cmd.getHeader().getStamp().totalNsecs());
+
+        final List<CommandArg> args = cmd.getArgs();
+        assertEquals(original.getArgs().size(), args.size());
+        for (int i = 0; i < args.size(); i++)
+            assertEquals(original.getArgs().get(i).getDataType(), args.get(i).getDataType());
+        assertTrue(args.get(0).getB());
+        assertEquals(1.5, args.get(1).getD(), 0);
+        assertEquals(2.5f, args.get(2).getF(), 0);
+        assertEquals(-3, args.get(3).getI());
+        assertEquals(1L << 40, args.get(4).getLl());
+        assertEquals("world \u00e9", args.get(5).getS());
+        assertTrue(Arrays.equals(new double[] { 1, 2, 3 }, args.get(6).getVec3d()));
+        assertTrue(Arrays.equals(new float[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 }, args.get(7).getMat33f()));
+    }
+}
@@ -0,0 +1,55 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.android.gs.manager;
+
+/**
+ * How urgently guest science data should go to the ground. Apks send it as
+ * the "priority" int in a data message; messages without it are NORMAL.
+ *
+ * Keep in step with gov.nasa.arc.astrobee.android.gs.DataPriority in the
+ * guest science library.
+ */
+enum DownlinkPriority {
+    // Status the ground must see, sent ahead of everything and never
+    // held back by a budget
+    CRITICAL(0),
+    // Ordinary telemetry
+    NORMAL(1),
+    // Bulk transfers, such as large data sent in chunks
+    BULK(2);
+
+    private final int mValue;
+
+    DownlinkPriority(final int value) {
+        mValue = value;
+    }
+
+    public int toInt() {
+        return mValue;
+    }
+
+    static DownlinkPriority fromInt(int value) {
+        for (DownlinkPriority priority : values()) {
+            if (priority.mValue == value) {
+                return priority;
+            }
+        }
+        return NORMAL;
+    }
+}
@@ -0,0 +1,485 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.android.gs.manager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import ff_msgs.GuestScienceData;
+
+/**
+ * Decides when guest science data goes to the ground. Messages wait in
+ * per-apk queues, one per priority class. Higher classes always go first,
+ * and within a class the apks take turns. Sending costs tokens from both a
+ * global bucket, for the whole link, and the apk's own bucket, so one apk
+ * bursting can only use its share. CRITICAL messages go regardless of the
+ * buckets, but are still charged, so they hold back the rest instead of
+ * being held back by it. Messages that wait longer than their class's age
+ * limit are dropped, as the ground would rather have fresh samples.
+ *
+ * Nothing runs while nothing is waiting. A drain is scheduled when a
+ * message comes in, and again for when the buckets will have refilled
+ * enough for the next waiting message.
+ */
+final class DownlinkScheduler {
+    interface Sink {
+        void publish(GuestScienceData msg);
+    }
+
+    // The default budget, for all apks together and for each one
+    static final long DEFAULT_RATE = 128 * 1024;
+    static final long DEFAULT_BURST = 32 * 1024;
+
+    // The soonest a drain is scheduled again after one that left messages
+    // waiting, so rounding in the buckets can't have it run back to back
+    private static final long MIN_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * What one apk had sent, lost and waiting when it was looked at.
+     */
+    static final class ApkBudget {
+        private final long mBytesSent;
+        private final long mMessagesSent;
+        private final long mDroppedStale;
+        private final long mDroppedOverflow;
+        private final long mQueuedBytes;
+
+        private ApkBudget(ApkQueue apk) {
+            mBytesSent = apk.bytesSent;
+            mMessagesSent = apk.messagesSent;
+            mDroppedStale = apk.droppedStale;
+            mDroppedOverflow = apk.droppedOverflow;
+            mQueuedBytes = apk.queuedBytes;
+        }
+
+        long getBytesSent() {
+            return mBytesSent;
+        }
+
+        long getMessagesSent() {
+            return mMessagesSent;
+        }
+
+        long getDroppedStale() {
+            return mDroppedStale;
+        }
+
+        long getDroppedOverflow() {
+            return mDroppedOverflow;
+        }
+
+        long getQueuedBytes() {
+            return mQueuedBytes;
+        }
+    }
+
+    private static final class TokenBucket {
+        long mRate;
+        long mBurst;
+        double mTokens;
+        long mLastRefill;
+
+        TokenBucket(long rate, long burst, long now) {
+            mRate = rate;
+            mBurst = burst;
+            mTokens = burst;
+            mLastRefill = now;
+        }
+
+        void refill(long now) {
+            mTokens = Math.min(mBurst, mTokens + (now - mLastRefill) * mRate / 1e9);
+            mLastRefill = now;
+        }
+
+        // How long until there are enough tokens to send this many bytes
+        long nanosUntil(int bytes) {
+            if (mTokens >= bytes) {
+                return 0;
+            }
+            return (long) Math.ceil((bytes - mTokens) * 1e9 / mRate);
+        }
+
+        // May go into debt, down to one burst, so what was sent anyway is
+        // paid back before anything else goes
+        void charge(int bytes) {
+            mTokens = Math.max(-mBurst, mTokens - bytes);
+        }
+    }
+
+    private static final class Item {
+        final GuestScienceData msg;
+        final int size;
+        final long queuedAt;
+
+        Item(GuestScienceData msg, int size, long queuedAt) {
+            this.msg = msg;
+            this.size = size;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    private static final class ApkQueue {
+        final String apkName;
+        final TokenBucket bucket;
+        // What it sent and lost, in total and since the last report. Guarded
+        // by the scheduler, like the queues
+        long bytesSent = 0;
+        long messagesSent = 0;
+        long droppedStale = 0;
+        long droppedOverflow = 0;
+        long queuedBytes = 0;
+        long windowBytes = 0;
+        @SuppressWarnings("unchecked")
+        final ArrayDeque<Item>[] queues = new ArrayDeque[DownlinkPriority.values().length];
+
+        ApkQueue(String apkName, TokenBucket bucket) {
+            this.apkName = apkName;
+            this.bucket = bucket;
+            for (int i = 0; i < queues.length; i++) {
+                queues[i] = new ArrayDeque<>();
+            }
+        }
+    }
+
+    private final Sink mSink;
+    private final ScheduledThreadPoolExecutor mExecutor;
+
+    // Everything below is guarded by this
+    private final Map<String, ApkQueue> mApks = new LinkedHashMap<>();
+    private final List<ApkQueue> mOrder = new ArrayList<>();
+    private int mNext = 0;
+    private final TokenBucket mGlobal;
+    private long mApkRate = DEFAULT_RATE;
+    private long mApkBurst = DEFAULT_BURST;
+    private long mMaxQueuedBytesPerApk = 256 * 1024;
+    private final long[] mMaxAgeNanos = {
+            Long.MAX_VALUE,
+            TimeUnit.SECONDS.toNanos(10),
+            TimeUnit.SECONDS.toNanos(60)
+    };
+    private long mWindowStart;
+    // The next drain, and when it is due, or null if none is scheduled
+    private ScheduledFuture<?> mPendingDrain = null;
+    private long mPendingDrainAt = 0;
+
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    DownlinkScheduler(final Sink sink) {
+        mSink = sink;
+        final long now = System.nanoTime();
+        mGlobal = new TokenBucket(DEFAULT_RATE, DEFAULT_BURST, now);
+        mWindowStart = now;
+        mExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, "Guest Science Downlink");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        // A drain put off for a refill is dropped, not waited for, when the
+        // scheduler shuts down
+        mExecutor.setRemoveOnCancelPolicy(true);
+        mExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * The budget for all apks together. 128KiB/s, with bursts of 32KiB, by
+     * default.
+     */
+    void setGlobalRate(long bytesPerSecond, long burstBytes) {
+        checkRate(bytesPerSecond, burstBytes);
+        synchronized (this) {
+            mGlobal.refill(System.nanoTime());
+            mGlobal.mRate = bytesPerSecond;
+            mGlobal.mBurst = burstBytes;
+        }
+        requestDrain(0);
+    }
+
+    /**
+     * The budget for each apk. The same as the global budget by default, so
+     * an apk on its own can use the whole link; lower it to keep one apk from
+     * holding up the others' NORMAL and BULK data.
+     */
+    void setApkRate(long bytesPerSecond, long burstBytes) {
+        checkRate(bytesPerSecond, burstBytes);
+        synchronized (this) {
+            final long now = System.nanoTime();
+            mApkRate = bytesPerSecond;
+            mApkBurst = burstBytes;
+            for (ApkQueue apk : mOrder) {
+                apk.bucket.refill(now);
+                apk.bucket.mRate = bytesPerSecond;
+                apk.bucket.mBurst = burstBytes;
+            }
+        }
+        requestDrain(0);
+    }
+
+    private static void checkRate(long bytesPerSecond, long burstBytes) {
+        // A burst has to hold at least one full message
+        if (bytesPerSecond < 1 || burstBytes < 2048 + 32)
+            throw new IllegalArgumentException("Rate must be positive and burst at least 2080 bytes");
+    }
+
+    /**
+     * How long messages of a class may wait before they are dropped.
+     */
+    synchronized void setMaxAge(DownlinkPriority priority, long maxAge, TimeUnit unit) {
+        if (maxAge <= 0) {
+            throw new IllegalArgumentException("Max age must be positive");
+        }
+        mMaxAgeNanos[priority.ordinal()] = unit.toNanos(maxAge);
+    }
+
+    /**
+     * How much an apk may have waiting. 256KiB by default.
+     */
+    synchronized void setMaxQueuedBytesPerApk(long bytes) {
+        mMaxQueuedBytesPerApk = bytes;
+    }
+
+    /**
+     * Queue a message for the ground.
+     *
+     * @param size What the message costs against the budgets.
+     */
+    void submit(String apkName, DownlinkPriority priority, GuestScienceData msg, int size) {
+        synchronized (this) {
+            final ApkQueue apk = apkQueue(apkName);
+            if (!makeRoom(apk, priority, size)) {
+                apk.droppedOverflow++;
+                return;
+            }
+            apk.queues[priority.ordinal()].add(new Item(msg, size, System.nanoTime()));
+            apk.queuedBytes += size;
+        }
+        // Anything the buckets allow goes now
+        requestDrain(0);
+    }
+
+    // Have a drain run in delayNanos, unless one is already due by then
+    private synchronized void requestDrain(long delayNanos) {
+        final long at = System.nanoTime() + delayNanos;
+        if (mPendingDrain != null) {
+            if (mPendingDrainAt - at <= 0) {
+                return;
+            }
+            mPendingDrain.cancel(false);
+        }
+        try {
+            mPendingDrain = mExecutor.schedule(mDrain, delayNanos, TimeUnit.NANOSECONDS);
+            mPendingDrainAt = at;
+        } catch (RejectedExecutionException e) {
+            // Shut down
+            mPendingDrain = null;
+        }
+    }
+
+    private ApkQueue apkQueue(String apkName) {
+        ApkQueue apk = mApks.get(apkName);
+        if (apk == null) {
+            apk = new ApkQueue(apkName, new TokenBucket(mApkRate, mApkBurst, System.nanoTime()));
+            mApks.put(apkName, apk);
+            mOrder.add(apk);
+        }
+        return apk;
+    }
+
+    // Drop the apk's oldest, least urgent messages, no more urgent than the
+    // new one, until it fits
+    private boolean makeRoom(ApkQueue apk, DownlinkPriority priority, int size) {
+        int p = apk.queues.length - 1;
+        while (apk.queuedBytes + size > mMaxQueuedBytesPerApk) {
+            while (p >= priority.ordinal() && apk.queues[p].isEmpty()) {
+                p--;
+            }
+            if (p < priority.ordinal()) {
+                return false;
+            }
+            final Item dropped = apk.queues[p].poll();
+            apk.queuedBytes -= dropped.size;
+            apk.droppedOverflow++;
+        }
+        return true;
+    }
+
+    private void drain() {
+        final List<GuestScienceData> out = new ArrayList<>();
+        final long wait;
+        synchronized (this) {
+            final long now = System.nanoTime();
+            // Drains run in the order they are due, so this is the pending
+            // one unless that was put back, and then it's still to come
+            if (mPendingDrain != null && mPendingDrainAt - now <= 0) {
+                mPendingDrain = null;
+            }
+            mGlobal.refill(now);
+            for (ApkQueue apk : mOrder) {
+                apk.bucket.refill(now);
+            }
+
+            boolean globalEmpty = false;
+            for (DownlinkPriority priority : DownlinkPriority.values()) {
+                final boolean critical = priority == DownlinkPriority.CRITICAL;
+                if (globalEmpty && !critical) {
+                    break;
+                }
+                // Take turns, one message per apk per round
+                boolean progress = true;
+                while (progress) {
+                    progress = false;
+                    final int count = mOrder.size();
+                    for (int i = 0; i < count; i++) {
+                        final ApkQueue apk = mOrder.get((mNext + i) % count);
+                        final Item item = nextFresh(apk, priority, now);
+                        if (item == null) {
+                            continue;
+                        }
+                        if (!critical) {
+                            if (mGlobal.mTokens < item.size) {
+                                globalEmpty = true;
+                                break;
+                            }
+                            if (apk.bucket.mTokens < item.size) {
+                                continue;
+                            }
+                        }
+                        apk.queues[priority.ordinal()].poll();
+                        mGlobal.charge(item.size);
+                        apk.bucket.charge(item.size);
+                        apk.queuedBytes -= item.size;
+                        apk.bytesSent += item.size;
+                        apk.windowBytes += item.size;
+                        apk.messagesSent++;
+                        out.add(item.msg);
+                        progress = true;
+                    }
+                    if (globalEmpty && !critical) {
+                        break;
+                    }
+                }
+            }
+            if (!mOrder.isEmpty()) {
+                mNext = (mNext + 1) % mOrder.size();
+            }
+            wait = nanosUntilNext();
+        }
+        for (GuestScienceData msg : out) {
+            mSink.publish(msg);
+        }
+        if (wait >= 0) {
+            requestDrain(Math.max(MIN_WAIT_NANOS, wait));
+        }
+    }
+
+    // How long until the buckets allow some waiting message to go, or -1 if
+    // none is waiting
+    private long nanosUntilNext() {
+        long wait = -1;
+        for (ApkQueue apk : mOrder) {
+            for (ArrayDeque<Item> queue : apk.queues) {
+                final Item item = queue.peek();
+                if (item == null) {
+                    continue;
+                }
+                final long itemWait = Math.max(mGlobal.nanosUntil(item.size),
+                                               apk.bucket.nanosUntil(item.size));
+                if (wait < 0 || itemWait < wait) {
+                    wait = itemWait;
+                }
+            }
+        }
+        return wait;
+    }
+
+    // The oldest message of a class that isn't too old, dropping any that are
+    private Item nextFresh(ApkQueue apk, DownlinkPriority priority, long now) {
+        final ArrayDeque<Item> queue = apk.queues[priority.ordinal()];
+        final long maxAge = mMaxAgeNanos[priority.ordinal()];
+        Item item;
+        while ((item = queue.peek()) != null && now - item.queuedAt > maxAge) {
+            queue.poll();
+            apk.queuedBytes -= item.size;
+            apk.droppedStale++;
+        }
+        return item;
+    }
+
+    /**
+     * A snapshot of each apk's budget, which doesn't change after.
+     */
+    synchronized Map<String, ApkBudget> getBudgets() {
+        final Map<String, ApkBudget> budgets = new LinkedHashMap<>();
+        for (ApkQueue apk : mOrder) {
+            budgets.put(apk.apkName, new ApkBudget(apk));
+        }
+        return budgets;
+    }
+
+    /**
+     * Summarize, as JSON, how much of its budget each apk used since the
+     * last report, and what it has sent and lost in all.
+     */
+    synchronized String budgetReport() {
+        final long now = System.nanoTime();
+        final double seconds = Math.max(1e-3, (now - mWindowStart) / 1e9);
+        mWindowStart = now;
+
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "{\"window_s\": %.1f, \"apks\": {", seconds));
+        boolean first = true;
+        for (ApkQueue apk : mOrder) {
+            if (!first) {
+                sb.append(", ");
+            }
+            first = false;
+            sb.append(String.format(Locale.US,
+                    "\"%s\": {\"budget_used\": %.3f, \"sent_bytes\": %d, \"sent_messages\": %d, "
+                            + "\"dropped_stale\": %d, \"dropped_overflow\": %d, \"queued_bytes\": %d}",
+                    apk.apkName, apk.windowBytes / (mApkRate * seconds), apk.bytesSent,
+                    apk.messagesSent, apk.droppedStale, apk.droppedOverflow, apk.queuedBytes));
+            apk.windowBytes = 0;
+        }
+        sb.append("}}");
+        return sb.toString();
+    }
+
+    /**
+     * Stop sending. Anything still waiting is dropped.
+     */
+    void shutdown() {
+        mExecutor.shutdown();
+    }
+}
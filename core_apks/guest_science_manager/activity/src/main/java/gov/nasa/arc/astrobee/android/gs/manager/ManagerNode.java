@@ -36,7 +36,9 @@ import org.ros.message.MessageListener;
 import org.ros.namespace.GraphName;
 import org.ros.node.AbstractNodeMain;
 import org.ros.node.ConnectedNode;
+import org.ros.node.Node;
 import org.ros.node.NodeConfiguration;
+import org.ros.node.parameter.ParameterTree;
 import org.ros.node.topic.Publisher;
 import org.ros.node.topic.Subscriber;
 
@@ -49,6 +51,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 
 import ff_msgs.AckCompletedStatus;
 import ff_msgs.AckStamped;
@@ -69,6 +72,8 @@ import static org.jboss.netty.buffer.ChannelBuffers.copiedBuffer;
 class ManagerNode extends AbstractNodeMain implements MessageListener<CommandStamped> {
     private static final String LOG_TAG = "GuestScienceManager";
     private static final String INFO_ACTION = "gov.nasa.arc.astrobee.android.gs.INFO_INQUIRY";
+    private static final String BUDGET_APK_NAME = "gov.nasa.arc.astrobee.android.gs.manager";
+    private static final String BUDGET_TOPIC = "downlink_budget";
 
     private CmdInfo mCmdInfo;
 
@@ -89,6 +94,10 @@ class ManagerNode extends AbstractNodeMain implements MessageListener<CommandSta
     private Publisher<GuestScienceState> mStatePublisher;
     private Publisher<Heartbeat> mHeartbeatPublisher;
 
+    private DownlinkScheduler mScheduler;
+
+    private Timer mTimer;
+
     private Subscriber<CommandStamped> mCommandSubscriber;
 
     private NodeConfiguration mNodeConfig;
@@ -107,6 +116,12 @@ class ManagerNode extends AbstractNodeMain implements MessageListener<CommandSta
         }
     }
 
+    class ReportDownlinkBudget extends TimerTask {
+        public void run() {
+            sendDownlinkBudget();
+        }
+    }
+
     class RestartGuestScienceAPK extends TimerTask {
         public void run() {
             startGuestScienceAPK(null);
@@ -437,9 +452,37 @@ class ManagerNode extends AbstractNodeMain implements MessageListener<CommandSta
             ChannelBuffer dataBuff = ChannelBuffers.wrappedBuffer(ByteOrder.LITTLE_ENDIAN, data);
             dataMsg.setData(dataBuff);
         }
-        mDataPublisher.publish(dataMsg);
+
+        // Apks that don't say how urgent their data is get normal priority
+        DownlinkPriority priority = DownlinkPriority.fromInt(
+                msg.getData().getInt("priority", DownlinkPriority.NORMAL.toInt()));
+        mScheduler.submit(apkFullName, priority, dataMsg, data.length);
    }
 
+    public void sendDownlinkBudget() {
+        String report = mScheduler.budgetReport();
+        mLogger.info(LOG_TAG, "Downlink budget: " + report);
+
+        GuestScienceData dataMsg = mMessageFactory.newFromType(GuestScienceData._TYPE);
+        Header hdr = mMessageFactory.newFromType(Header._TYPE);
+        hdr.setStamp(mNodeConfig.getTimeProvider().getCurrentTime());
+        dataMsg.setHeader(hdr);
+        dataMsg.setApkName(BUDGET_APK_NAME);
+        dataMsg.setDataType(GuestScienceData.JSON);
+        dataMsg.setTopic(BUDGET_TOPIC);
+
+        byte[] data = report.getBytes();
+        // The report grows with the number of apks, don't send it if it won't fit
+        if (data.length > 2048) {
+            mLogger.error(LOG_TAG, "Downlink budget report is too big to send to the ground.");
+            return;
+        }
+        dataMsg.setData(ChannelBuffers.wrappedBuffer(ByteOrder.LITTLE_ENDIAN, data));
+        // Straight out, so the report isn't counted in itself or held back by
+        // the apks it reports on
+        mDataPublisher.publish(dataMsg);
+    }
+
     @Override
     public GraphName getDefaultNodeName() {
         return GraphName.of("guest_science_manager");
@@ -459,6 +502,15 @@ class ManagerNode extends AbstractNodeMain implements MessageListener<CommandSta
         mDataPublisher = connectedNode.newPublisher(
                 Constants.TOPIC_GUEST_SCIENCE_DATA, GuestScienceData._TYPE);
 
+        // Guest science data doesn't go straight out, it is shaped so one apk
+        // can't use up the downlink
+        mScheduler = new DownlinkScheduler(new DownlinkScheduler.Sink() {
+            @Override
+            public void publish(GuestScienceData msg) {
+                mDataPublisher.publish(msg);
+            }
+        });
+
         mStatePublisher = connectedNode.newPublisher(
                 Constants.TOPIC_GUEST_SCIENCE_MANAGER_STATE,
                 GuestScienceState._TYPE);
@@ -487,6 +539,8 @@ class ManagerNode extends AbstractNodeMain implements MessageListener<CommandSta
 
         mLogger = new Logger(connectedNode.getLog());
 
+        configureDownlink(connectedNode.getParameterTree());
+
         getApkInfo();
 
         if (mContext == null) {
@@ -501,8 +555,58 @@ class ManagerNode extends AbstractNodeMain implements MessageListener<CommandSta
         mCmdInfo = new CmdInfo();
 
         // Start heartbeat timer, heartbeat will be publish every second
-        Timer timer = new Timer();
-        timer.schedule(new PublishHeartbeat(), 0, 1000);
+        mTimer = new Timer();
+        mTimer.schedule(new PublishHeartbeat(), 0, 1000);
+        // Report how much of the downlink each apk used every ten seconds
+        mTimer.schedule(new ReportDownlinkBudget(), 10000, 10000);
+    }
+
+    /**
+     * Set the downlink budgets and age limits from the node's private
+     * parameters, where there are any:
+     *
+     * ~downlink/rate, ~downlink/burst - bytes per second, and bytes at once,
+     *     for all apks together
+     * ~downlink/apk_rate, ~downlink/apk_burst - the same for each apk,
+     *     defaulting to the values for all apks
+     * ~downlink/normal_max_age, ~downlink/bulk_max_age - seconds data may
+     *     wait before it is dropped
+     * ~downlink/apk_max_queued - bytes each apk may have waiting
+     */
+    private void configureDownlink(ParameterTree params) {
+        try {
+            int rate = params.getInteger("~downlink/rate", (int) DownlinkScheduler.DEFAULT_RATE);
+            int burst = params.getInteger("~downlink/burst", (int) DownlinkScheduler.DEFAULT_BURST);
+            mScheduler.setGlobalRate(rate, burst);
+            mScheduler.setApkRate(params.getInteger("~downlink/apk_rate", rate),
+                                  params.getInteger("~downlink/apk_burst", burst));
+            if (params.has("~downlink/normal_max_age")) {
+                mScheduler.setMaxAge(DownlinkPriority.NORMAL,
+                        (long) (params.getDouble("~downlink/normal_max_age") * 1000),
+                        TimeUnit.MILLISECONDS);
+            }
+            if (params.has("~downlink/bulk_max_age")) {
+                mScheduler.setMaxAge(DownlinkPriority.BULK,
+                        (long) (params.getDouble("~downlink/bulk_max_age") * 1000),
+                        TimeUnit.MILLISECONDS);
+            }
+            if (params.has("~downlink/apk_max_queued")) {
+                mScheduler.setMaxQueuedBytesPerApk(params.getInteger("~downlink/apk_max_queued"));
+            }
+        } catch (RuntimeException e) {
+            // A bad or unreachable parameter leaves the defaults in place
+            mLogger.error(LOG_TAG, "Couldn't configure the downlink: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void onShutdown(Node node) {
+        if (mTimer != null) {
+            mTimer.cancel();
+        }
+        if (mScheduler != null) {
+            mScheduler.shutdown();
+        }
     }
 
     public void setStartTimer(ManagerTimeoutTimer startTimer) {
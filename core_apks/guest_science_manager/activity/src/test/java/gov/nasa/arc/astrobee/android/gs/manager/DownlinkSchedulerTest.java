@@ -0,0 +1,240 @@
+
+/* Copyright (c) 2017, United States Government, as represented by the
+ * Administrator of the National Aeronautics and Space Administration.
+ *
+ * All rights reserved.
+ *
+ * The Astrobee platform is licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package gov.nasa.arc.astrobee.android.gs.manager;
+
+import org.junit.After;
+import org.junit.Test;
+import org.ros.message.MessageFactory;
+import org.ros.node.NodeConfiguration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import ff_msgs.GuestScienceData;
+
+import static org.junit.Assert.*;
+
+public class DownlinkSchedulerTest {
+    private static final String APK = "gov.nasa.arc.irg.test_apk";
+    private static final int SIZE = 2048;
+
+    private final MessageFactory mFactory = NodeConfiguration.newPrivate().getTopicMessageFactory();
+
+    /**
+     * Records the topics of what it publishes. Until let go, it holds up
+     * the scheduler's thread in the first publish, so messages back up.
+     */
+    private static final class Sink implements DownlinkScheduler.Sink {
+        final List<String> published = new ArrayList<>();
+        final CountDownLatch entered = new CountDownLatch(1);
+        volatile CountDownLatch gate = new CountDownLatch(0);
+
+        @Override
+        public void publish(GuestScienceData msg) {
+            entered.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (this) {
+                published.add(msg.getTopic());
+                notifyAll();
+            }
+        }
+
+        synchronized void awaitPublished(int count, long timeout) throws InterruptedException {
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (published.size() < count) {
+                final long left = deadline - System.nanoTime();
+                assertTrue("only " + published.size() + " of " + count + " published", left > 0);
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            }
+        }
+
+        synchronized List<String> published() {
+            return new ArrayList<>(published);
+        }
+    }
+
+    private final Sink mSink = new Sink();
+    private final DownlinkScheduler mScheduler = new DownlinkScheduler(mSink);
+
+    @After
+    public void tearDown() {
+        mSink.gate.countDown();
+        mScheduler.shutdown();
+    }
+
+    @Test
+    public void higherClassesGoFirst() throws Exception {
+        mSink.gate = new CountDownLatch(1);
+        submit(APK, DownlinkPriority.NORMAL, "first");
+        assertTrue(mSink.entered.await(10, TimeUnit.SECONDS));
+
+        submit(APK, DownlinkPriority.BULK, "bulk");
+        submit(APK, DownlinkPriority.NORMAL, "normal");
+        submit(APK, DownlinkPriority.CRITICAL, "critical");
+        mSink.gate.countDown();
+
+        mSink.awaitPublished(4, 10000);
+        assertEquals("first", mSink.published().get(0));
+        assertEquals("critical", mSink.published().get(1));
+        assertEquals("normal", mSink.published().get(2));
+        assertEquals("bulk", mSink.published().get(3));
+    }
+
+    @Test
+    public void apksTakeTurns() throws Exception {
+        mSink.gate = new CountDownLatch(1);
+        submit("blocker", DownlinkPriority.NORMAL, "first");
+        assertTrue(mSink.entered.await(10, TimeUnit.SECONDS));
+
+        submit("a", DownlinkPriority.NORMAL, "a1");
+        submit("a", DownlinkPriority.NORMAL, "a2");
+        submit("b", DownlinkPriority.NORMAL, "b1");
+        mSink.gate.countDown();
+
+        mSink.awaitPublished(4, 10000);
+        final List<String> published = mSink.published();
+        assertTrue(published.toString(), published.indexOf("b1") < published.indexOf("a2"));
+    }
+
+    @Test
+    public void criticalIsNotHeldBackByTheBudget() throws Exception {
+        mScheduler.setGlobalRate(1, SIZE + 32);
+        submit(APK, DownlinkPriority.NORMAL, "normal");
+        mSink.awaitPublished(1, 10000);
+
+        // The bucket is now empty for the next half hour
+        submit(APK, DownlinkPriority.NORMAL, "held");
+        submit(APK, DownlinkPriority.CRITICAL, "critical");
+
+        mSink.awaitPublished(2, 10000);
+        assertEquals("normal", mSink.published().get(0));
+        assertEquals("critical", mSink.published().get(1));
+        Thread.sleep(50);
+        assertEquals(2, mSink.published().size());
+        assertEquals(SIZE, mScheduler.getBudgets().get(APK).getQueuedBytes());
+    }
+
+    @Test
+    public void waitingMessageGoesOnceTheBucketRefills() throws Exception {
+        // Room for one message, and another every 20ms or so
+        mScheduler.setGlobalRate(100 * 1024, SIZE + 32);
+        submit(APK, DownlinkPriority.NORMAL, "one");
+        submit(APK, DownlinkPriority.NORMAL, "two");
+        submit(APK, DownlinkPriority.NORMAL, "three");
+
+        // Nothing else comes in, so only a drain scheduled for the refill
+        // can send them
+        mSink.awaitPublished(3, 10000);
+        assertEquals(3, mScheduler.getBudgets().get(APK).getMessagesSent());
+        assertEquals(0, mScheduler.getBudgets().get(APK).getQueuedBytes());
+    }
+
+    @Test
+    public void apkBudgetDefaultsToTheGlobalOne() throws Exception {
+        // A whole burst for the link, so one apk on its own gets it all out
+        // straight away, not half of it and the rest a quarter second later
+        final int count = (int) (DownlinkScheduler.DEFAULT_BURST / SIZE);
+        for (int i = 0; i < count; i++)
+            submit(APK, DownlinkPriority.NORMAL, "m" + i);
+        mSink.awaitPublished(count, 200);
+    }
+
+    @Test
+    public void staleMessagesAreDropped() throws Exception {
+        mScheduler.setGlobalRate(1, SIZE + 32);
+        mScheduler.setMaxAge(DownlinkPriority.NORMAL, 10, TimeUnit.MILLISECONDS);
+        submit(APK, DownlinkPriority.NORMAL, "sent");
+        submit(APK, DownlinkPriority.NORMAL, "stale");
+        Thread.sleep(50);
+
+        // Only sending looks at the age, so have something go
+        submit(APK, DownlinkPriority.CRITICAL, "critical");
+        mSink.awaitPublished(2, 10000);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (mScheduler.getBudgets().get(APK).getDroppedStale() == 0 && System.nanoTime() < deadline)
+            Thread.sleep(1);
+
+        assertEquals(1, mScheduler.getBudgets().get(APK).getDroppedStale());
+        assertEquals(0, mScheduler.getBudgets().get(APK).getQueuedBytes());
+        assertFalse(mSink.published().contains("stale"));
+    }
+
+    @Test
+    public void overflowDropsTheLeastUrgentFirst() throws Exception {
+        mScheduler.setGlobalRate(1, SIZE + 32);
+        mScheduler.setMaxQueuedBytesPerApk(2 * SIZE);
+        submit(APK, DownlinkPriority.NORMAL, "sent");
+        mSink.awaitPublished(1, 10000);
+
+        submit(APK, DownlinkPriority.BULK, "bulk");
+        submit(APK, DownlinkPriority.NORMAL, "normal");
+        // Pushes out the bulk message
+        submit(APK, DownlinkPriority.NORMAL, "normal2");
+        // Nothing less urgent is left, so this is the one dropped
+        submit(APK, DownlinkPriority.BULK, "bulk2");
+
+        final DownlinkScheduler.ApkBudget budget = mScheduler.getBudgets().get(APK);
+        assertEquals(2, budget.getDroppedOverflow());
+        assertEquals(2 * SIZE, budget.getQueuedBytes());
+    }
+
+    @Test
+    public void nothingGoesAfterShutdown() throws Exception {
+        mScheduler.shutdown();
+        submit(APK, DownlinkPriority.CRITICAL, "critical");
+        Thread.sleep(20);
+        assertTrue(mSink.published().isEmpty());
+    }
+
+    @Test
+    public void budgetReport() throws Exception {
+        submit(APK, DownlinkPriority.NORMAL, "one");
+        mSink.awaitPublished(1, 10000);
+        final String report = mScheduler.budgetReport();
+        assertTrue(report, report.startsWith("{\"window_s\": "));
+        assertTrue(report, report.contains("\"" + APK + "\": {\"budget_used\": "));
+        assertTrue(report, report.contains("\"sent_bytes\": " + SIZE + ", \"sent_messages\": 1, "
+                + "\"dropped_stale\": 0, \"dropped_overflow\": 0, \"queued_bytes\": 0}"));
+    }
+
+    @Test
+    public void budgetsAreASnapshot() throws Exception {
+        submit(APK, DownlinkPriority.NORMAL, "one");
+        mSink.awaitPublished(1, 10000);
+        final DownlinkScheduler.ApkBudget before = mScheduler.getBudgets().get(APK);
+
+        submit(APK, DownlinkPriority.NORMAL, "two");
+        mSink.awaitPublished(2, 10000);
+        assertEquals(1, before.getMessagesSent());
+        assertEquals(2, mScheduler.getBudgets().get(APK).getMessagesSent());
+    }
+
+    private void submit(String apk, DownlinkPriority priority, String topic) {
+        final GuestScienceData msg = mFactory.newFromType(GuestScienceData._TYPE);
+        msg.setApkName(apk);
+        msg.setTopic(topic);
+        mScheduler.submit(apk, priority, msg, SIZE);
+    }
+}
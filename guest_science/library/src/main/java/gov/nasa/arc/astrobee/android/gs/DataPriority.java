@@ -0,0 +1,26 @@
+package gov.nasa.arc.astrobee.android.gs;
+
+/**
+ * DataPriority - Used to specify how urgently data should go to the ground.
+ *
+ * Keep in step with gov.nasa.arc.astrobee.android.gs.manager.DownlinkPriority
+ * in the guest science manager.
+ */
+
+public enum DataPriority {
+    // Status the ground must see, such as started and stopped
+    CRITICAL(0),
+    NORMAL(1),
+    // Bulk transfers, such as large data sent in frames
+    BULK(2);
+
+    private final int mValue;
+
+    DataPriority(final int value) {
+        mValue = value;
+    }
+
+    public int toInt() {
+        return mValue;
+    }
+}
@@ -7,12 +7,21 @@ import android.content.Intent;
 import android.content.ServiceConnection;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Message;
 import android.os.Messenger;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.util.Log;
 
+import gov.nasa.arc.astrobee.ros.guestscience.chunk.ChunkFormat;
+import gov.nasa.arc.astrobee.ros.guestscience.chunk.ChunkedSender;
+import gov.nasa.arc.astrobee.ros.guestscience.chunk.MessageBatcher;
+import gov.nasa.arc.astrobee.ros.guestscience.chunk.PayloadCodec;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Created by kmbrowne on 11/21/17.
  */
@@ -23,6 +32,29 @@ public abstract class StartGuestScienceService extends Service {
     private String mFullApkName = "";
     private String mDataBasePath = "";
 
+    // Sends payloads over 2K, made the first time one comes along
+    private final Object mChunkLock = new Object();
+    private ChunkedSender mChunkedSender = null;
+    private long mLargeDataRate = 64 * 1024;
+
+    // Packs small messages together when batching is on
+    private volatile MessageBatcher mBatcher = null;
+
+    // Compresses outgoing data when compression is on
+    private volatile PayloadCodec mCodec = null;
+
+    // Runs the command callbacks in order, off the main thread, so a
+    // callback that blocks doesn't hold up anything but later commands
+    private HandlerThread mCommandThread = null;
+    private Handler mCommandHandler = null;
+    private final AtomicInteger mCommandsQueued = new AtomicInteger();
+    private volatile long mCommandsDispatched = 0;
+    private volatile long mMaxCommandLatency = 0;
+    private volatile long mLastCommandLatency = 0;
+
+    // Commands that waited longer than this are logged
+    private static final long SLOW_COMMAND_MILLIS = 1000;
+
     private static final String LIB_LOG_TAG = "GuestScienceLib";
     private static final String SERVICE_PACKAGE_NAME =
             "gov.nasa.arc.astrobee.android.gs.manager";
@@ -53,7 +85,12 @@ public abstract class StartGuestScienceService extends Service {
                     if (data.containsKey("path")) {
                         mDataBasePath = data.getString("path");
                         if (mDataBasePath != "") {
-                            onGuestScienceStart();
+                            dispatchCommand("start", new Runnable() {
+                                @Override
+                                public void run() {
+                                    onGuestScienceStart();
+                                }
+                            });
                         } else {
                             // If the path is empty, the gs manager was unable to access or create
                             // the directories for the apk. The manager has already acked started
@@ -73,7 +110,13 @@ public abstract class StartGuestScienceService extends Service {
                 Bundle data = msg.getData();
                 if (data != null) {
                     if (data.containsKey("command")) {
-                        onGuestScienceCustomCmd(data.getString("command"));
+                        final String command = data.getString("command");
+                        dispatchCommand("custom command", new Runnable() {
+                            @Override
+                            public void run() {
+                                onGuestScienceCustomCmd(command);
+                            }
+                        });
                     } else {
                         Log.e(LIB_LOG_TAG, "Command not found in message of type command! " +
                                 "This shouldn't happen. If it does, contact the Astrobee guest " +
@@ -84,7 +127,12 @@ public abstract class StartGuestScienceService extends Service {
                             " happen. If it does, contact the Astrobee guest science team.");
                 }
             } else if (msg.what == MessageType.STOP.toInt()) {
-                onGuestScienceStop();
+                dispatchCommand("stop", new Runnable() {
+                    @Override
+                    public void run() {
+                        onGuestScienceStop();
+                    }
+                });
             } else {
                 Log.e(LIB_LOG_TAG, "Message type not recognized! This shouldn't happen. If " +
                         "it does, contact the Astrobee guest science team.");
@@ -94,6 +142,54 @@ public abstract class StartGuestScienceService extends Service {
 
     final Messenger mCommandMessenger = new Messenger(new IncomingCommandHandler());
 
+    private void dispatchCommand(final String what, final Runnable callback) {
+        final long queuedAt = SystemClock.elapsedRealtime();
+        mCommandsQueued.incrementAndGet();
+        final boolean posted = mCommandHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mCommandsQueued.decrementAndGet();
+                final long latency = SystemClock.elapsedRealtime() - queuedAt;
+                mCommandsDispatched++;
+                mLastCommandLatency = latency;
+                if (latency > mMaxCommandLatency)
+                    mMaxCommandLatency = latency;
+                if (latency > SLOW_COMMAND_MILLIS) {
+                    Log.w(LIB_LOG_TAG, "Falling behind: " + what + " waited " + latency + "ms, " +
+                            mCommandsQueued.get() + " more queued");
+                }
+                callback.run();
+            }
+        });
+        if (!posted) {
+            mCommandsQueued.decrementAndGet();
+            Log.e(LIB_LOG_TAG, "Dropped " + what + ", the command thread has quit.");
+        }
+    }
+
+    /**
+     * How many commands are waiting for the command callbacks.
+     */
+    public int getCommandsQueued() {
+        return mCommandsQueued.get();
+    }
+
+    public long getCommandsDispatched() {
+        return mCommandsDispatched;
+    }
+
+    /**
+     * The longest and latest times, in milliseconds, that a command waited
+     * for its callback to be called.
+     */
+    public long getMaxCommandLatencyMillis() {
+        return mMaxCommandLatency;
+    }
+
+    public long getLastCommandLatencyMillis() {
+        return mLastCommandLatency;
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         return null;
@@ -102,6 +198,9 @@ public abstract class StartGuestScienceService extends Service {
     @Override
     public void onCreate() {
         super.onCreate();
+        mCommandThread = new HandlerThread("GuestScienceCommands");
+        mCommandThread.start();
+        mCommandHandler = new Handler(mCommandThread.getLooper());
     }
 
     @Override
@@ -141,6 +240,15 @@ public abstract class StartGuestScienceService extends Service {
 
     @Override
     public void onDestroy() {
+        synchronized (mChunkLock) {
+            if (mChunkedSender != null) {
+                mChunkedSender.shutdown();
+                mChunkedSender = null;
+            }
+        }
+        setBatching(false, 0);
+        setCompression(false, null);
+        mCommandThread.quitSafely();
         if (mBound) {
             unbindService(mConnection);
             mBound = false;
@@ -157,11 +265,11 @@ public abstract class StartGuestScienceService extends Service {
     }
 
     public void sendStarted(String topic) {
-        sendData(MessageType.JSON, topic, "{\"Summary\": \"Started\"}");
+        sendData(MessageType.JSON, topic, "{\"Summary\": \"Started\"}", DataPriority.CRITICAL);
     }
 
     public void sendStopped(String topic) {
-        sendData(MessageType.JSON, topic, "{\"Summary\": \"Stopped\"}");
+        sendData(MessageType.JSON, topic, "{\"Summary\": \"Stopped\"}", DataPriority.CRITICAL);
     }
 
     public void sendReceivedCustomCommand(String topic) {
@@ -177,22 +285,173 @@ public abstract class StartGuestScienceService extends Service {
         sendMsg(type, topic, data);
     }
 
-    public void sendMsg(MessageType type, String topic, byte[] data) {
-        if (!mBound) {
-            Log.e(LIB_LOG_TAG, "Not bound to guest science manager. This shouldn't happen. " +
-                    "If it does, contact the Astrobee guest science team.,");
+    /**
+     * Send data with a downlink priority. When the downlink is busy, the
+     * manager sends CRITICAL data first and BULK data last. Only NORMAL data
+     * is batched.
+     */
+    public void sendData(MessageType type, String topic, String data, DataPriority priority) {
+        sendData(type, topic, data.getBytes(), priority);
+    }
+
+    public void sendData(MessageType type, String topic, byte[] data, DataPriority priority) {
+        final byte[] compressed = compress(topic, data, PayloadCodec.MAX_TOPIC_LENGTH);
+        if (compressed != null) {
+            topic = PayloadCodec.TOPIC_PREFIX + topic;
+            data = compressed;
+        }
+        queue(type, topic, data, priority);
+    }
+
+    /**
+     * Send data of any size. Data that fits in one message is sent right
+     * away like sendData. Anything bigger is queued and sent in the
+     * background as numbered frames, at the rate set by setLargeDataRate,
+     * for the ground to put back together.
+     */
+    public void sendLargeData(MessageType type, String topic, byte[] data) {
+        final byte[] compressed = compress(topic, data,
+                ChunkFormat.MAX_TOPIC_LENGTH - PayloadCodec.TOPIC_PREFIX.length());
+        if (compressed != null) {
+            topic = PayloadCodec.TOPIC_PREFIX + topic;
+            data = compressed;
+        }
+        if (data.length <= 2048) {
+            queue(type, topic, data, DataPriority.NORMAL);
             return;
         }
 
+        getChunkedSender().send(toDataType(type), topic, data);
+    }
+
+    /**
+     * Pack messages sent with sendData into shared 2K batches. A batch goes
+     * out once full, or once its first message has waited lingerMillis.
+     * Turning batching off sends anything still waiting.
+     */
+    public void setBatching(boolean enabled, long lingerMillis) {
+        final MessageBatcher old;
+        synchronized (mChunkLock) {
+            old = mBatcher;
+            mBatcher = !enabled ? null : new MessageBatcher(new MessageBatcher.Sink() {
+                @Override
+                public void send(byte dataType, String topic, byte[] data) {
+                    sendNow(toMessageType(dataType), topic, data, DataPriority.NORMAL);
+                }
+            }, lingerMillis);
+        }
+        if (old != null)
+            old.shutdown();
+    }
+
+    /**
+     * Deflate data before sending it, when that makes it smaller. The size
+     * limit applies to the compressed data. Compressed data goes out on the
+     * topic with a '~' in front, for the ground to inflate with a
+     * PayloadCodec using the same dictionary.
+     *
+     * @param dictionary A preset dictionary, such as from
+     *                   PayloadCodec.buildDictionary, or null.
+     */
+    public void setCompression(boolean enabled, byte[] dictionary) {
+        final PayloadCodec old;
+        synchronized (mChunkLock) {
+            old = mCodec;
+            mCodec = enabled ? new PayloadCodec(dictionary) : null;
+        }
+        if (old != null)
+            old.close();
+    }
+
+    // Returns the compressed data, or null to send it as it is
+    private byte[] compress(String topic, byte[] data, int maxTopicLength) {
+        final PayloadCodec codec = mCodec;
+        if (codec == null || topic.length() > maxTopicLength)
+            return null;
+        return codec.compress(data);
+    }
+
+    // GuestScienceData types, as carried in chunk and batch frames
+    private static byte toDataType(MessageType type) {
+        if (type == MessageType.STRING) {
+            return 0;
+        } else if (type == MessageType.JSON) {
+            return 1;
+        } else if (type == MessageType.BINARY) {
+            return 2;
+        }
+        throw new IllegalArgumentException("Unknown data type " + type);
+    }
+
+    private static MessageType toMessageType(byte dataType) {
+        switch (dataType) {
+            case 0:
+                return MessageType.STRING;
+            case 1:
+                return MessageType.JSON;
+            default:
+                return MessageType.BINARY;
+        }
+    }
+
+    /**
+     * How fast sendLargeData may send, in bytes per second. 64KiB/s by
+     * default.
+     */
+    public void setLargeDataRate(long bytesPerSecond) {
+        if (bytesPerSecond < ChunkFormat.MAX_FRAME_SIZE)
+            throw new IllegalArgumentException("bytesPerSecond must be at least " + ChunkFormat.MAX_FRAME_SIZE);
+        synchronized (mChunkLock) {
+            if (mChunkedSender != null)
+                mChunkedSender.setRate(bytesPerSecond);
+            mLargeDataRate = bytesPerSecond;
+        }
+    }
+
+    private ChunkedSender getChunkedSender() {
+        synchronized (mChunkLock) {
+            if (mChunkedSender == null) {
+                mChunkedSender = new ChunkedSender(new ChunkedSender.FrameSink() {
+                    @Override
+                    public void sendFrame(String topic, byte[] frame) {
+                        sendNow(MessageType.BINARY, topic, frame, DataPriority.BULK);
+                    }
+                }, mLargeDataRate);
+            }
+            return mChunkedSender;
+        }
+    }
+
+    public void sendMsg(MessageType type, String topic, byte[] data) {
+        sendData(type, topic, data, DataPriority.NORMAL);
+    }
+
+    private void queue(MessageType type, String topic, byte[] data, DataPriority priority) {
         if (data.length > 2048) {
             throw new RuntimeException("Data passed to sendData function is too big to send to " +
                     "ground. Must be 2K.");
         }
 
+        // A batch goes out at one priority, so only NORMAL data shares them
+        final MessageBatcher batcher = mBatcher;
+        if (batcher != null && priority == DataPriority.NORMAL)
+            batcher.add(toDataType(type), topic, data);
+        else
+            sendNow(type, topic, data, priority);
+    }
+
+    private void sendNow(MessageType type, String topic, byte[] data, DataPriority priority) {
+        if (!mBound) {
+            Log.e(LIB_LOG_TAG, "Not bound to guest science manager. This shouldn't happen. " +
+                    "If it does, contact the Astrobee guest science team.,");
+            return;
+        }
+
         Bundle dataBundle = new Bundle();
         dataBundle.putString("apkFullName", mFullApkName);
         dataBundle.putString("topic", topic);
         dataBundle.putByteArray("data", data);
+        dataBundle.putInt("priority", priority.toInt());
 
         Message msg = Message.obtain(null, type.toInt());
         msg.setData(dataBundle);